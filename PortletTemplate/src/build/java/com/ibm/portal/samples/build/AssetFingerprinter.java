@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fingerprints the static resources of the web application, run by the
+ * build before the application is packaged. Every resource is copied to a
+ * file whose name carries a hash of its content, e.g.
+ * <code>images/blank.png</code> to <code>images/blank.0123456789ab.png</code>,
+ * and the mapping is recorded in the manifest
+ * <code>WEB-INF/assets.properties</code>. The views resolve the URLs of the
+ * resources via the manifest, so a changed resource gets a new URL and the
+ * resources can be cached forever. The original files stay in place for
+ * references that do not go through the manifest.
+ * 
+ * The directories <code>WEB-INF</code> and <code>META-INF</code> are not
+ * served by the container and are skipped.
+ * 
+ * Usage: <code>AssetFingerprinter webappDirectory outputDirectory</code>
+ * 
+ * @author cleue
+ */
+public final class AssetFingerprinter {
+
+	/**
+	 * encoding of the manifest
+	 */
+	private static final Charset ENCODING = Charset.forName("ISO-8859-1");
+
+	/**
+	 * number of hex digits of the hash in the file names
+	 */
+	private static final int HASH_LENGTH = 12;
+
+	/**
+	 * hex digits
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * path of the manifest relative to the output directory
+	 */
+	private static final String MANIFEST = "WEB-INF/assets.properties";
+
+	/**
+	 * line separator of the manifest
+	 */
+	private static final String NL = "\n";
+
+	/**
+	 * Appends a path as an escaped key or value of a properties file
+	 * 
+	 * @param aPath
+	 *            the path
+	 * @param aTarget
+	 *            the target
+	 */
+	private static void appendEscaped(final String aPath,
+			final StringBuilder aTarget) {
+		for (int i = 0; i < aPath.length(); ++i) {
+			final char c = aPath.charAt(i);
+			if ((c < 0x20) || (c > 0x7e)) {
+				aTarget.append(String.format("\\u%04x", (int) c));
+			} else {
+				if ("\\=: #!".indexOf(c) >= 0) {
+					aTarget.append('\\');
+				}
+				aTarget.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Fingerprints the resources of a directory
+	 * 
+	 * @param aSource
+	 *            the directory
+	 * @param aTarget
+	 *            the corresponding output directory
+	 * @param aPath
+	 *            path of the directory inside the application, ending with a
+	 *            slash
+	 * @param aManifest
+	 *            receives the mapping of the paths
+	 * @throws IOException
+	 */
+	private static void fingerprint(final File aSource, final File aTarget,
+			final String aPath, final Map<String, String> aManifest)
+			throws IOException {
+		final String[] names = aSource.list();
+		if (names == null) {
+			throw new IOException("Cannot list [" + aSource + "].");
+		}
+		Arrays.sort(names);
+		for (final String name : names) {
+			final File file = new File(aSource, name);
+			if (file.isDirectory()) {
+				// not served by the container
+				if (!"/".equals(aPath)
+						|| (!"WEB-INF".equals(name) && !"META-INF".equals(name))) {
+					fingerprint(file, new File(aTarget, name), aPath + name
+							+ '/', aManifest);
+				}
+			} else if (file.isFile()) {
+				// the hash goes in front of the extension
+				final byte[] data = BundleGenerator.read(file);
+				final int idx = name.lastIndexOf('.');
+				final String hashed = (idx > 0) ? name.substring(0, idx) + '.'
+						+ hash(data) + name.substring(idx) : name + '.'
+						+ hash(data);
+				if (!aTarget.isDirectory() && !aTarget.mkdirs()) {
+					throw new IOException("Cannot create [" + aTarget + "].");
+				}
+				BundleGenerator.write(new File(aTarget, hashed), data);
+				aManifest.put(aPath + name, aPath + hashed);
+			}
+		}
+	}
+
+	/**
+	 * Computes the hash of a content
+	 * 
+	 * @param aData
+	 *            the content
+	 * @return the leading hex digits of the hash
+	 */
+	private static String hash(final byte[] aData) {
+		final byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(aData);
+		} catch (final NoSuchAlgorithmException ex) {
+			// every JRE supports SHA-256
+			throw new IllegalStateException(ex);
+		}
+		final StringBuilder result = new StringBuilder(HASH_LENGTH);
+		for (int i = 0; result.length() < HASH_LENGTH; ++i) {
+			result.append(HEX[(digest[i] >> 4) & 0x0f]).append(
+					HEX[digest[i] & 0x0f]);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Fingerprints the resources and writes the manifest
+	 * 
+	 * @param aArgs
+	 *            <code>webappDirectory outputDirectory</code>
+	 * @throws IOException
+	 */
+	public static void main(final String[] aArgs) throws IOException {
+		if (aArgs.length != 2) {
+			throw new IllegalArgumentException(
+					"Usage: AssetFingerprinter webappDirectory outputDirectory");
+		}
+		final File target = new File(aArgs[1]);
+		// sorted, so the manifest only changes with the resources
+		final Map<String, String> manifest = new TreeMap<String, String>();
+		fingerprint(new File(aArgs[0]), target, "/", manifest);
+		// the manifest
+		final StringBuilder content = new StringBuilder();
+		content.append("# generated by ")
+				.append(AssetFingerprinter.class.getName())
+				.append(", do not edit").append(NL);
+		for (final Map.Entry<String, String> entry : manifest.entrySet()) {
+			appendEscaped(entry.getKey(), content);
+			content.append('=');
+			appendEscaped(entry.getValue(), content);
+			content.append(NL);
+		}
+		final File file = new File(target, MANIFEST);
+		if (!file.getParentFile().isDirectory()
+				&& !file.getParentFile().mkdirs()) {
+			throw new IOException("Cannot create [" + file.getParentFile()
+					+ "].");
+		}
+		BundleGenerator.write(file, content.toString().getBytes(ENCODING));
+		// log this
+		System.out.printf("Fingerprinted %d resources of [%s].%n",
+				manifest.size(), aArgs[0]);
+	}
+
+	/**
+	 * Static helpers only
+	 */
+	private AssetFingerprinter() {
+	}
+}
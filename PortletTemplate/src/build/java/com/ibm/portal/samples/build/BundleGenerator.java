@@ -0,0 +1,462 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Compiles the properties files of a resource bundle into Java classes, run
+ * by the build before the sources are compiled. The class of the base bundle
+ * declares a typed key per entry. Code that references these keys fails to
+ * compile if an entry is missing. The class of each locale carries the
+ * complete values of that locale, with the fallbacks to the parent locales
+ * already resolved. {@link java.util.ResourceBundle#getBundle(String)}
+ * prefers the classes over the properties files, so the runtime parses no
+ * properties at all.
+ * 
+ * The build fails if a localized file defines an entry that the base bundle
+ * does not define or if two entries map to the same key.
+ * 
+ * Usage:
+ * <code>BundleGenerator resourceDirectory bundleName outputDirectory</code>
+ * 
+ * @author cleue
+ */
+public final class BundleGenerator {
+
+	/**
+	 * encoding of the generated sources
+	 */
+	private static final Charset ENCODING = Charset.forName("US-ASCII");
+
+	/**
+	 * line separator of the generated sources
+	 */
+	private static final String NL = "\n";
+
+	/**
+	 * extension of the properties files
+	 */
+	private static final String SUFFIX = ".properties";
+
+	/**
+	 * Appends a string as a Java literal
+	 * 
+	 * @param aValue
+	 *            the string
+	 * @param aTarget
+	 *            the target
+	 */
+	private static void appendLiteral(final String aValue,
+			final StringBuilder aTarget) {
+		aTarget.append('"');
+		for (int i = 0; i < aValue.length(); ++i) {
+			final char c = aValue.charAt(i);
+			switch (c) {
+			case '"':
+				aTarget.append("\\\"");
+				break;
+			case '\\':
+				aTarget.append("\\\\");
+				break;
+			case '\n':
+				aTarget.append("\\n");
+				break;
+			case '\r':
+				aTarget.append("\\r");
+				break;
+			case '\t':
+				aTarget.append("\\t");
+				break;
+			default:
+				if ((c < 0x20) || (c > 0x7e)) {
+					aTarget.append(String.format("\\u%04x", (int) c));
+				} else {
+					aTarget.append(c);
+				}
+			}
+		}
+		aTarget.append('"');
+	}
+
+	/**
+	 * Appends the array of the values
+	 * 
+	 * @param aKeys
+	 *            the names of the entries
+	 * @param aValues
+	 *            the values
+	 * @param aTarget
+	 *            the target
+	 */
+	private static void appendValues(final List<String> aKeys,
+			final Properties aValues, final StringBuilder aTarget) {
+		aTarget.append(NL).append("\t/**").append(NL);
+		aTarget.append("\t * the values, in the order of the keys").append(NL);
+		aTarget.append("\t */").append(NL);
+		aTarget.append("\tprivate static final String[] VALUES = {");
+		for (int i = 0; i < aKeys.size(); ++i) {
+			aTarget.append((i > 0) ? "," : "").append(NL).append("\t\t\t");
+			appendLiteral(aValues.getProperty(aKeys.get(i)), aTarget);
+		}
+		aTarget.append(" };").append(NL);
+	}
+
+	/**
+	 * Generates the class of the base bundle
+	 * 
+	 * @param aPackage
+	 *            package of the bundle
+	 * @param aName
+	 *            simple name of the bundle
+	 * @param aKeys
+	 *            the names of the entries, sorted
+	 * @param aValues
+	 *            the values
+	 * @return the source
+	 */
+	private static String generateBase(final String aPackage,
+			final String aName, final List<String> aKeys,
+			final Properties aValues) {
+		final Map<String, String> constants = new HashMap<String, String>();
+		final StringBuilder result = new StringBuilder();
+		result.append("// generated from ").append(aName).append(SUFFIX)
+				.append(" by ").append(BundleGenerator.class.getName())
+				.append(", do not edit").append(NL);
+		result.append("package ").append(aPackage).append(';').append(NL)
+				.append(NL);
+		result.append("import com.ibm.portal.samples.common.IndexedResourceBundle;")
+				.append(NL).append(NL);
+		result.append("/**").append(NL);
+		result.append(" * Default locale of the resource bundle, compiled from <code>")
+				.append(aName).append(SUFFIX).append("</code>").append(NL);
+		result.append(" */").append(NL);
+		result.append("public class ").append(aName)
+				.append(" extends IndexedResourceBundle {").append(NL);
+		// the keys
+		for (int i = 0; i < aKeys.size(); ++i) {
+			final String key = aKeys.get(i);
+			final String constant = toConstant(key);
+			final String other = constants.put(constant, key);
+			if (other != null) {
+				throw new IllegalStateException("The entries [" + other
+						+ "] and [" + key + "] map to the same key ["
+						+ constant + "].");
+			}
+			result.append(NL).append("\t/**").append(NL);
+			result.append("\t * key of the entry <code>").append(key)
+					.append("</code>").append(NL);
+			result.append("\t */").append(NL);
+			result.append("\tpublic static final Key ").append(constant)
+					.append(" = new Key(").append(i).append(", ");
+			appendLiteral(key, result);
+			result.append(");").append(NL);
+		}
+		result.append(NL).append("\t/**").append(NL);
+		result.append("\t * the keys, in the order of their indexes").append(NL);
+		result.append("\t */").append(NL);
+		result.append("\tprivate static final Key[] KEYS = {");
+		for (int i = 0; i < aKeys.size(); ++i) {
+			result.append((i > 0) ? "," : "").append(NL).append("\t\t\t")
+					.append(toConstant(aKeys.get(i)));
+		}
+		result.append(" };").append(NL);
+		// the values
+		appendValues(aKeys, aValues, result);
+		// the constructors
+		result.append(NL).append("\t/**").append(NL);
+		result.append("\t * Constructs the bundle").append(NL);
+		result.append("\t */").append(NL);
+		result.append("\tpublic ").append(aName).append("() {").append(NL);
+		result.append("\t\tthis(VALUES);").append(NL);
+		result.append("\t}").append(NL);
+		result.append(NL).append("\t/**").append(NL);
+		result.append("\t * Constructs the bundle of a locale").append(NL);
+		result.append("\t * ").append(NL);
+		result.append("\t * @param aValues").append(NL);
+		result.append("\t *            the values, in the order of the keys")
+				.append(NL);
+		result.append("\t */").append(NL);
+		result.append("\tprotected ").append(aName)
+				.append("(final String[] aValues) {").append(NL);
+		result.append("\t\tsuper(KEYS, aValues);").append(NL);
+		result.append("\t}").append(NL);
+		result.append("}").append(NL);
+		return result.toString();
+	}
+
+	/**
+	 * Generates the class of a locale
+	 * 
+	 * @param aPackage
+	 *            package of the bundle
+	 * @param aName
+	 *            simple name of the bundle
+	 * @param aLocale
+	 *            the locale suffix, e.g. <code>de_CH</code>
+	 * @param aKeys
+	 *            the names of the entries, sorted
+	 * @param aValues
+	 *            the complete values of the locale
+	 * @return the source
+	 */
+	private static String generateLocale(final String aPackage,
+			final String aName, final String aLocale,
+			final List<String> aKeys, final Properties aValues) {
+		final String className = aName + '_' + aLocale;
+		final StringBuilder result = new StringBuilder();
+		result.append("// generated from ").append(className).append(SUFFIX)
+				.append(" by ").append(BundleGenerator.class.getName())
+				.append(", do not edit").append(NL);
+		result.append("package ").append(aPackage).append(';').append(NL)
+				.append(NL);
+		result.append("/**").append(NL);
+		result.append(" * Locale <code>").append(aLocale)
+				.append("</code> of the resource bundle, compiled from <code>")
+				.append(className).append(SUFFIX).append("</code>").append(NL);
+		result.append(" */").append(NL);
+		result.append("public class ").append(className).append(" extends ")
+				.append(aName).append(" {").append(NL);
+		// the values
+		appendValues(aKeys, aValues, result);
+		// the constructor
+		result.append(NL).append("\t/**").append(NL);
+		result.append("\t * Constructs the bundle").append(NL);
+		result.append("\t */").append(NL);
+		result.append("\tpublic ").append(className).append("() {")
+				.append(NL);
+		result.append("\t\tsuper(VALUES);").append(NL);
+		result.append("\t}").append(NL);
+		result.append("}").append(NL);
+		return result.toString();
+	}
+
+	/**
+	 * Reads a properties file
+	 * 
+	 * @param aFile
+	 *            the file
+	 * @param aDefaults
+	 *            the values of the parent locale, may be <code>null</code>
+	 * @return the values
+	 * @throws IOException
+	 */
+	private static Properties load(final File aFile, final Properties aDefaults)
+			throws IOException {
+		final Properties result = new Properties();
+		final InputStream in = new FileInputStream(aFile);
+		try {
+			result.load(in);
+		} finally {
+			in.close();
+		}
+		// resolve the fallbacks
+		if (aDefaults != null) {
+			for (final String key : result.stringPropertyNames()) {
+				if (aDefaults.getProperty(key) == null) {
+					throw new IllegalStateException("The entry [" + key
+							+ "] of [" + aFile
+							+ "] is not defined by the base bundle.");
+				}
+			}
+			for (final String key : aDefaults.stringPropertyNames()) {
+				if (result.getProperty(key) == null) {
+					result.setProperty(key, aDefaults.getProperty(key));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Generates the classes
+	 * 
+	 * @param aArgs
+	 *            <code>resourceDirectory bundleName outputDirectory</code>
+	 * @throws IOException
+	 */
+	public static void main(final String[] aArgs) throws IOException {
+		if (aArgs.length != 3) {
+			throw new IllegalArgumentException(
+					"Usage: BundleGenerator resourceDirectory bundleName outputDirectory");
+		}
+		final String bundle = aArgs[1];
+		final int idx = bundle.lastIndexOf('.');
+		final String pkg = bundle.substring(0, idx);
+		final String name = bundle.substring(idx + 1);
+		final String path = pkg.replace('.', File.separatorChar);
+		final File source = new File(aArgs[0], path);
+		final File target = new File(aArgs[2], path);
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Cannot create [" + target + "].");
+		}
+		// the base bundle defines the keys
+		final Properties base = load(new File(source, name + SUFFIX), null);
+		final List<String> keys = new ArrayList<String>(
+				base.stringPropertyNames());
+		Collections.sort(keys);
+		write(new File(target, name + ".java"),
+				generateBase(pkg, name, keys, base));
+		// the locales, sorted so the parents come first
+		final String prefix = name + '_';
+		final String[] files = source.list();
+		Arrays.sort(files);
+		final Map<String, Properties> locales = new HashMap<String, Properties>();
+		for (final String file : files) {
+			if (file.startsWith(prefix) && file.endsWith(SUFFIX)) {
+				final String locale = file.substring(prefix.length(),
+						file.length() - SUFFIX.length());
+				// the closest parent that has a file
+				Properties parent = base;
+				for (int i = locale.lastIndexOf('_'); i > 0; i = locale
+						.lastIndexOf('_', i - 1)) {
+					final Properties candidate = locales.get(locale.substring(
+							0, i));
+					if (candidate != null) {
+						parent = candidate;
+						break;
+					}
+				}
+				final Properties values = load(new File(source, file), parent);
+				locales.put(locale, values);
+				write(new File(target, prefix + locale + ".java"),
+						generateLocale(pkg, name, locale, keys, values));
+			}
+		}
+		// log this
+		System.out.printf("Compiled [%s] with %d entries and %d locales.%n",
+				bundle, keys.size(), locales.size());
+	}
+
+	/**
+	 * Reads a file
+	 * 
+	 * @param aFile
+	 *            the file
+	 * @return the content
+	 * @throws IOException
+	 */
+	static byte[] read(final File aFile) throws IOException {
+		final byte[] result = new byte[(int) aFile.length()];
+		final InputStream in = new FileInputStream(aFile);
+		try {
+			int len = 0;
+			while (len < result.length) {
+				final int read = in.read(result, len, result.length - len);
+				if (read < 0) {
+					throw new IOException("Unexpected end of [" + aFile + "].");
+				}
+				len += read;
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the name of an entry into the name of a constant, e.g.
+	 * <code>form.sampleText.title</code> into
+	 * <code>FORM_SAMPLE_TEXT_TITLE</code>
+	 * 
+	 * @param aKey
+	 *            name of the entry
+	 * @return name of the constant
+	 */
+	private static String toConstant(final String aKey) {
+		final StringBuilder result = new StringBuilder(aKey.length() + 8);
+		// camel case starts a new word after a lower case letter or a digit
+		boolean bLower = false;
+		// separators collapse into one underscore
+		boolean bSeparated = true;
+		for (int i = 0; i < aKey.length(); ++i) {
+			final char c = aKey.charAt(i);
+			if ((c < 0x80) && Character.isLetterOrDigit(c)) {
+				final boolean bUpper = Character.isUpperCase(c);
+				if (bUpper && bLower) {
+					result.append('_');
+				}
+				result.append(Character.toUpperCase(c));
+				bLower = !bUpper;
+				bSeparated = false;
+			} else if (!bSeparated) {
+				result.append('_');
+				bLower = false;
+				bSeparated = true;
+			}
+		}
+		if ((result.length() == 0) || Character.isDigit(result.charAt(0))) {
+			result.insert(0, '_');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes a file, unless it is up to date. Keeping the time stamp of
+	 * unchanged files avoids needless recompilation and repackaging.
+	 * 
+	 * @param aFile
+	 *            the file
+	 * @param aData
+	 *            the content
+	 * @throws IOException
+	 */
+	static void write(final File aFile, final byte[] aData) throws IOException {
+		if (aFile.isFile() && (aFile.length() == aData.length)
+				&& Arrays.equals(aData, read(aFile))) {
+			return;
+		}
+		final OutputStream out = new FileOutputStream(aFile);
+		try {
+			out.write(aData);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a source file, unless it is up to date
+	 * 
+	 * @param aFile
+	 *            the file
+	 * @param aSource
+	 *            the source
+	 * @throws IOException
+	 */
+	private static void write(final File aFile, final String aSource)
+			throws IOException {
+		write(aFile, aSource.getBytes(ENCODING));
+	}
+
+	/**
+	 * Static helpers only
+	 */
+	private BundleGenerator() {
+	}
+}
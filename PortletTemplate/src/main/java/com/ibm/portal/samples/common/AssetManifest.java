@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Maps the paths of the static resources of the application to their
+ * fingerprinted copies. The build copies every static resource to a file
+ * whose name contains a hash of its content and records the mapping in the
+ * manifest at {@link #PATH}. Since the content of a fingerprinted file never
+ * changes, browsers and proxies may cache it forever, and a new version of
+ * the resource automatically gets a new URL.
+ * 
+ * Resources without an entry, e.g. when running from an unprocessed source
+ * tree, map to themselves.
+ * 
+ * @author cleue
+ */
+public final class AssetManifest {
+
+	/**
+	 * manifest without entries
+	 */
+	public static final AssetManifest EMPTY = new AssetManifest(
+			new Properties());
+
+	/**
+	 * path of the manifest inside the application
+	 */
+	public static final String PATH = "/WEB-INF/assets.properties";
+
+	/**
+	 * Reads a manifest
+	 * 
+	 * @param aIn
+	 *            the stream, <code>null</code> if the application has no
+	 *            manifest. The stream is closed.
+	 * @return the manifest
+	 * @throws IOException
+	 */
+	public static AssetManifest load(final InputStream aIn) throws IOException {
+		// no manifest
+		if (aIn == null) {
+			return EMPTY;
+		}
+		// parse the entries
+		final Properties entries = new Properties();
+		try {
+			entries.load(aIn);
+		} finally {
+			aIn.close();
+		}
+		// ok
+		return new AssetManifest(entries);
+	}
+
+	/**
+	 * the fingerprinted paths
+	 */
+	private final Set<String> fingerprinted;
+
+	/**
+	 * maps the paths of the resources to the paths of their fingerprinted
+	 * copies
+	 */
+	private final Map<String, String> paths;
+
+	/**
+	 * Constructs the manifest
+	 * 
+	 * @param aEntries
+	 *            the entries
+	 */
+	private AssetManifest(final Properties aEntries) {
+		// sanity check
+		assert aEntries != null;
+		// init
+		final Map<String, String> map = new HashMap<String, String>(
+				2 * aEntries.size());
+		for (final String path : aEntries.stringPropertyNames()) {
+			map.put(path, aEntries.getProperty(path));
+		}
+		paths = Collections.unmodifiableMap(map);
+		fingerprinted = Collections.unmodifiableSet(new HashSet<String>(map
+				.values()));
+	}
+
+	/**
+	 * Returns the path of the fingerprinted copy of a resource
+	 * 
+	 * @param aPath
+	 *            path of the resource inside the application, starting with a
+	 *            slash
+	 * @return the path of the copy, or the original path if the resource has
+	 *         no copy
+	 */
+	public String getPath(final String aPath) {
+		// sanity check
+		assert aPath != null;
+		// lookup
+		final String result = paths.get(aPath);
+		return (result != null) ? result : aPath;
+	}
+
+	/**
+	 * Tests if a path denotes a fingerprinted copy, i.e. a resource whose
+	 * content never changes
+	 * 
+	 * @param aPath
+	 *            path inside the application, starting with a slash
+	 * @return <code>true</code> if the path is fingerprinted
+	 */
+	public boolean isFingerprinted(final String aPath) {
+		return fingerprinted.contains(aPath);
+	}
+
+	/**
+	 * Returns the number of entries
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		return paths.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "AssetManifest [paths=" + paths + "]";
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.Arrays;
+
+/**
+ * Base64 encoding with the URL safe alphabet and without padding, the
+ * representation of binary data inside of parameter tokens. The characters
+ * of the alphabet do not need to be escaped in URLs.
+ * 
+ * @author cleue
+ */
+final class Base64Url {
+
+	/**
+	 * the URL safe base64 alphabet
+	 */
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+
+	/**
+	 * maps the characters of the alphabet to their values
+	 */
+	private static final byte[] DECODING = new byte[128];
+
+	static {
+		/*
+		 * initialize the decoding table
+		 */
+		Arrays.fill(DECODING, (byte) -1);
+		for (int i = 0; i < ALPHABET.length; ++i) {
+			DECODING[ALPHABET[i]] = (byte) i;
+		}
+	}
+
+	/**
+	 * Decodes base64 characters
+	 * 
+	 * @param aToken
+	 *            the token
+	 * @param aOffset
+	 *            offset of the base64 characters in the token
+	 * @param aExtra
+	 *            number of additional zero bytes at the end of the result
+	 * @return the bytes or <code>null</code> if the token is invalid
+	 */
+	static byte[] decode(final String aToken, final int aOffset,
+			final int aExtra) {
+		final int len = aToken.length() - aOffset;
+		if (len % 4 == 1) {
+			return null;
+		}
+		final byte[] result = new byte[len * 3 / 4 + aExtra];
+		int bits = 0;
+		int count = 0;
+		int idx = 0;
+		for (int i = aOffset; i < aToken.length(); ++i) {
+			final char c = aToken.charAt(i);
+			final int value = (c < DECODING.length) ? DECODING[c] : -1;
+			if (value < 0) {
+				return null;
+			}
+			bits = (bits << 6) | value;
+			count += 6;
+			if (count >= 8) {
+				count -= 8;
+				result[idx++] = (byte) (bits >> count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes bytes as base64 characters
+	 * 
+	 * @param aData
+	 *            the data
+	 * @param aLength
+	 *            number of bytes to encode
+	 * @param aTarget
+	 *            receives the characters
+	 */
+	static void encode(final byte[] aData, final int aLength,
+			final StringBuilder aTarget) {
+		int bits = 0;
+		int count = 0;
+		for (int i = 0; i < aLength; ++i) {
+			bits = (bits << 8) | (aData[i] & 0xff);
+			count += 8;
+			while (count >= 6) {
+				count -= 6;
+				aTarget.append(ALPHABET[(bits >> count) & 0x3f]);
+			}
+		}
+		if (count > 0) {
+			aTarget.append(ALPHABET[(bits << (6 - count)) & 0x3f]);
+		}
+	}
+
+	/**
+	 * Returns the number of characters needed to encode bytes
+	 * 
+	 * @param aLength
+	 *            number of bytes
+	 * @return number of characters
+	 */
+	static int getEncodedLength(final int aLength) {
+		return (aLength * 4 + 2) / 3;
+	}
+
+	/**
+	 * Static helpers only
+	 */
+	private Base64Url() {
+	}
+}
@@ -0,0 +1,510 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out registry that delivers messages published to a topic to all current
+ * subscribers of that topic. Publishing does not block and does not take
+ * locks: each subscriber owns a bounded queue and a subscriber whose queue is
+ * full is dropped instead of slowing down the publisher or the other
+ * subscribers. A dropped subscriber can resynchronize from the snapshot that
+ * the topic keeps of its latest state.
+ * 
+ * Every message carries a sequence number that increases within its topic, so
+ * a client that reconnects can pass the last sequence it has seen and
+ * receives the latest snapshot if it missed messages in the meantime.
+ * 
+ * A topic without subscribers is removed once its snapshot is older than the
+ * time to live, so windows that published once do not accumulate. The
+ * sequence numbers are drawn from a counter shared by all topics, so they keep
+ * increasing if an expired topic is created again.
+ * 
+ * @param <T>
+ *            type of the message payload
+ * 
+ * @author cleue
+ */
+public class Broadcaster<T> {
+
+	/**
+	 * A message with its sequence number
+	 * 
+	 * @param <T>
+	 *            type of the payload
+	 */
+	public static final class Message<T> {
+
+		/**
+		 * the payload
+		 */
+		private final T payload;
+
+		/**
+		 * sequence number of the message within its topic
+		 */
+		private final long sequence;
+
+		/**
+		 * Constructs the message
+		 * 
+		 * @param aSequence
+		 *            the sequence number
+		 * @param aPayload
+		 *            the payload
+		 */
+		private Message(final long aSequence, final T aPayload) {
+			sequence = aSequence;
+			payload = aPayload;
+		}
+
+		/**
+		 * Returns the payload
+		 * 
+		 * @return the payload
+		 */
+		public T getPayload() {
+			return payload;
+		}
+
+		/**
+		 * Returns the sequence number of the message within its topic
+		 * 
+		 * @return the sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+	}
+
+	/**
+	 * Subscription of a single consumer to a topic. The subscription must be
+	 * closed when the consumer disconnects.
+	 * 
+	 * @param <T>
+	 *            type of the payload
+	 */
+	public static final class Subscription<T> {
+
+		/**
+		 * the broadcaster
+		 */
+		private final Broadcaster<T> broadcaster;
+
+		/**
+		 * set if the subscriber was too slow and has been removed from the
+		 * topic
+		 */
+		private volatile boolean bDropped;
+
+		/**
+		 * pending messages
+		 */
+		private final BlockingQueue<Message<T>> queue;
+
+		/**
+		 * the topic
+		 */
+		private final Topic<T> topic;
+
+		/**
+		 * Constructs the subscription
+		 * 
+		 * @param aBroadcaster
+		 *            the broadcaster
+		 * @param aTopic
+		 *            the topic
+		 */
+		private Subscription(final Broadcaster<T> aBroadcaster,
+				final Topic<T> aTopic) {
+			broadcaster = aBroadcaster;
+			topic = aTopic;
+			queue = new ArrayBlockingQueue<Message<T>>(aBroadcaster.queueSize);
+		}
+
+		/**
+		 * Ends the subscription
+		 */
+		public void close() {
+			if (topic.subscribers.remove(this)) {
+				broadcaster.subscriberCount.decrementAndGet();
+			}
+			broadcaster.removeIfUnused(topic, System.currentTimeMillis());
+		}
+
+		/**
+		 * Returns the latest snapshot of the topic, used to resynchronize
+		 * after the subscription was dropped
+		 * 
+		 * @return the snapshot or <code>null</code>
+		 */
+		public Message<T> getSnapshot() {
+			return topic.snapshot;
+		}
+
+		/**
+		 * Checks if the subscription was dropped because the consumer did not
+		 * keep up with the publisher. A dropped subscription does not receive
+		 * messages anymore.
+		 * 
+		 * @return <code>true</code> if the subscription was dropped, else
+		 *         <code>false</code>
+		 */
+		public boolean isDropped() {
+			return bDropped;
+		}
+
+		/**
+		 * Waits for the next message
+		 * 
+		 * @param aTimeout
+		 *            maximum time to wait
+		 * @param aUnit
+		 *            unit of the timeout
+		 * @return the message or <code>null</code> if no message arrived in
+		 *         time
+		 * @throws InterruptedException
+		 */
+		public Message<T> poll(final long aTimeout, final TimeUnit aUnit)
+				throws InterruptedException {
+			return queue.poll(aTimeout, aUnit);
+		}
+	}
+
+	/**
+	 * State of a single topic
+	 * 
+	 * @param <T>
+	 *            type of the payload
+	 */
+	private static final class Topic<T> {
+
+		/**
+		 * the topic key
+		 */
+		private final String key;
+
+		/**
+		 * last assigned sequence number
+		 */
+		private volatile long sequence;
+
+		/**
+		 * snapshot of the latest state, may be <code>null</code>
+		 */
+		private volatile Message<T> snapshot;
+
+		/**
+		 * time (in milliseconds) of the latest snapshot
+		 */
+		private volatile long snapshotTime;
+
+		/**
+		 * current subscribers, iteration does not lock
+		 */
+		private final List<Subscription<T>> subscribers = new CopyOnWriteArrayList<Subscription<T>>();
+
+		/**
+		 * Constructs the topic
+		 * 
+		 * @param aKey
+		 *            the key
+		 */
+		private Topic(final String aKey) {
+			key = aKey;
+		}
+	}
+
+	/**
+	 * number of subscribers that have been dropped
+	 */
+	private final AtomicLong dropCount = new AtomicLong();
+
+	/**
+	 * number of idle topics that have been removed
+	 */
+	private final AtomicLong expiryCount = new AtomicLong();
+
+	/**
+	 * maximum number of concurrent subscribers
+	 */
+	private final int maxSubscribers;
+
+	/**
+	 * earliest time (in milliseconds) of the next scan for idle topics
+	 */
+	private final AtomicLong nextPurge = new AtomicLong();
+
+	/**
+	 * capacity of the queue of each subscriber
+	 */
+	private final int queueSize;
+
+	/**
+	 * last assigned sequence number across all topics
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * current number of subscribers
+	 */
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	/**
+	 * time (in milliseconds) a topic without subscribers keeps its snapshot
+	 */
+	private final long timeToLive;
+
+	/**
+	 * the topics, keyed by topic key
+	 */
+	private final ConcurrentMap<String, Topic<T>> topics = new ConcurrentHashMap<String, Topic<T>>();
+
+	/**
+	 * Constructs the broadcaster
+	 * 
+	 * @param aMaxSubscribers
+	 *            maximum number of concurrent subscribers across all topics
+	 * @param aQueueSize
+	 *            capacity of the queue of each subscriber
+	 * @param aTimeToLive
+	 *            time (in milliseconds) a topic without subscribers keeps its
+	 *            snapshot, it should cover the time a client needs to
+	 *            reconnect
+	 */
+	public Broadcaster(final int aMaxSubscribers, final int aQueueSize,
+			final long aTimeToLive) {
+		// sanity check
+		assert aMaxSubscribers > 0;
+		assert aQueueSize > 0;
+		assert aTimeToLive > 0;
+		// init
+		maxSubscribers = aMaxSubscribers;
+		queueSize = aQueueSize;
+		timeToLive = aTimeToLive;
+	}
+
+	/**
+	 * Returns the number of subscribers that have been dropped because they
+	 * did not keep up
+	 * 
+	 * @return the count
+	 */
+	public long getDropCount() {
+		return dropCount.get();
+	}
+
+	/**
+	 * Returns the number of idle topics that have been removed
+	 * 
+	 * @return the count
+	 */
+	public long getExpiryCount() {
+		return expiryCount.get();
+	}
+
+	/**
+	 * Returns the sequence number of the latest message of the topic
+	 * 
+	 * @param aTopic
+	 *            the topic key
+	 * @return the sequence number or <code>0</code> if nothing has been
+	 *         published to the topic
+	 */
+	public long getSequence(final String aTopic) {
+		final Topic<T> topic = topics.get(aTopic);
+		return (topic != null) ? topic.sequence : 0;
+	}
+
+	/**
+	 * Returns the current number of subscribers
+	 * 
+	 * @return the count
+	 */
+	public int getSubscriberCount() {
+		return subscriberCount.get();
+	}
+
+	/**
+	 * Publishes a message to all subscribers of the topic. The method never
+	 * blocks, subscribers whose queue is full are dropped.
+	 * 
+	 * @param aTopic
+	 *            the topic key
+	 * @param aPayload
+	 *            the message for the current subscribers, typically a delta
+	 * @param aSnapshot
+	 *            the complete state after the message, delivered to
+	 *            subscribers that missed messages
+	 * @return the sequence number of the message
+	 */
+	public long publish(final String aTopic, final T aPayload,
+			final T aSnapshot) {
+		// sanity check
+		assert aTopic != null;
+		assert aPayload != null;
+		assert aSnapshot != null;
+		// the topic, even if nobody listens, since we keep the snapshot
+		final long now = System.currentTimeMillis();
+		final Topic<T> topic = getTopic(aTopic);
+		final long seq = sequence.incrementAndGet();
+		topic.sequence = seq;
+		topic.snapshot = new Message<T>(seq, aSnapshot);
+		topic.snapshotTime = now;
+		// fan out
+		final Message<T> message = new Message<T>(seq, aPayload);
+		for (final Subscription<T> subscription : topic.subscribers) {
+			if (!subscription.queue.offer(message)) {
+				// slow consumer, drop it
+				subscription.bDropped = true;
+				if (topic.subscribers.remove(subscription)) {
+					subscriberCount.decrementAndGet();
+					dropCount.incrementAndGet();
+				}
+			}
+		}
+		// remove the topics of windows that went away
+		purge(now);
+		// ok
+		return seq;
+	}
+
+	/**
+	 * Returns the topic, creating it if required
+	 * 
+	 * @param aKey
+	 *            the key
+	 * @return the topic
+	 */
+	private final Topic<T> getTopic(final String aKey) {
+		Topic<T> topic = topics.get(aKey);
+		if (topic == null) {
+			final Topic<T> created = new Topic<T>(aKey);
+			topic = topics.putIfAbsent(aKey, created);
+			if (topic == null) {
+				topic = created;
+			}
+		}
+		return topic;
+	}
+
+	/**
+	 * Removes the idle topics, at most once per time to live, so the scan is
+	 * amortized over many messages
+	 * 
+	 * @param aNow
+	 *            the current time (in milliseconds)
+	 */
+	private final void purge(final long aNow) {
+		final long next = nextPurge.get();
+		// only one thread scans, the others proceed
+		if ((aNow >= next) && nextPurge.compareAndSet(next, aNow + timeToLive)) {
+			for (final Topic<T> topic : topics.values()) {
+				removeIfUnused(topic, aNow);
+			}
+		}
+	}
+
+	/**
+	 * Removes the topic if it has no subscribers and no current snapshot
+	 * 
+	 * @param aTopic
+	 *            the topic
+	 * @param aNow
+	 *            the current time (in milliseconds)
+	 */
+	private final void removeIfUnused(final Topic<T> aTopic, final long aNow) {
+		if (aTopic.subscribers.isEmpty()
+				&& ((aTopic.snapshot == null) || (aNow - aTopic.snapshotTime > timeToLive))
+				&& topics.remove(aTopic.key, aTopic)) {
+			expiryCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the topic including its snapshot, e.g. because the underlying
+	 * window has been removed
+	 * 
+	 * @param aTopic
+	 *            the topic key
+	 */
+	public void removeTopic(final String aTopic) {
+		topics.remove(aTopic);
+	}
+
+	/**
+	 * Subscribes to a topic. If the topic has a snapshot that is newer than
+	 * the last message seen by the consumer, the snapshot is delivered as the
+	 * first message.
+	 * 
+	 * @param aTopic
+	 *            the topic key
+	 * @param aLastSequence
+	 *            sequence number of the last message the consumer has seen,
+	 *            typically the {@link #getSequence(String) sequence} at the
+	 *            time the consumer rendered the state
+	 * @return the subscription or <code>null</code> if the maximum number of
+	 *         subscribers has been reached
+	 */
+	public Subscription<T> subscribe(final String aTopic,
+			final long aLastSequence) {
+		// sanity check
+		assert aTopic != null;
+		// admission
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			return null;
+		}
+		// register
+		while (true) {
+			final Topic<T> topic = getTopic(aTopic);
+			final Subscription<T> subscription = new Subscription<T>(this,
+					topic);
+			topic.subscribers.add(subscription);
+			// make sure the topic has not been removed concurrently
+			if (topics.get(aTopic) == topic) {
+				// catch up
+				final Message<T> snapshot = topic.snapshot;
+				if ((snapshot != null) && (snapshot.sequence > aLastSequence)) {
+					subscription.queue.offer(snapshot);
+				}
+				return subscription;
+			}
+			topic.subscribers.remove(subscription);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Broadcaster [topics=" + topics.size() + ", subscribers="
+				+ getSubscriberCount() + ", dropped=" + getDropCount()
+				+ ", expired=" + getExpiryCount() + "]";
+	}
+}
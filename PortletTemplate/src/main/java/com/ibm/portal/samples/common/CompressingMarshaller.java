@@ -0,0 +1,387 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Marshaller that compresses string tokens of another marshaller. Strings are
+ * compressed via deflate with a preset dictionary of typical parameter values
+ * and represented in the URL safe base64 alphabet of {@link Base64Url}, but
+ * only if this results in a shorter token than the URL encoded plain string.
+ * Integers and enumerations are passed through unchanged.
+ * 
+ * Compressed tokens start with the reserved {@link #MARKER} followed by the
+ * codec. Plain tokens are not marked, so they are identical to the tokens of
+ * the delegate and tokens from before compression was enabled still decode.
+ * The rare plain token that starts with the marker itself is escaped with the
+ * {@link #CODEC_PLAIN} codec, so a plain token can never be taken for a
+ * compressed one.
+ * 
+ * Note that the dictionary is part of the token format. Changing it
+ * invalidates the compressed tokens of existing URLs and bookmarks, these
+ * decode to their default values.
+ * 
+ * The native compression streams are expensive to create, so the marshaller
+ * keeps a small pool of them. Call {@link #dispose()} to release the pool.
+ * 
+ * @author cleue
+ */
+public class CompressingMarshaller extends AbstractMarshaller {
+
+	/**
+	 * codec of deflated tokens
+	 */
+	static final char CODEC_DEFLATE = 'z';
+
+	/**
+	 * codec of plain tokens that start with the {@link #MARKER}
+	 */
+	static final char CODEC_PLAIN = 'p';
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = CompressingMarshaller.class
+			.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * starts every token that is not a plain token of the delegate, does not
+	 * need escaping in a URL
+	 */
+	static final char MARKER = '*';
+
+	/**
+	 * strings with a shorter URL encoded length are never compressed, since
+	 * the savings would not pay for the compression
+	 */
+	private static final int MIN_LENGTH = 16;
+
+	/**
+	 * maximum number of pooled compression streams of each kind
+	 */
+	private static final int POOL_SIZE = 16;
+
+	/**
+	 * encoding of the strings before compression
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Computes the length of UTF-8 bytes after URL encoding
+	 * 
+	 * @param aData
+	 *            the bytes
+	 * @return the length
+	 */
+	private static int getEscapedLength(final byte[] aData) {
+		int result = 0;
+		for (final byte b : aData) {
+			final boolean bUnreserved = ((b >= 'a') && (b <= 'z'))
+					|| ((b >= 'A') && (b <= 'Z')) || ((b >= '0') && (b <= '9'))
+					|| (b == '-') || (b == '_') || (b == '.') || (b == '*')
+					|| (b == ' ');
+			result += bUnreserved ? 1 : 3;
+		}
+		return result;
+	}
+
+	/**
+	 * the marshaller that produces the plain tokens
+	 */
+	private final Marshaller delegate;
+
+	/**
+	 * pool of compressors
+	 */
+	private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(
+			POOL_SIZE);
+
+	/**
+	 * the preset dictionary
+	 */
+	private final byte[] dictionary;
+
+	/**
+	 * pool of decompressors
+	 */
+	private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(
+			POOL_SIZE);
+
+	/**
+	 * maximum length of a decompressed token in bytes, protects against
+	 * tokens that decompress to huge strings
+	 */
+	private final int maxLength;
+
+	/**
+	 * Constructs the marshaller
+	 * 
+	 * @param aDelegate
+	 *            the marshaller that produces the plain tokens
+	 * @param aDictionary
+	 *            typical parameter values, the most frequent ones at the end
+	 * @param aMaxLength
+	 *            maximum length of a decompressed token in bytes
+	 */
+	public CompressingMarshaller(final Marshaller aDelegate,
+			final String aDictionary, final int aMaxLength) {
+		// sanity check
+		assert aDelegate != null;
+		assert aDictionary != null;
+		assert aMaxLength > 0;
+		// init
+		delegate = aDelegate;
+		dictionary = aDictionary.getBytes(UTF_8);
+		maxLength = aMaxLength;
+	}
+
+	/**
+	 * Compresses the data
+	 * 
+	 * @param aData
+	 *            the data
+	 * @param aLimit
+	 *            length of the plain token, the compressed token is only of
+	 *            interest if it is shorter
+	 * @return the compressed token or <code>null</code> if it is not shorter
+	 */
+	private final String deflate(final byte[] aData, final int aLimit) {
+		// base64 represents 3 bytes by 4 characters
+		final byte[] buffer = new byte[(aLimit - 2) * 3 / 4];
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		}
+		try {
+			deflater.setDictionary(dictionary);
+			deflater.setInput(aData);
+			deflater.finish();
+			int len = 0;
+			while (!deflater.finished()) {
+				if (len == buffer.length) {
+					return null;
+				}
+				len += deflater.deflate(buffer, len, buffer.length - len);
+			}
+			if (2 + Base64Url.getEncodedLength(len) >= aLimit) {
+				return null;
+			}
+			final StringBuilder result = new StringBuilder(
+					2 + Base64Url.getEncodedLength(len));
+			Base64Url.encode(buffer, len,
+					result.append(MARKER).append(CODEC_DEFLATE));
+			return result.toString();
+		} finally {
+			deflater.reset();
+			if (!deflaters.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Releases the pooled compression streams
+	 */
+	public void dispose() {
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null) {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Decompresses the data
+	 * 
+	 * @param aData
+	 *            the data
+	 * @return the string or <code>null</code> if the data is invalid
+	 * @throws DataFormatException
+	 */
+	private final String inflate(final byte[] aData)
+			throws DataFormatException {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			inflater.setDictionary(dictionary);
+			inflater.setInput(aData);
+			byte[] buffer = new byte[Math.min(maxLength, 4 * aData.length)];
+			int len = 0;
+			while (!inflater.finished()) {
+				if (len == buffer.length) {
+					// protect against decompression bombs
+					if (len >= maxLength) {
+						return null;
+					}
+					buffer = Arrays.copyOf(buffer, Math.min(maxLength, 2 * len));
+				}
+				final int count = inflater.inflate(buffer, len, buffer.length
+						- len);
+				if ((count == 0) && inflater.needsInput()) {
+					// truncated token
+					return null;
+				}
+				len += count;
+			}
+			return new String(buffer, 0, len, UTF_8);
+		} finally {
+			inflater.reset();
+			if (!inflaters.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.ibm.portal.samples.common.AbstractMarshaller#marshalEnum(java.lang
+	 * .Enum)
+	 */
+	@Override
+	public String marshalEnum(final Enum<?> aRaw) {
+		return delegate.marshalEnum(aRaw);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.ibm.portal.samples.common.Marshaller#marshalInt(int)
+	 */
+	@Override
+	public String marshalInt(final int aRaw) {
+		return delegate.marshalInt(aRaw);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.ibm.portal.samples.common.AbstractMarshaller#marshalString(java.lang
+	 * .String)
+	 */
+	@Override
+	public String marshalString(final String aRaw) {
+		// the plain representation
+		final String plain = delegate.marshalString(aRaw);
+		if (plain == null) {
+			return null;
+		}
+		// only compress if there is a chance to save something
+		final byte[] data = plain.getBytes(UTF_8);
+		final int plainLength = getEscapedLength(data);
+		if (plainLength >= MIN_LENGTH) {
+			final String result = deflate(data, plainLength);
+			if (result != null) {
+				return result;
+			}
+		}
+		// escape the marker
+		if ((plain.length() > 0) && (plain.charAt(0) == MARKER)) {
+			return new StringBuilder(plain.length() + 2).append(MARKER)
+					.append(CODEC_PLAIN).append(plain).toString();
+		}
+		// ok
+		return plain;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.ibm.portal.samples.common.AbstractMarshaller#unmarshalEnum(java.lang
+	 * .String, java.lang.Enum[], java.lang.Enum)
+	 */
+	@Override
+	public <E extends Enum<E>> E unmarshalEnum(final String aToken,
+			final E[] aEnums, final E aDefault) {
+		return delegate.unmarshalEnum(aToken, aEnums, aDefault);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.ibm.portal.samples.common.Marshaller#unmarshalInt(java.lang.String,
+	 * int)
+	 */
+	@Override
+	public int unmarshalInt(final String aToken, final int aDefault) {
+		return delegate.unmarshalInt(aToken, aDefault);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.ibm.portal.samples.common.AbstractMarshaller#unmarshalString(java
+	 * .lang.String, java.lang.String)
+	 */
+	@Override
+	public String unmarshalString(final String aToken, final String aDefault) {
+		// logging support
+		final String LOG_METHOD = "unmarshalString(aToken, aDefault)";
+		// unmarked tokens are plain tokens of the delegate
+		if ((aToken == null) || (aToken.length() < 2)
+				|| (aToken.charAt(0) != MARKER)) {
+			return delegate.unmarshalString(aToken, aDefault);
+		}
+		// dispatch on the codec
+		switch (aToken.charAt(1)) {
+		case CODEC_PLAIN:
+			return delegate.unmarshalString(aToken.substring(2), aDefault);
+		case CODEC_DEFLATE:
+			try {
+				// the inflater expects an additional zero byte for streams
+				// without header
+				final byte[] data = Base64Url.decode(aToken, 2, 1);
+				final String plain = (data != null) ? inflate(data) : null;
+				if (plain != null) {
+					return delegate.unmarshalString(plain, aDefault);
+				}
+			} catch (final DataFormatException ex) {
+				// log this
+				if (LOGGER.isLoggable(LOG_LEVEL)) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Invalid token [{0}].", aToken);
+				}
+			}
+			return aDefault;
+		default:
+			// a plain token that predates the escaping
+			return delegate.unmarshalString(aToken, aDefault);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Marks the fingerprinted static resources of the application as immutable,
+ * so browsers and proxies cache them for a long time without revalidating
+ * them. The filter consults the {@link AssetManifest} of the application,
+ * requests for resources that are not fingerprinted pass unchanged.
+ * 
+ * The optional init parameter <code>maxAge</code> overrides the lifetime (in
+ * seconds) of the cached resources, the default is one year.
+ * 
+ * @author cleue
+ */
+public class ImmutableAssetFilter implements Filter {
+
+	/**
+	 * default lifetime (in seconds) of the cached resources
+	 */
+	private static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toSeconds(365);
+
+	/**
+	 * name of the init parameter for the lifetime
+	 */
+	private static final String KEY_MAX_AGE = "maxAge";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = ImmutableAssetFilter.class
+			.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * value of the cache control header
+	 */
+	private String cacheControl;
+
+	/**
+	 * the manifest of the application
+	 */
+	private AssetManifest manifest = AssetManifest.EMPTY;
+
+	/**
+	 * lifetime (in milliseconds) of the cached resources
+	 */
+	private long maxAge;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.Filter#destroy()
+	 */
+	@Override
+	public void destroy() {
+		manifest = AssetManifest.EMPTY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+	 * javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(final ServletRequest aRequest,
+			final ServletResponse aResponse, final FilterChain aChain)
+			throws IOException, ServletException {
+		// only HTTP requests carry cache headers
+		if ((aRequest instanceof HttpServletRequest)
+				&& (aResponse instanceof HttpServletResponse)) {
+			final HttpServletRequest request = (HttpServletRequest) aRequest;
+			final String pathInfo = request.getPathInfo();
+			final String path = (pathInfo != null) ? request.getServletPath()
+					+ pathInfo : request.getServletPath();
+			if (manifest.isFingerprinted(path)) {
+				// set the headers before the resource commits the response
+				final HttpServletResponse response = (HttpServletResponse) aResponse;
+				response.setHeader("Cache-Control", cacheControl);
+				response.setDateHeader("Expires", System.currentTimeMillis()
+						+ maxAge);
+				// log this
+				if (LOGGER.isLoggable(LOG_LEVEL)) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS,
+							"doFilter(aRequest, aResponse, aChain)",
+							"Serving [{0}] as immutable.", path);
+				}
+			}
+		}
+		// serve the resource
+		aChain.doFilter(aRequest, aResponse);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+	 */
+	@Override
+	public void init(final FilterConfig aConfig) throws ServletException {
+		// logging support
+		final String LOG_METHOD = "init(aConfig)";
+		// the lifetime
+		final String value = aConfig.getInitParameter(KEY_MAX_AGE);
+		final long seconds = ((value != null) && (value.trim().length() > 0)) ? Long
+				.parseLong(value.trim()) : DEFAULT_MAX_AGE;
+		maxAge = TimeUnit.SECONDS.toMillis(seconds);
+		cacheControl = "public, max-age=" + seconds + ", immutable";
+		// the manifest
+		try {
+			manifest = AssetManifest.load(aConfig.getServletContext()
+					.getResourceAsStream(AssetManifest.PATH));
+		} catch (final IOException ex) {
+			throw new ServletException("Cannot read the asset manifest.", ex);
+		}
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Serving [{0}] fingerprinted resources with [{1}].",
+				new Object[] { manifest.size(), cacheControl });
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Base class of the resource bundles that the build compiles from properties
+ * files. The entries live in an array, and the generated bundle exposes a
+ * typed {@link Key} per entry, so a lookup by key is an array access instead
+ * of a hash lookup along the chain of parent bundles. The values of each
+ * locale are complete, the build has already resolved the fallbacks.
+ * 
+ * @author cleue
+ */
+public abstract class IndexedResourceBundle extends ResourceBundle {
+
+	/**
+	 * Typed key of an entry, declared as a constant of the generated bundle.
+	 * Referencing the constant instead of the name of the entry makes the
+	 * compiler check that the entry exists.
+	 */
+	public static final class Key {
+
+		/**
+		 * index of the entry
+		 */
+		private final int index;
+
+		/**
+		 * name of the entry
+		 */
+		private final String name;
+
+		/**
+		 * Constructs the key
+		 * 
+		 * @param aIndex
+		 *            index of the entry
+		 * @param aName
+		 *            name of the entry
+		 */
+		public Key(final int aIndex, final String aName) {
+			// sanity check
+			assert aName != null;
+			// init
+			index = aIndex;
+			name = aName;
+		}
+
+		/**
+		 * Returns the name of the entry
+		 * 
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * maps the names of the entries to their indexes
+	 */
+	private final Map<String, Integer> indexes;
+
+	/**
+	 * the keys, in the order of the entries
+	 */
+	private final Key[] keys;
+
+	/**
+	 * the values, in the order of the entries
+	 */
+	private final String[] values;
+
+	/**
+	 * Constructs the bundle
+	 * 
+	 * @param aKeys
+	 *            the keys, in the order of the entries
+	 * @param aValues
+	 *            the values, in the order of the entries
+	 */
+	protected IndexedResourceBundle(final Key[] aKeys, final String[] aValues) {
+		// sanity check
+		assert aKeys.length == aValues.length;
+		// init
+		keys = aKeys;
+		values = aValues;
+		indexes = new HashMap<String, Integer>(2 * aKeys.length);
+		for (final Key key : aKeys) {
+			indexes.put(key.name, Integer.valueOf(key.index));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.ResourceBundle#getKeys()
+	 */
+	@Override
+	public Enumeration<String> getKeys() {
+		// the values are complete, the parents cannot add any keys
+		return Collections.enumeration(indexes.keySet());
+	}
+
+	/**
+	 * Returns the value of an entry
+	 * 
+	 * @param aKey
+	 *            the key
+	 * @return the value
+	 */
+	public final String getString(final Key aKey) {
+		final int idx = aKey.index;
+		if ((idx < keys.length) && (keys[idx] == aKey)) {
+			return values[idx];
+		}
+		// the key belongs to a different bundle
+		return getString(aKey.name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.ResourceBundle#handleGetObject(java.lang.String)
+	 */
+	@Override
+	protected Object handleGetObject(final String aKey) {
+		final Integer idx = indexes.get(aKey);
+		return (idx != null) ? values[idx.intValue()] : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.ResourceBundle#handleKeySet()
+	 */
+	@Override
+	protected Set<String> handleKeySet() {
+		return indexes.keySet();
+	}
+}
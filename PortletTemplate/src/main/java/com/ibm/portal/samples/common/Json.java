@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+/**
+ * Minimal helper to serialize flat JSON objects. The portlets only send small
+ * objects with string and number members to the browser, so we do not depend
+ * on a JSON library for that.
+ * 
+ * @author cleue
+ */
+public final class Json {
+
+	/**
+	 * hex digits for the unicode escapes
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Appends a member with a numeric value
+	 * 
+	 * @param aBuffer
+	 *            the buffer that contains the object, ending with the opening
+	 *            brace or a previous member
+	 * @param aName
+	 *            name of the member
+	 * @param aValue
+	 *            the value
+	 * @return the buffer
+	 */
+	public static StringBuilder appendMember(final StringBuilder aBuffer,
+			final String aName, final long aValue) {
+		appendName(aBuffer, aName);
+		return aBuffer.append(aValue);
+	}
+
+	/**
+	 * Appends a member with a string value
+	 * 
+	 * @param aBuffer
+	 *            the buffer that contains the object, ending with the opening
+	 *            brace or a previous member
+	 * @param aName
+	 *            name of the member
+	 * @param aValue
+	 *            the value, may be <code>null</code>
+	 * @return the buffer
+	 */
+	public static StringBuilder appendMember(final StringBuilder aBuffer,
+			final String aName, final String aValue) {
+		appendName(aBuffer, aName);
+		return (aValue != null) ? appendString(aBuffer, aValue) : aBuffer
+				.append("null");
+	}
+
+	/**
+	 * Appends the separator and the name of a member
+	 * 
+	 * @param aBuffer
+	 *            the buffer
+	 * @param aName
+	 *            the name
+	 */
+	private static void appendName(final StringBuilder aBuffer,
+			final String aName) {
+		// sanity check
+		assert aBuffer != null;
+		assert aName != null;
+		// separate from the previous member
+		final int len = aBuffer.length();
+		if ((len > 0) && (aBuffer.charAt(len - 1) != '{')) {
+			aBuffer.append(',');
+		}
+		appendString(aBuffer, aName).append(':');
+	}
+
+	/**
+	 * Appends a quoted and escaped string
+	 * 
+	 * @param aBuffer
+	 *            the buffer
+	 * @param aValue
+	 *            the string
+	 * @return the buffer
+	 */
+	public static StringBuilder appendString(final StringBuilder aBuffer,
+			final String aValue) {
+		// sanity check
+		assert aBuffer != null;
+		assert aValue != null;
+		// quote
+		aBuffer.append('"');
+		final int len = aValue.length();
+		for (int i = 0; i < len; ++i) {
+			final char c = aValue.charAt(i);
+			switch (c) {
+			case '"':
+			case '\\':
+				aBuffer.append('\\').append(c);
+				break;
+			case '\n':
+				aBuffer.append("\\n");
+				break;
+			case '\r':
+				aBuffer.append("\\r");
+				break;
+			case '\t':
+				aBuffer.append("\\t");
+				break;
+			default:
+				// escape control characters and the characters that could
+				// close a script block or start an HTML comment, as well as
+				// the line separators that JavaScript does not accept in
+				// string literals
+				if ((c < 0x20) || (c == '<') || (c == '>') || (c == '&')
+						|| (c == '\u2028') || (c == '\u2029')) {
+					aBuffer.append("\\u").append(HEX[(c >> 12) & 0xf])
+							.append(HEX[(c >> 8) & 0xf])
+							.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+				} else {
+					aBuffer.append(c);
+				}
+			}
+		}
+		return aBuffer.append('"');
+	}
+
+	/**
+	 * Do not instantiate this class
+	 */
+	private Json() {
+
+	}
+}
@@ -0,0 +1,535 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.portlet.PortletException;
+
+/**
+ * Markup compiled from a JSP into static segments and dynamic slots. The
+ * static segments are encoded once per character encoding, so a render only
+ * encodes the values of the slots and writes everything else as prepared
+ * bytes, in large chunks, to the output stream of the response.
+ * 
+ * The compiler understands the subset of JSP that simple views use: page
+ * directives and JSP comments, which are dropped together with the
+ * whitespace that follows them, EL expressions of the form
+ * <code>${bean.property}</code>, optionally wrapped into
+ * <code>fn:escapeXml</code>, <code>&lt;c:out value="${bean.property}"
+ * /&gt;</code> and <code>&lt;c:if test="${bean.property}"&gt;</code>. A
+ * condition is a slot that skips the segments up to the slot of its closing
+ * tag. Any other construct fails the compilation, so the caller can fall back
+ * to the request dispatcher.
+ * 
+ * @author cleue
+ */
+public final class MarkupTemplate {
+
+	/**
+	 * The static segments in one character encoding
+	 */
+	private static final class Encoded {
+
+		/**
+		 * the encoding
+		 */
+		private final Charset charset;
+
+		/**
+		 * the encoded segments
+		 */
+		private final byte[][] segments;
+
+		/**
+		 * Encodes the segments
+		 * 
+		 * @param aCharset
+		 *            the encoding
+		 * @param aSegments
+		 *            the segments
+		 */
+		private Encoded(final Charset aCharset, final String[] aSegments) {
+			charset = aCharset;
+			segments = new byte[aSegments.length][];
+			for (int i = 0; i < aSegments.length; ++i) {
+				segments[i] = aSegments[i].getBytes(aCharset);
+			}
+		}
+	}
+
+	/**
+	 * A dynamic value or a condition of the markup
+	 */
+	private static final class Slot {
+
+		/**
+		 * <code>true</code> if the value is escaped for markup
+		 */
+		private final boolean bEscape;
+
+		/**
+		 * index of the bean
+		 */
+		private final int bean;
+
+		/**
+		 * index of the slot that closes a condition, <code>-1</code> for a
+		 * value
+		 */
+		private int end = -1;
+
+		/**
+		 * the expression, for error messages
+		 */
+		private final String expression;
+
+		/**
+		 * getter of the property, <code>null</code> for the slot that closes
+		 * a condition
+		 */
+		private final Method getter;
+
+		/**
+		 * Constructs the slot
+		 * 
+		 * @param aExpression
+		 *            the expression
+		 * @param aBean
+		 *            index of the bean
+		 * @param aGetter
+		 *            getter of the property
+		 * @param aEscape
+		 *            <code>true</code> if the value is escaped for markup
+		 */
+		private Slot(final String aExpression, final int aBean,
+				final Method aGetter, final boolean aEscape) {
+			expression = aExpression;
+			bean = aBean;
+			getter = aGetter;
+			bEscape = aEscape;
+		}
+	}
+
+	/**
+	 * size of the chunks written to the response
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * the <code>c:out</code> tag
+	 */
+	private static final Pattern C_OUT = Pattern
+			.compile("<c:out\\s+value=\"\\$\\{([^}]*)\\}\"\\s*/>");
+
+	/**
+	 * the <code>c:if</code> tag
+	 */
+	private static final Pattern C_IF = Pattern
+			.compile("<c:if\\s+test=\"\\$\\{([^}]*)\\}\"\\s*>");
+
+	/**
+	 * the end of the <code>c:if</code> tag
+	 */
+	private static final String C_IF_END = "</c:if>";
+
+	/**
+	 * EL expression wrapped into <code>fn:escapeXml</code>
+	 */
+	private static final Pattern ESCAPE_XML = Pattern
+			.compile("fn:escapeXml\\((.*)\\)");
+
+	/**
+	 * arguments of the getters
+	 */
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/**
+	 * property access of an EL expression
+	 */
+	private static final Pattern PROPERTY = Pattern
+			.compile("([A-Za-z_][A-Za-z0-9_]*)\\.([A-Za-z_][A-Za-z0-9_]*)");
+
+	/**
+	 * Compiles the markup of a JSP
+	 * 
+	 * @param aSource
+	 *            the source of the JSP
+	 * @param aBeanNames
+	 *            names of the beans that the expressions refer to
+	 * @param aBeanTypes
+	 *            types of the beans, in the order of the names
+	 * @return the template
+	 * @throws IllegalArgumentException
+	 *             if the JSP uses constructs the compiler does not understand
+	 */
+	public static MarkupTemplate compile(final String aSource,
+			final String[] aBeanNames, final Class<?>[] aBeanTypes) {
+		// sanity check
+		assert aSource != null;
+		assert aBeanNames.length == aBeanTypes.length;
+		// parse
+		final List<String> segments = new ArrayList<String>();
+		final List<Slot> slots = new ArrayList<Slot>();
+		final List<Slot> conditions = new ArrayList<Slot>();
+		final StringBuilder text = new StringBuilder(aSource.length());
+		final Matcher cOut = C_OUT.matcher(aSource);
+		final Matcher cIf = C_IF.matcher(aSource);
+		final int len = aSource.length();
+		int pos = 0;
+		while (pos < len) {
+			if (aSource.startsWith("<%--", pos)
+					|| aSource.startsWith("<%@", pos)) {
+				// comments and directives do not produce markup
+				final String end = aSource.startsWith("<%--", pos) ? "--%>"
+						: "%>";
+				final int idx = aSource.indexOf(end, pos);
+				if (idx < 0) {
+					throw new IllegalArgumentException("Unterminated ["
+							+ aSource.substring(pos, Math.min(len, pos + 16))
+							+ "].");
+				}
+				pos = idx + end.length();
+				// like trim-directive-whitespaces
+				while ((pos < len)
+						&& Character.isWhitespace(aSource.charAt(pos))) {
+					++pos;
+				}
+			} else if (aSource.startsWith("${", pos)) {
+				// EL expression
+				final int idx = aSource.indexOf('}', pos);
+				if (idx < 0) {
+					throw new IllegalArgumentException(
+							"Unterminated expression at [" + pos + "].");
+				}
+				final String expression = aSource.substring(pos + 2, idx);
+				final Matcher matcher = ESCAPE_XML.matcher(expression);
+				final boolean bEscape = matcher.matches();
+				segments.add(text.toString());
+				text.setLength(0);
+				slots.add(newSlot(bEscape ? matcher.group(1) : expression,
+						bEscape, aBeanNames, aBeanTypes));
+				pos = idx + 1;
+			} else if (aSource.startsWith("<c:out", pos)
+					&& cOut.region(pos, len).lookingAt()) {
+				// escaped output
+				segments.add(text.toString());
+				text.setLength(0);
+				slots.add(newSlot(cOut.group(1), true, aBeanNames, aBeanTypes));
+				pos = cOut.end();
+			} else if (aSource.startsWith("<c:if", pos)
+					&& cIf.region(pos, len).lookingAt()) {
+				// start of a condition
+				segments.add(text.toString());
+				text.setLength(0);
+				final Slot condition = newSlot(cIf.group(1), false,
+						aBeanNames, aBeanTypes);
+				slots.add(condition);
+				conditions.add(condition);
+				pos = cIf.end();
+			} else if (aSource.startsWith(C_IF_END, pos)) {
+				// end of the innermost condition
+				if (conditions.isEmpty()) {
+					throw new IllegalArgumentException("Unexpected ["
+							+ C_IF_END + "] at [" + pos + "].");
+				}
+				segments.add(text.toString());
+				text.setLength(0);
+				conditions.remove(conditions.size() - 1).end = slots.size();
+				slots.add(new Slot(C_IF_END, -1, null, false));
+				pos += C_IF_END.length();
+			} else if (aSource.startsWith("<%", pos)
+					|| aSource.startsWith("<c:", pos)
+					|| aSource.startsWith("</c:", pos)
+					|| aSource.startsWith("<jsp:", pos)
+					|| aSource.startsWith("<fn:", pos)) {
+				throw new IllegalArgumentException("Unsupported construct ["
+						+ aSource.substring(pos, Math.min(len, pos + 16))
+						+ "].");
+			} else {
+				// template text
+				text.append(aSource.charAt(pos++));
+			}
+		}
+		if (!conditions.isEmpty()) {
+			throw new IllegalArgumentException("Unterminated condition ["
+					+ conditions.get(conditions.size() - 1).expression + "].");
+		}
+		segments.add(text.toString());
+		// ok
+		return new MarkupTemplate(segments.toArray(new String[segments.size()]),
+				slots.toArray(new Slot[slots.size()]));
+	}
+
+	/**
+	 * Escapes a value for use in markup, like <code>fn:escapeXml</code>
+	 * 
+	 * @param aValue
+	 *            the value
+	 * @param aBuffer
+	 *            buffer for the escaped value
+	 * @return the escaped value
+	 */
+	private static String escapeXml(final String aValue,
+			final StringBuilder aBuffer) {
+		aBuffer.setLength(0);
+		for (int i = 0; i < aValue.length(); ++i) {
+			final char c = aValue.charAt(i);
+			switch (c) {
+			case '&':
+				aBuffer.append("&amp;");
+				break;
+			case '<':
+				aBuffer.append("&lt;");
+				break;
+			case '>':
+				aBuffer.append("&gt;");
+				break;
+			case '"':
+				aBuffer.append("&#034;");
+				break;
+			case '\'':
+				aBuffer.append("&#039;");
+				break;
+			default:
+				aBuffer.append(c);
+			}
+		}
+		// most values do not contain any special characters
+		return (aBuffer.length() == aValue.length()) ? aValue : aBuffer
+				.toString();
+	}
+
+	/**
+	 * Resolves an expression to a slot
+	 * 
+	 * @param aExpression
+	 *            the expression
+	 * @param aEscape
+	 *            <code>true</code> if the value is escaped for markup
+	 * @param aBeanNames
+	 *            names of the beans
+	 * @param aBeanTypes
+	 *            types of the beans
+	 * @return the slot
+	 */
+	private static Slot newSlot(final String aExpression,
+			final boolean aEscape, final String[] aBeanNames,
+			final Class<?>[] aBeanTypes) {
+		final Matcher matcher = PROPERTY.matcher(aExpression.trim());
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Unsupported expression ["
+					+ aExpression + "].");
+		}
+		// the bean
+		final String name = matcher.group(1);
+		int bean = aBeanNames.length - 1;
+		while ((bean >= 0) && !aBeanNames[bean].equals(name)) {
+			--bean;
+		}
+		if (bean < 0) {
+			throw new IllegalArgumentException("Unknown bean [" + name
+					+ "] in [" + aExpression + "].");
+		}
+		// the getter
+		final String property = matcher.group(2);
+		final String suffix = Character.toUpperCase(property.charAt(0))
+				+ property.substring(1);
+		Method getter;
+		try {
+			getter = aBeanTypes[bean].getMethod("get" + suffix);
+		} catch (final NoSuchMethodException ex) {
+			try {
+				getter = aBeanTypes[bean].getMethod("is" + suffix);
+			} catch (final NoSuchMethodException ex2) {
+				throw new IllegalArgumentException("Unknown property ["
+						+ property + "] in [" + aExpression + "].", ex2);
+			}
+		}
+		// ok
+		return new Slot(aExpression, bean, getter, aEscape);
+	}
+
+	/**
+	 * the static segments encoded per character encoding
+	 */
+	private final ConcurrentMap<String, Encoded> encoded = new ConcurrentHashMap<String, Encoded>();
+
+	/**
+	 * the static segments, one more than there are slots
+	 */
+	private final String[] segments;
+
+	/**
+	 * the dynamic values, each one follows the segment with the same index
+	 */
+	private final Slot[] slots;
+
+	/**
+	 * Constructs the template
+	 * 
+	 * @param aSegments
+	 *            the static segments
+	 * @param aSlots
+	 *            the dynamic values
+	 */
+	private MarkupTemplate(final String[] aSegments, final Slot[] aSlots) {
+		// sanity check
+		assert aSegments.length == aSlots.length + 1;
+		// init
+		segments = aSegments;
+		slots = aSlots;
+	}
+
+	/**
+	 * Returns the segments in an encoding, encoding them on first use
+	 * 
+	 * @param aEncoding
+	 *            name of the encoding
+	 * @return the segments
+	 */
+	private Encoded getEncoded(final String aEncoding) {
+		Encoded result = encoded.get(aEncoding);
+		if (result == null) {
+			// encoding twice in a race is harmless
+			result = new Encoded(Charset.forName(aEncoding), segments);
+			encoded.put(aEncoding, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of dynamic values of the markup
+	 * 
+	 * @return the number of slots
+	 */
+	public int getSlotCount() {
+		return slots.length;
+	}
+
+	/**
+	 * Returns the size of the static markup in characters
+	 * 
+	 * @return the size
+	 */
+	public int getStaticLength() {
+		int result = 0;
+		for (final String segment : segments) {
+			result += segment.length();
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes the static segments in advance, e.g. at startup
+	 * 
+	 * @param aEncoding
+	 *            name of the encoding
+	 */
+	public void prepare(final String aEncoding) {
+		getEncoded(aEncoding);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MarkupTemplate [slots=" + getSlotCount() + ", staticLength="
+				+ getStaticLength() + ", encodings=" + encoded.keySet() + "]";
+	}
+
+	/**
+	 * Writes the markup
+	 * 
+	 * @param aOut
+	 *            the stream, it is flushed but not closed
+	 * @param aEncoding
+	 *            name of the character encoding of the response
+	 * @param aBeans
+	 *            the beans, in the order of the names the template was
+	 *            compiled with
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public void write(final OutputStream aOut, final String aEncoding,
+			final Object[] aBeans) throws PortletException, IOException {
+		// sanity check
+		assert aOut != null;
+		assert aBeans != null;
+		// prepared segments
+		final Encoded enc = getEncoded(aEncoding);
+		final OutputStream out = new BufferedOutputStream(aOut, CHUNK_SIZE);
+		final StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < slots.length; ++i) {
+			out.write(enc.segments[i]);
+			// the closing tag of a condition does not produce markup
+			final Slot slot = slots[i];
+			if (slot.getter == null) {
+				continue;
+			}
+			// the value
+			final Object value;
+			try {
+				value = slot.getter.invoke(aBeans[slot.bean], NO_ARGS);
+			} catch (final InvocationTargetException ex) {
+				final Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof PortletException) {
+					throw (PortletException) cause;
+				}
+				throw new PortletException("Cannot evaluate ["
+						+ slot.expression + "].", cause);
+			} catch (final IllegalAccessException ex) {
+				throw new PortletException("Cannot evaluate ["
+						+ slot.expression + "].", ex);
+			}
+			if (slot.end >= 0) {
+				// skip the body of a false condition
+				if (!Boolean.TRUE.equals(value)) {
+					i = slot.end;
+				}
+			} else if (value != null) {
+				final String text = value.toString();
+				out.write((slot.bEscape ? escapeXml(text, buffer) : text)
+						.getBytes(enc.charset));
+			}
+		}
+		out.write(enc.segments[slots.length]);
+		out.flush();
+	}
+}
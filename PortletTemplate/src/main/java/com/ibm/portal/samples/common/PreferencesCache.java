@@ -0,0 +1,248 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.PortletRequest;
+
+/**
+ * Cache for the portlet preferences of a portlet window. Access to the
+ * preference store is typically backed by a database, so we read the
+ * preferences of a window only once and keep an immutable snapshot in a
+ * bounded {@link ReadThroughCache}. The snapshot must be invalidated whenever
+ * the portlet stores modified preferences for that window.
+ * 
+ * In view mode the preferences of a window are personalized per user, so the
+ * snapshots are keyed by the window ID and the remote user. Anonymous
+ * requests share the snapshot of the window. A store can change the snapshots
+ * of other users, too, e.g. if the portal shares the preferences of the
+ * window, so the key also contains a generation of the window. Invalidation
+ * moves the window to a new generation, the snapshots of the old one are no
+ * longer reachable and age out of the cache.
+ * 
+ * Note that modifications of the preferences that do not go through the
+ * portlet (e.g. via administrative tools) will only become visible after the
+ * snapshot has been invalidated or has expired.
+ * 
+ * @author cleue
+ */
+public class PreferencesCache {
+
+	/**
+	 * separates the window ID from the user in the cache key, cannot appear
+	 * in a window ID
+	 */
+	private static final char KEY_SEPARATOR = '\n';
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = PreferencesCache.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * current generation of each window. Generations are drawn from a single
+	 * sequence, so a window that drops out of this cache never gets back a
+	 * generation that still has snapshots.
+	 */
+	private final ReadThroughCache<String, Long> generations;
+
+	/**
+	 * source of the generations
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * snapshots of the preferences, keyed by window ID, generation and user
+	 */
+	private final ReadThroughCache<String, Map<String, String[]>> snapshots;
+
+	/**
+	 * Constructs the cache
+	 * 
+	 * @param aMaxSize
+	 *            maximum number of windows to cache
+	 * @param aTimeToLive
+	 *            time to live of a snapshot
+	 * @param aUnit
+	 *            unit of the time to live
+	 */
+	public PreferencesCache(final int aMaxSize, final long aTimeToLive,
+			final TimeUnit aUnit) {
+		generations = new ReadThroughCache<String, Long>(aMaxSize,
+				aTimeToLive, aUnit);
+		snapshots = new ReadThroughCache<String, Map<String, String[]>>(
+				aMaxSize, aTimeToLive, aUnit);
+	}
+
+	/**
+	 * Returns the current generation of a window
+	 * 
+	 * @param aWindowId
+	 *            the window ID
+	 * @return the generation
+	 */
+	private final long getGeneration(final String aWindowId) {
+		try {
+			return generations.get(aWindowId, new Callable<Long>() {
+
+				/*
+				 * (non-Javadoc)
+				 * 
+				 * @see java.util.concurrent.Callable#call()
+				 */
+				@Override
+				public Long call() {
+					return Long.valueOf(sequence.incrementAndGet());
+				}
+			}).longValue();
+		} catch (final ExecutionException ex) {
+			// cannot happen, the loader does not fail
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Returns the cache key of the preferences targeted by the request
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @return the window ID and its generation, followed by the remote user
+	 *         if the request is authenticated
+	 */
+	private final String getKey(final PortletRequest aRequest) {
+		final String windowId = aRequest.getWindowID();
+		final String user = aRequest.getRemoteUser();
+		final StringBuilder result = new StringBuilder(windowId)
+				.append(KEY_SEPARATOR).append(getGeneration(windowId));
+		return (user != null) ? result.append(KEY_SEPARATOR).append(user)
+				.toString() : result.toString();
+	}
+
+	/**
+	 * Returns the snapshot of the preferences of the window and user targeted
+	 * by the request. The preference store is only accessed if we do not have
+	 * a snapshot for the window and user, yet.
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @return the immutable preference snapshot
+	 */
+	public Map<String, String[]> getPreferences(final PortletRequest aRequest) {
+		// sanity check
+		assert aRequest != null;
+		// logging support
+		final String LOG_METHOD = "getPreferences(aRequest)";
+		// the cache key
+		final String key = getKey(aRequest);
+		try {
+			return snapshots.get(key,
+					new Callable<Map<String, String[]>>() {
+
+						/*
+						 * (non-Javadoc)
+						 * 
+						 * @see java.util.concurrent.Callable#call()
+						 */
+						@Override
+						public Map<String, String[]> call() {
+							// log this
+							if (LOGGER.isLoggable(LOG_LEVEL)) {
+								LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+										"Reading the preferences of window [{0}] for user [{1}].",
+										new Object[] { aRequest.getWindowID(),
+												aRequest.getRemoteUser() });
+							}
+							// read the preferences
+							return Collections
+									.unmodifiableMap(new HashMap<String, String[]>(
+											aRequest.getPreferences().getMap()));
+						}
+					});
+		} catch (final ExecutionException ex) {
+			// the preferences API does not declare checked exceptions
+			final Throwable cause = ex.getCause();
+			throw (cause instanceof RuntimeException) ? (RuntimeException) cause
+					: new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Returns the underlying cache, e.g. to access its statistics
+	 * 
+	 * @return the cache
+	 */
+	public ReadThroughCache<String, Map<String, String[]>> getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Returns the first value of a preference
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @param aKey
+	 *            the preference name
+	 * @param aDefault
+	 *            default value, used if the preference is missing
+	 * @return the value
+	 */
+	public String getValue(final PortletRequest aRequest, final String aKey,
+			final String aDefault) {
+		// sanity check
+		assert aKey != null;
+		// access the snapshot
+		final String[] values = getPreferences(aRequest).get(aKey);
+		return ((values != null) && (values.length > 0) && (values[0] != null)) ? values[0]
+				: aDefault;
+	}
+
+	/**
+	 * Drops the snapshots of all users of the window targeted by the request.
+	 * Call this method after the preferences of the window have been stored.
+	 * 
+	 * @param aRequest
+	 *            the request
+	 */
+	public void invalidate(final PortletRequest aRequest) {
+		// sanity check
+		assert aRequest != null;
+		// logging support
+		final String LOG_METHOD = "invalidate(aRequest)";
+		// free the entry of the caller right away, the others age out
+		snapshots.invalidate(getKey(aRequest));
+		// the next lookup starts a new generation
+		final String windowId = aRequest.getWindowID();
+		generations.invalidate(windowId);
+		// log this
+		if (LOGGER.isLoggable(LOG_LEVEL)) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Invalidated the preferences of window [{0}].", windowId);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, concurrent read-through cache. Values are loaded on demand by the
+ * loader passed to {@link #get(Object, Callable)}. Concurrent requests for
+ * the same missing key wait for a single load instead of hitting the backend
+ * multiple times.
+ * 
+ * Entries are evicted in insertion order as soon as the cache exceeds its
+ * maximum size and are considered stale after the configured time to live.
+ * The cache maintains hit, miss and eviction counters that can be used to
+ * size it for the expected number of keys.
+ * 
+ * @param <K>
+ *            type of the key
+ * @param <V>
+ *            type of the cached values
+ * 
+ * @author cleue
+ */
+public class ReadThroughCache<K, V> {
+
+	/**
+	 * Cache entry, the value is represented by the task that loads it
+	 * 
+	 * @param <K>
+	 *            type of the key
+	 * @param <V>
+	 *            type of the value
+	 */
+	private static final class Entry<K, V> {
+
+		/**
+		 * timestamp of the creation of the entry in nanoseconds
+		 */
+		private final long created;
+
+		/**
+		 * the key of the entry, used for eviction
+		 */
+		private final K key;
+
+		/**
+		 * the task that loads the value
+		 */
+		private final FutureTask<V> task;
+
+		/**
+		 * Constructs a new entry
+		 * 
+		 * @param aKey
+		 *            the key
+		 * @param aTask
+		 *            the loader task
+		 * @param aCreated
+		 *            the creation timestamp
+		 */
+		private Entry(final K aKey, final FutureTask<V> aTask,
+				final long aCreated) {
+			key = aKey;
+			task = aTask;
+			created = aCreated;
+		}
+	}
+
+	/**
+	 * all entries
+	 */
+	private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+
+	/**
+	 * number of evicted entries, caused by size or time limits
+	 */
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * number of requests that could be served from the cache
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * maximum number of entries
+	 */
+	private final int maxSize;
+
+	/**
+	 * number of requests that required a load
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * entries in insertion order, may contain entries that have been removed
+	 * from the map in the meantime
+	 */
+	private final Queue<Entry<K, V>> order = new ConcurrentLinkedQueue<Entry<K, V>>();
+
+	/**
+	 * length of the order queue, since the size operation on the queue is
+	 * expensive
+	 */
+	private final AtomicInteger orderLength = new AtomicInteger();
+
+	/**
+	 * time to live of an entry in nanoseconds
+	 */
+	private final long timeToLive;
+
+	/**
+	 * Constructs a new cache
+	 * 
+	 * @param aMaxSize
+	 *            maximum number of entries
+	 * @param aTimeToLive
+	 *            time to live of an entry
+	 * @param aUnit
+	 *            unit of the time to live
+	 */
+	public ReadThroughCache(final int aMaxSize, final long aTimeToLive,
+			final TimeUnit aUnit) {
+		// sanity check
+		assert aMaxSize > 0;
+		assert aTimeToLive > 0;
+		assert aUnit != null;
+		// init
+		maxSize = aMaxSize;
+		timeToLive = aUnit.toNanos(aTimeToLive);
+	}
+
+	/**
+	 * Removes entries until the cache satisfies its size limit. We also trim
+	 * the order queue from entries that have been removed by invalidation.
+	 */
+	private final void evict() {
+		while ((entries.size() > maxSize)
+				|| (orderLength.get() > (2 * maxSize))) {
+			// the oldest entry
+			final Entry<K, V> entry = order.poll();
+			if (entry == null) {
+				break;
+			}
+			orderLength.decrementAndGet();
+			// check if the entry is still alive
+			if (entries.get(entry.key) == entry) {
+				if (entries.size() > maxSize) {
+					// evict
+					if (entries.remove(entry.key, entry)) {
+						evictionCount.incrementAndGet();
+					}
+				} else {
+					// keep the entry, we only trim the queue
+					order.add(entry);
+					orderLength.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the value for the key, loading it if the key is missing or
+	 * stale. If multiple threads request the same missing key, only one of them
+	 * executes the loader, all others wait for its result. Failed loads are
+	 * not cached.
+	 * 
+	 * @param aKey
+	 *            the key
+	 * @param aLoader
+	 *            loads the value in case of a cache miss
+	 * @return the value
+	 * 
+	 * @throws ExecutionException
+	 *             if the loader failed
+	 */
+	public V get(final K aKey, final Callable<V> aLoader)
+			throws ExecutionException {
+		// sanity check
+		assert aKey != null;
+		assert aLoader != null;
+		// current time
+		final long now = System.nanoTime();
+		// check the existing entry
+		Entry<K, V> entry = entries.get(aKey);
+		if (entry != null) {
+			if ((now - entry.created) < timeToLive) {
+				hitCount.incrementAndGet();
+				return getValue(entry);
+			}
+			// the entry is stale
+			if (entries.remove(aKey, entry)) {
+				evictionCount.incrementAndGet();
+			}
+		}
+		// we have to load the value
+		missCount.incrementAndGet();
+		final Entry<K, V> created = new Entry<K, V>(aKey, new FutureTask<V>(
+				aLoader), now);
+		entry = entries.putIfAbsent(aKey, created);
+		if (entry == null) {
+			// we won the race, load the value
+			entry = created;
+			order.add(entry);
+			orderLength.incrementAndGet();
+			entry.task.run();
+			// make room
+			evict();
+		}
+		// ok
+		return getValue(entry);
+	}
+
+	/**
+	 * Returns the number of entries that have been evicted because of the size
+	 * or time limit
+	 * 
+	 * @return the count
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns the number of requests that have been served from the cache
+	 * 
+	 * @return the count
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of requests that required a load
+	 * 
+	 * @return the count
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Waits for the value of the entry
+	 * 
+	 * @param aEntry
+	 *            the entry
+	 * @return the value
+	 * 
+	 * @throws ExecutionException
+	 */
+	private final V getValue(final Entry<K, V> aEntry)
+			throws ExecutionException {
+		boolean bInterrupted = false;
+		try {
+			while (true) {
+				try {
+					return aEntry.task.get();
+				} catch (final InterruptedException ex) {
+					// keep waiting, but remember the interrupt
+					bInterrupted = true;
+				} catch (final ExecutionException ex) {
+					// do not cache failures
+					entries.remove(aEntry.key, aEntry);
+					throw ex;
+				}
+			}
+		} finally {
+			if (bInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Removes the value for the key, the next request will load it again
+	 * 
+	 * @param aKey
+	 *            the key
+	 */
+	public void invalidate(final K aKey) {
+		// sanity check
+		assert aKey != null;
+		// the order queue is trimmed lazily
+		entries.remove(aKey);
+	}
+
+	/**
+	 * Removes all values
+	 */
+	public void invalidateAll() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the current number of entries
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ReadThroughCache [size=" + size() + ", maxSize=" + maxSize
+				+ ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + "]";
+	}
+}
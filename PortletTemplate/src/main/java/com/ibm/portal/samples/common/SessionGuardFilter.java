@@ -0,0 +1,520 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletSession;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.ActionRequestWrapper;
+import javax.portlet.filter.EventFilter;
+import javax.portlet.filter.EventRequestWrapper;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.FilterConfig;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.RenderRequestWrapper;
+import javax.portlet.filter.ResourceFilter;
+import javax.portlet.filter.ResourceRequestWrapper;
+
+/**
+ * Detects the creation of portlet sessions. The portlets of the application
+ * keep their complete state in the navigational state and in the
+ * preferences, so a session only costs memory and replication and pins the
+ * user to a node. The filter wraps the requests of all phases and counts the
+ * requests that would create a new {@link PortletSession}, each request at
+ * most once, lookups of an existing session pass unchanged. The first
+ * creation is logged with the stack of the caller, the total is logged at
+ * most once per report interval (init parameter <code>reportInterval</code>
+ * in seconds, negative to disable) and when the filter is destroyed.
+ * 
+ * In strict mode, e.g. in tests, the filter refuses to create the session:
+ * the call fails with an {@link IllegalStateException} and the request fails
+ * with a {@link PortletException}, even if the portlet swallowed the first
+ * exception. Enable the mode via the init parameter <code>strict</code>.
+ * 
+ * The filter only sees the portlet API, sessions created directly on the
+ * servlet request, e.g. by a JSP without <code>session="false"</code>, pass
+ * unnoticed.
+ * 
+ * @author cleue
+ */
+public class SessionGuardFilter implements ActionFilter, EventFilter,
+		RenderFilter, ResourceFilter {
+
+	/**
+	 * Guards the session of an action request
+	 */
+	private final class GuardedActionRequest extends ActionRequestWrapper {
+
+		/**
+		 * the guard of the request
+		 */
+		private final RequestGuard guard = new RequestGuard();
+
+		/**
+		 * Wraps the request
+		 * 
+		 * @param aRequest
+		 *            the request
+		 */
+		private GuardedActionRequest(final ActionRequest aRequest) {
+			super(aRequest);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.PortletRequestWrapper#getPortletSession()
+		 */
+		@Override
+		public PortletSession getPortletSession() {
+			return getPortletSession(true);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * javax.portlet.filter.PortletRequestWrapper#getPortletSession(boolean)
+		 */
+		@Override
+		public PortletSession getPortletSession(final boolean bCreate) {
+			return guard.getPortletSession(getRequest(), bCreate);
+		}
+	}
+
+	/**
+	 * Guards the session of an event request
+	 */
+	private final class GuardedEventRequest extends EventRequestWrapper {
+
+		/**
+		 * the guard of the request
+		 */
+		private final RequestGuard guard = new RequestGuard();
+
+		/**
+		 * Wraps the request
+		 * 
+		 * @param aRequest
+		 *            the request
+		 */
+		private GuardedEventRequest(final EventRequest aRequest) {
+			super(aRequest);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.PortletRequestWrapper#getPortletSession()
+		 */
+		@Override
+		public PortletSession getPortletSession() {
+			return getPortletSession(true);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * javax.portlet.filter.PortletRequestWrapper#getPortletSession(boolean)
+		 */
+		@Override
+		public PortletSession getPortletSession(final boolean bCreate) {
+			return guard.getPortletSession(getRequest(), bCreate);
+		}
+	}
+
+	/**
+	 * Guards the session of a render request
+	 */
+	private final class GuardedRenderRequest extends RenderRequestWrapper {
+
+		/**
+		 * the guard of the request
+		 */
+		private final RequestGuard guard = new RequestGuard();
+
+		/**
+		 * Wraps the request
+		 * 
+		 * @param aRequest
+		 *            the request
+		 */
+		private GuardedRenderRequest(final RenderRequest aRequest) {
+			super(aRequest);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.PortletRequestWrapper#getPortletSession()
+		 */
+		@Override
+		public PortletSession getPortletSession() {
+			return getPortletSession(true);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * javax.portlet.filter.PortletRequestWrapper#getPortletSession(boolean)
+		 */
+		@Override
+		public PortletSession getPortletSession(final boolean bCreate) {
+			return guard.getPortletSession(getRequest(), bCreate);
+		}
+	}
+
+	/**
+	 * Guards the session of a resource request
+	 */
+	private final class GuardedResourceRequest extends ResourceRequestWrapper {
+
+		/**
+		 * the guard of the request
+		 */
+		private final RequestGuard guard = new RequestGuard();
+
+		/**
+		 * Wraps the request
+		 * 
+		 * @param aRequest
+		 *            the request
+		 */
+		private GuardedResourceRequest(final ResourceRequest aRequest) {
+			super(aRequest);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.PortletRequestWrapper#getPortletSession()
+		 */
+		@Override
+		public PortletSession getPortletSession() {
+			return getPortletSession(true);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * javax.portlet.filter.PortletRequestWrapper#getPortletSession(boolean)
+		 */
+		@Override
+		public PortletSession getPortletSession(final boolean bCreate) {
+			return guard.getPortletSession(getRequest(), bCreate);
+		}
+	}
+
+	/**
+	 * Tracks the session creations of a single request, shared by the
+	 * wrappers of all phases
+	 */
+	private final class RequestGuard {
+
+		/**
+		 * <code>true</code> if the request tried to create a session
+		 */
+		private boolean bCreated;
+
+		/**
+		 * Returns the session of the request. Lookups of an existing session
+		 * pass unchanged, the creation of a new one is counted once per
+		 * request.
+		 * 
+		 * @param aRequest
+		 *            the wrapped request
+		 * @param bCreate
+		 *            <code>true</code> to create a missing session
+		 * @return the session or <code>null</code>
+		 * @throws IllegalStateException
+		 *             in strict mode
+		 */
+		private PortletSession getPortletSession(
+				final PortletRequest aRequest, final boolean bCreate) {
+			// check for an existing session
+			final PortletSession result = aRequest.getPortletSession(false);
+			if ((result != null) || !bCreate) {
+				return result;
+			}
+			// count the request on its first attempt only
+			final boolean bFirst = !bCreated;
+			bCreated = true;
+			return createSession(aRequest, bFirst);
+		}
+	}
+
+	/**
+	 * default interval (in seconds) between two reports of the count
+	 */
+	private static final int DEFAULT_REPORT_INTERVAL = 3600;
+
+	/**
+	 * name of the init parameter for the interval (in seconds) between two
+	 * reports of the count
+	 */
+	private static final String KEY_REPORT_INTERVAL = "reportInterval";
+
+	/**
+	 * name of the init parameter that enables the strict mode
+	 */
+	private static final String KEY_STRICT = "strict";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = SessionGuardFilter.class
+			.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * <code>true</code> if the filter refuses to create sessions
+	 */
+	private volatile boolean bStrict;
+
+	/**
+	 * number of requests that tried to create a session
+	 */
+	private final AtomicLong createdSessions = new AtomicLong();
+
+	/**
+	 * time (in milliseconds) of the next report of the count
+	 */
+	private final AtomicLong nextReport = new AtomicLong();
+
+	/**
+	 * interval (in milliseconds) between two reports, negative to report on
+	 * destroy only
+	 */
+	private volatile long reportInterval;
+
+	/**
+	 * Fails the request in strict mode if it tried to create a session
+	 * 
+	 * @param bCreated
+	 *            <code>true</code> if the request tried to create a session
+	 * @throws PortletException
+	 */
+	private final void checkRequest(final boolean bCreated)
+			throws PortletException {
+		if (bCreated && bStrict) {
+			throw new PortletException(
+					"The request tried to create a portlet session.");
+		}
+	}
+
+	/**
+	 * Counts the creation of a session and creates it unless the filter is in
+	 * strict mode
+	 * 
+	 * @param aRequest
+	 *            the wrapped request
+	 * @param bCount
+	 *            <code>true</code> if this is the first creation of the
+	 *            request
+	 * @return the new session
+	 * @throws IllegalStateException
+	 *             in strict mode
+	 */
+	private final PortletSession createSession(final PortletRequest aRequest,
+			final boolean bCount) {
+		// logging support
+		final String LOG_METHOD = "createSession(aRequest, bCount)";
+		// count
+		final long count = bCount ? createdSessions.incrementAndGet()
+				: createdSessions.get();
+		final Object phase = aRequest
+				.getAttribute(PortletRequest.LIFECYCLE_PHASE);
+		// report the total at most once per interval
+		if (bCount) {
+			report(count);
+		}
+		// refuse
+		if (bStrict) {
+			throw new IllegalStateException(
+					"The portlet must not create a session in the [" + phase
+							+ "].");
+		}
+		// log the culprit once, later creations are just counted
+		if (bCount && (count == 1)) {
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"The portlet created a session, see the stack trace.",
+					new IllegalStateException("Session created in the ["
+							+ phase + "]."));
+		} else if (LOGGER.isLoggable(LOG_LEVEL)) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"The portlet created session number [{0}].", count);
+		}
+		// ok
+		return aRequest.getPortletSession(true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.filter.PortletFilter#destroy()
+	 */
+	@Override
+	public void destroy() {
+		// report the sessions, should be zero
+		LOGGER.logp(Level.INFO, LOG_CLASS, "destroy()",
+				"Detected [{0}] requests that tried to create a session.",
+				createdSessions.get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.filter.ActionFilter#doFilter(javax.portlet.ActionRequest,
+	 * javax.portlet.ActionResponse, javax.portlet.filter.FilterChain)
+	 */
+	@Override
+	public void doFilter(final ActionRequest aRequest,
+			final ActionResponse aResponse, final FilterChain aChain)
+			throws IOException, PortletException {
+		final GuardedActionRequest request = new GuardedActionRequest(aRequest);
+		aChain.doFilter(request, aResponse);
+		checkRequest(request.guard.bCreated);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.filter.EventFilter#doFilter(javax.portlet.EventRequest,
+	 * javax.portlet.EventResponse, javax.portlet.filter.FilterChain)
+	 */
+	@Override
+	public void doFilter(final EventRequest aRequest,
+			final EventResponse aResponse, final FilterChain aChain)
+			throws IOException, PortletException {
+		final GuardedEventRequest request = new GuardedEventRequest(aRequest);
+		aChain.doFilter(request, aResponse);
+		checkRequest(request.guard.bCreated);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.filter.RenderFilter#doFilter(javax.portlet.RenderRequest,
+	 * javax.portlet.RenderResponse, javax.portlet.filter.FilterChain)
+	 */
+	@Override
+	public void doFilter(final RenderRequest aRequest,
+			final RenderResponse aResponse, final FilterChain aChain)
+			throws IOException, PortletException {
+		final GuardedRenderRequest request = new GuardedRenderRequest(aRequest);
+		aChain.doFilter(request, aResponse);
+		checkRequest(request.guard.bCreated);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.portlet.filter.ResourceFilter#doFilter(javax.portlet.ResourceRequest
+	 * , javax.portlet.ResourceResponse, javax.portlet.filter.FilterChain)
+	 */
+	@Override
+	public void doFilter(final ResourceRequest aRequest,
+			final ResourceResponse aResponse, final FilterChain aChain)
+			throws IOException, PortletException {
+		final GuardedResourceRequest request = new GuardedResourceRequest(
+				aRequest);
+		aChain.doFilter(request, aResponse);
+		checkRequest(request.guard.bCreated);
+	}
+
+	/**
+	 * Returns the number of requests that tried to create a session
+	 * 
+	 * @return the count
+	 */
+	public long getCreatedSessions() {
+		return createdSessions.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.portlet.filter.PortletFilter#init(javax.portlet.filter.FilterConfig)
+	 */
+	@Override
+	public void init(final FilterConfig aConfig) throws PortletException {
+		// the mode
+		final String value = aConfig.getInitParameter(KEY_STRICT);
+		bStrict = (value != null) && Boolean.parseBoolean(value.trim());
+		// the reports
+		final String interval = aConfig.getInitParameter(KEY_REPORT_INTERVAL);
+		try {
+			reportInterval = TimeUnit.SECONDS
+					.toMillis((interval != null) ? Integer.parseInt(interval
+							.trim()) : DEFAULT_REPORT_INTERVAL);
+		} catch (final NumberFormatException ex) {
+			throw new PortletException("Invalid value [" + interval
+					+ "] of [" + KEY_REPORT_INTERVAL + "].", ex);
+		}
+		nextReport.set(System.currentTimeMillis() + reportInterval);
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, "init(aConfig)",
+				"Guarding against the creation of sessions, strict [{0}].",
+				bStrict);
+	}
+
+	/**
+	 * Logs the number of requests that tried to create a session, at most
+	 * once per report interval. The report piggybacks on the requests that
+	 * create a session, so a healthy application does not pay for it.
+	 * 
+	 * @param aCount
+	 *            the current count
+	 */
+	private final void report(final long aCount) {
+		// reports disabled
+		if (reportInterval < 0) {
+			return;
+		}
+		// one thread reports per interval
+		final long now = System.currentTimeMillis();
+		final long next = nextReport.get();
+		if ((now >= next)
+				&& nextReport.compareAndSet(next, now + reportInterval)) {
+			LOGGER.logp(Level.INFO, LOG_CLASS, "report(aCount)",
+					"Detected [{0}] requests that tried to create a session so far.",
+					aCount);
+		}
+	}
+}
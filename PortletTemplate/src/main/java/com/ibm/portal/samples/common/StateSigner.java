@@ -0,0 +1,303 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs the tokens of the model state with a truncated HMAC, so the state can
+ * be trusted once the signature has been verified. The signature is a token
+ * of its own, <code>id.mac</code>, where <code>id</code> identifies the key
+ * that produced the MAC.
+ * 
+ * The signer supports key rotation. The first key signs, all keys verify. To
+ * rotate, add the new key in front of the list and keep the old keys until
+ * the URLs signed with them have expired.
+ * 
+ * Creating and initializing a {@link Mac} is expensive, so the signer keeps
+ * the initialized instances per thread and key. A {@link Mac} is not thread
+ * safe, the thread confinement makes sure it is never shared.
+ * 
+ * @author cleue
+ */
+public class StateSigner {
+
+	/**
+	 * A signing key
+	 */
+	private static final class Key {
+
+		/**
+		 * identifier of the key, part of the signature
+		 */
+		private final String id;
+
+		/**
+		 * the key material
+		 */
+		private final SecretKeySpec spec;
+
+		/**
+		 * Constructs the key
+		 * 
+		 * @param aId
+		 *            identifier of the key
+		 * @param aSecret
+		 *            the secret
+		 */
+		private Key(final String aId, final String aSecret) {
+			id = aId;
+			spec = new SecretKeySpec(aSecret.getBytes(UTF_8), ALGORITHM);
+		}
+	}
+
+	/**
+	 * the MAC algorithm
+	 */
+	private static final String ALGORITHM = "HmacSHA256";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = StateSigner.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * number of MAC bytes in the signature, 96 bits are plenty for a token
+	 * that an attacker can only verify online
+	 */
+	private static final int MAC_LENGTH = 12;
+
+	/**
+	 * length prefix of absent values, distinguishes them from empty values
+	 */
+	private static final int NULL_LENGTH = -1;
+
+	/**
+	 * separates the key identifier from the MAC
+	 */
+	private static final char SEPARATOR = '.';
+
+	/**
+	 * encoding of the values
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Parses the keys
+	 * 
+	 * @param aKeys
+	 *            comma separated list of <code>id:secret</code> pairs
+	 * @return the keys
+	 */
+	private static Key[] parseKeys(final String aKeys) {
+		final List<Key> result = new ArrayList<Key>();
+		for (final String pair : aKeys.split(",")) {
+			final int idx = pair.indexOf(':');
+			if (idx < 0) {
+				throw new IllegalArgumentException("Invalid key [" + pair.trim()
+						+ "], expected id:secret.");
+			}
+			final String id = pair.substring(0, idx).trim();
+			final String secret = pair.substring(idx + 1).trim();
+			if ((id.length() == 0) || (secret.length() == 0)
+					|| (id.indexOf(SEPARATOR) >= 0)) {
+				throw new IllegalArgumentException("Invalid key [" + id + "].");
+			}
+			result.add(new Key(id, secret));
+		}
+		return result.toArray(new Key[result.size()]);
+	}
+
+	/**
+	 * the keys, the first one signs
+	 */
+	private final Key[] keys;
+
+	/**
+	 * the initialized MACs of the current thread, in the order of the keys
+	 */
+	private final ThreadLocal<Mac[]> macs = new ThreadLocal<Mac[]>() {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.ThreadLocal#initialValue()
+		 */
+		@Override
+		protected Mac[] initialValue() {
+			return new Mac[keys.length];
+		}
+	};
+
+	/**
+	 * Constructs the signer
+	 * 
+	 * @param aKeys
+	 *            comma separated list of <code>id:secret</code> pairs, the
+	 *            first key signs
+	 * @throws GeneralSecurityException
+	 *             if the JVM does not support the algorithm
+	 */
+	public StateSigner(final String aKeys) throws GeneralSecurityException {
+		// sanity check
+		assert aKeys != null;
+		// init
+		keys = parseKeys(aKeys);
+		// fail early
+		getMac(0);
+	}
+
+	/**
+	 * Computes the MAC of the values
+	 * 
+	 * @param aKey
+	 *            index of the key
+	 * @param aValues
+	 *            the values, may contain <code>null</code>
+	 * @return the truncated MAC
+	 * @throws GeneralSecurityException
+	 */
+	private byte[] computeMac(final int aKey, final String[] aValues)
+			throws GeneralSecurityException {
+		final Mac mac = getMac(aKey);
+		for (final String value : aValues) {
+			if (value != null) {
+				final byte[] data = value.getBytes(UTF_8);
+				updateLength(mac, data.length);
+				mac.update(data);
+			} else {
+				updateLength(mac, NULL_LENGTH);
+			}
+		}
+		final byte[] result = new byte[MAC_LENGTH];
+		System.arraycopy(mac.doFinal(), 0, result, 0, MAC_LENGTH);
+		return result;
+	}
+
+	/**
+	 * Returns the initialized MAC of the current thread for a key
+	 * 
+	 * @param aKey
+	 *            index of the key
+	 * @return the MAC
+	 * @throws GeneralSecurityException
+	 */
+	private Mac getMac(final int aKey) throws GeneralSecurityException {
+		final Mac[] cache = macs.get();
+		Mac result = cache[aKey];
+		if (result == null) {
+			result = Mac.getInstance(ALGORITHM);
+			result.init(keys[aKey].spec);
+			cache[aKey] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Signs the values
+	 * 
+	 * @param aValues
+	 *            the values, may contain <code>null</code>
+	 * @return the signature
+	 */
+	public String sign(final String... aValues) {
+		try {
+			final String id = keys[0].id;
+			final StringBuilder result = new StringBuilder(id.length() + 1
+					+ Base64Url.getEncodedLength(MAC_LENGTH));
+			Base64Url.encode(computeMac(0, aValues), MAC_LENGTH,
+					result.append(id).append(SEPARATOR));
+			return result.toString();
+		} catch (final GeneralSecurityException ex) {
+			// the constructor made sure the algorithm is available
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Writes a length prefix
+	 * 
+	 * @param aMac
+	 *            the MAC
+	 * @param aLength
+	 *            the length
+	 */
+	private void updateLength(final Mac aMac, final int aLength) {
+		aMac.update((byte) (aLength >>> 24));
+		aMac.update((byte) (aLength >>> 16));
+		aMac.update((byte) (aLength >>> 8));
+		aMac.update((byte) aLength);
+	}
+
+	/**
+	 * Verifies the signature of the values
+	 * 
+	 * @param aSignature
+	 *            the signature, may be <code>null</code>
+	 * @param aValues
+	 *            the values, may contain <code>null</code>
+	 * @return <code>true</code> if the signature has been produced by one of
+	 *         the keys for exactly these values
+	 */
+	public boolean verify(final String aSignature, final String... aValues) {
+		// logging support
+		final String LOG_METHOD = "verify(aSignature, aValues)";
+		// missing signature
+		if (aSignature == null) {
+			return false;
+		}
+		final int idx = aSignature.indexOf(SEPARATOR);
+		if (idx < 0) {
+			return false;
+		}
+		// locate the key
+		for (int i = 0; i < keys.length; ++i) {
+			final String id = keys[i].id;
+			if ((id.length() == idx) && aSignature.startsWith(id)) {
+				final byte[] expected = Base64Url.decode(aSignature, idx + 1, 0);
+				if ((expected == null) || (expected.length != MAC_LENGTH)) {
+					return false;
+				}
+				try {
+					// constant time comparison
+					return MessageDigest.isEqual(expected,
+							computeMac(i, aValues));
+				} catch (final GeneralSecurityException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+		// log this
+		if (LOGGER.isLoggable(LOG_LEVEL)) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Unknown key in signature [{0}].", aSignature);
+		}
+		return false;
+	}
+}
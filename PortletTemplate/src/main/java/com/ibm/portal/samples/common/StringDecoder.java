@@ -0,0 +1,384 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes bytes into strings, reusing the decoder and the buffers. The
+ * instances are thread confined, use {@link #getInstance()} to access the
+ * instance of the current thread.
+ * 
+ * Payloads that consist of ASCII characters only are copied directly into the
+ * character buffer, if the character set is ASCII compatible. Other payloads
+ * go through a {@link CharsetDecoder} that is kept as long as the thread
+ * decodes with the same character set. Malformed input is replaced, which
+ * matches the behaviour of {@link String#String(byte[], Charset)}.
+ * 
+ * @author cleue
+ */
+public final class StringDecoder {
+
+	/**
+	 * cache for the ASCII compatibility of character sets
+	 */
+	private static final ConcurrentMap<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<Charset, Boolean>();
+
+	/**
+	 * size of the buffers we allocate initially
+	 */
+	private static final int BUFFER_SIZE = 1024;
+
+	/**
+	 * the decoders per thread
+	 */
+	private static final ThreadLocal<StringDecoder> DECODERS = new ThreadLocal<StringDecoder>() {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.ThreadLocal#initialValue()
+		 */
+		@Override
+		protected StringDecoder initialValue() {
+			return new StringDecoder();
+		}
+	};
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = StringDecoder.class.getName();
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * maximum size of the character buffer that we keep for the next
+	 * invocation, larger buffers are released after use
+	 */
+	private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+	/**
+	 * Resolves a character set by name, falling back to a default if the name
+	 * is unknown or invalid
+	 * 
+	 * @param aName
+	 *            name of the character set, may be <code>null</code>
+	 * @param aDefault
+	 *            the default character set
+	 * @return the character set
+	 */
+	public static Charset forName(final String aName, final Charset aDefault) {
+		// logging support
+		final String LOG_METHOD = "forName(aName, aDefault)";
+		// check for the name
+		if ((aName == null) || (aName.length() == 0)) {
+			return aDefault;
+		}
+		// shortcut for the common case
+		if (aName.equalsIgnoreCase(aDefault.name())) {
+			return aDefault;
+		}
+		try {
+			return Charset.forName(aName.trim());
+		} catch (final IllegalArgumentException ex) {
+			// log this
+			if (LOGGER.isLoggable(Level.WARNING)) {
+				LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+						"Unsupported character set [{0}], using [{1}].",
+						new Object[] { aName, aDefault });
+			}
+			// fallback
+			return aDefault;
+		}
+	}
+
+	/**
+	 * Returns the decoder of the current thread
+	 * 
+	 * @return the decoder
+	 */
+	public static StringDecoder getInstance() {
+		return DECODERS.get();
+	}
+
+	/**
+	 * Checks if the character set encodes the ASCII characters as single
+	 * bytes with their ASCII value
+	 * 
+	 * @param aCharset
+	 *            the character set
+	 * @return <code>true</code> if the character set is ASCII compatible, else
+	 *         <code>false</code>
+	 */
+	public static boolean isAsciiCompatible(final Charset aCharset) {
+		// sanity check
+		assert aCharset != null;
+		// check the cache
+		Boolean bCompatible = ASCII_COMPATIBLE.get(aCharset);
+		if (bCompatible == null) {
+			// test the encoding of all ASCII characters
+			final byte[] ascii = new byte[0x80];
+			final char[] chars = new char[ascii.length];
+			for (int i = 0; i < ascii.length; ++i) {
+				ascii[i] = (byte) i;
+				chars[i] = (char) i;
+			}
+			bCompatible = Boolean.valueOf(aCharset.canEncode()
+					&& Arrays.equals(ascii,
+							new String(chars).getBytes(aCharset)));
+			ASCII_COMPATIBLE.putIfAbsent(aCharset, bCompatible);
+		}
+		// ok
+		return bCompatible.booleanValue();
+	}
+
+	/**
+	 * input buffer for stream decoding
+	 */
+	private final byte[] bytes = new byte[BUFFER_SIZE];
+
+	/**
+	 * the character set of the current decoder
+	 */
+	private Charset charset;
+
+	/**
+	 * the reusable output buffer
+	 */
+	private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * the current decoder, matches {@link #charset}
+	 */
+	private CharsetDecoder decoder;
+
+	/**
+	 * Use {@link #getInstance()}
+	 */
+	private StringDecoder() {
+
+	}
+
+	/**
+	 * Decodes bytes into a string
+	 * 
+	 * @param aBytes
+	 *            the bytes
+	 * @param aCharset
+	 *            the character set
+	 * @return the string
+	 */
+	public String decode(final byte[] aBytes, final Charset aCharset) {
+		return decode(aBytes, 0, aBytes.length, aCharset);
+	}
+
+	/**
+	 * Decodes a range of bytes into a string
+	 * 
+	 * @param aBytes
+	 *            the bytes
+	 * @param aOffset
+	 *            start of the range
+	 * @param aLength
+	 *            length of the range
+	 * @param aCharset
+	 *            the character set
+	 * @return the string
+	 */
+	public String decode(final byte[] aBytes, final int aOffset,
+			final int aLength, final Charset aCharset) {
+		// sanity check
+		assert aBytes != null;
+		assert aCharset != null;
+		// shortcut
+		if (aLength == 0) {
+			return "";
+		}
+		// prepare the buffer
+		final CharBuffer out = getBuffer(aLength);
+		// try the ASCII path
+		if (isAsciiCompatible(aCharset)) {
+			final char[] dst = out.array();
+			final int end = aOffset + aLength;
+			int i = aOffset;
+			while ((i < end) && (aBytes[i] >= 0)) {
+				dst[i - aOffset] = (char) aBytes[i];
+				++i;
+			}
+			if (i == end) {
+				return toString(aLength);
+			}
+		}
+		// use the decoder
+		final CharsetDecoder dec = getDecoder(aCharset);
+		final ByteBuffer in = ByteBuffer.wrap(aBytes, aOffset, aLength);
+		decode(dec, in, true);
+		flush(dec);
+		// ok
+		return toString(chars.position());
+	}
+
+	/**
+	 * Decodes the bytes of the input buffer into the character buffer,
+	 * growing the buffer as needed
+	 * 
+	 * @param aDecoder
+	 *            the decoder
+	 * @param aInput
+	 *            the input
+	 * @param bEndOfInput
+	 *            <code>true</code> if there is no more input
+	 */
+	private final void decode(final CharsetDecoder aDecoder,
+			final ByteBuffer aInput, final boolean bEndOfInput) {
+		while (true) {
+			final CoderResult result = aDecoder.decode(aInput, chars,
+					bEndOfInput);
+			if (result.isOverflow()) {
+				grow(aInput.remaining());
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the content of a stream into a string. The stream is not closed.
+	 * 
+	 * @param aStream
+	 *            the stream
+	 * @param aCharset
+	 *            the character set
+	 * @return the string
+	 * @throws IOException
+	 */
+	public String decode(final InputStream aStream, final Charset aCharset)
+			throws IOException {
+		// sanity check
+		assert aStream != null;
+		assert aCharset != null;
+		// prepare the buffers
+		getBuffer(bytes.length);
+		final CharsetDecoder dec = getDecoder(aCharset);
+		final ByteBuffer in = ByteBuffer.wrap(bytes);
+		// read in chunks
+		int read;
+		while ((read = aStream.read(bytes, in.position(), bytes.length
+				- in.position())) >= 0) {
+			in.limit(in.position() + read);
+			in.position(0);
+			decode(dec, in, false);
+			// keep incomplete sequences for the next chunk
+			in.compact();
+		}
+		// decode the remainder
+		in.flip();
+		decode(dec, in, true);
+		flush(dec);
+		// ok
+		return toString(chars.position());
+	}
+
+	/**
+	 * Flushes the decoder into the character buffer
+	 * 
+	 * @param aDecoder
+	 *            the decoder
+	 */
+	private final void flush(final CharsetDecoder aDecoder) {
+		while (aDecoder.flush(chars).isOverflow()) {
+			grow(0);
+		}
+	}
+
+	/**
+	 * Returns the cleared character buffer with at least the given capacity
+	 * 
+	 * @param aCapacity
+	 *            the capacity
+	 * @return the buffer
+	 */
+	private final CharBuffer getBuffer(final int aCapacity) {
+		if (chars.capacity() < aCapacity) {
+			chars = CharBuffer.allocate(aCapacity);
+		} else {
+			chars.clear();
+		}
+		return chars;
+	}
+
+	/**
+	 * Returns the reset decoder for the character set
+	 * 
+	 * @param aCharset
+	 *            the character set
+	 * @return the decoder
+	 */
+	private final CharsetDecoder getDecoder(final Charset aCharset) {
+		if (!aCharset.equals(charset)) {
+			decoder = aCharset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			charset = aCharset;
+		} else {
+			decoder.reset();
+		}
+		return decoder;
+	}
+
+	/**
+	 * Grows the character buffer, keeping its content
+	 * 
+	 * @param aRemaining
+	 *            number of bytes that remain to be decoded
+	 */
+	private final void grow(final int aRemaining) {
+		final int capacity = Math.max(2 * chars.capacity(), chars.position()
+				+ aRemaining + 16);
+		final CharBuffer larger = CharBuffer.allocate(capacity);
+		chars.flip();
+		larger.put(chars);
+		chars = larger;
+	}
+
+	/**
+	 * Converts the first characters of the buffer into a string and releases
+	 * the buffer if it got too large
+	 * 
+	 * @param aLength
+	 *            number of characters
+	 * @return the string
+	 */
+	private final String toString(final int aLength) {
+		final String result = new String(chars.array(), 0, aLength);
+		if (chars.capacity() > MAX_RETAINED_SIZE) {
+			chars = CharBuffer.allocate(BUFFER_SIZE);
+		}
+		return result;
+	}
+}
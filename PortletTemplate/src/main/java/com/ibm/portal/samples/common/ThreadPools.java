@@ -0,0 +1,234 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Factory for the bounded executors used by the portlets. The executors use
+ * virtual threads if the JVM supports them and fall back to daemon platform
+ * threads otherwise. In both cases the number of concurrently executing tasks
+ * is bounded and per default tasks that do not fit into the queue are executed
+ * by the submitting thread, so a saturated executor slows down the caller
+ * instead of failing the request.
+ * 
+ * @author cleue
+ */
+public final class ThreadPools {
+
+	/**
+	 * Thread factory for platform threads
+	 */
+	private static final class PlatformThreadFactory implements ThreadFactory {
+
+		/**
+		 * prefix for the thread names
+		 */
+		private final String prefix;
+
+		/**
+		 * counter for the thread names
+		 */
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		/**
+		 * Constructs the factory
+		 * 
+		 * @param aPrefix
+		 *            prefix for the thread names
+		 */
+		private PlatformThreadFactory(final String aPrefix) {
+			prefix = aPrefix;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		@Override
+		public Thread newThread(final Runnable aRunnable) {
+			final Thread thread = new Thread(aRunnable, prefix + "-"
+					+ threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = ThreadPools.class.getName();
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * Constructs a thread factory for virtual threads via reflection, since
+	 * the API is not available on all JVMs we run on.
+	 * 
+	 * @param aPrefix
+	 *            prefix for the thread names
+	 * @return the factory or <code>null</code> if virtual threads are not
+	 *         supported
+	 */
+	private static final ThreadFactory createVirtualThreadFactory(
+			final String aPrefix) {
+		// logging support
+		final String LOG_METHOD = "createVirtualThreadFactory(aPrefix)";
+		try {
+			final Class<?> builderClass = Class
+					.forName("java.lang.Thread$Builder");
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(
+					null);
+			final Object named = builderClass.getMethod("name", String.class,
+					long.class).invoke(builder, aPrefix + "-", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(
+					named);
+		} catch (final Exception ex) {
+			// log this
+			if (LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.logp(Level.FINER, LOG_CLASS, LOG_METHOD,
+						"Virtual threads are not available.", ex);
+			}
+			// not supported
+			return null;
+		}
+	}
+
+	/**
+	 * Constructs a bounded executor
+	 * 
+	 * @param aName
+	 *            name of the executor, used as the prefix for thread names
+	 * @param aThreads
+	 *            maximum number of concurrently executing tasks
+	 * @param aQueueSize
+	 *            maximum number of waiting tasks
+	 * @return the executor
+	 */
+	public static ExecutorService newBoundedExecutor(final String aName,
+			final int aThreads, final int aQueueSize) {
+		// the caller executes the task if we are saturated
+		return newBoundedExecutor(aName, aThreads, aQueueSize,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Constructs a bounded executor with a custom policy for tasks that do
+	 * not fit into the queue. Use {@link ThreadPoolExecutor.AbortPolicy} if
+	 * the caller must not block, e.g. because it waits for the tasks with a
+	 * timeout.
+	 * 
+	 * @param aName
+	 *            name of the executor, used as the prefix for thread names
+	 * @param aThreads
+	 *            maximum number of concurrently executing tasks
+	 * @param aQueueSize
+	 *            maximum number of waiting tasks
+	 * @param aPolicy
+	 *            policy for tasks that do not fit into the queue
+	 * @return the executor
+	 */
+	public static ExecutorService newBoundedExecutor(final String aName,
+			final int aThreads, final int aQueueSize,
+			final RejectedExecutionHandler aPolicy) {
+		// sanity check
+		assert aName != null;
+		assert aThreads > 0;
+		assert aQueueSize > 0;
+		assert aPolicy != null;
+		// logging support
+		final String LOG_METHOD = "newBoundedExecutor(aName, aThreads, aQueueSize, aPolicy)";
+		// prefer virtual threads
+		final ThreadFactory virtualFactory = createVirtualThreadFactory(aName);
+		final ThreadFactory factory = (virtualFactory != null) ? virtualFactory
+				: new PlatformThreadFactory(aName);
+		// bounded pool
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(aThreads,
+				aThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(aQueueSize), factory, aPolicy);
+		executor.allowCoreThreadTimeOut(true);
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Executor [{0}] with [{1}] {2} threads.", new Object[] { aName,
+						aThreads,
+						(virtualFactory != null) ? "virtual" : "platform" });
+		// ok
+		return executor;
+	}
+
+	/**
+	 * Constructs a scheduler with a single daemon thread for short timer
+	 * tasks, e.g. watchdogs. Most watchdogs are cancelled before they fire,
+	 * so cancelled tasks are removed from the queue right away.
+	 * 
+	 * @param aName
+	 *            name of the scheduler, used as the prefix for thread names
+	 * @return the scheduler
+	 */
+	public static ScheduledExecutorService newScheduler(final String aName) {
+		// sanity check
+		assert aName != null;
+		// logging support
+		final String LOG_METHOD = "newScheduler(aName)";
+		// timers must not depend on the availability of virtual threads
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new PlatformThreadFactory(aName));
+		executor.setRemoveOnCancelPolicy(true);
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD, "Scheduler [{0}].",
+				aName);
+		// ok
+		return executor;
+	}
+
+	/**
+	 * Shuts down an executor, waiting a short while for running tasks
+	 * 
+	 * @param aExecutor
+	 *            the executor, may be <code>null</code>
+	 */
+	public static void shutdown(final ExecutorService aExecutor) {
+		if (aExecutor != null) {
+			aExecutor.shutdown();
+			try {
+				if (!aExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+					aExecutor.shutdownNow();
+				}
+			} catch (final InterruptedException ex) {
+				aExecutor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Do not instantiate this class
+	 */
+	private ThreadPools() {
+
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable limits for the decoding of a form upload. The limits are checked
+ * while the request body is streamed, so a request that violates them is
+ * rejected before it has been read completely. A negative value disables the
+ * respective limit.
+ * 
+ * @author cleue
+ */
+public final class UploadLimits {
+
+	/**
+	 * maximum size of a single form field in bytes
+	 */
+	private final long maxFieldSize;
+
+	/**
+	 * maximum time for reading the request body in nanoseconds
+	 */
+	private final long maxParseTime;
+
+	/**
+	 * maximum number of form fields
+	 */
+	private final int maxParts;
+
+	/**
+	 * maximum size of the request body in bytes
+	 */
+	private final long maxRequestSize;
+
+	/**
+	 * Constructs the limits
+	 * 
+	 * @param aMaxRequestSize
+	 *            maximum size of the request body in bytes
+	 * @param aMaxFieldSize
+	 *            maximum size of a single form field in bytes
+	 * @param aMaxParts
+	 *            maximum number of form fields
+	 * @param aMaxParseTime
+	 *            maximum time for reading the request body
+	 * @param aUnit
+	 *            unit of the parse time
+	 */
+	public UploadLimits(final long aMaxRequestSize, final long aMaxFieldSize,
+			final int aMaxParts, final long aMaxParseTime, final TimeUnit aUnit) {
+		// sanity check
+		assert aUnit != null;
+		// init
+		maxRequestSize = aMaxRequestSize;
+		maxFieldSize = aMaxFieldSize;
+		maxParts = aMaxParts;
+		maxParseTime = (aMaxParseTime >= 0) ? aUnit.toNanos(aMaxParseTime)
+				: -1;
+	}
+
+	/**
+	 * Returns the maximum size of a single form field
+	 * 
+	 * @return the size in bytes, negative if unlimited
+	 */
+	public long getMaxFieldSize() {
+		return maxFieldSize;
+	}
+
+	/**
+	 * Returns the maximum time for reading the request body
+	 * 
+	 * @return the time in nanoseconds, negative if unlimited
+	 */
+	public long getMaxParseTime() {
+		return maxParseTime;
+	}
+
+	/**
+	 * Returns the maximum number of form fields
+	 * 
+	 * @return the number of fields, negative if unlimited
+	 */
+	public int getMaxParts() {
+		return maxParts;
+	}
+
+	/**
+	 * Returns the maximum size of the request body
+	 * 
+	 * @return the size in bytes, negative if unlimited
+	 */
+	public long getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "UploadLimits [maxRequestSize=" + maxRequestSize
+				+ ", maxFieldSize=" + maxFieldSize + ", maxParts=" + maxParts
+				+ ", maxParseTime="
+				+ TimeUnit.NANOSECONDS.toMillis(maxParseTime) + "ms]";
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+
+/**
+ * Caches the values that the views resolve via the response on every render,
+ * although they do not change between requests: the namespace of a window
+ * and the encoded URLs of the static resources of the portlet application.
+ * Encoding a URL runs through the state handling of the portal, which is
+ * expensive compared to a map lookup.
+ * 
+ * The namespaces are keyed by window ID. The resource URLs are keyed by the
+ * context path and the path of the resource, and only cached if the encoding
+ * returned the plain URL. A portal that rewrites the URL, e.g. to track the
+ * session or the window, produces a value that is only valid for the current
+ * user or window, so such URLs are encoded on every request instead.
+ * 
+ * @author cleue
+ */
+public class ViewCache {
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = ViewCache.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * marks a resource whose URL the portal rewrites, compared by identity
+	 */
+	private static final String UNCACHEABLE = new String("");
+
+	/**
+	 * Returns a cached value, translating the failures of the loader
+	 * 
+	 * @param aCache
+	 *            the cache
+	 * @param aKey
+	 *            the key
+	 * @param aLoader
+	 *            loads the value from the response
+	 * @return the value
+	 */
+	private static String get(final ReadThroughCache<String, String> aCache,
+			final String aKey, final Callable<String> aLoader) {
+		try {
+			return aCache.get(aKey, aLoader);
+		} catch (final ExecutionException ex) {
+			// the portlet API does not declare checked exceptions
+			final Throwable cause = ex.getCause();
+			throw (cause instanceof RuntimeException) ? (RuntimeException) cause
+					: new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * namespaces, keyed by window ID
+	 */
+	private final ReadThroughCache<String, String> namespaces;
+
+	/**
+	 * encoded resource URLs or {@link #UNCACHEABLE}, keyed by the context path
+	 * and the path inside the application
+	 */
+	private final ReadThroughCache<String, String> resourceURLs;
+
+	/**
+	 * Constructs the cache
+	 * 
+	 * @param aMaxSize
+	 *            maximum number of windows to cache
+	 * @param aTimeToLive
+	 *            time to live of an entry
+	 * @param aUnit
+	 *            unit of the time to live
+	 */
+	public ViewCache(final int aMaxSize, final long aTimeToLive,
+			final TimeUnit aUnit) {
+		namespaces = new ReadThroughCache<String, String>(aMaxSize,
+				aTimeToLive, aUnit);
+		resourceURLs = new ReadThroughCache<String, String>(aMaxSize,
+				aTimeToLive, aUnit);
+	}
+
+	/**
+	 * Returns the namespace of the window targeted by the request
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response, used to resolve the namespace on a cache miss
+	 * @return the namespace
+	 */
+	public String getNamespace(final PortletRequest aRequest,
+			final PortletResponse aResponse) {
+		// sanity check
+		assert aRequest != null;
+		assert aResponse != null;
+		// logging support
+		final String LOG_METHOD = "getNamespace(aRequest, aResponse)";
+		// the cache key
+		final String windowId = aRequest.getWindowID();
+		return get(namespaces, windowId, new Callable<String>() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public String call() {
+				// log this
+				if (LOGGER.isLoggable(LOG_LEVEL)) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Resolving the namespace of window [{0}].",
+							windowId);
+				}
+				return aResponse.getNamespace();
+			}
+		});
+	}
+
+	/**
+	 * Returns the cache of the namespaces, e.g. to access its statistics
+	 * 
+	 * @return the cache
+	 */
+	public ReadThroughCache<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Returns the encoded URL of a static resource of the portlet application
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response, used to encode the URL on a cache miss
+	 * @param aPath
+	 *            path of the resource inside the application, starting with a
+	 *            slash
+	 * @return the encoded URL
+	 */
+	public String getResourceURL(final PortletRequest aRequest,
+			final PortletResponse aResponse, final String aPath) {
+		// sanity check
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aPath != null;
+		// logging support
+		final String LOG_METHOD = "getResourceURL(aRequest, aResponse, aPath)";
+		// the plain URL doubles as the cache key
+		final String url = aRequest.getContextPath() + aPath;
+		final String result = get(resourceURLs, url, new Callable<String>() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public String call() {
+				// log this
+				if (LOGGER.isLoggable(LOG_LEVEL)) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Encoding the URL of [{0}].", url);
+				}
+				final String encoded = aResponse.encodeURL(url);
+				// a rewritten URL is specific to the request
+				return url.equals(encoded) ? encoded : UNCACHEABLE;
+			}
+		});
+		// ok
+		return (result != UNCACHEABLE) ? result : aResponse.encodeURL(url);
+	}
+
+	/**
+	 * Returns the cache of the resource URLs, e.g. to access its statistics
+	 * 
+	 * @return the cache
+	 */
+	public ReadThroughCache<String, String> getResourceURLs() {
+		return resourceURLs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ViewCache [namespaces=" + namespaces + ", resourceURLs="
+				+ resourceURLs + "]";
+	}
+}
@@ -1,7 +1,7 @@
-/**
- * The package contains some helper concepts that can be reused across different portlets.
- * 
- * @author cleue
- *
- */
+/**
+ * The package contains some helper concepts that can be reused across different portlets.
+ * 
+ * @author cleue
+ *
+ */
 package com.ibm.portal.samples.common;
\ No newline at end of file
@@ -1,403 +1,1917 @@
-/*
- * (C) Copyright IBM Corp. 2014
- * 
- * Licensed under the Apache License, Version 2.0 (the "License"); 
- * you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at:
- * 
- * http://www.apache.org/licenses/LICENSE-2.0 
- * 
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
- * implied. See the License for the specific language governing 
- * permissions and limitations under the License.
- */
-package com.ibm.portal.samples.mvc;
-
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import javax.portlet.ActionRequest;
-import javax.portlet.ActionResponse;
-import javax.portlet.GenericPortlet;
-import javax.portlet.MimeResponse;
-import javax.portlet.PortletException;
-import javax.portlet.PortletRequest;
-import javax.portlet.PortletResponse;
-import javax.portlet.RenderRequest;
-import javax.portlet.RenderResponse;
-import javax.portlet.ResourceRequest;
-import javax.portlet.ResourceResponse;
-
-import com.ibm.portal.samples.common.Marshaller;
-import com.ibm.portal.samples.common.PrivateParameterMarshaller;
-import com.ibm.portal.samples.mvc.controller.TemplateController;
-import com.ibm.portal.samples.mvc.model.TemplateActions;
-import com.ibm.portal.samples.mvc.model.TemplateModel;
-import com.ibm.portal.samples.mvc.view.TemplateView;
-
-/**
- * Implementation of the actual portlet class. The portlet initializes and
- * manages the lifecycle of the model, view and controller beans. During
- * rendering it dispatches to a JSP that can then make use of the beans via
- * request attributes. The JSP is located inside a subdirectory of the "WEB-INF"
- * directory. The subdirectory follows the package structure of the portlet
- * class. The name of the JSP is the name of the portlet mode, followed by
- * ".jsp".
- * 
- * The JSP is located inside the "WEB-INF" directory, because it is not supposed
- * to be accessed directly via a servlet entry point. Using the package name as
- * the directory structure makes it easier to maintain multiple portlets in one
- * project.
- * 
- * @author cleue
- */
-public class TemplatePortlet extends GenericPortlet {
-
-	/**
-	 * Representation to dependencies on external services. Note that this
-	 * interface inherits all dependencies from the components it aggregates.
-	 * You should use a naming convention such that common dependencies use the
-	 * same getters.
-	 */
-	public interface Dependencies extends TemplateModel.Dependencies,
-			TemplateActions.Dependencies, TemplateController.Dependencies,
-			TemplateView.Dependencies {
-
-		/**
-		 * TODO add dependencies via parameterless getter methods
-		 */
-	}
-
-	/**
-	 * Name of the request attribute for the controller
-	 */
-	private static final String KEY_CONTROLLER = "controller";
-
-	/**
-	 * Name of the request attribute for the model
-	 */
-	private static final String KEY_MODEL = "model";
-
-	/**
-	 * Name of the request attribute for the view
-	 */
-	private static final String KEY_VIEW = "view";
-
-	/** class name for the logger */
-	private static final String LOG_CLASS = TemplatePortlet.class.getName();
-
-	/** logging level */
-	private static final Level LOG_LEVEL = Level.FINER;
-
-	/** class logger */
-	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
-
-	/**
-	 * reference to external services
-	 */
-	private Dependencies dependencies;
-
-	/**
-	 * root path for JSPs. Per default we use the package name of the portlet
-	 * inside the WEB-INF directory.
-	 */
-	private String jspRoot;
-
-	/**
-	 * Constructs the action handler
-	 * 
-	 * @param aModel
-	 *            model the actions will work on
-	 * @param aRequest
-	 *            the action request
-	 * @param aResponse
-	 *            the action response
-	 * @return the model
-	 * 
-	 * @throws PortletException
-	 * @throws IOException
-	 */
-	private final TemplateActions createActions(final TemplateModel aModel,
-			final ActionRequest aRequest, final ActionResponse aResponse)
-			throws PortletException, IOException {
-		// sanity check
-		assert aModel != null;
-		assert aRequest != null;
-		assert aResponse != null;
-		/**
-		 * Decodes the action.This method normally does not have to be changed.
-		 * Rather change the implementation of the action.
-		 */
-		return new TemplateActions(aModel, aRequest, aResponse, dependencies);
-	}
-
-	/**
-	 * Constructs a new controller
-	 * 
-	 * @param aModel
-	 *            the model
-	 * @param aRequest
-	 *            the request
-	 * @param aResponse
-	 *            the response
-	 * @return the controller
-	 */
-	private final TemplateController createController(
-			final TemplateModel aModel, final PortletRequest aRequest,
-			final MimeResponse aResponse) {
-		// sanity check
-		assert aModel != null;
-		assert aRequest != null;
-		assert aResponse != null;
-		/**
-		 * Constructs the controller. This method normally does not have to be
-		 * changed. Rather change the implementation of the controller.
-		 */
-		return new TemplateController(aModel, aRequest, aResponse, dependencies);
-	}
-
-	/**
-	 * Decodes the model used during rendering
-	 * 
-	 * @param aRequest
-	 *            the portlet request
-	 * @param aResponse
-	 *            the portlet response
-	 * @return the model
-	 * 
-	 * @throws PortletException
-	 * @throws IOException
-	 */
-	private final TemplateModel decodeModel(final PortletRequest aRequest,
-			final PortletResponse aResponse) throws PortletException,
-			IOException {
-		// sanity check
-		assert aRequest != null;
-		assert aResponse != null;
-		/**
-		 * Decodes the model.This method normally does not have to be changed.
-		 * Rather change the implementation of the model.
-		 */
-		return new TemplateModel(aRequest, aResponse, getPortletConfig(),
-				dependencies);
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see javax.portlet.GenericPortlet#destroy()
-	 */
-	@Override
-	public void destroy() {
-		// logging support
-		final String LOG_METHOD = "destroy()";
-		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// TODO reset all other instance fields to null
-		// reset the dependencies
-		dependencies = null;
-		jspRoot = null;
-		// default
-		super.destroy();
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see javax.portlet.GenericPortlet#doDispatch(javax.portlet.RenderRequest,
-	 * javax.portlet.RenderResponse)
-	 */
-	@Override
-	protected void doDispatch(final RenderRequest request,
-			final RenderResponse response) throws PortletException, IOException {
-		// logging support
-		final String LOG_METHOD = "doDispatch(request, response)";
-		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// initialize the content type
-		response.setContentType(request.getResponseContentType());
-		// render the JSP
-		final String jspName = jspRoot + request.getPortletMode() + ".jsp";
-		getPortletContext().getRequestDispatcher(jspName).include(request,
-				response);
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see com.ibm.portal.portlet.base.portal.WebSpherePortalPortlet#init()
-	 */
-	@Override
-	public void init() throws PortletException {
-		// logging support
-		final String LOG_METHOD = "init()";
-		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// default
-		super.init();
-		// initialize the JSP root path
-		jspRoot = "/WEB-INF/"
-				+ TemplatePortlet.class.getPackage().getName()
-						.replace('.', '/') + "/";
-		// log this
-		if (bIsLogging) {
-			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD, "Root path [{0}].",
-					jspRoot);
-		}
-		/**
-		 * Note that our dependency interface extends the dependency interfaces
-		 * of multiple other components. Thanks to a naming convention however
-		 * the methods all collapse into one single method that we have to
-		 * implement.
-		 */
-		dependencies = new Dependencies() {
-
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see com.ibm.portal.samples.portlettemplate.model.TemplateModel.
-			 * Dependencies#getPrivateParameterMarshaller()
-			 */
-			@Override
-			public Marshaller getPrivateParameterMarshaller() {
-				// decide how to marshal private parameters
-				return PrivateParameterMarshaller.SINGLETON;
-			}
-
-			// implement your getters here
-		};
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * javax.portlet.GenericPortlet#processAction(javax.portlet.ActionRequest,
-	 * javax.portlet.ActionResponse)
-	 */
-	@Override
-	public void processAction(final ActionRequest request,
-			final ActionResponse response) throws PortletException, IOException {
-		// logging support
-		final String LOG_METHOD = "processAction(request, response)";
-		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// decode the model
-		final TemplateModel model = decodeModel(request, response);
-		// construct the action handler
-		final TemplateActions actions = createActions(model, request, response);
-		try {
-			// process the model
-			if (actions.processActions()) {
-				// log this
-				if (bIsLogging) {
-					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-							"Committing the model ...");
-				}
-				// commit persistent modifications
-				actions.commit();
-			}
-		} catch (final Throwable ex) {
-			// handle the exception
-		} finally {
-			/**
-			 * Encodes the model. This is an important step, without it the
-			 * navigational state would be lost after the action.
-			 */
-			model.encode(response);
-			// dispose
-			actions.dispose();
-			model.dispose();
-		}
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see javax.portlet.GenericPortlet#render(javax.portlet.RenderRequest,
-	 * javax.portlet.RenderResponse)
-	 */
-	@Override
-	public void render(final RenderRequest request,
-			final RenderResponse response) throws PortletException, IOException {
-		// logging support
-		final String LOG_METHOD = "doDispatch(request, response)";
-		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// construct the view bean
-		final TemplateView view = new TemplateView(getPortletConfig(), request,
-				response, dependencies);
-		// decode the model
-		final TemplateModel model = decodeModel(request, response);
-		// get the controller
-		final TemplateController controller = createController(model, request,
-				response);
-		// set the beans, so we can access them in the JSP
-		request.setAttribute(KEY_VIEW, view);
-		request.setAttribute(KEY_MODEL, model);
-		request.setAttribute(KEY_CONTROLLER, controller);
-		try {
-			// default handling
-			super.render(request, response);
-		} finally {
-			// release model and controller
-			request.removeAttribute(KEY_CONTROLLER);
-			request.removeAttribute(KEY_MODEL);
-			request.removeAttribute(KEY_VIEW);
-			// dispose
-			controller.dispose();
-			model.dispose();
-			view.dispose();
-		}
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * javax.portlet.GenericPortlet#serveResource(javax.portlet.ResourceRequest,
-	 * javax.portlet.ResourceResponse)
-	 */
-	@Override
-	public void serveResource(final ResourceRequest request,
-			final ResourceResponse response) throws PortletException,
-			IOException {
-		/**
-		 * Method not required at the moment. Make sure to override the default
-		 * implementation, because it exposes a security issue.
-		 */
-	}
-}
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.CacheControl;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.GenericPortlet;
+import javax.portlet.MimeResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.UnavailableException;
+
+import org.apache.commons.fileupload.FileUploadException;
+
+import com.ibm.portal.samples.common.AssetManifest;
+import com.ibm.portal.samples.common.Broadcaster;
+import com.ibm.portal.samples.common.CompressingMarshaller;
+import com.ibm.portal.samples.common.MarkupTemplate;
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PreferencesCache;
+import com.ibm.portal.samples.common.PrivateParameterMarshaller;
+import com.ibm.portal.samples.common.PublicParameterMarshaller;
+import com.ibm.portal.samples.common.StateSigner;
+import com.ibm.portal.samples.common.ThreadPools;
+import com.ibm.portal.samples.common.UploadLimits;
+import com.ibm.portal.samples.common.ViewCache;
+import com.ibm.portal.samples.mvc.controller.TemplateController;
+import com.ibm.portal.samples.mvc.model.TemplateActions;
+import com.ibm.portal.samples.mvc.model.TemplateEvents;
+import com.ibm.portal.samples.mvc.model.TemplateLookups;
+import com.ibm.portal.samples.mvc.model.TemplateModel;
+import com.ibm.portal.samples.mvc.model.TemplateModel.PREFS;
+import com.ibm.portal.samples.mvc.model.TemplateModel.PUBLIC_PARAMS;
+import com.ibm.portal.samples.mvc.model.TemplateState;
+import com.ibm.portal.samples.mvc.view.TemplateView;
+
+/**
+ * Implementation of the actual portlet class. The portlet initializes and
+ * manages the lifecycle of the model, view and controller beans. During
+ * rendering it dispatches to a JSP that can then make use of the beans via
+ * request attributes. The JSP is located inside a subdirectory of the "WEB-INF"
+ * directory. The subdirectory follows the package structure of the portlet
+ * class. The name of the JSP is the name of the portlet mode, followed by
+ * ".jsp".
+ * 
+ * The JSP is located inside the "WEB-INF" directory, because it is not supposed
+ * to be accessed directly via a servlet entry point. Using the package name as
+ * the directory structure makes it easier to maintain multiple portlets in one
+ * project.
+ * 
+ * @author cleue
+ */
+public class TemplatePortlet extends GenericPortlet {
+
+	/**
+	 * Representation to dependencies on external services. Note that this
+	 * interface inherits all dependencies from the components it aggregates.
+	 * You should use a naming convention such that common dependencies use the
+	 * same getters.
+	 */
+	public interface Dependencies extends TemplateModel.Dependencies,
+			TemplateActions.Dependencies, TemplateEvents.Dependencies,
+			TemplateLookups.Dependencies, TemplateController.Dependencies,
+			TemplateView.Dependencies {
+
+		/**
+		 * TODO add dependencies via parameterless getter methods
+		 */
+	}
+
+	/**
+	 * The shared state of the portlet. The configuration is built completely
+	 * in {@link TemplatePortlet#init()} and never modified afterwards, all of
+	 * its fields are final. Together with the atomic reference in
+	 * {@link TemplatePortlet} this guarantees that every request thread sees
+	 * a fully constructed configuration, so the portlet can render many
+	 * windows in parallel without synchronization.
+	 * 
+	 * A reload builds a new configuration and swaps the reference. Components
+	 * whose parameters did not change are taken over by the new
+	 * configuration, so their caches and threads stay warm.
+	 * 
+	 * Note that our dependency interface extends the dependency interfaces of
+	 * multiple other components. Thanks to a naming convention however the
+	 * methods all collapse into one single method that we have to implement.
+	 */
+	private static final class Configuration implements Dependencies {
+
+		/**
+		 * executor for the parallel decoding of form fields, may be
+		 * <code>null</code>
+		 */
+		private final ExecutorService actionExecutor;
+
+		/**
+		 * limits the number of concurrently processed actions, may be
+		 * <code>null</code>
+		 */
+		private final Semaphore actionPermits;
+
+		/**
+		 * manifest of the fingerprinted static resources
+		 */
+		private final AssetManifest assetManifest;
+
+		/**
+		 * <code>true</code> if the windows offer a push channel
+		 */
+		private final boolean bPushEnabled;
+
+		/**
+		 * registry of the subscribers of the push channel
+		 */
+		private final Broadcaster<String> broadcaster;
+
+		/**
+		 * interval (in milliseconds) between two checks of the configuration
+		 * file, zero disables the checks
+		 */
+		private final long checkInterval;
+
+		/**
+		 * the configuration file, <code>null</code> if not configured
+		 */
+		private final File configFile;
+
+		/**
+		 * generation of the configuration, changes with every reload and
+		 * every restart
+		 */
+		private final long generation;
+
+		/**
+		 * root path for JSPs. Per default we use the package name of the
+		 * portlet inside the WEB-INF directory.
+		 */
+		private final String jspRoot;
+
+		/**
+		 * modification time of the configuration file when it was read, zero
+		 * if it does not exist
+		 */
+		private final long lastModified;
+
+		/**
+		 * the effective parameters
+		 */
+		private final Properties parameters;
+
+		/**
+		 * fields of the model that are persisted as preferences
+		 */
+		private final Set<PREFS> persistentPreferences;
+
+		/**
+		 * cache for the preferences of our windows
+		 */
+		private final PreferencesCache preferencesCache;
+
+		/**
+		 * marshaller for the private parameters
+		 */
+		private final Marshaller privateMarshaller;
+
+		/**
+		 * fields of the model that are exchanged as public render parameters
+		 */
+		private final Set<PUBLIC_PARAMS> publicParameters;
+
+		/**
+		 * maximum time (in milliseconds) a subscription stays open
+		 */
+		private final long pushTimeout;
+
+		/**
+		 * executor for the lookups of the resource phase
+		 */
+		private final ExecutorService resourceExecutor;
+
+		/**
+		 * maximum time (in milliseconds) of the lookups of a resource request
+		 */
+		private final long resourceTimeout;
+
+		/**
+		 * signer for the private parameters, <code>null</code> if disabled
+		 */
+		private final StateSigner stateSigner;
+
+		/**
+		 * limits for the form uploads
+		 */
+		private final UploadLimits uploadLimits;
+
+		/**
+		 * aborts uploads that exceed the parse time, <code>null</code> if the
+		 * parse time is unlimited
+		 */
+		private final ScheduledExecutorService uploadWatchdog;
+
+		/**
+		 * cache for the namespaces and resource URLs of the views
+		 */
+		private final ViewCache viewCache;
+
+		/**
+		 * precompiled markup of the view mode, <code>null</code> if the view
+		 * is rendered via the JSP
+		 */
+		private final MarkupTemplate viewTemplate;
+
+		/**
+		 * Builds the configuration from the init parameters of the portlet,
+		 * overridden by the entries of the optional configuration file
+		 * 
+		 * @param aPortlet
+		 *            the portlet
+		 * @param aPrevious
+		 *            configuration to take unchanged components over from,
+		 *            <code>null</code> if there is none
+		 * @throws PortletException
+		 */
+		private Configuration(final TemplatePortlet aPortlet,
+				final Configuration aPrevious) throws PortletException {
+			// sanity check
+			assert aPortlet != null;
+			// logging support
+			final String LOG_METHOD = "Configuration(aPortlet, aPrevious)";
+			final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+			/**
+			 * The parameters. The modification time is read before the file,
+			 * so a change while we read it triggers another reload.
+			 */
+			final String fileName = aPortlet.getInitParameter(KEY_CONFIG_FILE);
+			configFile = ((fileName != null) && (fileName.trim().length() > 0)) ? new File(
+					fileName.trim()) : null;
+			lastModified = (configFile != null) ? configFile.lastModified() : 0;
+			parameters = aPortlet.loadParameters(configFile);
+			/**
+			 * The markup depends on the marshallers, the signing keys and the
+			 * other components of the configuration, so cached markup is only
+			 * valid for the generation that rendered it. Seeding the first
+			 * generation with the time of the start keeps markup rendered
+			 * before a restart from being reused after it.
+			 */
+			generation = (aPrevious != null) ? aPrevious.generation + 1
+					: System.currentTimeMillis();
+			checkInterval = TimeUnit.SECONDS.toMillis(Math.max(0,
+					getIntParameter(KEY_CONFIG_CHECK_INTERVAL,
+							DEFAULT_CONFIG_CHECK_INTERVAL)));
+			// initialize the JSP root path
+			jspRoot = "/WEB-INF/"
+					+ TemplatePortlet.class.getPackage().getName()
+							.replace('.', '/') + "/";
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Root path [{0}].", jspRoot);
+			}
+			// the model fields
+			persistentPreferences = aPortlet
+					.decodePersistentPreferences(parameters
+							.getProperty(KEY_PERSISTENT_PREFERENCES));
+			publicParameters = aPortlet.decodePublicParameters();
+			preferencesCache = isUnchanged(aPrevious,
+					KEY_PREFERENCES_CACHE_SIZE, KEY_PREFERENCES_CACHE_TTL) ? aPrevious.preferencesCache
+					: new PreferencesCache(getIntParameter(
+							KEY_PREFERENCES_CACHE_SIZE,
+							DEFAULT_PREFERENCES_CACHE_SIZE), getIntParameter(
+							KEY_PREFERENCES_CACHE_TTL,
+							DEFAULT_PREFERENCES_CACHE_TTL), TimeUnit.SECONDS);
+			/**
+			 * The view. The static resources only change on a redeployment,
+			 * so a reload keeps the manifest.
+			 */
+			assetManifest = (aPrevious != null) ? aPrevious.assetManifest
+					: aPortlet.loadAssetManifest();
+			viewTemplate = isUnchanged(aPrevious, KEY_RENDERER) ? aPrevious.viewTemplate
+					: aPortlet.loadViewTemplate(jspRoot,
+							parameters.getProperty(KEY_RENDERER));
+			viewCache = isUnchanged(aPrevious, KEY_VIEW_CACHE_SIZE,
+					KEY_VIEW_CACHE_TTL) ? aPrevious.viewCache : new ViewCache(
+					getIntParameter(KEY_VIEW_CACHE_SIZE,
+							DEFAULT_VIEW_CACHE_SIZE), getIntParameter(
+							KEY_VIEW_CACHE_TTL, DEFAULT_VIEW_CACHE_TTL),
+					TimeUnit.SECONDS);
+			// executor for the action phase
+			if (isUnchanged(aPrevious, KEY_ACTION_THREADS)) {
+				actionExecutor = aPrevious.actionExecutor;
+			} else {
+				final int actionThreads = getIntParameter(KEY_ACTION_THREADS, 0);
+				actionExecutor = (actionThreads > 0) ? ThreadPools
+						.newBoundedExecutor(aPortlet.getPortletName()
+								+ "-actions", actionThreads, 4 * actionThreads)
+						: null;
+			}
+			/**
+			 * Executor for the resource phase. Requests that do not fit into
+			 * the queue fail immediately, because running them on the
+			 * container thread would defeat the timeout.
+			 */
+			if (isUnchanged(aPrevious, KEY_RESOURCE_THREADS)) {
+				resourceExecutor = aPrevious.resourceExecutor;
+			} else {
+				final int resourceThreads = Math.max(1, getIntParameter(
+						KEY_RESOURCE_THREADS, DEFAULT_RESOURCE_THREADS));
+				resourceExecutor = ThreadPools.newBoundedExecutor(
+						aPortlet.getPortletName() + "-resources",
+						resourceThreads, 4 * resourceThreads,
+						new ThreadPoolExecutor.AbortPolicy());
+			}
+			resourceTimeout = getIntParameter(KEY_RESOURCE_TIMEOUT,
+					DEFAULT_RESOURCE_TIMEOUT);
+			/**
+			 * Push channel. Each subscriber blocks a container thread while
+			 * it waits for changes, so the channel is disabled unless a limit
+			 * for the subscribers is configured. The open subscriptions have
+			 * to survive a reload, so changed limits only take effect on a
+			 * restart. Idle topics keep their snapshot for a few push
+			 * timeouts, long enough for the clients to reconnect.
+			 */
+			bPushEnabled = (aPrevious != null) ? aPrevious.bPushEnabled
+					: getIntParameter(KEY_PUSH_MAX_SUBSCRIBERS,
+							DEFAULT_PUSH_MAX_SUBSCRIBERS) > 0;
+			broadcaster = (aPrevious != null) ? aPrevious.broadcaster
+					: new Broadcaster<String>(Math.max(1, getIntParameter(
+							KEY_PUSH_MAX_SUBSCRIBERS,
+							DEFAULT_PUSH_MAX_SUBSCRIBERS)), Math.max(1,
+							getIntParameter(KEY_PUSH_QUEUE_SIZE,
+									DEFAULT_PUSH_QUEUE_SIZE)),
+							PUSH_SNAPSHOT_TIMEOUTS
+									* Math.max(1, getIntParameter(
+											KEY_PUSH_TIMEOUT,
+											DEFAULT_PUSH_TIMEOUT)));
+			pushTimeout = getIntParameter(KEY_PUSH_TIMEOUT, DEFAULT_PUSH_TIMEOUT);
+			// protection against large or slow uploads
+			uploadLimits = new UploadLimits(getIntParameter(
+					KEY_UPLOAD_MAX_REQUEST_SIZE,
+					DEFAULT_UPLOAD_MAX_REQUEST_SIZE), getIntParameter(
+					KEY_UPLOAD_MAX_FIELD_SIZE, DEFAULT_UPLOAD_MAX_FIELD_SIZE),
+					getIntParameter(KEY_UPLOAD_MAX_PARTS,
+							DEFAULT_UPLOAD_MAX_PARTS), getIntParameter(
+							KEY_UPLOAD_MAX_PARSE_TIME,
+							DEFAULT_UPLOAD_MAX_PARSE_TIME), TimeUnit.SECONDS);
+			/**
+			 * A client that stalls blocks the read of the request body, so
+			 * the parse time is enforced by a watchdog that closes the body.
+			 */
+			if (isUnchanged(aPrevious, KEY_UPLOAD_MAX_PARSE_TIME)) {
+				uploadWatchdog = aPrevious.uploadWatchdog;
+			} else {
+				uploadWatchdog = (uploadLimits.getMaxParseTime() >= 0) ? ThreadPools
+						.newScheduler(aPortlet.getPortletName() + "-uploads")
+						: null;
+			}
+			/**
+			 * Concurrency limit. Actions in flight release their permits to
+			 * the semaphore they have acquired them from.
+			 */
+			final int maxConcurrentActions = getIntParameter(
+					KEY_MAX_CONCURRENT_ACTIONS, DEFAULT_MAX_CONCURRENT_ACTIONS);
+			if (isUnchanged(aPrevious, KEY_MAX_CONCURRENT_ACTIONS)) {
+				actionPermits = aPrevious.actionPermits;
+			} else {
+				actionPermits = (maxConcurrentActions >= 0) ? new Semaphore(
+						maxConcurrentActions) : null;
+			}
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Upload limits [{0}], concurrent actions [{1}].",
+						new Object[] { uploadLimits, maxConcurrentActions });
+			}
+			/**
+			 * Optional compression of the private string parameters. A
+			 * decompressed token can never be larger than a form field.
+			 */
+			final String dictionary = parameters
+					.getProperty(KEY_COMPRESSION_DICTIONARY);
+			if (isUnchanged(aPrevious, KEY_COMPRESSION_DICTIONARY,
+					KEY_UPLOAD_MAX_FIELD_SIZE)) {
+				privateMarshaller = aPrevious.privateMarshaller;
+			} else if ((dictionary != null)
+					&& (dictionary.trim().length() > 0)) {
+				final long maxFieldSize = uploadLimits.getMaxFieldSize();
+				final int maxLength = (int) Math.min(Integer.MAX_VALUE,
+						(maxFieldSize > 0) ? maxFieldSize
+								: DEFAULT_UPLOAD_MAX_FIELD_SIZE);
+				privateMarshaller = new CompressingMarshaller(
+						PrivateParameterMarshaller.SINGLETON,
+						dictionary.trim(), maxLength);
+			} else {
+				privateMarshaller = PrivateParameterMarshaller.SINGLETON;
+			}
+			/**
+			 * Optional signing of the private parameters. The keys are
+			 * secrets, so never log them.
+			 */
+			final String keys = parameters.getProperty(KEY_SIGNING_KEYS);
+			if (isUnchanged(aPrevious, KEY_SIGNING_KEYS)) {
+				stateSigner = aPrevious.stateSigner;
+			} else if ((keys != null) && (keys.trim().length() > 0)) {
+				try {
+					stateSigner = new StateSigner(keys.trim());
+				} catch (final GeneralSecurityException ex) {
+					dispose(aPrevious);
+					throw new PortletException(ex);
+				} catch (final IllegalArgumentException ex) {
+					dispose(aPrevious);
+					throw new PortletException(ex);
+				}
+			} else {
+				stateSigner = null;
+			}
+			// TODO initialize your custom dependencies here
+		}
+
+		/**
+		 * Releases the resources of the configuration that another
+		 * configuration does not share
+		 * 
+		 * @param aOther
+		 *            the configuration that keeps its resources,
+		 *            <code>null</code> to release all resources
+		 */
+		private void dispose(final Configuration aOther) {
+			final boolean bAll = (aOther == null);
+			// release the compression streams
+			if ((privateMarshaller instanceof CompressingMarshaller)
+					&& (bAll || (aOther.privateMarshaller != privateMarshaller))) {
+				((CompressingMarshaller) privateMarshaller).dispose();
+			}
+			// stop the executors
+			if (bAll || (aOther.actionExecutor != actionExecutor)) {
+				ThreadPools.shutdown(actionExecutor);
+			}
+			if (bAll || (aOther.resourceExecutor != resourceExecutor)) {
+				ThreadPools.shutdown(resourceExecutor);
+			}
+			if (bAll || (aOther.uploadWatchdog != uploadWatchdog)) {
+				ThreadPools.shutdown(uploadWatchdog);
+			}
+			// TODO release your custom dependencies here
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateActions.Dependencies#
+		 * getActionExecutor()
+		 */
+		@Override
+		public ExecutorService getActionExecutor() {
+			return actionExecutor;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.common.AbstractView.Dependencies#
+		 * getAssetManifest()
+		 */
+		@Override
+		public AssetManifest getAssetManifest() {
+			return assetManifest;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateLookups.Dependencies#
+		 * getBroadcaster()
+		 */
+		@Override
+		public Broadcaster<String> getBroadcaster() {
+			return broadcaster;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getGeneration()
+		 */
+		@Override
+		public long getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * Reads a numeric parameter
+		 * 
+		 * @param aName
+		 *            name of the parameter
+		 * @param aDefault
+		 *            default value, used if the parameter is missing or
+		 *            invalid
+		 * @return the value
+		 */
+		private int getIntParameter(final String aName, final int aDefault) {
+			// logging support
+			final String LOG_METHOD = "getIntParameter(aName, aDefault)";
+			// the parameter
+			final String value = parameters.getProperty(aName);
+			if (value != null) {
+				try {
+					return Integer.parseInt(value.trim());
+				} catch (final NumberFormatException ex) {
+					// log this
+					LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+							"Invalid value [{0}] for parameter [{1}].",
+							new Object[] { value, aName });
+				}
+			}
+			// fallback
+			return aDefault;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getPersistentPreferences()
+		 */
+		@Override
+		public Set<PREFS> getPersistentPreferences() {
+			return persistentPreferences;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getPreferencesCache()
+		 */
+		@Override
+		public PreferencesCache getPreferencesCache() {
+			return preferencesCache;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.portlettemplate.model.TemplateModel.
+		 * Dependencies#getPrivateParameterMarshaller()
+		 */
+		@Override
+		public Marshaller getPrivateParameterMarshaller() {
+			// decide how to marshal private parameters
+			return privateMarshaller;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getPublicParameterMarshaller()
+		 */
+		@Override
+		public Marshaller getPublicParameterMarshaller() {
+			// the public contract of the parameters
+			return PublicParameterMarshaller.SINGLETON;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getPublicParameters()
+		 */
+		@Override
+		public Set<PUBLIC_PARAMS> getPublicParameters() {
+			return publicParameters;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateLookups.Dependencies#
+		 * getPushTimeout()
+		 */
+		@Override
+		public long getPushTimeout() {
+			return pushTimeout;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateLookups.Dependencies#
+		 * getResourceExecutor()
+		 */
+		@Override
+		public ExecutorService getResourceExecutor() {
+			return resourceExecutor;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateLookups.Dependencies#
+		 * getResourceTimeout()
+		 */
+		@Override
+		public long getResourceTimeout() {
+			return resourceTimeout;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * getStateSigner()
+		 */
+		@Override
+		public StateSigner getStateSigner() {
+			return stateSigner;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateActions.Dependencies#
+		 * getUploadLimits()
+		 */
+		@Override
+		public UploadLimits getUploadLimits() {
+			return uploadLimits;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateActions.Dependencies#
+		 * getUploadWatchdog()
+		 */
+		@Override
+		public ScheduledExecutorService getUploadWatchdog() {
+			return uploadWatchdog;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.common.AbstractView.Dependencies#
+		 * getViewCache()
+		 */
+		@Override
+		public ViewCache getViewCache() {
+			return viewCache;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateModel.Dependencies#
+		 * isPushEnabled()
+		 */
+		@Override
+		public boolean isPushEnabled() {
+			return bPushEnabled;
+		}
+
+		/**
+		 * Tests if parameters have the same values as in another
+		 * configuration, in which case the components that depend on them
+		 * can be taken over
+		 * 
+		 * @param aOther
+		 *            the other configuration, may be <code>null</code>
+		 * @param aNames
+		 *            names of the parameters
+		 * @return <code>true</code> if the other configuration exists and
+		 *         all parameters are equal
+		 */
+		private boolean isUnchanged(final Configuration aOther,
+				final String... aNames) {
+			if (aOther == null) {
+				return false;
+			}
+			for (final String name : aNames) {
+				final String value = parameters.getProperty(name);
+				final String other = aOther.parameters.getProperty(name);
+				if ((value != null) ? !value.equals(other) : (other != null)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// implement your getters here
+	}
+
+	/**
+	 * default for the interval (in seconds) between two checks of the
+	 * configuration file
+	 */
+	private static final int DEFAULT_CONFIG_CHECK_INTERVAL = 30;
+
+	/**
+	 * encoding of the markup if the response does not specify one, the
+	 * precompiled markup is encoded in advance in this encoding
+	 */
+	private static final String DEFAULT_ENCODING = "UTF-8";
+
+	/**
+	 * default for the maximum number of concurrently processed actions
+	 */
+	private static final int DEFAULT_MAX_CONCURRENT_ACTIONS = 64;
+
+	/**
+	 * default for the maximum number of windows in the preferences cache
+	 */
+	private static final int DEFAULT_PREFERENCES_CACHE_SIZE = 50000;
+
+	/**
+	 * default for the time to live (in seconds) of an entry in the preferences
+	 * cache
+	 */
+	private static final int DEFAULT_PREFERENCES_CACHE_TTL = 600;
+
+	/**
+	 * default for the maximum number of concurrent subscribers of the push
+	 * channel. Each of them holds a container thread for up to the push
+	 * timeout, so the channel is disabled by default.
+	 */
+	private static final int DEFAULT_PUSH_MAX_SUBSCRIBERS = 0;
+
+	/**
+	 * default for the number of pending messages per subscriber of the push
+	 * channel
+	 */
+	private static final int DEFAULT_PUSH_QUEUE_SIZE = 16;
+
+	/**
+	 * default for the maximum time (in milliseconds) a subscription to the
+	 * push channel stays open
+	 */
+	private static final int DEFAULT_PUSH_TIMEOUT = 25000;
+
+	/**
+	 * default for the number of threads that execute the lookups of the
+	 * resource phase
+	 */
+	private static final int DEFAULT_RESOURCE_THREADS = 16;
+
+	/**
+	 * default for the maximum time (in milliseconds) of the lookups of a
+	 * resource request
+	 */
+	private static final int DEFAULT_RESOURCE_TIMEOUT = 2000;
+
+	/**
+	 * default for the maximum size of a form field in bytes
+	 */
+	private static final int DEFAULT_UPLOAD_MAX_FIELD_SIZE = 256 * 1024;
+
+	/**
+	 * default for the maximum time (in seconds) to read a form upload
+	 */
+	private static final int DEFAULT_UPLOAD_MAX_PARSE_TIME = 10;
+
+	/**
+	 * default for the maximum number of fields in a form upload
+	 */
+	private static final int DEFAULT_UPLOAD_MAX_PARTS = 64;
+
+	/**
+	 * default for the maximum size of a form upload in bytes
+	 */
+	private static final int DEFAULT_UPLOAD_MAX_REQUEST_SIZE = 1024 * 1024;
+
+	/**
+	 * default for the maximum number of windows in the view cache
+	 */
+	private static final int DEFAULT_VIEW_CACHE_SIZE = 50000;
+
+	/**
+	 * default for the time to live (in seconds) of an entry in the view cache
+	 */
+	private static final int DEFAULT_VIEW_CACHE_TTL = 86400;
+
+	/**
+	 * Name of the init parameter for the number of threads used to decode
+	 * independent form fields in parallel. A value of zero disables the
+	 * parallel decoding.
+	 */
+	private static final String KEY_ACTION_THREADS = "com.ibm.portal.samples.mvc.parallelActions.threads";
+
+	/**
+	 * Name of the init parameter for the preset dictionary used to compress
+	 * the private string parameters. The compression is disabled if the
+	 * parameter is missing or empty.
+	 */
+	private static final String KEY_COMPRESSION_DICTIONARY = "com.ibm.portal.samples.mvc.compression.dictionary";
+
+	/**
+	 * Name of the parameter for the interval (in seconds) between two checks
+	 * of the configuration file. Zero disables the checks.
+	 */
+	private static final String KEY_CONFIG_CHECK_INTERVAL = "com.ibm.portal.samples.mvc.config.checkInterval";
+
+	/**
+	 * Name of the init parameter for the path of an optional properties file
+	 * whose entries override the init parameters. The portlet reloads its
+	 * configuration when the file changes.
+	 */
+	private static final String KEY_CONFIG_FILE = "com.ibm.portal.samples.mvc.config.file";
+
+	/**
+	 * Name of the request attribute for the controller
+	 */
+	private static final String KEY_CONTROLLER = "controller";
+
+	/**
+	 * Name of the init parameter for the maximum number of concurrently
+	 * processed actions. Further actions are rejected immediately. A negative
+	 * value disables the limit.
+	 */
+	private static final String KEY_MAX_CONCURRENT_ACTIONS = "com.ibm.portal.samples.mvc.maxConcurrentActions";
+
+	/**
+	 * Name of the request attribute for the model
+	 */
+	private static final String KEY_MODEL = "model";
+
+	/**
+	 * Name of the init parameter that lists the model fields (as a comma
+	 * separated list of {@link PREFS} names) that are persisted as portlet
+	 * preferences
+	 */
+	private static final String KEY_PERSISTENT_PREFERENCES = "com.ibm.portal.samples.mvc.persistentPreferences";
+
+	/**
+	 * Name of the init parameter for the maximum number of windows in the
+	 * preferences cache
+	 */
+	private static final String KEY_PREFERENCES_CACHE_SIZE = "com.ibm.portal.samples.mvc.preferencesCache.maxSize";
+
+	/**
+	 * Name of the init parameter for the time to live (in seconds) of an entry
+	 * in the preferences cache
+	 */
+	private static final String KEY_PREFERENCES_CACHE_TTL = "com.ibm.portal.samples.mvc.preferencesCache.timeToLive";
+
+	/**
+	 * Name of the init parameter for the maximum number of concurrent
+	 * subscribers of the push channel
+	 */
+	private static final String KEY_PUSH_MAX_SUBSCRIBERS = "com.ibm.portal.samples.mvc.push.maxSubscribers";
+
+	/**
+	 * Name of the init parameter for the number of pending messages per
+	 * subscriber of the push channel
+	 */
+	private static final String KEY_PUSH_QUEUE_SIZE = "com.ibm.portal.samples.mvc.push.queueSize";
+
+	/**
+	 * Name of the init parameter for the maximum time (in milliseconds) a
+	 * subscription to the push channel stays open
+	 */
+	private static final String KEY_PUSH_TIMEOUT = "com.ibm.portal.samples.mvc.push.timeout";
+
+	/**
+	 * Name of the init parameter that selects how the view is rendered, either
+	 * {@link #RENDERER_JSP} or {@link #RENDERER_SEGMENTS}
+	 */
+	private static final String KEY_RENDERER = "com.ibm.portal.samples.mvc.renderer";
+
+	/**
+	 * Name of the init parameter for the number of threads that execute the
+	 * lookups of the resource phase
+	 */
+	private static final String KEY_RESOURCE_THREADS = "com.ibm.portal.samples.mvc.resources.threads";
+
+	/**
+	 * Name of the init parameter for the maximum time (in milliseconds) of the
+	 * lookups of a resource request
+	 */
+	private static final String KEY_RESOURCE_TIMEOUT = "com.ibm.portal.samples.mvc.resources.timeout";
+
+	/**
+	 * Name of the init parameter for the keys that sign the private render
+	 * parameters, a comma separated list of <code>id:secret</code> pairs. The
+	 * first key signs, all keys verify. The signing is disabled if the
+	 * parameter is missing or empty.
+	 */
+	private static final String KEY_SIGNING_KEYS = "com.ibm.portal.samples.mvc.signing.keys";
+
+	/**
+	 * Name of the init parameter for the maximum size of a form field in
+	 * bytes
+	 */
+	private static final String KEY_UPLOAD_MAX_FIELD_SIZE = "com.ibm.portal.samples.mvc.upload.maxFieldSize";
+
+	/**
+	 * Name of the init parameter for the maximum time (in seconds) to read a
+	 * form upload
+	 */
+	private static final String KEY_UPLOAD_MAX_PARSE_TIME = "com.ibm.portal.samples.mvc.upload.maxParseTime";
+
+	/**
+	 * Name of the init parameter for the maximum number of fields in a form
+	 * upload
+	 */
+	private static final String KEY_UPLOAD_MAX_PARTS = "com.ibm.portal.samples.mvc.upload.maxParts";
+
+	/**
+	 * Name of the init parameter for the maximum size of a form upload in
+	 * bytes
+	 */
+	private static final String KEY_UPLOAD_MAX_REQUEST_SIZE = "com.ibm.portal.samples.mvc.upload.maxRequestSize";
+
+	/**
+	 * Name of the request attribute for the view
+	 */
+	private static final String KEY_VIEW = "view";
+
+	/**
+	 * Name of the init parameter for the maximum number of windows in the
+	 * cache for the namespaces and resource URLs of the views
+	 */
+	private static final String KEY_VIEW_CACHE_SIZE = "com.ibm.portal.samples.mvc.viewCache.maxSize";
+
+	/**
+	 * Name of the init parameter for the time to live (in seconds) of an entry
+	 * in the view cache
+	 */
+	private static final String KEY_VIEW_CACHE_TTL = "com.ibm.portal.samples.mvc.viewCache.timeToLive";
+
+	/**
+	 * Name of the parameter for the number of synthetic requests that warm up
+	 * the JIT after the initialization. Zero disables the warm-up, e.g. on a
+	 * node via the configuration file.
+	 */
+	private static final String KEY_WARMUP_ITERATIONS = "com.ibm.portal.samples.mvc.warmup.iterations";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplatePortlet.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * number of push timeouts a topic without subscribers keeps its snapshot
+	 */
+	private static final long PUSH_SNAPSHOT_TIMEOUTS = 4;
+
+	/**
+	 * renders the view via the request dispatcher and the JSP
+	 */
+	private static final String RENDERER_JSP = "jsp";
+
+	/**
+	 * renders the view from the JSP precompiled into pre-encoded segments,
+	 * written to the output stream of the response
+	 */
+	private static final String RENDERER_SEGMENTS = "segments";
+
+	/**
+	 * names of the beans that the view refers to, in the order passed to the
+	 * precompiled markup, {@link TemplateWarmup} passes them in the same order
+	 */
+	private static final String[] TEMPLATE_BEANS = { KEY_VIEW, KEY_MODEL,
+			KEY_CONTROLLER };
+
+	/**
+	 * the shared state, <code>null</code> if the portlet is not initialized
+	 */
+	private final AtomicReference<Configuration> configuration = new AtomicReference<Configuration>();
+
+	/**
+	 * time (in milliseconds) of the next check of the configuration file
+	 */
+	private final AtomicLong nextCheck = new AtomicLong();
+
+	/**
+	 * number of actions that have been rejected because of the concurrency
+	 * limit
+	 */
+	private final AtomicLong rejectedActions = new AtomicLong();
+
+	/**
+	 * number of uploads that have been rejected because of the upload limits
+	 */
+	private final AtomicLong rejectedUploads = new AtomicLong();
+
+	/**
+	 * the configuration replaced by the last reload, its resources are
+	 * released with the next reload
+	 */
+	private final AtomicReference<Configuration> retired = new AtomicReference<Configuration>();
+
+	/**
+	 * the thread that warms up the JIT, <code>null</code> if there is none
+	 */
+	private volatile Thread warmup;
+
+	/**
+	 * Constructs the action handler
+	 * 
+	 * @param aModel
+	 *            model the actions will work on
+	 * @param aRequest
+	 *            the action request
+	 * @param aResponse
+	 *            the action response
+	 * @param aDeps
+	 *            the dependencies
+	 * @return the model
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	private final TemplateActions createActions(final TemplateModel aModel,
+			final ActionRequest aRequest, final ActionResponse aResponse,
+			final Dependencies aDeps) throws PortletException, IOException {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		/**
+		 * Decodes the action.This method normally does not have to be changed.
+		 * Rather change the implementation of the action.
+		 */
+		return new TemplateActions(aModel, aRequest, aResponse, aDeps);
+	}
+
+	/**
+	 * Constructs a new controller
+	 * 
+	 * @param aModel
+	 *            the model
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * @param aDeps
+	 *            the dependencies
+	 * @return the controller
+	 */
+	private final TemplateController createController(
+			final TemplateModel aModel, final PortletRequest aRequest,
+			final MimeResponse aResponse, final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		/**
+		 * Constructs the controller. This method normally does not have to be
+		 * changed. Rather change the implementation of the controller.
+		 */
+		return new TemplateController(aModel, aRequest, aResponse, aDeps);
+	}
+
+	/**
+	 * Constructs the event handler
+	 * 
+	 * @param aModel
+	 *            model the events will work on
+	 * @param aRequest
+	 *            the event request
+	 * @param aResponse
+	 *            the event response
+	 * @param aDeps
+	 *            the dependencies
+	 * @return the event handler
+	 */
+	private final TemplateEvents createEvents(final TemplateModel aModel,
+			final EventRequest aRequest, final EventResponse aResponse,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		/**
+		 * Decodes the events. This method normally does not have to be
+		 * changed. Rather change the implementation of the events.
+		 */
+		return new TemplateEvents(aModel, aRequest, aResponse, aDeps);
+	}
+
+	/**
+	 * Constructs the resource handler
+	 * 
+	 * @param aModel
+	 *            model the resources are based on
+	 * @param aRequest
+	 *            the resource request
+	 * @param aResponse
+	 *            the resource response
+	 * @param aDeps
+	 *            the dependencies
+	 * @return the resource handler
+	 */
+	private final TemplateLookups createLookups(final TemplateModel aModel,
+			final ResourceRequest aRequest, final ResourceResponse aResponse,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		/**
+		 * Decodes the resource. This method normally does not have to be
+		 * changed. Rather change the implementation of the lookups.
+		 */
+		return new TemplateLookups(aModel, aRequest, aResponse, aDeps);
+	}
+
+	/**
+	 * Decodes the model used during rendering
+	 * 
+	 * @param aRequest
+	 *            the portlet request
+	 * @param aResponse
+	 *            the portlet response
+	 * @param aDeps
+	 *            the dependencies
+	 * @return the model
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	private final TemplateModel decodeModel(final PortletRequest aRequest,
+			final PortletResponse aResponse, final Dependencies aDeps)
+			throws PortletException, IOException {
+		// sanity check
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		/**
+		 * Decodes the model.This method normally does not have to be changed.
+		 * Rather change the implementation of the model.
+		 */
+		return new TemplateModel(aRequest, aResponse, getPortletConfig(), aDeps);
+	}
+
+	/**
+	 * Decodes the set of model fields that are persisted as preferences
+	 * 
+	 * @param aValue
+	 *            value of the parameter, may be <code>null</code>
+	 * @return the set of fields
+	 */
+	private final Set<PREFS> decodePersistentPreferences(final String aValue) {
+		// logging support
+		final String LOG_METHOD = "decodePersistentPreferences(aValue)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		// the result
+		final Set<PREFS> result = EnumSet.noneOf(PREFS.class);
+		// parse the parameter
+		if (aValue != null) {
+			for (final String name : aValue.split(",")) {
+				final String trimmed = name.trim();
+				if (trimmed.length() > 0) {
+					try {
+						result.add(PREFS.valueOf(trimmed));
+					} catch (final IllegalArgumentException ex) {
+						// log this
+						LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+								"Ignoring unknown preference [{0}].", trimmed);
+					}
+				}
+			}
+		}
+		// log this
+		if (bIsLogging) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Persistent preferences [{0}].", result);
+		}
+		// ok
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Decodes the set of model fields that are exchanged as public render
+	 * parameters. A field is public if the portlet descriptor declares its
+	 * public render parameter as supported.
+	 * 
+	 * @return the set of fields
+	 */
+	private final Set<PUBLIC_PARAMS> decodePublicParameters() {
+		// logging support
+		final String LOG_METHOD = "decodePublicParameters()";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		// the supported identifiers
+		final Set<String> names = new HashSet<String>(
+				Collections.list(getPortletConfig()
+						.getPublicRenderParameterNames()));
+		// the result
+		final Set<PUBLIC_PARAMS> result = EnumSet.noneOf(PUBLIC_PARAMS.class);
+		for (final PUBLIC_PARAMS param : PUBLIC_PARAMS.values()) {
+			if (names.contains(PublicParameterMarshaller.SINGLETON
+					.marshalEnum(param))) {
+				result.add(param);
+			}
+		}
+		// log this
+		if (bIsLogging) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Public parameters [{0}].", result);
+		}
+		// ok
+		return Collections.unmodifiableSet(result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.GenericPortlet#destroy()
+	 */
+	@Override
+	public void destroy() {
+		// logging support
+		final String LOG_METHOD = "destroy()";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// stop the warm-up
+		final Thread thread = warmup;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		// unpublish the shared state, new requests fail from now on
+		final Configuration config = configuration.getAndSet(null);
+		final Configuration previous = retired.getAndSet(null);
+		if (previous != null) {
+			previous.dispose(config);
+		}
+		// report the rejected actions, useful to size the concurrency limit
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Rejected [{0}] actions because of the concurrency limit.",
+				rejectedActions.get());
+		// report the rejected uploads, useful to size the upload limits
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Rejected [{0}] uploads because of the upload limits.",
+				rejectedUploads.get());
+		if (config != null) {
+			// report the cache statistics, useful to size the cache
+			LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+					"Preferences cache statistics {0}.",
+					config.preferencesCache.getSnapshots());
+			LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+					"View cache statistics {0}.", config.viewCache);
+			// report the push channel, useful to size the subscriber limit
+			LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+					"Push channel statistics {0}.", config.broadcaster);
+			// release the streams and executors
+			config.dispose(null);
+		}
+		// default
+		super.destroy();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.GenericPortlet#doDispatch(javax.portlet.RenderRequest,
+	 * javax.portlet.RenderResponse)
+	 */
+	@Override
+	protected void doDispatch(final RenderRequest request,
+			final RenderResponse response) throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "doDispatch(request, response)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// initialize the content type
+		response.setContentType(request.getResponseContentType());
+		final Configuration config = getConfiguration();
+		if ((config.viewTemplate != null)
+				&& PortletMode.VIEW.equals(request.getPortletMode())) {
+			/**
+			 * Write the precompiled markup. The static segments are already
+			 * encoded, so only the values of the beans pass the encoder.
+			 */
+			final Object[] beans = new Object[TEMPLATE_BEANS.length];
+			for (int i = 0; i < beans.length; ++i) {
+				beans[i] = request.getAttribute(TEMPLATE_BEANS[i]);
+			}
+			final String encoding = response.getCharacterEncoding();
+			config.viewTemplate.write(response.getPortletOutputStream(),
+					(encoding != null) ? encoding : DEFAULT_ENCODING, beans);
+		} else {
+			// render the JSP
+			final String jspName = config.jspRoot + request.getPortletMode()
+					+ ".jsp";
+			getPortletContext().getRequestDispatcher(jspName).include(request,
+					response);
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Returns the shared state of the portlet
+	 * 
+	 * @return the configuration
+	 * @throws UnavailableException
+	 *             if the portlet has not been initialized or has been
+	 *             destroyed
+	 */
+	private final Configuration getConfiguration() throws UnavailableException {
+		// read the reference only once
+		final Configuration result = configuration.get();
+		if (result == null) {
+			throw new UnavailableException("The portlet is not initialized.");
+		}
+		// check the configuration file from time to time
+		if ((result.configFile != null) && (result.checkInterval > 0)) {
+			final long now = System.currentTimeMillis();
+			final long next = nextCheck.get();
+			// only one request thread checks, the others proceed
+			if ((now >= next)
+					&& nextCheck.compareAndSet(next, now + result.checkInterval)
+					&& (result.configFile.lastModified() != result.lastModified)) {
+				return reload(result);
+			}
+		}
+		// ok
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.ibm.portal.portlet.base.portal.WebSpherePortalPortlet#init()
+	 */
+	@Override
+	public void init() throws PortletException {
+		// logging support
+		final String LOG_METHOD = "init()";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// default
+		super.init();
+		// build and publish the shared state
+		final Configuration config = new Configuration(this, null);
+		configuration.set(config);
+		// warm up the JIT in the background, requests are served meanwhile
+		final int iterations = config.getIntParameter(KEY_WARMUP_ITERATIONS,
+				0);
+		if (iterations > 0) {
+			final Thread thread = new Thread(new TemplateWarmup(
+					getPortletConfig(), config, iterations,
+					config.viewTemplate), getPortletName() + "-warmup");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			warmup = thread;
+			thread.start();
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Reads the manifest of the fingerprinted static resources of the
+	 * application
+	 * 
+	 * @return the manifest, empty if the build did not fingerprint the
+	 *         resources
+	 * @throws PortletException
+	 *             if the manifest exists but cannot be read
+	 */
+	private final AssetManifest loadAssetManifest() throws PortletException {
+		// logging support
+		final String LOG_METHOD = "loadAssetManifest()";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		// the manifest
+		final AssetManifest result;
+		try {
+			result = AssetManifest.load(getPortletContext()
+					.getResourceAsStream(AssetManifest.PATH));
+		} catch (final IOException ex) {
+			throw new PortletException("Cannot read the asset manifest ["
+					+ AssetManifest.PATH + "].", ex);
+		}
+		// log this
+		if (bIsLogging) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Read the asset manifest {0}.", result);
+		}
+		// ok
+		return result;
+	}
+
+	/**
+	 * Compiles the JSP of the view mode into pre-encoded markup segments, if
+	 * the renderer selects them
+	 * 
+	 * @param aJspRoot
+	 *            root path of the JSPs
+	 * @param aRenderer
+	 *            the selected renderer, may be <code>null</code>
+	 * @return the markup, or <code>null</code> if the view is rendered via
+	 *         the JSP
+	 */
+	private final MarkupTemplate loadViewTemplate(final String aJspRoot,
+			final String aRenderer) {
+		// logging support
+		final String LOG_METHOD = "loadViewTemplate(aJspRoot, aRenderer)";
+		// check the renderer
+		final String renderer = (aRenderer != null) ? aRenderer.trim()
+				: RENDERER_JSP;
+		if (RENDERER_JSP.equals(renderer) || (renderer.length() == 0)) {
+			return null;
+		}
+		if (!RENDERER_SEGMENTS.equals(renderer)) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"Unknown renderer [{0}], rendering via the JSP.", renderer);
+			return null;
+		}
+		// read the JSP, the default page encoding of JSPs is ISO-8859-1
+		final String jspName = aJspRoot + PortletMode.VIEW + ".jsp";
+		final InputStream in = getPortletContext().getResourceAsStream(
+				jspName);
+		if (in == null) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"Cannot find [{0}], rendering via the JSP.", jspName);
+			return null;
+		}
+		final StringBuilder source = new StringBuilder();
+		try {
+			try {
+				final Reader reader = new InputStreamReader(in, "ISO-8859-1");
+				final char[] buffer = new char[4096];
+				for (int len = reader.read(buffer); len >= 0; len = reader
+						.read(buffer)) {
+					source.append(buffer, 0, len);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (final IOException ex) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"Cannot read [" + jspName + "], rendering via the JSP.", ex);
+			return null;
+		}
+		// compile it
+		final MarkupTemplate result;
+		try {
+			result = MarkupTemplate.compile(source.toString(), TEMPLATE_BEANS,
+					new Class<?>[] { TemplateView.class, TemplateModel.class,
+							TemplateController.class });
+		} catch (final IllegalArgumentException ex) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD, "Cannot compile ["
+					+ jspName + "], rendering via the JSP.", ex);
+			return null;
+		}
+		result.prepare(DEFAULT_ENCODING);
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Compiled [{0}] into {1}.", new Object[] { jspName, result });
+		// ok
+		return result;
+	}
+
+	/**
+	 * Reads the parameters of the portlet, i.e. its init parameters overridden
+	 * by the entries of the configuration file
+	 * 
+	 * @param aFile
+	 *            the configuration file, may be <code>null</code>. A missing
+	 *            file does not override any parameter.
+	 * @return the parameters
+	 * @throws PortletException
+	 *             if the file exists but cannot be read
+	 */
+	private final Properties loadParameters(final File aFile)
+			throws PortletException {
+		// logging support
+		final String LOG_METHOD = "loadParameters(aFile)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		// the init parameters
+		final Properties result = new Properties();
+		final Enumeration<String> names = getInitParameterNames();
+		while (names.hasMoreElements()) {
+			final String name = names.nextElement();
+			result.setProperty(name, getInitParameter(name));
+		}
+		// the overrides
+		if ((aFile != null) && aFile.isFile()) {
+			try {
+				final InputStream in = new FileInputStream(aFile);
+				try {
+					result.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (final IOException ex) {
+				throw new PortletException("Cannot read the configuration file ["
+						+ aFile + "].", ex);
+			}
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Read the configuration file [{0}].", aFile);
+			}
+		}
+		// ok
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.portlet.GenericPortlet#processAction(javax.portlet.ActionRequest,
+	 * javax.portlet.ActionResponse)
+	 */
+	@Override
+	public void processAction(final ActionRequest request,
+			final ActionResponse response) throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "processAction(request, response)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		/**
+		 * Shed load before we start reading the request body. Failing fast
+		 * protects the latency of the requests that are already in progress.
+		 */
+		final Configuration config = getConfiguration();
+		final Semaphore permits = config.actionPermits;
+		if ((permits != null) && !permits.tryAcquire()) {
+			// count the rejection
+			final long rejected = rejectedActions.incrementAndGet();
+			// log this
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.logp(Level.FINE, LOG_CLASS, LOG_METHOD,
+						"Rejecting action, [{0}] actions rejected so far.",
+						rejected);
+			}
+			throw new PortletException(
+					"Too many concurrent actions, please try again later.");
+		}
+		try {
+			// decode the model
+			final TemplateModel model = decodeModel(request, response, config);
+			// remember the state for the push channel
+			final String topic = model.getPushTopic();
+			final TemplateState previous = (topic != null) ? model
+					.getState() : null;
+			// construct the action handler
+			final TemplateActions actions = createActions(model, request,
+					response, config);
+			try {
+				// process the model
+				if (actions.processActions()) {
+					// log this
+					if (bIsLogging) {
+						LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+								"Committing the model ...");
+					}
+					// commit persistent modifications
+					actions.commit();
+				}
+				// notify the subscribers of the window
+				if (topic != null) {
+					publishChanges(topic, previous, model, config);
+				}
+			} catch (final FileUploadException ex) {
+				// count the rejection
+				final long rejected = rejectedUploads.incrementAndGet();
+				// a limit protects the server, so make it visible
+				LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+						"Rejected an upload, [{0}] uploads rejected so far: {1}",
+						new Object[] { rejected, ex.getMessage() });
+			} catch (final Throwable ex) {
+				// handle the exception
+				if (bIsLogging) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Action failed.", ex);
+				}
+			} finally {
+				/**
+				 * Encodes the model. This is an important step, without it the
+				 * navigational state would be lost after the action.
+				 */
+				model.encode(response);
+				// dispose
+				actions.dispose();
+				model.dispose();
+			}
+		} finally {
+			// release the permit
+			if (permits != null) {
+				permits.release();
+			}
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.portlet.GenericPortlet#processEvent(javax.portlet.EventRequest,
+	 * javax.portlet.EventResponse)
+	 */
+	@Override
+	public void processEvent(final EventRequest request,
+			final EventResponse response) throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "processEvent(request, response)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// decode the model
+		final Configuration config = getConfiguration();
+		final TemplateModel model = decodeModel(request, response, config);
+		// remember the state for the push channel
+		final String topic = model.getPushTopic();
+		final TemplateState previous = (topic != null) ? model.getState()
+				: null;
+		// construct the event handler
+		final TemplateEvents events = createEvents(model, request, response,
+				config);
+		try {
+			// apply the event
+			if (events.processEvents()) {
+				// commit persistent modifications
+				events.commit();
+				// notify the subscribers of the window
+				if (topic != null) {
+					publishChanges(topic, previous, model, config);
+				}
+				// encode the modified model
+				model.encode(response);
+			} else {
+				/**
+				 * The event did not change anything, so we keep the current
+				 * render parameters. This avoids the encoding step and keeps
+				 * the cached markup valid.
+				 */
+				response.setRenderParameters(request);
+			}
+		} finally {
+			// dispose
+			events.dispose();
+			model.dispose();
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Publishes the modifications of the model to the subscribers of the push
+	 * channel. Only the modified fields are sent, the complete state is kept
+	 * for subscribers that missed messages.
+	 * 
+	 * @param aTopic
+	 *            key of the push channel
+	 * @param aPrevious
+	 *            state of the model before the modification
+	 * @param aModel
+	 *            the modified model
+	 * @param aDeps
+	 *            the dependencies
+	 */
+	private final void publishChanges(final String aTopic,
+			final TemplateState aPrevious, final TemplateModel aModel,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aTopic != null;
+		assert aPrevious != null;
+		assert aModel != null;
+		assert aDeps != null;
+		// logging support
+		final String LOG_METHOD = "publishChanges(aTopic, aPrevious, aModel, aDeps)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		// compute the delta
+		final TemplateState state = aModel.getState();
+		final String changes = state.getChanges(aPrevious);
+		if (changes != null) {
+			final long seq = aDeps.getBroadcaster().publish(aTopic, changes,
+					state.toJson());
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Published [{0}] as [{1}] to [{2}].", new Object[] {
+								changes, seq, aTopic });
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the configuration and publishes it atomically. Requests in
+	 * flight keep using the configuration they have read. The resources that
+	 * the new configuration does not take over are therefore released only
+	 * with the next reload or when the portlet is destroyed.
+	 * 
+	 * @param aCurrent
+	 *            the configuration to replace
+	 * @return the new configuration or the current one if the reload failed
+	 */
+	private final Configuration reload(final Configuration aCurrent) {
+		// logging support
+		final String LOG_METHOD = "reload(aCurrent)";
+		// build the new configuration
+		final Configuration result;
+		try {
+			result = new Configuration(this, aCurrent);
+		} catch (final PortletException ex) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"Keeping the current configuration, the reload failed.",
+					ex);
+			return aCurrent;
+		}
+		// publish it, unless the portlet has been destroyed meanwhile
+		if (!configuration.compareAndSet(aCurrent, result)) {
+			result.dispose(aCurrent);
+			return aCurrent;
+		}
+		// release the configuration replaced by the last reload
+		final Configuration previous = retired.getAndSet(aCurrent);
+		if (previous != null) {
+			previous.dispose(aCurrent);
+		}
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Reloaded the configuration from [{0}].", result.configFile);
+		// ok
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.portlet.GenericPortlet#render(javax.portlet.RenderRequest,
+	 * javax.portlet.RenderResponse)
+	 */
+	@Override
+	public void render(final RenderRequest request,
+			final RenderResponse response) throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "doDispatch(request, response)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// decode the model
+		final Configuration config = getConfiguration();
+		final TemplateModel model = decodeModel(request, response, config);
+		/**
+		 * Validation based caching. The token represents the state consumed by
+		 * the markup, so if the portal asks us to validate its cached markup
+		 * (e.g. because a public render parameter of the page changed) we only
+		 * render again if a value we actually use has changed.
+		 */
+		final String etag = model.getETag();
+		final CacheControl cacheControl = response.getCacheControl();
+		if (etag.equals(request.getETag())) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Cached markup for [{0}] is still valid.", etag);
+			}
+			// reuse the markup for another expiration period
+			cacheControl.setExpirationTime(cacheControl.getExpirationTime());
+			cacheControl.setUseCachedContent(true);
+			// release the model
+			model.dispose();
+			// exit trace
+			if (bIsLogging) {
+				LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+			}
+			return;
+		}
+		cacheControl.setETag(etag);
+		// construct the view bean
+		final TemplateView view = new TemplateView(getPortletConfig(), request,
+				response, config);
+		// get the controller
+		final TemplateController controller = createController(model, request,
+				response, config);
+		// set the beans, so we can access them in the JSP
+		request.setAttribute(KEY_VIEW, view);
+		request.setAttribute(KEY_MODEL, model);
+		request.setAttribute(KEY_CONTROLLER, controller);
+		try {
+			// default handling
+			super.render(request, response);
+		} finally {
+			// release model and controller
+			request.removeAttribute(KEY_CONTROLLER);
+			request.removeAttribute(KEY_MODEL);
+			request.removeAttribute(KEY_VIEW);
+			// dispose
+			controller.dispose();
+			model.dispose();
+			view.dispose();
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.portlet.GenericPortlet#serveResource(javax.portlet.ResourceRequest,
+	 * javax.portlet.ResourceResponse)
+	 */
+	@Override
+	public void serveResource(final ResourceRequest request,
+			final ResourceResponse response) throws PortletException,
+			IOException {
+		/**
+		 * Make sure to override the default implementation, because it exposes
+		 * a security issue. We never dispatch to the resource ID.
+		 */
+		// logging support
+		final String LOG_METHOD = "serveResource(request, response)";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// decode the model
+		final Configuration config = getConfiguration();
+		final TemplateModel model = decodeModel(request, response, config);
+		// construct the resource handler
+		final TemplateLookups lookups = createLookups(model, request, response,
+				config);
+		try {
+			// serve the resource
+			lookups.serveResource();
+		} finally {
+			// dispose
+			lookups.dispose();
+			model.dispose();
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+}
@@ -0,0 +1,419 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.ActionResponse;
+import javax.portlet.PortletConfig;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletURL;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceURL;
+import javax.portlet.WindowState;
+
+import com.ibm.portal.samples.common.MarkupTemplate;
+import com.ibm.portal.samples.common.ViewCache;
+import com.ibm.portal.samples.mvc.controller.TemplateController;
+import com.ibm.portal.samples.mvc.model.TemplateModel;
+import com.ibm.portal.samples.mvc.model.TemplateState;
+import com.ibm.portal.samples.mvc.view.TemplateView;
+
+/**
+ * Warms up the JIT after the portlet has been initialized. The warm-up runs
+ * in a background thread and drives synthetic traffic through the model, the
+ * controller and the view beans, so the hot paths are compiled before real
+ * users arrive. The render parameters of each iteration are the parameters
+ * of a URL generated by the previous iteration, so every iteration decodes,
+ * verifies and re-encodes real tokens.
+ * 
+ * The synthetic requests are stubs of the portlet API. They belong to an
+ * anonymous user and a window that does not exist, and the model never
+ * accesses the preferences, so the warm-up does not touch the state of real
+ * users, the shared caches or the push channel. If the portlet renders its
+ * view via the precompiled {@link MarkupTemplate}, each iteration also
+ * renders the markup into a stream that discards it, so the reflective
+ * getters and the encoder are compiled, too. A JSP needs the request
+ * dispatcher of the container, so with the JSP renderer the view is limited
+ * to the beans.
+ * 
+ * @author cleue
+ */
+final class TemplateWarmup implements Runnable {
+
+	/**
+	 * Implements the portlet API objects of the synthetic requests. The stub
+	 * records the parameters set on it and returns them as its parameter map,
+	 * methods without a meaningful stub implementation return defaults.
+	 */
+	private static final class Stub implements InvocationHandler {
+
+		/**
+		 * the parameters
+		 */
+		private final Map<String, String[]> parameters;
+
+		/**
+		 * Constructs the stub
+		 * 
+		 * @param aParameters
+		 *            the parameters
+		 */
+		private Stub(final Map<String, String[]> aParameters) {
+			parameters = aParameters;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+		 * java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(final Object aProxy, final Method aMethod,
+				final Object[] aArgs) {
+			final String name = aMethod.getName();
+			// the parameters
+			if ("getParameterMap".equals(name)
+					|| "getRenderParameterMap".equals(name)) {
+				return parameters;
+			}
+			if (("setParameter".equals(name) || "setRenderParameter"
+					.equals(name)) && (aArgs[1] instanceof String)) {
+				parameters.put((String) aArgs[0],
+						new String[] { (String) aArgs[1] });
+				return null;
+			}
+			// the URLs
+			if ("createActionURL".equals(name)
+					|| "createRenderURL".equals(name)) {
+				return newStub(PortletURL.class,
+						new HashMap<String, String[]>());
+			}
+			if ("createResourceURL".equals(name)) {
+				return newStub(ResourceURL.class,
+						new HashMap<String, String[]>(parameters));
+			}
+			if ("encodeURL".equals(name)) {
+				return aArgs[0];
+			}
+			// the context of the request
+			if ("getLocale".equals(name)) {
+				return Locale.ENGLISH;
+			}
+			if ("getWindowState".equals(name)) {
+				return WindowState.NORMAL;
+			}
+			if ("getPortletMode".equals(name)) {
+				return PortletMode.VIEW;
+			}
+			if ("getWindowID".equals(name) || "getNamespace".equals(name)) {
+				return WINDOW_ID;
+			}
+			if ("getContextPath".equals(name)) {
+				return "";
+			}
+			if ("getCharacterEncoding".equals(name)) {
+				return "UTF-8";
+			}
+			// the object methods
+			if ("hashCode".equals(name)) {
+				return Integer.valueOf(System.identityHashCode(aProxy));
+			}
+			if ("equals".equals(name)) {
+				return Boolean.valueOf(aProxy == aArgs[0]);
+			}
+			if ("toString".equals(name)) {
+				return parameters.toString();
+			}
+			// defaults
+			final Class<?> type = aMethod.getReturnType();
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			}
+			if (type == int.class) {
+				return Integer.valueOf(0);
+			}
+			if (type == long.class) {
+				return Long.valueOf(0);
+			}
+			return null;
+		}
+	}
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplateWarmup.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * number of iterations after which the state is reset to the defaults
+	 */
+	private static final int RESET_INTERVAL = 64;
+
+	/**
+	 * the texts the iterations cycle through, including characters that have
+	 * to be escaped
+	 */
+	private static final String[] TEXTS = { "sample", "the text of the form",
+			"a <b>value</b> & \"quotes\"", "",
+			"\u00fcmlaute \u00e4nd \u00f6ther characters" };
+
+	/**
+	 * discards the rendered markup
+	 */
+	private static final OutputStream DISCARD = new OutputStream() {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(final byte[] aBuffer, final int aOffset,
+				final int aLength) {
+			// nothing to do
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(final int aByte) {
+			// nothing to do
+		}
+	};
+
+	/**
+	 * identifier of the synthetic window, no real window has this ID
+	 */
+	private static final String WINDOW_ID = "template_warmup_";
+
+	/**
+	 * Creates a stub of a portlet API interface
+	 * 
+	 * @param aType
+	 *            the interface
+	 * @param aParameters
+	 *            the parameters of the stub
+	 * @return the stub
+	 */
+	private static <T> T newStub(final Class<T> aType,
+			final Map<String, String[]> aParameters) {
+		return aType.cast(Proxy.newProxyInstance(
+				TemplateWarmup.class.getClassLoader(),
+				new Class<?>[] { aType }, new Stub(aParameters)));
+	}
+
+	/**
+	 * configuration of the portlet
+	 */
+	private final PortletConfig config;
+
+	/**
+	 * the dependencies, without persistent preferences
+	 */
+	private final TemplatePortlet.Dependencies deps;
+
+	/**
+	 * number of iterations
+	 */
+	private final int iterations;
+
+	/**
+	 * the precompiled view or <code>null</code> if the view is a JSP
+	 */
+	private final MarkupTemplate template;
+
+	/**
+	 * a private view cache, so the synthetic window does not occupy an entry
+	 * of the shared one
+	 */
+	private final ViewCache viewCache = new ViewCache(1, 1, TimeUnit.HOURS);
+
+	/**
+	 * Constructs the warm-up
+	 * 
+	 * @param aConfig
+	 *            configuration of the portlet
+	 * @param aDeps
+	 *            the dependencies of the portlet
+	 * @param aIterations
+	 *            number of iterations
+	 * @param aTemplate
+	 *            the precompiled view or <code>null</code> if the view is a
+	 *            JSP
+	 */
+	TemplateWarmup(final PortletConfig aConfig,
+			final TemplatePortlet.Dependencies aDeps, final int aIterations,
+			final MarkupTemplate aTemplate) {
+		// sanity check
+		assert aConfig != null;
+		assert aDeps != null;
+		// the synthetic window must not read preferences or fill shared caches
+		config = aConfig;
+		deps = (TemplatePortlet.Dependencies) Proxy.newProxyInstance(
+				TemplateWarmup.class.getClassLoader(),
+				new Class<?>[] { TemplatePortlet.Dependencies.class },
+				new InvocationHandler() {
+
+					/*
+					 * (non-Javadoc)
+					 * 
+					 * @see
+					 * java.lang.reflect.InvocationHandler#invoke(java.lang.
+					 * Object, java.lang.reflect.Method, java.lang.Object[])
+					 */
+					@Override
+					public Object invoke(final Object aProxy,
+							final Method aMethod, final Object[] aArgs)
+							throws Throwable {
+						final String name = aMethod.getName();
+						if ("getPersistentPreferences".equals(name)) {
+							return Collections.emptySet();
+						}
+						if ("getViewCache".equals(name)) {
+							return viewCache;
+						}
+						try {
+							return aMethod.invoke(aDeps, aArgs);
+						} catch (final InvocationTargetException ex) {
+							throw ex.getCause();
+						}
+					}
+				});
+		iterations = aIterations;
+		template = aTemplate;
+	}
+
+	/**
+	 * Executes one synthetic request
+	 * 
+	 * @param aIteration
+	 *            number of the iteration
+	 * @param aParameters
+	 *            the render parameters of the request
+	 * @return the render parameters of the next request
+	 * @throws Exception
+	 */
+	private Map<String, String[]> iterate(final int aIteration,
+			final Map<String, String[]> aParameters) throws Exception {
+		final RenderRequest request = newStub(RenderRequest.class,
+				aParameters);
+		final RenderResponse response = newStub(RenderResponse.class,
+				new HashMap<String, String[]>());
+		// decode the model
+		final TemplateModel model = new TemplateModel(request, response,
+				config, deps);
+		final TemplateState previous = model.getState();
+		model.getETag();
+		// modify it like an action does
+		model.setSampleText(TEXTS[aIteration % TEXTS.length]);
+		model.getState().getChanges(previous);
+		model.getState().toJson();
+		model.encode(newStub(ActionResponse.class,
+				new HashMap<String, String[]>()));
+		// generate the URLs
+		final TemplateController controller = new TemplateController(model,
+				request, response, deps);
+		final PortletURL next = controller.getIncSampleIntURL();
+		controller.getDecSampleIntURL();
+		controller.getClearURL();
+		controller.getActionURL();
+		controller.getStateResourceURL();
+		controller.getEventsResourceURL();
+		// the view beans
+		final TemplateView view = new TemplateView(config, request, response,
+				deps);
+		view.getNamespace();
+		view.getBlankImageURL();
+		view.getFormTitle();
+		view.getSampleTextTitle();
+		view.getSaveButtonTitle();
+		view.getCancelButtonTitle();
+		// render the markup, the beans in the order of the portlet
+		if (template != null) {
+			template.write(DISCARD, "UTF-8", new Object[] { view, model,
+					controller });
+		}
+		// cleanup
+		view.dispose();
+		controller.dispose();
+		model.dispose();
+		// the next request follows the URL
+		return next.getParameterMap();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		// logging support
+		final String LOG_METHOD = "run()";
+		final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		final long start = System.nanoTime();
+		int count = 0;
+		try {
+			Map<String, String[]> parameters = null;
+			// stop early if the portlet is destroyed
+			for (; (count < iterations) && !Thread.interrupted(); ++count) {
+				// start over from the defaults from time to time
+				if (count % RESET_INTERVAL == 0) {
+					parameters = Collections.emptyMap();
+				}
+				parameters = iterate(count, parameters);
+			}
+		} catch (final Exception ex) {
+			// log this
+			LOGGER.logp(Level.WARNING, LOG_CLASS, LOG_METHOD,
+					"Aborting the warm-up.", ex);
+		}
+		// log this
+		LOGGER.logp(Level.INFO, LOG_CLASS, LOG_METHOD,
+				"Warm-up of [{0}] iterations took [{1}] ms.", new Object[] {
+						count,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+								- start) });
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+}
@@ -1,23 +1,23 @@
-/*
- * (C) Copyright IBM Corp. 2014
- * 
- * Licensed under the Apache License, Version 2.0 (the "License"); 
- * you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at:
- * 
- * http://www.apache.org/licenses/LICENSE-2.0 
- * 
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
- * implied. See the License for the specific language governing 
- * permissions and limitations under the License.
- */
-
-/**
- * Implementation of the controller for the {@link com.ibm.portal.samples.mvc.TemplatePortlet}. The controller
- * is called when portlet actions are invoked and updates the {@link com.ibm.portal.samples.mvc.model.TemplateModel} model.
- * 
- * @author cleue
- */
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+
+/**
+ * Implementation of the controller for the {@link com.ibm.portal.samples.mvc.TemplatePortlet}. The controller
+ * is called when portlet actions are invoked and updates the {@link com.ibm.portal.samples.mvc.model.TemplateModel} model.
+ * 
+ * @author cleue
+ */
 package com.ibm.portal.samples.mvc.controller;
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Payload of the {@link TemplateEvents.EVENT#SAMPLE_STATE} event. The portlet
+ * container may have to serialize the payload to deliver it to a portlet in a
+ * different application, so the type is both {@link Serializable} and bound to
+ * XML via JAXB. Fields that are <code>null</code> do not modify the model of
+ * the receiving portlet.
+ * 
+ * TODO add a property for each custom field of the model that other portlets
+ * may modify
+ * 
+ * @author cleue
+ */
+@XmlRootElement(name = "sampleState", namespace = TemplateEvents.NAMESPACE)
+public class SampleState implements Serializable {
+
+	/**
+	 * version of the serialized form
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * the sample integer, may be <code>null</code>
+	 */
+	private Integer sampleInt;
+
+	/**
+	 * the sample text, may be <code>null</code>
+	 */
+	private String sampleText;
+
+	/**
+	 * Constructs an empty payload, required by JAXB
+	 */
+	public SampleState() {
+		// nothing to do
+	}
+
+	/**
+	 * Constructs the payload
+	 * 
+	 * @param aSampleInt
+	 *            the sample integer, may be <code>null</code>
+	 * @param aSampleText
+	 *            the sample text, may be <code>null</code>
+	 */
+	public SampleState(final Integer aSampleInt, final String aSampleText) {
+		sampleInt = aSampleInt;
+		sampleText = aSampleText;
+	}
+
+	/**
+	 * Returns the sample integer
+	 * 
+	 * @return the integer or <code>null</code> if it does not change
+	 */
+	public Integer getSampleInt() {
+		return sampleInt;
+	}
+
+	/**
+	 * Returns the sample text
+	 * 
+	 * @return the text or <code>null</code> if it does not change
+	 */
+	public String getSampleText() {
+		return sampleText;
+	}
+
+	/**
+	 * Assigns the sample integer
+	 * 
+	 * @param aSampleInt
+	 *            the integer, may be <code>null</code>
+	 */
+	public void setSampleInt(final Integer aSampleInt) {
+		sampleInt = aSampleInt;
+	}
+
+	/**
+	 * Assigns the sample text
+	 * 
+	 * @param aSampleText
+	 *            the text, may be <code>null</code>
+	 */
+	public void setSampleText(final String aSampleText) {
+		sampleText = aSampleText;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SampleState [sampleInt=" + sampleInt + ", sampleText="
+				+ sampleText + "]";
+	}
+}
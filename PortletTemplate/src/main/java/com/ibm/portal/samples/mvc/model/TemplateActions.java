@@ -1,802 +1,1767 @@
-/*
- * (C) Copyright IBM Corp. 2014
- * 
- * Licensed under the Apache License, Version 2.0 (the "License"); 
- * you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at:
- * 
- * http://www.apache.org/licenses/LICENSE-2.0 
- * 
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
- * implied. See the License for the specific language governing 
- * permissions and limitations under the License.
- */
-package com.ibm.portal.samples.mvc.model;
-
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import javax.portlet.ActionRequest;
-import javax.portlet.ActionResponse;
-
-import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.FileItemFactory;
-import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
-import org.apache.commons.fileupload.portlet.PortletFileUpload;
-
-import com.ibm.portal.samples.common.Marshaller;
-import com.ibm.portal.samples.mvc.TemplatePortlet;
-
-/**
- * Action implementation that reads the action from a multipart form post. Each
- * entry in the form post represents a {@link KEY} and is mapped via the
- * <code>name</code> attribute of the entry. The implementation of the
- * {@link KEY} enumeration decodes the entry into an {@link ActionEntry}
- * instance. In case the key represents an action, the value of the field
- * identifies the {@link ACTION} instance which in turn executes the action
- * based on the {@link ActionEntry} bean.
- * 
- * Action implementations modify the underlying {@link TemplateModel} which will
- * be encoded into the navigational state after the end of the action phase. If
- * an action resulted in a persistent change of data, the action implementation
- * should return <code>true</code> to indicate this and the framework will call
- * the {@link TemplateActions#commit()} method.
- * 
- * @author cleue
- */
-public class TemplateActions {
-
-	/**
-	 * The different kind of actions for this portlet. The action values appear
-	 * as parameters of the {@link KEY#ACTION} parameter. Implementations make
-	 * callbacks into the {@link ActionEntry} bean which in turn assembles the
-	 * action data and invokes the action implementation on the
-	 * {@link TemplateActions} bean.
-	 * 
-	 * The purposes of this {@link Enum} is to provide a reference to all
-	 * available actions such that is can be serialized and deserialized to and
-	 * from a form.
-	 * 
-	 * TODO add custom actions here
-	 */
-	public enum ACTION {
-
-		/**
-		 * Cancels the form
-		 * 
-		 * TODO replace this by your custom action
-		 */
-		SAMPLE_FORM_CANCEL {
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see
-			 * com.ibm.portal.samples.portlettemplate.model.TemplateActions.
-			 * ACTION
-			 * #processAction(com.ibm.portal.samples.portlettemplate.model.
-			 * TemplateActions.ActionEntry)
-			 */
-			@Override
-			protected boolean processAction(final ActionEntry aEntry)
-					throws Exception {
-				// sanity check
-				assert aEntry != null;
-				// dispatch
-				return aEntry.processSampleFormCancel();
-			}
-		},
-
-		/**
-		 * Saves the form
-		 * 
-		 * TODO replace this by your custom action
-		 */
-		SAMPLE_FORM_SAVE {
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see
-			 * com.ibm.portal.samples.portlettemplate.model.TemplateActions.
-			 * ACTION
-			 * #processAction(com.ibm.portal.samples.portlettemplate.model.
-			 * TemplateActions.ActionEntry)
-			 */
-			@Override
-			protected boolean processAction(final ActionEntry aEntry)
-					throws Exception {
-				// sanity check
-				assert aEntry != null;
-				// dispatch
-				return aEntry.processSampleFormSave();
-			}
-		};
-
-		/**
-		 * Executes the action on the model
-		 * 
-		 * @param aEntry
-		 *            the action to execute
-		 * @return <code>true</code> if the action modified persistent state,
-		 *         else <code>false</code>
-		 * 
-		 * @throws Exception
-		 */
-		protected abstract boolean processAction(final ActionEntry aEntry)
-				throws Exception;
-	}
-
-	/**
-	 * Holder for the current action processing. This bean gets filled during
-	 * the action decoding process.
-	 */
-	private final class ActionEntry {
-
-		/**
-		 * Character set used to decode the form entries. We start with UTF-8
-		 * and then update the characterset depending on the existence of a
-		 * "_charset_" field. This field name is a de-facto standard in
-		 * browsers, that fill it in with the actual character set used to
-		 * encode the parameters.
-		 */
-		private String charset = "UTF-8";
-
-		/**
-		 * current form data entry
-		 */
-		private FileItem currentEntry;
-
-		/**
-		 * the model that can be modified during the action processing
-		 */
-		private final TemplateModel currentModel;
-
-		/**
-		 * Iterator over the existing form data entries
-		 */
-		private final Iterator<FileItem> itemIterator;
-
-		/**
-		 * currently decoded sample text
-		 * 
-		 * TODO replace by custom data
-		 */
-		private String sampleText;
-
-		/**
-		 * Initialize the action entry by decoding the request content
-		 * 
-		 * @throws FileUploadException
-		 * @throws IOException
-		 */
-		private ActionEntry() throws FileUploadException, IOException {
-			/**
-			 * Make a current copy of the model. We update this copy during
-			 * action processing and only copy it over to the base model in case
-			 * of successful processing.
-			 */
-			currentModel = model.clone();
-			/**
-			 * Iterator over the entries
-			 */
-			itemIterator = getFileItems().iterator();
-		}
-
-		/**
-		 * TODO replace by custom action implementation
-		 * 
-		 * Implementation of the {@link ACTION#SAMPLE_FORM_CANCEL} action
-		 * 
-		 * @return <code>true</code> if the backend changed after the action,
-		 *         else <code>false</code>
-		 */
-		private final boolean actionSampleFormCancel() {
-			// logging support
-			final String LOG_METHOD = "actionSampleFormCancel()";
-			if (bIsLogging) {
-				LOGGER.entering(LOG_CLASS, LOG_METHOD);
-			}
-			// nothing special to do for the cancel action
-			// exit trace
-			if (bIsLogging) {
-				LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-			}
-			// nothing changed
-			return false;
-		}
-
-		/**
-		 * TODO replace by custom action implementation
-		 * 
-		 * Implementation of the {@link ACTION#SAMPLE_FORM_SAVE} action
-		 * 
-		 * @param aSampleText
-		 *            the text to persist
-		 * @return <code>true</code> if the backend changed after the action,
-		 *         else <code>false</code>
-		 */
-		private final boolean actionSampleFormSave(final String aSampleText) {
-			// logging support
-			final String LOG_METHOD = "actionSampleFormSave(aSampleText)";
-			if (bIsLogging) {
-				LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleText);
-			}
-			// update the model
-			currentModel.setSampleText(aSampleText);
-			// exit trace
-			if (bIsLogging) {
-				LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-			}
-			// nothing changed
-			return false;
-		}
-
-		/**
-		 * Copies the current working copy over to the base model
-		 */
-		private final void commit() {
-			// commits the current model
-			model.copy(currentModel);
-		}
-
-		/**
-		 * Performs cleanup of the entry resources at the end of the action
-		 * processing
-		 */
-		private final void dispose() {
-			// cleanup
-			currentModel.dispose();
-		}
-
-		/**
-		 * Decodes the current entry as a key
-		 * 
-		 * @return the key or <code>null</code> if the key could not be decoded
-		 * @throws IOException
-		 */
-		private final KEY getKey() throws IOException {
-			// dispatch to the key decoder
-			return privateMarshaller.unmarshalEnum(currentEntry.getFieldName(),
-					KEYS, KEY.UNKNOWN);
-		}
-
-		/**
-		 * Moves to the next entries
-		 * 
-		 * @return <code>true</code> if we found a next entry, else
-		 *         <code>false</code>
-		 * 
-		 * @throws IOException
-		 * @throws FileUploadException
-		 */
-		private final boolean nextEntry() throws IOException,
-				FileUploadException {
-			// logging support
-			final String LOG_METHOD = "nextEntry()";
-			if (bIsLogging) {
-				LOGGER.entering(LOG_CLASS, LOG_METHOD);
-			}
-			// delete the previous entry
-			if (currentEntry != null) {
-				// remove the entry
-				currentEntry.delete();
-				currentEntry = null;
-			}
-			// moves to the next entry
-			while (itemIterator.hasNext()) {
-				// next field
-				currentEntry = itemIterator.next();
-				assert currentEntry != null;
-				// check for special names
-				final String name = currentEntry.getFieldName();
-				assert name != null;
-				// log this
-				if (bIsLogging) {
-					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-							"Field name [{0}].", name);
-				}
-				// check for special fields
-				if (KEY_CHARSET.equals(name)) {
-					// update the charset
-					charset = readString();
-				} else {
-					// bail out
-					break;
-				}
-				// reset
-				currentEntry.delete();
-				currentEntry = null;
-			}
-			// check if we have an entry
-			final boolean bResult = currentEntry != null;
-			// exit trace
-			if (bIsLogging) {
-				LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
-			}
-			// ok
-			return bResult;
-		}
-
-		/**
-		 * TODO replace by custom actions
-		 * 
-		 * Cancels the form execution
-		 * 
-		 * @return <code>true</code> if the config could be saved, else
-		 *         <code>false</code>
-		 * 
-		 * @see ACTION#SAMPLE_FORM_SAVE
-		 */
-		private final boolean processSampleFormCancel() {
-			// dispatch
-			return actionSampleFormCancel();
-		}
-
-		/**
-		 * TODO replace by custom actions
-		 * 
-		 * Persists the form after all form data have been assembled in this
-		 * bean
-		 * 
-		 * @return <code>true</code> if the config could be saved, else
-		 *         <code>false</code>
-		 * 
-		 * @see ACTION#SAMPLE_FORM_SAVE
-		 */
-		private final boolean processSampleFormSave() {
-			// dispatch
-			return actionSampleFormSave(sampleText);
-		}
-
-		/**
-		 * Decodes the current entry as an action
-		 * 
-		 * @return the decoded action or <code>null</code> if the action could
-		 *         not be decoded
-		 * @throws IOException
-		 */
-		private final ACTION readAction() throws IOException {
-			// decodes the action parameter
-			return privateMarshaller.unmarshalEnum(readString(), ACTIONS,
-					ACTION.SAMPLE_FORM_CANCEL);
-		}
-
-		/**
-		 * TODO replace by a deserializer for custom form fields
-		 * 
-		 * Reads the sample text from the next form input
-		 * 
-		 * @throws IOException
-		 * 
-		 * @see KEY#SAMPLE_TEXT
-		 */
-		private final boolean readSampleText() throws IOException {
-			// reads the text
-			sampleText = readString();
-			// no persistent modification
-			return false;
-		}
-
-		/**
-		 * Reads a trimmed string
-		 * 
-		 * @return the string
-		 * @throws IOException
-		 */
-		private final String readString() throws IOException {
-			// decodes the stream
-			return currentEntry.getString(charset);
-		}
-
-		/**
-		 * Reinitialize the bean for the next action
-		 */
-		private final void reset() {
-			// reset
-			sampleText = null;
-		}
-	}
-
-	/**
-	 * Representation to dependencies on external services
-	 */
-	public interface Dependencies {
-
-		/**
-		 * Marshaller for private render parameters.
-		 * 
-		 * @return the marshaller
-		 */
-		Marshaller getPrivateParameterMarshaller();
-
-		/**
-		 * TODO add dependencies via parameterless getter methods
-		 */
-	}
-
-	/**
-	 * Enumeration over the possible keys that can appear as parameters of an
-	 * action request. The key identifiers are transported as the name attribute
-	 * of the form input fields of the action form.
-	 * 
-	 * TODO add entries to the enumeration that represent custom form input
-	 */
-	public enum KEY {
-
-		/**
-		 * Identifies an action. This should be called after the action data has
-		 * been processed.
-		 */
-		ACTION {
-
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see
-			 * com.ibm.portal.samples.portlettemplate.model.TemplateActions.
-			 * KEY#decodeKey
-			 * (com.ibm.portal.samples.portlettemplate.model.TemplateActions
-			 * .ActionEntry)
-			 */
-			@Override
-			protected boolean decodeKey(final ActionEntry aEntry)
-					throws Exception {
-				// logging support
-				final String LOG_METHOD = "decodeKey(aEntry)";
-				final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-				if (bIsLogging) {
-					LOGGER.entering(LOG_CLASS, LOG_METHOD);
-				}
-				// decode the action key
-				final ACTION action = aEntry.readAction();
-				// log this
-				if (bIsLogging) {
-					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-							"Processing action [{0}].", action);
-				}
-				// execute the action if we were able to decode it
-				final boolean bResult = (action != null) ? action
-						.processAction(aEntry) : false;
-				// reset the entry
-				aEntry.reset();
-				// exit trace
-				if (bIsLogging) {
-					LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
-				}
-				// ok
-				return bResult;
-			}
-		},
-
-		/**
-		 * Form input that represents the sample text
-		 * 
-		 * TODO Remove this for custom implementations and replace with custom
-		 * keys
-		 */
-		SAMPLE_TEXT {
-
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see
-			 * com.ibm.portal.samples.portlettemplate.model.TemplateActions.
-			 * KEY#decodeKey
-			 * (com.ibm.portal.samples.portlettemplate.model.TemplateActions
-			 * .ActionEntry)
-			 */
-			@Override
-			protected boolean decodeKey(final ActionEntry aEntry)
-					throws Exception {
-				// decode the sample text
-				return aEntry.readSampleText();
-			}
-
-		},
-
-		/**
-		 * Unknown key identifier
-		 */
-		UNKNOWN {
-
-			/*
-			 * (non-Javadoc)
-			 * 
-			 * @see
-			 * com.ibm.portal.samples.portlettemplate.model.TemplateActions.
-			 * KEY#decodeKey
-			 * (com.ibm.portal.samples.portlettemplate.model.TemplateActions
-			 * .ActionEntry)
-			 */
-			@Override
-			protected boolean decodeKey(final ActionEntry aEntry)
-					throws Exception {
-				// TODO you might want to throw an exception in this case
-				// nothing special to do
-				return false;
-			}
-
-		};
-
-		/**
-		 * Decodes the key
-		 * 
-		 * @param aEntry
-		 *            the action to execute
-		 * @return <code>true</code> if the action modified persistent state,
-		 *         else <code>false</code>
-		 * @throws Exception
-		 */
-		protected abstract boolean decodeKey(final ActionEntry aEntry)
-				throws Exception;
-	}
-
-	/**
-	 * Available actions, we maintain a reference to the array, because the
-	 * {@link ACTION#values()} method will create a new copy of the array with
-	 * each invocation.
-	 */
-	private static final ACTION[] ACTIONS = ACTION.values();
-
-	/**
-	 * name of the hidden charset field
-	 */
-	private static final String KEY_CHARSET = "_charset_";
-
-	/**
-	 * Available keys, we maintain a reference to the array, because the
-	 * {@link KEY#values()} method will create a new copy of the array with each
-	 * invocation.
-	 */
-	private static final KEY[] KEYS = KEY.values();
-
-	/** class name for the logger */
-	private static final String LOG_CLASS = TemplateActions.class.getName();
-
-	/** logging level */
-	private static final Level LOG_LEVEL = Level.FINER;
-
-	/** class logger */
-	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
-
-	/**
-	 * Computes the logical or of the entries
-	 * 
-	 * @param bLeft
-	 *            the left flag
-	 * @param bRight
-	 *            the right flag
-	 * @return the result
-	 */
-	private static final boolean or(final boolean bLeft, final boolean bRight) {
-		return bLeft || bRight;
-	}
-
-	/**
-	 * logging can be an instance variable, since the lifecycle of the model is
-	 * the request
-	 */
-	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-
-	/**
-	 * List of form data entries
-	 */
-	private List<FileItem> fileItems;
-
-	/**
-	 * the basic model
-	 */
-	private final TemplateModel model;
-
-	/**
-	 * access to the APIs that allow to decode the form upload
-	 */
-	private PortletFileUpload portletFileUpload;
-
-	/**
-	 * controls how private parameters are marshalled
-	 */
-	private final Marshaller privateMarshaller;
-
-	/**
-	 * current action request
-	 */
-	private final ActionRequest request;
-
-	/**
-	 * Initializes the model from a portlet request
-	 * 
-	 * @param aModel
-	 *            basic model of the request
-	 * @param aRequest
-	 *            the request
-	 * @param aResponse
-	 *            the response
-	 * @param aConfig
-	 *            the config
-	 * @param aDeps
-	 *            the dependencies
-	 */
-	public TemplateActions(final TemplateModel aModel,
-			final ActionRequest aRequest, final ActionResponse aResponse,
-			final Dependencies aDeps) {
-		// sanity check
-		assert aModel != null;
-		assert aRequest != null;
-		assert aResponse != null;
-		assert aDeps != null;
-		// logging support
-		final String LOG_METHOD = "TemplateActions(aModel, aRequest, aResponse, aDeps)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// TODO copy dependencies from the interface into fields
-		model = aModel;
-		request = aRequest;
-		privateMarshaller = aDeps.getPrivateParameterMarshaller();
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Called if all actions have been executed successfully and resulted in
-	 * persistent modifications. In this case these modifications have to be
-	 * saved to the underlying data store.
-	 */
-	public void commit() {
-		// logging support
-		final String LOG_METHOD = "commit()";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		/**
-		 * Executed after the action phase if the action implementation
-		 * indicates that backend state has been changed as a side effect of the
-		 * action.
-		 */
-		/**
-		 * TODO implement your commit operation here
-		 */
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Performs cleanup of the model resources at the end of the request
-	 */
-	public void dispose() {
-		// logging support
-		final String LOG_METHOD = "dispose()";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// reset the data
-		portletFileUpload = null;
-		fileItems = null;
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Returns the list of items from the multipart request
-	 * 
-	 * @return the list of items
-	 * 
-	 * @throws FileUploadException
-	 * @throws IOException
-	 */
-	private final List<FileItem> getFileItems() throws FileUploadException,
-			IOException {
-		// logging support
-		final String LOG_METHOD = "getFileItems()";
-		if (fileItems == null) {
-			// decode the list
-			fileItems = getPortletFileUpload().parseRequest(request);
-			// log this
-			if (bIsLogging) {
-				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-						"Decoding the file items [{0}].", fileItems);
-			}
-		}
-		// returns the items
-		return fileItems;
-	}
-
-	/**
-	 * Returns access to the form data APIs
-	 * 
-	 * @return the the APIs
-	 * @throws IOException
-	 */
-	private final PortletFileUpload getPortletFileUpload() throws IOException {
-		// logging support
-		final String LOG_METHOD = "getPortletFileUpload()";
-		// access the data stream
-		if (portletFileUpload == null) {
-			// file handling
-			final FileItemFactory itemFactory = new DiskFileItemFactory();
-			// fetch the stream
-			portletFileUpload = new PortletFileUpload(itemFactory);
-			// log this
-			if (bIsLogging) {
-				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-						"Accessing the input stream ...");
-			}
-		}
-		// ok
-		return portletFileUpload;
-	}
-
-	/**
-	 * Execute the actions. This is the main entry point that is called from
-	 * {@link TemplatePortlet#doDispatch(ActionRequest, ActionResponse)}. The
-	 * implementation interprets the form input stream sequentially. For each
-	 * input it looks up the {@link KEY} based on the name of the input field
-	 * and executes the registered callback per key. If the key represents data
-	 * input, the data is assembled in the {@link ActionEntry}. If the key
-	 * represents an action, the action is executed for data assembled so far.
-	 * 
-	 * @return <code>true</code> if the action resulted in a persistent
-	 *         modification, else <code>false</code>
-	 * 
-	 * @throws Exception
-	 */
-	public boolean processActions() throws Exception {
-		// logging support
-		final String LOG_METHOD = "processActions()";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// check if the action has been executed
-		boolean bResult = false;
-		// decode the action
-		final ActionEntry actionEntry = new ActionEntry();
-		try {
-			// process each action entry
-			while (actionEntry.nextEntry()) {
-				// decode the key
-				final KEY key = actionEntry.getKey();
-				// log this
-				if (bIsLogging) {
-					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-							"Decoding key [{0}].", key);
-				}
-				// the event loop
-				if (key != null) {
-					// handle the key and aggregate the result
-					bResult = or(key.decodeKey(actionEntry), bResult);
-				} else {
-					// log this
-					if (bIsLogging) {
-						LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-								"Ignoring the current entry, because the key could not be decoded.");
-					}
-				}
-			}
-			/**
-			 * Update the base model with the changes during the action
-			 */
-			actionEntry.commit();
-		} finally {
-			// cleanup on the entry
-			actionEntry.dispose();
-		}
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
-		}
-		// ok
-		return bResult;
-	}
-}
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletPreferences;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemHeadersSupport;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.portlet.PortletFileUpload;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PreferencesCache;
+import com.ibm.portal.samples.common.StringDecoder;
+import com.ibm.portal.samples.common.UploadLimits;
+import com.ibm.portal.samples.mvc.TemplatePortlet;
+import com.ibm.portal.samples.mvc.model.TemplateModel.PREFS;
+
+/**
+ * Action implementation that reads the action from a multipart form post. Each
+ * entry in the form post represents a {@link KEY} and is mapped via the
+ * <code>name</code> attribute of the entry. The {@link FieldHandler}
+ * registered for the {@link KEY} decodes the entry into an {@link ActionEntry}
+ * instance. In case the key represents an action, the value of the field
+ * identifies the {@link ACTION} and its registered {@link ActionHandler}
+ * executes the action based on the {@link ActionEntry} bean.
+ * 
+ * The handlers are registered once per class and compiled into a
+ * {@link DispatchTable} that maps the marshalled field names and values
+ * directly to the handlers, so the action phase performs one map lookup per
+ * form entry.
+ * 
+ * Action implementations modify the underlying {@link TemplateModel} which will
+ * be encoded into the navigational state after the end of the action phase. If
+ * an action resulted in a persistent change of data, the action implementation
+ * should return <code>true</code> to indicate this and the framework will call
+ * the {@link TemplateActions#commit()} method.
+ * 
+ * A single form post may carry an ordered batch of actions, e.g. a save
+ * followed by several counter updates, each one preceded by its data. The
+ * batch is applied atomically: all actions modify the same working copy of
+ * the model, which only replaces the model after the last action succeeded
+ * and, for batches with persistent modifications, after
+ * {@link TemplateActions#commit()} stored them. If an action or the store
+ * fails, none of the changes of the batch reach the model, the preferences or
+ * the navigational state. Either way the batch costs a single commit, a
+ * single encoding of the state and a single redirect.
+ * 
+ * @author cleue
+ */
+public class TemplateActions {
+
+	/**
+	 * The different kind of actions for this portlet. The action values appear
+	 * as parameters of the {@link KEY#ACTION} parameter. The implementation of
+	 * each action is registered as an {@link ActionHandler}, see
+	 * {@link TemplateActions#registerAction(ACTION, ActionHandler)}.
+	 * 
+	 * The purposes of this {@link Enum} is to provide a reference to all
+	 * available actions such that is can be serialized and deserialized to and
+	 * from a form.
+	 * 
+	 * TODO add custom actions here
+	 */
+	public enum ACTION {
+
+		/**
+		 * Cancels the form
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		SAMPLE_FORM_CANCEL,
+
+		/**
+		 * Saves the form
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		SAMPLE_FORM_SAVE,
+
+		/**
+		 * Decrements the counter
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		SAMPLE_INT_DEC,
+
+		/**
+		 * Increments the counter
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		SAMPLE_INT_INC
+	}
+
+	/**
+	 * Implementation of an {@link ACTION}. The handler makes callbacks into the
+	 * {@link ActionEntry} bean that has assembled the action data.
+	 */
+	private interface ActionHandler {
+
+		/**
+		 * Executes the action on the model
+		 * 
+		 * @param aEntry
+		 *            the action to execute
+		 * @return <code>true</code> if the action modified persistent state,
+		 *         else <code>false</code>
+		 * 
+		 * @throws Exception
+		 */
+		boolean processAction(ActionEntry aEntry) throws Exception;
+	}
+
+	/**
+	 * Holder for the current action processing. This bean gets filled during
+	 * the action decoding process.
+	 */
+	private final class ActionEntry {
+
+		/**
+		 * number of actions executed so far in the batch
+		 */
+		private int actionCount;
+
+		/**
+		 * Character set used to decode the form entries. We start with UTF-8
+		 * and then update the characterset depending on the existence of a
+		 * "_charset_" field. This field name is a de-facto standard in
+		 * browsers, that fill it in with the actual character set used to
+		 * encode the parameters. The character set is resolved once when the
+		 * field is read, not per entry.
+		 */
+		private Charset charset = DEFAULT_CHARSET;
+
+		/**
+		 * current form data entry
+		 */
+		private FormField currentField;
+
+		/**
+		 * the model that can be modified during the action processing
+		 */
+		private final TemplateModel currentModel;
+
+		/**
+		 * Iterator over the existing form data entries
+		 */
+		private final Iterator<FileItem> itemIterator;
+
+		/**
+		 * currently decoded sample text
+		 * 
+		 * TODO replace by custom data
+		 */
+		private String sampleText;
+
+		/**
+		 * Initialize the action entry by decoding the request content
+		 * 
+		 * @throws FileUploadException
+		 * @throws IOException
+		 */
+		private ActionEntry() throws FileUploadException, IOException {
+			/**
+			 * Make a current copy of the model. We update this copy during
+			 * action processing and only copy it over to the base model in case
+			 * of successful processing.
+			 */
+			currentModel = model.clone();
+			/**
+			 * Iterator over the entries
+			 */
+			itemIterator = getFileItems().iterator();
+		}
+
+		/**
+		 * TODO replace by custom action implementation
+		 * 
+		 * Implementation of the {@link ACTION#SAMPLE_FORM_CANCEL} action
+		 * 
+		 * @return <code>true</code> if the backend changed after the action,
+		 *         else <code>false</code>
+		 */
+		private final boolean actionSampleFormCancel() {
+			// logging support
+			final String LOG_METHOD = "actionSampleFormCancel()";
+			if (bIsLogging) {
+				LOGGER.entering(LOG_CLASS, LOG_METHOD);
+			}
+			// nothing special to do for the cancel action
+			// exit trace
+			if (bIsLogging) {
+				LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+			}
+			// nothing changed
+			return false;
+		}
+
+		/**
+		 * TODO replace by custom action implementation
+		 * 
+		 * Implementation of the {@link ACTION#SAMPLE_FORM_SAVE} action
+		 * 
+		 * @param aSampleText
+		 *            the text to persist
+		 * @return <code>true</code> if the backend changed after the action,
+		 *         else <code>false</code>
+		 */
+		private final boolean actionSampleFormSave(final String aSampleText) {
+			// logging support
+			final String LOG_METHOD = "actionSampleFormSave(aSampleText)";
+			if (bIsLogging) {
+				LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleText);
+			}
+			// update the model
+			currentModel.setSampleText(aSampleText);
+			// the backend changed if the text is persisted as a preference
+			final boolean bResult = currentModel
+					.isPersistent(PREFS.SAMPLE_TEXT);
+			// exit trace
+			if (bIsLogging) {
+				LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
+			}
+			// ok
+			return bResult;
+		}
+
+		/**
+		 * TODO replace by custom action implementation
+		 * 
+		 * Implementation of the {@link ACTION#SAMPLE_INT_DEC} action
+		 * 
+		 * @return <code>true</code> if the backend changed after the action,
+		 *         else <code>false</code>
+		 */
+		private final boolean actionSampleIntDec() {
+			// the counter is part of the navigational state only
+			currentModel.decSampleInt();
+			return false;
+		}
+
+		/**
+		 * TODO replace by custom action implementation
+		 * 
+		 * Implementation of the {@link ACTION#SAMPLE_INT_INC} action
+		 * 
+		 * @return <code>true</code> if the backend changed after the action,
+		 *         else <code>false</code>
+		 */
+		private final boolean actionSampleIntInc() {
+			// the counter is part of the navigational state only
+			currentModel.incSampleInt();
+			return false;
+		}
+
+		/**
+		 * Copies the current working copy over to the base model
+		 */
+		private final void commit() {
+			// commits the current model
+			model.copy(currentModel);
+		}
+
+		/**
+		 * Performs cleanup of the entry resources at the end of the action
+		 * processing
+		 */
+		private final void dispose() {
+			// cleanup
+			currentModel.dispose();
+		}
+
+		/**
+		 * Hands over the ownership of the current entry to the caller, e.g.
+		 * to decode it on a different thread. The caller is responsible to
+		 * dispose the entry.
+		 * 
+		 * @return the current entry
+		 */
+		private final FormField detachField() {
+			// hand over
+			final FormField result = currentField;
+			currentField = null;
+			return result;
+		}
+
+		/**
+		 * Returns the current entry
+		 * 
+		 * @return the current entry
+		 */
+		private final FormField getField() {
+			return currentField;
+		}
+
+		/**
+		 * Decodes the current entry as a key
+		 * 
+		 * @return the handler of the key, never <code>null</code>
+		 */
+		private final FieldHandler getHandler() {
+			// dispatch to the key decoder
+			return dispatchTable.getFieldHandler(currentField.getFieldName());
+		}
+
+		/**
+		 * Moves to the next entries
+		 * 
+		 * @return <code>true</code> if we found a next entry, else
+		 *         <code>false</code>
+		 * 
+		 * @throws IOException
+		 * @throws FileUploadException
+		 */
+		private final boolean nextEntry() throws IOException,
+				FileUploadException {
+			// logging support
+			final String LOG_METHOD = "nextEntry()";
+			if (bIsLogging) {
+				LOGGER.entering(LOG_CLASS, LOG_METHOD);
+			}
+			// delete the previous entry
+			if (currentField != null) {
+				// remove the entry
+				currentField.dispose();
+				currentField = null;
+			}
+			// moves to the next entry
+			while (itemIterator.hasNext()) {
+				// next field
+				final FileItem item = itemIterator.next();
+				assert item != null;
+				// check for special names
+				final String name = item.getFieldName();
+				assert name != null;
+				// log this
+				if (bIsLogging) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Field name [{0}].", name);
+				}
+				// check for special fields
+				if (KEY_CHARSET.equals(name)) {
+					// update the charset
+					charset = StringDecoder.forName(
+							new FormField(item, charset).readString(), charset);
+					// reset
+					item.delete();
+				} else {
+					// the entry captures the charset valid at this point
+					currentField = new FormField(item, charset);
+					// bail out
+					break;
+				}
+			}
+			// check if we have an entry
+			final boolean bResult = currentField != null;
+			// exit trace
+			if (bIsLogging) {
+				LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
+			}
+			// ok
+			return bResult;
+		}
+
+		/**
+		 * Decodes an entry as an action
+		 * 
+		 * @param aField
+		 *            the entry
+		 * @return the handler of the decoded action, never <code>null</code>
+		 * @throws IOException
+		 */
+		private final ActionHandler readAction(final FormField aField)
+				throws IOException {
+			// decodes the action parameter
+			return dispatchTable.getActionHandler(aField.readString());
+		}
+
+		/**
+		 * TODO replace by a setter for custom form fields
+		 * 
+		 * Sets the sample text decoded from the form input. A later entry of
+		 * the same key overrides an earlier one.
+		 * 
+		 * @param aSampleText
+		 *            the decoded text
+		 * @return <code>false</code>, the text is not persisted before an
+		 *         action
+		 * 
+		 * @see KEY#SAMPLE_TEXT
+		 */
+		private final boolean setSampleText(final String aSampleText) {
+			// sets the text
+			sampleText = aSampleText;
+			// no persistent modification
+			return false;
+		}
+
+		/**
+		 * Reinitialize the bean for the next action
+		 */
+		private final void reset() {
+			// reset
+			sampleText = null;
+		}
+	}
+
+	/**
+	 * Representation to dependencies on external services
+	 */
+	public interface Dependencies {
+
+		/**
+		 * Executor used to decode independent form fields in parallel
+		 * 
+		 * @return the executor or <code>null</code> if the fields are decoded
+		 *         sequentially
+		 */
+		ExecutorService getActionExecutor();
+
+		/**
+		 * Cache for the preferences of the portlet windows
+		 * 
+		 * @return the cache
+		 */
+		PreferencesCache getPreferencesCache();
+
+		/**
+		 * Marshaller for private render parameters.
+		 * 
+		 * @return the marshaller
+		 */
+		Marshaller getPrivateParameterMarshaller();
+
+		/**
+		 * Limits for the decoding of the form upload
+		 * 
+		 * @return the limits
+		 */
+		UploadLimits getUploadLimits();
+
+		/**
+		 * Scheduler for the watchdogs that abort uploads which exceed the
+		 * parse time, e.g. because the client stalls
+		 * 
+		 * @return the scheduler or <code>null</code> if the parse time is
+		 *         unlimited
+		 */
+		ScheduledExecutorService getUploadWatchdog();
+
+		/**
+		 * TODO add dependencies via parameterless getter methods
+		 */
+	}
+
+	/**
+	 * Table that maps the marshalled names of form entries and the marshalled
+	 * values of the {@link KEY#ACTION} entry to their handlers. The table is
+	 * compiled once per {@link Marshaller} from the registered handlers.
+	 */
+	private static final class DispatchTable {
+
+		/**
+		 * action handlers keyed by the marshalled action
+		 */
+		private final Map<String, ActionHandler> actionHandlers;
+
+		/**
+		 * form entry handlers keyed by the marshalled key
+		 */
+		private final Map<String, FieldHandler> fieldHandlers;
+
+		/**
+		 * Compiles the table
+		 * 
+		 * @param aMarshaller
+		 *            marshaller used to encode the keys and actions
+		 */
+		private DispatchTable(final Marshaller aMarshaller) {
+			// sanity check
+			assert aMarshaller != null;
+			// compile the keys
+			final Map<String, FieldHandler> fields = new HashMap<String, FieldHandler>();
+			for (final Map.Entry<KEY, FieldHandler> entry : FIELD_HANDLERS
+					.entrySet()) {
+				fields.put(aMarshaller.marshalEnum(entry.getKey()),
+						entry.getValue());
+			}
+			fieldHandlers = fields;
+			// compile the actions
+			final Map<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+			for (final Map.Entry<ACTION, ActionHandler> entry : ACTION_HANDLERS
+					.entrySet()) {
+				actions.put(aMarshaller.marshalEnum(entry.getKey()),
+						entry.getValue());
+			}
+			actionHandlers = actions;
+		}
+
+		/**
+		 * Returns the handler for the marshalled action
+		 * 
+		 * @param aToken
+		 *            the marshalled action
+		 * @return the handler, falls back to
+		 *         {@link ACTION#SAMPLE_FORM_CANCEL} for unknown actions
+		 */
+		private final ActionHandler getActionHandler(final String aToken) {
+			final ActionHandler handler = (aToken != null) ? actionHandlers
+					.get(aToken) : null;
+			return (handler != null) ? handler : ACTION_HANDLERS
+					.get(ACTION.SAMPLE_FORM_CANCEL);
+		}
+
+		/**
+		 * Returns the handler for the marshalled key
+		 * 
+		 * @param aToken
+		 *            the marshalled key
+		 * @return the handler, falls back to {@link KEY#UNKNOWN} for unknown
+		 *         keys
+		 */
+		private final FieldHandler getFieldHandler(final String aToken) {
+			final FieldHandler handler = (aToken != null) ? fieldHandlers
+					.get(aToken) : null;
+			return (handler != null) ? handler : UNKNOWN_HANDLER;
+		}
+	}
+
+	/**
+	 * Decodes the value of a single independent form entry, typically on a
+	 * thread of the action executor. The task owns the entry and disposes it
+	 * after decoding. The decoded value is applied to the {@link ActionEntry}
+	 * on the request thread in the order of the form, see
+	 * {@link TemplateActions#awaitFields(ActionEntry, List)}.
+	 */
+	private static final class FieldDecoder extends FutureTask<Object> {
+
+		/**
+		 * the handler of the form entry
+		 */
+		private final IndependentFieldHandler handler;
+
+		/**
+		 * Constructs the decoder
+		 * 
+		 * @param aHandler
+		 *            handler of the entry
+		 * @param aField
+		 *            the form entry, ownership is transferred to the decoder
+		 */
+		private FieldDecoder(final IndependentFieldHandler aHandler,
+				final FormField aField) {
+			super(new Callable<Object>() {
+
+				/*
+				 * (non-Javadoc)
+				 * 
+				 * @see java.util.concurrent.Callable#call()
+				 */
+				@Override
+				public Object call() throws Exception {
+					try {
+						// decode
+						return aHandler.decodeValue(aField);
+					} finally {
+						// cleanup
+						aField.dispose();
+					}
+				}
+			});
+			handler = aHandler;
+		}
+	}
+
+	/**
+	 * Implementation of a {@link KEY}. The handler decodes a form entry into the
+	 * {@link ActionEntry} bean.
+	 */
+	private abstract static class FieldHandler {
+
+		/**
+		 * the key, used for logging
+		 */
+		private final KEY key;
+
+		/**
+		 * Constructs the handler
+		 * 
+		 * @param aKey
+		 *            the key
+		 */
+		protected FieldHandler(final KEY aKey) {
+			key = aKey;
+		}
+
+		/**
+		 * Decodes the key
+		 * 
+		 * @param aEntry
+		 *            the action to execute
+		 * @param aField
+		 *            the form entry to decode
+		 * @return <code>true</code> if the action modified persistent state,
+		 *         else <code>false</code>
+		 * @throws Exception
+		 */
+		protected abstract boolean decodeKey(final ActionEntry aEntry,
+				final FormField aField) throws Exception;
+
+		/**
+		 * Checks if the key represents data that can be decoded independently
+		 * of all other keys. Independent keys extend
+		 * {@link IndependentFieldHandler}. Keys that are not independent (in
+		 * particular {@link KEY#ACTION}) are only decoded after all preceding
+		 * independent keys have been applied.
+		 * 
+		 * @return <code>true</code> if the key is independent, else
+		 *         <code>false</code>
+		 */
+		protected boolean isIndependent() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return key.toString();
+		}
+	}
+
+	/**
+	 * A single entry of the form post together with the character set that was
+	 * valid at the position of the entry.
+	 */
+	private static final class FormField {
+
+		/**
+		 * Character set used to decode the entry
+		 */
+		private final Charset charset;
+
+		/**
+		 * the form data entry
+		 */
+		private final FileItem item;
+
+		/**
+		 * Constructs the entry
+		 * 
+		 * @param aItem
+		 *            the form data entry
+		 * @param aCharset
+		 *            the character set
+		 */
+		private FormField(final FileItem aItem, final Charset aCharset) {
+			item = aItem;
+			charset = aCharset;
+		}
+
+		/**
+		 * Deletes the underlying data
+		 */
+		private final void dispose() {
+			item.delete();
+		}
+
+		/**
+		 * Returns the name of the form field
+		 * 
+		 * @return the name
+		 */
+		private final String getFieldName() {
+			return item.getFieldName();
+		}
+
+		/**
+		 * Reads the entry as a string. Entries that are kept in memory are
+		 * decoded from their bytes directly, all others from their stream,
+		 * both without intermediate copies.
+		 * 
+		 * @return the string
+		 * @throws IOException
+		 */
+		private final String readString() throws IOException {
+			// the decoder of the current thread
+			final StringDecoder decoder = StringDecoder.getInstance();
+			// decode the content
+			if (item.isInMemory()) {
+				return decoder.decode(item.get(), charset);
+			}
+			final InputStream stream = item.getInputStream();
+			try {
+				return decoder.decode(stream, charset);
+			} finally {
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * Implementation of a {@link KEY} that can be decoded independently of all
+	 * other keys. The handler splits the decoding into
+	 * {@link #decodeValue(FormField)}, which may run in parallel, and
+	 * {@link #applyValue(ActionEntry, Object)}, which updates the
+	 * {@link ActionEntry} in the order of the form, so repeated entries behave
+	 * as in the sequential case.
+	 */
+	private abstract static class IndependentFieldHandler extends FieldHandler {
+
+		/**
+		 * Constructs the handler
+		 * 
+		 * @param aKey
+		 *            the key
+		 */
+		protected IndependentFieldHandler(final KEY aKey) {
+			super(aKey);
+		}
+
+		/**
+		 * Applies a value decoded by {@link #decodeValue(FormField)} to the
+		 * entry. Called on the request thread in the order of the form.
+		 * 
+		 * @param aEntry
+		 *            the action entry
+		 * @param aValue
+		 *            the decoded value
+		 * @return <code>true</code> if the value modified persistent state,
+		 *         else <code>false</code>
+		 * @throws Exception
+		 */
+		protected abstract boolean applyValue(final ActionEntry aEntry,
+				final Object aValue) throws Exception;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.ibm.portal.samples.mvc.model.TemplateActions.FieldHandler#decodeKey
+		 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry,
+		 * com.ibm.portal.samples.mvc.model.TemplateActions.FormField)
+		 */
+		@Override
+		protected final boolean decodeKey(final ActionEntry aEntry,
+				final FormField aField) throws Exception {
+			// the sequential case
+			return applyValue(aEntry, decodeValue(aField));
+		}
+
+		/**
+		 * Decodes the value of the form entry without touching the
+		 * {@link ActionEntry}. Possibly called on a different thread and
+		 * concurrently with other entries.
+		 * 
+		 * @param aField
+		 *            the form entry to decode
+		 * @return the decoded value
+		 * @throws Exception
+		 */
+		protected abstract Object decodeValue(final FormField aField)
+				throws Exception;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.ibm.portal.samples.mvc.model.TemplateActions.FieldHandler#isIndependent
+		 * ()
+		 */
+		@Override
+		protected final boolean isIndependent() {
+			return true;
+		}
+	}
+
+	/**
+	 * Enumeration over the possible keys that can appear as parameters of an
+	 * action request. The key identifiers are transported as the name attribute
+	 * of the form input fields of the action form. The implementation of each
+	 * key is registered as a {@link FieldHandler}, see
+	 * {@link TemplateActions#registerField(FieldHandler)}.
+	 * 
+	 * TODO add entries to the enumeration that represent custom form input
+	 */
+	public enum KEY {
+
+		/**
+		 * Identifies an action. This should be called after the action data has
+		 * been processed.
+		 */
+		ACTION,
+
+		/**
+		 * Form input that represents the sample text
+		 * 
+		 * TODO Remove this for custom implementations and replace with custom
+		 * keys
+		 */
+		SAMPLE_TEXT,
+
+		/**
+		 * Unknown key identifier
+		 */
+		UNKNOWN
+	}
+
+	/**
+	 * registered action handlers
+	 */
+	private static final Map<ACTION, ActionHandler> ACTION_HANDLERS = new EnumMap<ACTION, ActionHandler>(
+			ACTION.class);
+
+	/**
+	 * size of the buffer used to copy form entries
+	 */
+	private static final int COPY_BUFFER_SIZE = 4096;
+
+	/**
+	 * character set used for the form entries if the form does not specify
+	 * one
+	 */
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * compiled dispatch tables, keyed by the marshaller. Typically there is
+	 * only one marshaller per portlet.
+	 */
+	private static final ConcurrentMap<Marshaller, DispatchTable> DISPATCH_TABLES = new ConcurrentHashMap<Marshaller, DispatchTable>();
+
+	/**
+	 * registered form entry handlers
+	 */
+	private static final Map<KEY, FieldHandler> FIELD_HANDLERS = new EnumMap<KEY, FieldHandler>(
+			KEY.class);
+
+	/**
+	 * name of the hidden charset field
+	 */
+	private static final String KEY_CHARSET = "_charset_";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplateActions.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * Handler for unknown keys, this is the fast path for form entries that we
+	 * do not know
+	 */
+	private static final FieldHandler UNKNOWN_HANDLER = new FieldHandler(
+			KEY.UNKNOWN) {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.ibm.portal.samples.mvc.model.TemplateActions.FieldHandler#
+		 * decodeKey(com.ibm.portal.samples.mvc.model.TemplateActions.
+		 * ActionEntry,
+		 * com.ibm.portal.samples.mvc.model.TemplateActions.FormField)
+		 */
+		@Override
+		protected boolean decodeKey(final ActionEntry aEntry,
+				final FormField aField) {
+			// TODO you might want to throw an exception in this case
+			// nothing special to do
+			return false;
+		}
+	};
+
+	/**
+	 * Registration of the handlers. To add a new form input or action, add the
+	 * constant to {@link KEY} or {@link ACTION} and register its handler here.
+	 */
+	static {
+		/*
+		 * Identifies an action. The action is executed on the data that has
+		 * been assembled so far, afterwards the data is reset.
+		 */
+		registerField(new FieldHandler(KEY.ACTION) {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.FieldHandler
+			 * #decodeKey
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry,
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.FormField)
+			 */
+			@Override
+			protected boolean decodeKey(final ActionEntry aEntry,
+					final FormField aField) throws Exception {
+				// logging support
+				final String LOG_METHOD = "decodeKey(aEntry, aField)";
+				final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+				// decode the action key
+				final ActionHandler action = aEntry.readAction(aField);
+				// log this
+				if (bIsLogging) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Processing action [{0}].", action);
+				}
+				// execute the action on the working copy of the batch
+				final boolean bResult = action.processAction(aEntry);
+				aEntry.actionCount++;
+				// reset the entry
+				aEntry.reset();
+				// ok
+				return bResult;
+			}
+		});
+		/*
+		 * Form input that represents the sample text
+		 * 
+		 * TODO Remove this for custom implementations and replace with custom
+		 * keys
+		 */
+		registerField(new IndependentFieldHandler(KEY.SAMPLE_TEXT) {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.IndependentFieldHandler
+			 * #applyValue
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry,
+			 * java.lang.Object)
+			 */
+			@Override
+			protected boolean applyValue(final ActionEntry aEntry,
+					final Object aValue) {
+				// set the sample text
+				return aEntry.setSampleText((String) aValue);
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.IndependentFieldHandler
+			 * #decodeValue
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.FormField)
+			 */
+			@Override
+			protected Object decodeValue(final FormField aField)
+					throws IOException {
+				// decode the sample text
+				return aField.readString();
+			}
+		});
+		/*
+		 * Cancels the form
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		registerAction(ACTION.SAMPLE_FORM_CANCEL, new ActionHandler() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.ActionHandler
+			 * #processAction
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry)
+			 */
+			@Override
+			public boolean processAction(final ActionEntry aEntry) {
+				// dispatch
+				return aEntry.actionSampleFormCancel();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.lang.Object#toString()
+			 */
+			@Override
+			public String toString() {
+				return ACTION.SAMPLE_FORM_CANCEL.toString();
+			}
+		});
+		/*
+		 * Saves the form
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		registerAction(ACTION.SAMPLE_FORM_SAVE, new ActionHandler() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.ActionHandler
+			 * #processAction
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry)
+			 */
+			@Override
+			public boolean processAction(final ActionEntry aEntry) {
+				// dispatch
+				return aEntry.actionSampleFormSave(aEntry.sampleText);
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.lang.Object#toString()
+			 */
+			@Override
+			public String toString() {
+				return ACTION.SAMPLE_FORM_SAVE.toString();
+			}
+		});
+		/*
+		 * Decrements the counter
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		registerAction(ACTION.SAMPLE_INT_DEC, new ActionHandler() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.ActionHandler
+			 * #processAction
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry)
+			 */
+			@Override
+			public boolean processAction(final ActionEntry aEntry) {
+				// dispatch
+				return aEntry.actionSampleIntDec();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.lang.Object#toString()
+			 */
+			@Override
+			public String toString() {
+				return ACTION.SAMPLE_INT_DEC.toString();
+			}
+		});
+		/*
+		 * Increments the counter
+		 * 
+		 * TODO replace this by your custom action
+		 */
+		registerAction(ACTION.SAMPLE_INT_INC, new ActionHandler() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * com.ibm.portal.samples.mvc.model.TemplateActions.ActionHandler
+			 * #processAction
+			 * (com.ibm.portal.samples.mvc.model.TemplateActions.ActionEntry)
+			 */
+			@Override
+			public boolean processAction(final ActionEntry aEntry) {
+				// dispatch
+				return aEntry.actionSampleIntInc();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.lang.Object#toString()
+			 */
+			@Override
+			public String toString() {
+				return ACTION.SAMPLE_INT_INC.toString();
+			}
+		});
+	}
+
+	/**
+	 * Waits for the completion of the form entries that are decoded in
+	 * parallel and applies their values in the order of the form.
+	 * 
+	 * @param aEntry
+	 *            the action entry that receives the values, <code>null</code>
+	 *            to discard them
+	 * @param aPending
+	 *            the pending decoders, the list will be empty afterwards
+	 * @return <code>true</code> if one of the entries resulted in a
+	 *         persistent modification, else <code>false</code>
+	 * 
+	 * @throws Exception
+	 *             the exception of the first failed decoder
+	 */
+	private static final boolean awaitFields(final ActionEntry aEntry,
+			final List<FieldDecoder> aPending) throws Exception {
+		// sanity check
+		assert aPending != null;
+		// the result
+		boolean bResult = false;
+		Exception failure = null;
+		// wait for all decoders, even in case of a failure, since they own the
+		// form entries
+		for (final FieldDecoder decoder : aPending) {
+			final Object value;
+			try {
+				value = decoder.get();
+			} catch (final ExecutionException ex) {
+				if (failure == null) {
+					final Throwable cause = ex.getCause();
+					failure = (cause instanceof Exception) ? (Exception) cause
+							: ex;
+				}
+				continue;
+			}
+			// apply in the order of the form, unless a decoder failed before
+			if ((aEntry != null) && (failure == null)) {
+				try {
+					bResult = or(decoder.handler.applyValue(aEntry, value),
+							bResult);
+				} catch (final Exception ex) {
+					failure = ex;
+				}
+			}
+		}
+		aPending.clear();
+		// propagate the failure
+		if (failure != null) {
+			throw failure;
+		}
+		// ok
+		return bResult;
+	}
+
+	/**
+	 * Deletes the data of the items
+	 * 
+	 * @param aItems
+	 *            the items
+	 */
+	private static final void deleteFileItems(final List<FileItem> aItems) {
+		for (final FileItem item : aItems) {
+			item.delete();
+		}
+	}
+
+	/**
+	 * Returns the compiled dispatch table for the marshaller
+	 * 
+	 * @param aMarshaller
+	 *            the marshaller
+	 * @return the table
+	 */
+	private static final DispatchTable getDispatchTable(
+			final Marshaller aMarshaller) {
+		// sanity check
+		assert aMarshaller != null;
+		// the table is compiled once per marshaller
+		DispatchTable table = DISPATCH_TABLES.get(aMarshaller);
+		if (table == null) {
+			table = new DispatchTable(aMarshaller);
+			final DispatchTable existing = DISPATCH_TABLES.putIfAbsent(
+					aMarshaller, table);
+			if (existing != null) {
+				table = existing;
+			}
+		}
+		// ok
+		return table;
+	}
+
+	/**
+	 * Computes the logical or of the entries
+	 * 
+	 * @param bLeft
+	 *            the left flag
+	 * @param bRight
+	 *            the right flag
+	 * @return the result
+	 */
+	private static final boolean or(final boolean bLeft, final boolean bRight) {
+		return bLeft || bRight;
+	}
+
+	/**
+	 * Registers the implementation of an action. Must only be called from the
+	 * static initializer.
+	 * 
+	 * @param aAction
+	 *            the action
+	 * @param aHandler
+	 *            the implementation
+	 */
+	private static final void registerAction(final ACTION aAction,
+			final ActionHandler aHandler) {
+		ACTION_HANDLERS.put(aAction, aHandler);
+	}
+
+	/**
+	 * Registers the implementation of a form input. Must only be called from
+	 * the static initializer.
+	 * 
+	 * @param aHandler
+	 *            the implementation
+	 */
+	private static final void registerField(final FieldHandler aHandler) {
+		FIELD_HANDLERS.put(aHandler.key, aHandler);
+	}
+
+	/**
+	 * logging can be an instance variable, since the lifecycle of the model is
+	 * the request
+	 */
+	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+
+	/**
+	 * processed batch whose persistent modifications wait for the
+	 * {@link #commit()}, <code>null</code> if there is none
+	 */
+	private ActionEntry batch;
+
+	/**
+	 * maps form entries to their handlers
+	 */
+	private final DispatchTable dispatchTable;
+
+	/**
+	 * executor for the parallel decoding of independent form entries, may be
+	 * <code>null</code>
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * List of form data entries
+	 */
+	private List<FileItem> fileItems;
+
+	/**
+	 * the basic model
+	 */
+	private final TemplateModel model;
+
+	/**
+	 * access to the preferences of the window
+	 */
+	private final PreferencesCache preferencesCache;
+
+	/**
+	 * access to the APIs that allow to decode the form upload
+	 */
+	private PortletFileUpload portletFileUpload;
+
+	/**
+	 * controls how private parameters are marshalled
+	 */
+	private final Marshaller privateMarshaller;
+
+	/**
+	 * current action request
+	 */
+	private final ActionRequest request;
+
+	/**
+	 * limits for the form upload
+	 */
+	private final UploadLimits uploadLimits;
+
+	/**
+	 * scheduler for the parse time watchdogs, may be <code>null</code>
+	 */
+	private final ScheduledExecutorService uploadWatchdog;
+
+	/**
+	 * Initializes the model from a portlet request
+	 * 
+	 * @param aModel
+	 *            basic model of the request
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * @param aConfig
+	 *            the config
+	 * @param aDeps
+	 *            the dependencies
+	 */
+	public TemplateActions(final TemplateModel aModel,
+			final ActionRequest aRequest, final ActionResponse aResponse,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		// logging support
+		final String LOG_METHOD = "TemplateActions(aModel, aRequest, aResponse, aDeps)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// TODO copy dependencies from the interface into fields
+		model = aModel;
+		request = aRequest;
+		privateMarshaller = aDeps.getPrivateParameterMarshaller();
+		preferencesCache = aDeps.getPreferencesCache();
+		executor = aDeps.getActionExecutor();
+		uploadLimits = aDeps.getUploadLimits();
+		uploadWatchdog = aDeps.getUploadWatchdog();
+		dispatchTable = getDispatchTable(privateMarshaller);
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Called if all actions have been executed successfully and resulted in
+	 * persistent modifications. In this case these modifications have to be
+	 * saved to the underlying data store.
+	 * 
+	 * Modified preferences are written with a single
+	 * {@link PortletPreferences#store()} call, independent of the number of
+	 * actions or fields that modified them. The working copy of the batch
+	 * only replaces the model after the store succeeded, so if it fails the
+	 * model keeps the state from before the request.
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public void commit() throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "commit()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		/**
+		 * Executed after the action phase if the action implementation
+		 * indicates that backend state has been changed as a side effect of the
+		 * action.
+		 */
+		final TemplateModel source = (batch != null) ? batch.currentModel
+				: model;
+		final PortletPreferences prefs = request.getPreferences();
+		if (source.updatePreferences(prefs)) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Storing the preferences ...");
+			}
+			// one round trip to the store for all modifications
+			prefs.store();
+			// our snapshot is outdated
+			preferencesCache.invalidate(request);
+		}
+		// the modifications are persisted, so the batch may replace the model
+		if (batch != null) {
+			batch.commit();
+		}
+		/**
+		 * TODO implement your commit operation here
+		 */
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Performs cleanup of the model resources at the end of the request
+	 */
+	public void dispose() {
+		// logging support
+		final String LOG_METHOD = "dispose()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// release a batch that has not been committed, e.g. after a failure
+		if (batch != null) {
+			batch.dispose();
+			batch = null;
+		}
+		// release entries that have not been consumed, e.g. after a failure
+		if (fileItems != null) {
+			deleteFileItems(fileItems);
+		}
+		// reset the data
+		portletFileUpload = null;
+		fileItems = null;
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Closes the request body, so a read that blocks on a stalled client
+	 * fails instead of holding the thread. Called by the parse time watchdog.
+	 */
+	private final void abortUpload() {
+		// logging support
+		final String LOG_METHOD = "abortUpload()";
+		try {
+			request.getPortletInputStream().close();
+		} catch (final IOException ex) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Cannot close the request body.", ex);
+			}
+		} catch (final IllegalStateException ex) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Cannot access the request body.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Copies the content of a form entry into its item, checking the parse
+	 * deadline after each chunk. The size limits are enforced by the stream of
+	 * the entry.
+	 * 
+	 * @param aStream
+	 *            the form entry
+	 * @param aItem
+	 *            the target item
+	 * @param aDeadline
+	 *            deadline as a {@link System#nanoTime()} value, only checked if
+	 *            <code>bHasDeadline</code> is set
+	 * @param bHasDeadline
+	 *            <code>true</code> if the parse time is limited
+	 * 
+	 * @throws FileUploadException
+	 * @throws IOException
+	 */
+	private final void copyFileItem(final FileItemStream aStream,
+			final FileItem aItem, final long aDeadline,
+			final boolean bHasDeadline) throws FileUploadException,
+			IOException {
+		// the buffer
+		final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		final InputStream in = aStream.openStream();
+		try {
+			final OutputStream out = aItem.getOutputStream();
+			try {
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, read);
+					// check the time limit
+					if (bHasDeadline && ((System.nanoTime() - aDeadline) > 0)) {
+						throw new FileUploadException(
+								"The request exceeds the maximum parse time of "
+										+ uploadLimits + ".");
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final FileUploadIOException ex) {
+			// the size limits surface as wrapped exceptions
+			throw (FileUploadException) ex.getCause();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the list of items from the multipart request. The request body
+	 * is streamed and the {@link UploadLimits} are enforced while reading, so
+	 * an oversized request fails as soon as it exceeds a limit. The parse time
+	 * is enforced by a watchdog that closes the request body, since a client
+	 * that stalls blocks the read itself. On failure all items created so far
+	 * are deleted.
+	 * 
+	 * @return the list of items
+	 * 
+	 * @throws FileUploadException
+	 * @throws IOException
+	 */
+	private final List<FileItem> getFileItems() throws FileUploadException,
+			IOException {
+		// logging support
+		final String LOG_METHOD = "getFileItems()";
+		if (fileItems == null) {
+			// the limits
+			final long maxParseTime = uploadLimits.getMaxParseTime();
+			final boolean bHasDeadline = maxParseTime >= 0;
+			final long deadline = System.nanoTime() + maxParseTime;
+			final int maxParts = uploadLimits.getMaxParts();
+			// decode the list
+			final PortletFileUpload upload = getPortletFileUpload();
+			final FileItemFactory factory = upload.getFileItemFactory();
+			final List<FileItem> items = new ArrayList<FileItem>();
+			boolean bSuccess = false;
+			// aborts the upload if the client stalls
+			final AtomicBoolean bExpired = new AtomicBoolean();
+			final Future<?> watchdog = (bHasDeadline && (uploadWatchdog != null)) ? uploadWatchdog
+					.schedule(new Runnable() {
+						@Override
+						public void run() {
+							bExpired.set(true);
+							abortUpload();
+						}
+					}, maxParseTime, TimeUnit.NANOSECONDS)
+					: null;
+			try {
+				final FileItemIterator iter = upload.getItemIterator(request);
+				while (iter.hasNext()) {
+					// check the number of entries
+					if ((maxParts >= 0) && (items.size() >= maxParts)) {
+						throw new FileUploadException(
+								"The request exceeds the maximum number of fields of "
+										+ uploadLimits + ".");
+					}
+					// copy the entry
+					final FileItemStream stream = iter.next();
+					final FileItem item = factory.createItem(
+							stream.getFieldName(), stream.getContentType(),
+							stream.isFormField(), stream.getName());
+					items.add(item);
+					copyFileItem(stream, item, deadline, bHasDeadline);
+					if (item instanceof FileItemHeadersSupport) {
+						((FileItemHeadersSupport) item).setHeaders(stream
+								.getHeaders());
+					}
+				}
+				bSuccess = true;
+			} catch (final FileUploadIOException ex) {
+				// the size limits surface as wrapped exceptions
+				throw (FileUploadException) ex.getCause();
+			} catch (final IOException ex) {
+				// a read aborted by the watchdog
+				if (bExpired.get()) {
+					throw new FileUploadException(
+							"The request exceeds the maximum parse time of "
+									+ uploadLimits + ".", ex);
+				}
+				throw ex;
+			} catch (final FileUploadException ex) {
+				// a stream aborted by the watchdog
+				if (bExpired.get()) {
+					throw new FileUploadException(
+							"The request exceeds the maximum parse time of "
+									+ uploadLimits + ".", ex);
+				}
+				throw ex;
+			} finally {
+				// the body has been read
+				if (watchdog != null) {
+					watchdog.cancel(false);
+				}
+				// cleanup
+				if (!bSuccess) {
+					deleteFileItems(items);
+				}
+			}
+			fileItems = items;
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Decoding the file items [{0}].", fileItems);
+			}
+		}
+		// returns the items
+		return fileItems;
+	}
+
+	/**
+	 * Returns access to the form data APIs
+	 * 
+	 * @return the the APIs
+	 * @throws IOException
+	 */
+	private final PortletFileUpload getPortletFileUpload() throws IOException {
+		// logging support
+		final String LOG_METHOD = "getPortletFileUpload()";
+		// access the data stream
+		if (portletFileUpload == null) {
+			// file handling
+			final FileItemFactory itemFactory = new DiskFileItemFactory();
+			// fetch the stream
+			portletFileUpload = new PortletFileUpload(itemFactory);
+			// the size limits are enforced while streaming
+			portletFileUpload.setSizeMax(uploadLimits.getMaxRequestSize());
+			portletFileUpload.setFileSizeMax(uploadLimits.getMaxFieldSize());
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Accessing the input stream ...");
+			}
+		}
+		// ok
+		return portletFileUpload;
+	}
+
+	/**
+	 * Execute the actions. This is the main entry point that is called from
+	 * {@link TemplatePortlet#doDispatch(ActionRequest, ActionResponse)}. The
+	 * implementation interprets the form input stream sequentially. For each
+	 * input it looks up the {@link FieldHandler} of the {@link KEY} based on
+	 * the name of the input field in the {@link DispatchTable} and executes
+	 * it. If the key represents data
+	 * input, the data is assembled in the {@link ActionEntry}. If the key
+	 * represents an action, the action is executed for data assembled so far.
+	 * 
+	 * If the dependencies provide an action executor, keys that are declared
+	 * as {@link FieldHandler#isIndependent() independent} are decoded in
+	 * parallel. Their values are applied in the order of the form, and all
+	 * other keys, in particular actions, are only processed after the
+	 * preceding independent keys have been applied, so actions see the same
+	 * data as in the sequential case.
+	 * 
+	 * All actions of the form post form one batch on the same working copy of
+	 * the model. The working copy replaces the model only after the complete
+	 * form has been processed, so if any action fails the exception propagates
+	 * and the model keeps the state from before the request. If the batch
+	 * resulted in persistent modifications, the working copy replaces the
+	 * model in {@link #commit()}, after the modifications have been stored.
+	 * The size of the batch is bounded by the {@link UploadLimits} of the form
+	 * post.
+	 * 
+	 * @return <code>true</code> if the action resulted in a persistent
+	 *         modification, else <code>false</code>
+	 * 
+	 * @throws Exception
+	 */
+	public boolean processActions() throws Exception {
+		// logging support
+		final String LOG_METHOD = "processActions()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// check if the action has been executed
+		boolean bResult = false;
+		// decode the action
+		final ActionEntry actionEntry = new ActionEntry();
+		// decoders running in parallel
+		final List<FieldDecoder> pending = (executor != null) ? new ArrayList<FieldDecoder>()
+				: null;
+		try {
+			// process each action entry
+			while (actionEntry.nextEntry()) {
+				// decode the key
+				final FieldHandler handler = actionEntry.getHandler();
+				// log this
+				if (bIsLogging) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Decoding key [{0}].", handler);
+				}
+				// the event loop
+				if (handler == UNKNOWN_HANDLER) {
+					// log this
+					if (bIsLogging) {
+						LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+								"Ignoring the current entry, because the key could not be decoded.");
+					}
+				} else if ((pending != null) && handler.isIndependent()) {
+					// decode in parallel, the decoder owns the entry
+					final FieldDecoder decoder = new FieldDecoder(
+							(IndependentFieldHandler) handler,
+							actionEntry.detachField());
+					executor.execute(decoder);
+					pending.add(decoder);
+				} else {
+					// make sure all preceding entries have been decoded
+					if ((pending != null) && !pending.isEmpty()) {
+						bResult = or(awaitFields(actionEntry, pending), bResult);
+					}
+					// handle the key and aggregate the result
+					bResult = or(handler.decodeKey(actionEntry,
+							actionEntry.getField()), bResult);
+				}
+			}
+			// wait for the trailing entries
+			if ((pending != null) && !pending.isEmpty()) {
+				bResult = or(awaitFields(actionEntry, pending), bResult);
+			}
+			/**
+			 * Update the base model with the changes of the complete batch.
+			 * Only reached if all actions succeeded. Persistent modifications
+			 * have to be stored first, so in that case the batch waits for
+			 * the commit.
+			 */
+			if (bResult) {
+				batch = actionEntry;
+			} else {
+				actionEntry.commit();
+			}
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Processed a batch of [{0}] actions.",
+						actionEntry.actionCount);
+			}
+		} finally {
+			// make sure no decoder is still running on the entry
+			if ((pending != null) && !pending.isEmpty()) {
+				try {
+					awaitFields(null, pending);
+				} catch (final Exception ex) {
+					// we are already handling a failure
+				}
+			}
+			// cleanup on the entry, unless it waits for the commit
+			if (actionEntry != batch) {
+				actionEntry.dispose();
+			}
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
+		}
+		// ok
+		return bResult;
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.Event;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletPreferences;
+import javax.xml.namespace.QName;
+
+import com.ibm.portal.samples.common.PreferencesCache;
+
+/**
+ * Event implementation that translates incoming JSR-286 events into
+ * modifications of the {@link TemplateModel}. Each {@link EVENT} is mapped via
+ * the qualified name of the event and modifies a copy of the model. The
+ * modifications are only copied over to the base model and encoded into the
+ * navigational state if they actually changed the model, so redundant events
+ * (e.g. the same value published by several portlets) cost neither an update
+ * of the render parameters nor a re-render of the portlet.
+ * 
+ * Publishers that want to modify several fields at once should send a single
+ * {@link EVENT#SAMPLE_STATE} event instead of one event per field. The event
+ * is applied as one model update with one encoding step.
+ * 
+ * @author cleue
+ */
+public class TemplateEvents {
+
+	/**
+	 * Representation to dependencies on external services
+	 */
+	public interface Dependencies {
+
+		/**
+		 * Cache for the preferences of the portlet windows
+		 * 
+		 * @return the cache
+		 */
+		PreferencesCache getPreferencesCache();
+
+		/**
+		 * TODO add dependencies via parameterless getter methods
+		 */
+	}
+
+	/**
+	 * The events supported by this portlet. The local part of the qualified
+	 * name of the event is a contract with other portlets and must match the
+	 * <code>event-definition</code> in the portlet descriptor.
+	 * 
+	 * TODO add custom events here
+	 */
+	public enum EVENT {
+
+		/**
+		 * Sets the sample integer, the payload is an {@link Integer}.
+		 */
+		SAMPLE_INT("sampleInt"),
+
+		/**
+		 * Sets several fields of the model at once. The payload is a
+		 * {@link SampleState}, fields that are <code>null</code> do not
+		 * modify the model.
+		 */
+		SAMPLE_STATE("sampleState"),
+
+		/**
+		 * Sets the sample text, the payload is a {@link String}.
+		 */
+		SAMPLE_TEXT("sampleText");
+
+		/**
+		 * qualified name of the event
+		 */
+		private final QName qname;
+
+		/**
+		 * Constructs the event
+		 * 
+		 * @param aLocalName
+		 *            local part of the qualified name
+		 */
+		private EVENT(final String aLocalName) {
+			qname = new QName(NAMESPACE, aLocalName);
+		}
+
+		/**
+		 * Returns the qualified name of the event
+		 * 
+		 * @return the name
+		 */
+		public QName getQName() {
+			return qname;
+		}
+	}
+
+	/**
+	 * Available events keyed by their qualified name
+	 */
+	private static final Map<QName, EVENT> EVENTS = new HashMap<QName, EVENT>();
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplateEvents.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * namespace of the events of this portlet
+	 */
+	public static final String NAMESPACE = "http://www.ibm.com/xmlns/samples/portal/template";
+
+	/**
+	 * Registration of the events
+	 */
+	static {
+		for (final EVENT event : EVENT.values()) {
+			EVENTS.put(event.getQName(), event);
+		}
+	}
+
+	/**
+	 * logging can be an instance variable, since the lifecycle of the events
+	 * is the request
+	 */
+	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+
+	/**
+	 * the basic model
+	 */
+	private final TemplateModel model;
+
+	/**
+	 * access to the preferences of the window
+	 */
+	private final PreferencesCache preferencesCache;
+
+	/**
+	 * current event request
+	 */
+	private final EventRequest request;
+
+	/**
+	 * Initializes the event handler
+	 * 
+	 * @param aModel
+	 *            basic model of the request
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * @param aDeps
+	 *            the dependencies
+	 */
+	public TemplateEvents(final TemplateModel aModel,
+			final EventRequest aRequest, final EventResponse aResponse,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		// logging support
+		final String LOG_METHOD = "TemplateEvents(aModel, aRequest, aResponse, aDeps)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// TODO copy dependencies from the interface into fields
+		model = aModel;
+		request = aRequest;
+		preferencesCache = aDeps.getPreferencesCache();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Called if the events modified the model. Fields of the model that are
+	 * persisted as preferences are written with a single
+	 * {@link PortletPreferences#store()} call.
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public void commit() throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "commit()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// persist the modified fields
+		final PortletPreferences prefs = request.getPreferences();
+		if (model.updatePreferences(prefs)) {
+			// one round trip to the store for all modifications
+			prefs.store();
+			// our snapshot is outdated
+			preferencesCache.invalidate(request);
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Performs cleanup of the resources at the end of the request
+	 */
+	public void dispose() {
+		// TODO cleanup here
+	}
+
+	/**
+	 * Applies the event to the model
+	 * 
+	 * @param aModel
+	 *            the model to modify
+	 * @param aEvent
+	 *            the decoded event
+	 * @param aPayload
+	 *            the payload of the event, may be <code>null</code>
+	 * @return <code>true</code> if the model changed, else <code>false</code>
+	 */
+	private final boolean processEvent(final TemplateModel aModel,
+			final EVENT aEvent, final Object aPayload) {
+		// dispatch
+		switch (aEvent) {
+		case SAMPLE_INT:
+			return (aPayload instanceof Integer)
+					&& updateSampleInt(aModel, ((Integer) aPayload).intValue());
+		case SAMPLE_TEXT:
+			return (aPayload instanceof String)
+					&& updateSampleText(aModel, (String) aPayload);
+		case SAMPLE_STATE:
+			return (aPayload instanceof SampleState)
+					&& processSampleState(aModel, (SampleState) aPayload);
+		default:
+			// nothing to do
+			return false;
+		}
+	}
+
+	/**
+	 * Decodes the event of the request and applies it to the model. The
+	 * modifications are performed on a copy of the model and only copied over
+	 * to the base model if the event changed at least one field.
+	 * 
+	 * @return <code>true</code> if the model changed and has to be encoded,
+	 *         else <code>false</code>
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public boolean processEvents() throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "processEvents()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// decode the event
+		final Event event = request.getEvent();
+		final EVENT key = (event != null) ? EVENTS.get(event.getQName())
+				: null;
+		// apply the event to a copy
+		boolean bResult = false;
+		if (key != null) {
+			final TemplateModel currentModel = model.clone();
+			bResult = processEvent(currentModel, key, event.getValue());
+			if (bResult) {
+				// copy over the modifications
+				model.copy(currentModel);
+			}
+		}
+		// log this
+		if (bIsLogging) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+					"Event [{0}] modified the model [{1}].", new Object[] {
+							key, bResult });
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
+		}
+		// ok
+		return bResult;
+	}
+
+	/**
+	 * Applies all entries of a {@link EVENT#SAMPLE_STATE} event
+	 * 
+	 * @param aModel
+	 *            the model to modify
+	 * @param aState
+	 *            the payload
+	 * @return <code>true</code> if the model changed, else <code>false</code>
+	 */
+	private final boolean processSampleState(final TemplateModel aModel,
+			final SampleState aState) {
+		// the integer
+		boolean bResult = false;
+		final Integer sampleInt = aState.getSampleInt();
+		if (sampleInt != null) {
+			bResult |= updateSampleInt(aModel, sampleInt.intValue());
+		}
+		// the text
+		final String sampleText = aState.getSampleText();
+		if (sampleText != null) {
+			bResult |= updateSampleText(aModel, sampleText);
+		}
+		// TODO add custom fields here
+		return bResult;
+	}
+
+	/**
+	 * Assigns the sample integer if it differs from the current value
+	 * 
+	 * @param aModel
+	 *            the model
+	 * @param aSampleInt
+	 *            the new value
+	 * @return <code>true</code> if the model changed, else <code>false</code>
+	 */
+	private final boolean updateSampleInt(final TemplateModel aModel,
+			final int aSampleInt) {
+		if (aModel.getSampleInt() == aSampleInt) {
+			return false;
+		}
+		aModel.setSampleInt(aSampleInt);
+		return true;
+	}
+
+	/**
+	 * Assigns the sample text if it differs from the current value
+	 * 
+	 * @param aModel
+	 *            the model
+	 * @param aSampleText
+	 *            the new value
+	 * @return <code>true</code> if the model changed, else <code>false</code>
+	 */
+	private final boolean updateSampleText(final TemplateModel aModel,
+			final String aSampleText) {
+		if (aSampleText.equals(aModel.getSampleText())) {
+			return false;
+		}
+		aModel.setSampleText(aSampleText);
+		return true;
+	}
+}
@@ -0,0 +1,579 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.PortletException;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+
+import com.ibm.portal.samples.common.Broadcaster;
+import com.ibm.portal.samples.common.Broadcaster.Message;
+import com.ibm.portal.samples.common.Broadcaster.Subscription;
+import com.ibm.portal.samples.common.Json;
+import com.ibm.portal.samples.common.Marshaller;
+
+/**
+ * Implementation of the resource phase. The resource identifies a
+ * {@link RESOURCE} and the response is assembled from a number of
+ * {@link Lookup lookups}, typically calls to backend services. The lookups are
+ * executed in parallel on the resource executor, so the time the container
+ * thread is blocked is bounded by the slowest lookup instead of the sum of all
+ * lookups, and in any case by the configured timeout. Lookups that did not
+ * finish in time are cancelled and the request fails with
+ * {@link HttpURLConnection#HTTP_UNAVAILABLE}. If the executor is saturated
+ * the request fails immediately with the same status instead of queueing up
+ * container threads behind a slow backend.
+ * 
+ * The response is only written after all lookups have completed, so a failed
+ * request never produces a partial response.
+ * 
+ * The {@link RESOURCE#EVENTS} resource is the push channel of the portlet. It
+ * streams the changes of the model of the window as server-sent events, so the
+ * browser can update the markup without polling renders. Since the portlet
+ * API does not support asynchronous resource requests, a subscription holds a
+ * container thread. The stream therefore ends after the push timeout, the
+ * browser reconnects automatically and passes the ID of the last event it
+ * received, and the number of concurrent subscriptions is bounded by the
+ * {@link Broadcaster}. Because every subscription can block a container thread
+ * for the whole timeout, the channel is disabled unless a limit for the
+ * subscribers is configured, and the resource is refused in that case.
+ * 
+ * @author cleue
+ */
+public class TemplateLookups {
+
+	/**
+	 * Representation to dependencies on external services
+	 */
+	public interface Dependencies {
+
+		/**
+		 * Registry of the subscribers of the push channel
+		 * 
+		 * @return the broadcaster
+		 */
+		Broadcaster<String> getBroadcaster();
+
+		/**
+		 * Marshaller for private render parameters
+		 * 
+		 * @return the marshaller
+		 */
+		Marshaller getPrivateParameterMarshaller();
+
+		/**
+		 * Maximum time a subscription to the push channel stays open
+		 * 
+		 * @return the timeout in milliseconds
+		 */
+		long getPushTimeout();
+
+		/**
+		 * Executor for the lookups of the resource phase. The executor must not
+		 * run rejected tasks on the calling thread.
+		 * 
+		 * @return the executor
+		 */
+		ExecutorService getResourceExecutor();
+
+		/**
+		 * Maximum time for all lookups of a resource request
+		 * 
+		 * @return the timeout in milliseconds
+		 */
+		long getResourceTimeout();
+
+		/**
+		 * TODO add dependencies via parameterless getter methods
+		 */
+	}
+
+	/**
+	 * A single lookup that contributes one member to the response. Lookups
+	 * run on the threads of the resource executor, so they must not access the
+	 * portlet request or response. Copy everything they need from the model
+	 * when constructing the lookup. A lookup returns a {@link Number} for a
+	 * numeric member and a {@link String} otherwise, so the response uses the
+	 * same types as {@link TemplateState#toJson()}.
+	 */
+	private abstract static class Lookup implements Callable<Object> {
+
+		/**
+		 * name of the member in the response
+		 */
+		private final String name;
+
+		/**
+		 * Constructs the lookup
+		 * 
+		 * @param aName
+		 *            name of the member in the response
+		 */
+		protected Lookup(final String aName) {
+			name = aName;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * The resources served by this portlet. The resource ID of the resource
+	 * URL is the marshalled constant.
+	 * 
+	 * TODO add custom resources here
+	 */
+	public enum RESOURCE {
+
+		/**
+		 * Stream of the changes of the model as server-sent events
+		 */
+		EVENTS,
+
+		/**
+		 * JSON representation of the model
+		 */
+		STATE,
+
+		/**
+		 * Unknown resource identifier
+		 */
+		UNKNOWN
+	}
+
+	/**
+	 * name of the resource parameter that carries the ID of the last event the
+	 * client has seen, used if the client cannot send the
+	 * {@link #LAST_EVENT_ID_HEADER} header
+	 */
+	public static final String KEY_LAST_EVENT_ID = "lastEventId";
+
+	/**
+	 * request header of the server-sent events protocol that carries the ID of
+	 * the last event on reconnect
+	 */
+	private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplateLookups.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * Available resources, we maintain a reference to the array, because the
+	 * {@link RESOURCE#values()} method will create a new copy of the array with
+	 * each invocation.
+	 */
+	private static final RESOURCE[] RESOURCES = RESOURCE.values();
+
+	/**
+	 * logging can be an instance variable, since the lifecycle of the lookups
+	 * is the request
+	 */
+	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+
+	/**
+	 * registry of the subscribers of the push channel
+	 */
+	private final Broadcaster<String> broadcaster;
+
+	/**
+	 * executes the lookups
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * the basic model
+	 */
+	private final TemplateModel model;
+
+	/**
+	 * controls how private parameters are marshalled
+	 */
+	private final Marshaller privateMarshaller;
+
+	/**
+	 * maximum time a subscription stays open in milliseconds
+	 */
+	private final long pushTimeout;
+
+	/**
+	 * current resource request
+	 */
+	private final ResourceRequest request;
+
+	/**
+	 * current resource response
+	 */
+	private final ResourceResponse response;
+
+	/**
+	 * maximum time for the lookups in milliseconds
+	 */
+	private final long timeout;
+
+	/**
+	 * Initializes the resource handler
+	 * 
+	 * @param aModel
+	 *            basic model of the request
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * @param aDeps
+	 *            the dependencies
+	 */
+	public TemplateLookups(final TemplateModel aModel,
+			final ResourceRequest aRequest, final ResourceResponse aResponse,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aModel != null;
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aDeps != null;
+		// logging support
+		final String LOG_METHOD = "TemplateLookups(aModel, aRequest, aResponse, aDeps)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// TODO copy dependencies from the interface into fields
+		model = aModel;
+		request = aRequest;
+		response = aResponse;
+		privateMarshaller = aDeps.getPrivateParameterMarshaller();
+		executor = aDeps.getResourceExecutor();
+		timeout = aDeps.getResourceTimeout();
+		broadcaster = aDeps.getBroadcaster();
+		pushTimeout = aDeps.getPushTimeout();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * TODO replace by lookups against your backend services
+	 * 
+	 * Constructs the lookups for the {@link RESOURCE#STATE} resource. The
+	 * values are read from the model on the request thread.
+	 * 
+	 * @return the lookups
+	 */
+	private final List<Lookup> createStateLookups() {
+		// the state is immutable, the lookups must not touch the request
+		final TemplateState state = model.getState();
+		// the lookups
+		final List<Lookup> result = new ArrayList<Lookup>();
+		result.add(new Lookup("sampleInt") {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public Object call() {
+				return Integer.valueOf(state.getSampleInt());
+			}
+		});
+		result.add(new Lookup("sampleText") {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public Object call() {
+				return state.getSampleText();
+			}
+		});
+		// ok
+		return result;
+	}
+
+	/**
+	 * Performs cleanup of the resources at the end of the request
+	 */
+	public void dispose() {
+		// TODO cleanup here
+	}
+
+	/**
+	 * Executes the lookups in parallel and waits for their results. Lookups
+	 * that do not finish within the timeout are cancelled.
+	 * 
+	 * @param aLookups
+	 *            the lookups
+	 * @return the results in the order of the lookups or <code>null</code> if
+	 *         the lookups could not be completed in time
+	 * 
+	 * @throws PortletException
+	 */
+	private final List<Object> executeLookups(final List<Lookup> aLookups)
+			throws PortletException {
+		// logging support
+		final String LOG_METHOD = "executeLookups(aLookups)";
+		// execute in parallel, invokeAll cancels the stragglers
+		final List<Future<Object>> futures;
+		try {
+			futures = executor.invokeAll(aLookups, timeout,
+					TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException ex) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Resource executor is saturated.");
+			}
+			return null;
+		} catch (final InterruptedException ex) {
+			// the container gave up on the request
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		// collect the results
+		final List<Object> result = new ArrayList<Object>(futures.size());
+		for (int i = 0; i < futures.size(); ++i) {
+			try {
+				result.add(futures.get(i).get());
+			} catch (final CancellationException ex) {
+				// log this
+				if (bIsLogging) {
+					LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+							"Lookup [{0}] timed out.", aLookups.get(i));
+				}
+				return null;
+			} catch (final InterruptedException ex) {
+				// cannot happen, the futures are done
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (final ExecutionException ex) {
+				throw new PortletException(ex.getCause());
+			}
+		}
+		// ok
+		return result;
+	}
+
+	/**
+	 * Decodes the ID of the last event the client has seen
+	 * 
+	 * @return the sequence number or <code>0</code> if the client did not
+	 *         send a valid ID
+	 */
+	private final long getLastEventID() {
+		// the header takes precedence, it is sent on reconnect
+		String value = request.getProperty(LAST_EVENT_ID_HEADER);
+		if (value == null) {
+			value = request.getParameter(KEY_LAST_EVENT_ID);
+		}
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (final NumberFormatException ex) {
+				// fall through, the client starts over
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Serves the {@link RESOURCE#EVENTS} resource. Each message is written as
+	 * a separate event and flushed immediately. If the subscription was
+	 * dropped because the client did not keep up, the latest snapshot is
+	 * written instead and the stream ends, so the client reconnects with a
+	 * consistent state.
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	private final void serveEvents() throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "serveEvents()";
+		// the channel is per user
+		final String topic = model.getPushTopic();
+		if (topic == null) {
+			response.setProperty(ResourceResponse.HTTP_STATUS_CODE,
+					Integer.toString(HttpURLConnection.HTTP_FORBIDDEN));
+			return;
+		}
+		// subscribe
+		final Subscription<String> subscription = broadcaster.subscribe(topic,
+				getLastEventID());
+		if (subscription == null) {
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Too many subscribers {0}.", broadcaster);
+			}
+			response.setProperty(ResourceResponse.HTTP_STATUS_CODE,
+					Integer.toString(HttpURLConnection.HTTP_UNAVAILABLE));
+			return;
+		}
+		try {
+			// the stream
+			response.setContentType("text/event-stream");
+			response.setCharacterEncoding("UTF-8");
+			response.setProperty("Cache-Control", "no-cache");
+			final PrintWriter writer = response.getWriter();
+			// stream until the timeout
+			final long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(pushTimeout);
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0) {
+				// resynchronize slow clients
+				if (subscription.isDropped()) {
+					final Message<String> snapshot = subscription.getSnapshot();
+					if (snapshot != null) {
+						writeEvent(writer, snapshot);
+					}
+					break;
+				}
+				// wait for the next message
+				final Message<String> message = subscription.poll(remaining,
+						TimeUnit.NANOSECONDS);
+				if (message == null) {
+					break;
+				}
+				writeEvent(writer, message);
+			}
+		} catch (final InterruptedException ex) {
+			// the container gave up on the request
+			Thread.currentThread().interrupt();
+		} finally {
+			// unsubscribe
+			subscription.close();
+		}
+	}
+
+	/**
+	 * Serves the resource identified by the resource ID of the request
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public void serveResource() throws PortletException, IOException {
+		// logging support
+		final String LOG_METHOD = "serveResource()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// decode the resource
+		final String resourceID = request.getResourceID();
+		final RESOURCE resource = privateMarshaller.unmarshalEnum(resourceID,
+				RESOURCES, RESOURCE.UNKNOWN);
+		// dispatch
+		if (resource == RESOURCE.STATE) {
+			serveState();
+		} else if (resource == RESOURCE.EVENTS) {
+			serveEvents();
+		} else {
+			// unknown resource
+			response.setProperty(ResourceResponse.HTTP_STATUS_CODE,
+					Integer.toString(HttpURLConnection.HTTP_NOT_FOUND));
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Serves the {@link RESOURCE#STATE} resource
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	private final void serveState() throws PortletException, IOException {
+		// execute the lookups
+		final List<Lookup> lookups = createStateLookups();
+		final List<Object> values = executeLookups(lookups);
+		if (values == null) {
+			// the backends are too slow or we are overloaded
+			response.setProperty(ResourceResponse.HTTP_STATUS_CODE,
+					Integer.toString(HttpURLConnection.HTTP_UNAVAILABLE));
+			return;
+		}
+		// assemble the response
+		final StringBuilder buffer = new StringBuilder();
+		buffer.append('{');
+		for (int i = 0; i < lookups.size(); ++i) {
+			final String name = lookups.get(i).toString();
+			final Object value = values.get(i);
+			if (value instanceof Number) {
+				Json.appendMember(buffer, name, ((Number) value).longValue());
+			} else {
+				Json.appendMember(buffer, name,
+						(value != null) ? value.toString() : null);
+			}
+		}
+		buffer.append('}');
+		// write the response in one go
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		final PrintWriter writer = response.getWriter();
+		writer.write(buffer.toString());
+		writer.flush();
+	}
+
+	/**
+	 * Writes a message as a server-sent event and flushes it to the client
+	 * 
+	 * @param aWriter
+	 *            the writer
+	 * @param aMessage
+	 *            the message, its payload is a single line of JSON
+	 * 
+	 * @throws IOException
+	 */
+	private final void writeEvent(final PrintWriter aWriter,
+			final Message<String> aMessage) throws IOException {
+		aWriter.write("id: ");
+		aWriter.write(Long.toString(aMessage.getSequence()));
+		aWriter.write("\ndata: ");
+		aWriter.write(aMessage.getPayload());
+		aWriter.write("\n\n");
+		aWriter.flush();
+		response.flushBuffer();
+	}
+}
@@ -1,484 +1,937 @@
-/*
- * (C) Copyright IBM Corp. 2014
- * 
- * Licensed under the Apache License, Version 2.0 (the "License"); 
- * you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at:
- * 
- * http://www.apache.org/licenses/LICENSE-2.0 
- * 
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
- * implied. See the License for the specific language governing 
- * permissions and limitations under the License.
- */
-package com.ibm.portal.samples.mvc.model;
-
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import javax.portlet.PortletConfig;
-import javax.portlet.PortletException;
-import javax.portlet.PortletRequest;
-import javax.portlet.PortletResponse;
-import javax.portlet.PortletURL;
-import javax.portlet.StateAwareResponse;
-
-import com.ibm.portal.samples.common.Marshaller;
-import com.ibm.portal.samples.mvc.controller.TemplateController;
-
-/**
- * Model implementation, includes all navigational state information. The key
- * features of this model are:
- * <ul>
- * <li>It provides bean access to the data model, so it can be used in a JSP
- * using JSTL.</li>
- * <li>The model state can be modified using bean syntax and the resulting
- * modification can be encoded into a URL or an action or event response.</li>
- * <li>It can be cloned efficiently, because for every URLs, we will clone the
- * model, update the clone so it represents the desired state represented by the
- * URL and then this state will be encoded into the URL.</li>
- * </ul>
- * 
- * @author cleue
- */
-public class TemplateModel implements Cloneable {
-
-	/**
-	 * Representation to dependencies on external services
-	 */
-	public interface Dependencies {
-
-		/**
-		 * Marshaller for private render parameters
-		 * 
-		 * @return the marshaller
-		 */
-		Marshaller getPrivateParameterMarshaller();
-
-		/**
-		 * TODO add dependencies via parameterless getter methods
-		 */
-	}
-
-	/**
-	 * Private render parameters. The {@link TemplateModel} should provide
-	 * getter and setter methods for each of the parameters. Optionally it can
-	 * provide higher level modifying operations. The {@link TemplateController}
-	 * contains methods to represent the modifiers by URLs.
-	 * 
-	 * @author cleue
-	 * 
-	 */
-	private enum PARAMS {
-		/**
-		 * TODO For each render parameter define an enumeration value. This mock
-		 * value is just a sample and can be removed. Also add getter and setter
-		 * methods for custom render parameters.
-		 * 
-		 * @see TemplateModel#getSampleInt()
-		 * @see TemplateModel#setSampleInt(int)
-		 * @see TemplateModel#incSampleInt()
-		 * @see TemplateModel#decSampleInt()
-		 */
-
-		SAMPLE_INT,
-
-		/**
-		 * Sample text that can be entered via a form input field.
-		 * 
-		 * @see TemplateModel#getSampleText()
-		 * @see TemplateModel#setSampleText(String)
-		 */
-		SAMPLE_TEXT
-	}
-
-	/**
-	 * default value for the sample integer
-	 * 
-	 * TODO replace by custom state
-	 */
-	private static final int DEFAULT_SAMPLE_INT = 1;
-
-	/**
-	 * default value for the sample text
-	 * 
-	 * TODO replace by custom state
-	 */
-	private static final String DEFAULT_SAMPLE_TEXT = "sample";
-
-	/** class name for the logger */
-	private static final String LOG_CLASS = TemplateModel.class.getName();
-
-	/** logging level */
-	private static final Level LOG_LEVEL = Level.FINER;
-
-	/** class logger */
-	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
-
-	/**
-	 * logging can be an instance variable, since the lifecycle of the model is
-	 * the request
-	 */
-	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
-
-	/**
-	 * Check if we have a sample int. We use a boolean object as a detector,
-	 * <code>null</code> means that the int has not been decoded, yet.
-	 */
-	private Boolean bSampleInt;
-
-	/**
-	 * Check if we have a sample text. We use a boolean object as a detector,
-	 * <code>null</code> means that the int has not been decoded, yet.
-	 */
-	private Boolean bSampleText;
-
-	/**
-	 * 
-	 */
-	private final PortletRequest request;
-
-	/**
-	 * sample navigational state
-	 */
-	private int sampleInt;
-
-	/**
-	 * sample navigational state
-	 */
-	private String sampleText;
-
-	/**
-	 * controls how private parameters are marshalled
-	 */
-	private final Marshaller privateMarshaller;
-
-	/**
-	 * Initializes the model from a portlet request
-	 * 
-	 * @param aRequest
-	 *            the request
-	 * @param aResponse
-	 *            the response
-	 * @param aDeps
-	 *            the dependencies
-	 */
-	public TemplateModel(final PortletRequest aRequest,
-			final PortletResponse aResponse, final PortletConfig aConfig,
-			final Dependencies aDeps) {
-		// sanity check
-		assert aRequest != null;
-		assert aResponse != null;
-		assert aConfig != null;
-		assert aDeps != null;
-		// logging support
-		final String LOG_METHOD = "TemplateModel(aRequest, aResponse, aConfig, aDeps)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// TODO copy dependencies from the interface into fields
-		request = aRequest;
-		privateMarshaller = aDeps.getPrivateParameterMarshaller();
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Copy constructor, used to clone the model
-	 * 
-	 * @param aModel
-	 *            the model
-	 */
-	protected TemplateModel(final TemplateModel aModel) {
-		/**
-		 * Copies the static portion of the data
-		 */
-		request = aModel.request;
-		privateMarshaller = aModel.privateMarshaller;
-		/**
-		 * copies the resettable portion of the private data. Do not call the
-		 * copy method because it might have been overridden by a subclass.
-		 */
-		internalCopy(aModel);
-	}
-
-	/**
-	 * Reset all information
-	 */
-	public void clear() {
-		// logging support
-		final String LOG_METHOD = "clear()";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		/**
-		 * We dispatch to our internal implementation in case we need to clear
-		 * our private data from somewhere else.
-		 */
-		internalClear();
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see java.lang.Object#clone()
-	 */
-	@Override
-	public TemplateModel clone() {
-		/**
-		 * generate a copy of the model. No need to change this implementation,
-		 * rather update the copy constructor.
-		 */
-		return new TemplateModel(this);
-	}
-
-	/**
-	 * Copies the state from the given model over to this model
-	 * 
-	 * @param aModel
-	 *            model to copy
-	 */
-	public final void copy(final TemplateModel aModel) {
-		// sanity check
-		assert aModel != null;
-		// logging support
-		final String LOG_METHOD = "copy(aModel)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// copies the resettable portion of the private data
-		internalCopy(aModel);
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Decrement the sample integer
-	 */
-	public void decSampleInt() {
-		// update the integer
-		setSampleInt(getSampleInt() - 1);
-	}
-
-	/**
-	 * Performs cleanup of the model resources at the end of the request
-	 */
-	public void dispose() {
-		// logging support
-		final String LOG_METHOD = "dispose()";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// reset the data
-		internalClear();
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Encodes the state of the model into a URL. Note that typically the
-	 * identical logic has to be implemented in the
-	 * {@link TemplateModel#encode(StateAwareResponse)} method.
-	 * 
-	 * @param aURL
-	 *            the URL
-	 * 
-	 * @throws PortletException
-	 * @throws IOException
-	 * 
-	 * @see TemplateModel#encode(StateAwareResponse)
-	 */
-	public void encode(final PortletURL aURL) throws PortletException,
-			IOException {
-		// sanity check
-		assert aURL != null;
-		// logging support
-		final String LOG_METHOD = "encode(aURL)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// encode the text
-		aURL.setParameter(privateMarshaller.marshalEnum(PARAMS.SAMPLE_TEXT),
-				privateMarshaller.marshalString(getSampleText()));
-		aURL.setParameter(privateMarshaller.marshalEnum(PARAMS.SAMPLE_INT),
-				privateMarshaller.marshalInt(getSampleInt()));
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Encodes the state of the model into a response, typically after the
-	 * action. Note that typically the identical logic has to be implemented in
-	 * the {@link #encode(PortletURL))} method.
-	 * 
-	 * @param aResponse
-	 *            the response
-	 * @throws PortletException
-	 * @throws IOException
-	 * 
-	 * @see TemplateModel#encode(PortletURL)
-	 */
-	public void encode(final StateAwareResponse aResponse)
-			throws PortletException, IOException {
-		// sanity check
-		assert aResponse != null;
-		// logging support
-		final String LOG_METHOD = "encode(aResponse)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD);
-		}
-		// encode the text
-		aResponse.setRenderParameter(
-				privateMarshaller.marshalEnum(PARAMS.SAMPLE_TEXT),
-				privateMarshaller.marshalString(getSampleText()));
-		aResponse.setRenderParameter(
-				privateMarshaller.marshalEnum(PARAMS.SAMPLE_INT),
-				privateMarshaller.marshalInt(getSampleInt()));
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Getter for the sample integer
-	 * 
-	 * @return the sample integer
-	 */
-	public int getSampleInt() {
-		// logging support
-		final String LOG_METHOD = "getSampleInt()";
-		// check if we have already decoded the parameter
-		if (bSampleInt == null) {
-			// decodes the int
-			setSampleInt(privateMarshaller.unmarshalInt(request
-					.getParameter(privateMarshaller
-							.marshalEnum(PARAMS.SAMPLE_INT)),
-					DEFAULT_SAMPLE_INT));
-			// log this
-			if (bIsLogging) {
-				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-						"Decoded the sample int ...");
-			}
-		}
-		// ok
-		return sampleInt;
-	}
-
-	/**
-	 * Getter for the sample text
-	 * 
-	 * @return the sample text
-	 */
-	public String getSampleText() {
-		// logging support
-		final String LOG_METHOD = "getSampleText()";
-		// check if we have already decoded the parameter
-		if (bSampleText == null) {
-			// decodes the text
-			setSampleText(privateMarshaller.unmarshalString(request
-					.getParameter(privateMarshaller
-							.marshalEnum(PARAMS.SAMPLE_TEXT)),
-					DEFAULT_SAMPLE_TEXT));
-			// log this
-			if (bIsLogging) {
-				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
-						"Decoded the sample text ...");
-			}
-		}
-		// ok
-		return sampleText;
-	}
-
-	/**
-	 * Increment the sample integer
-	 */
-	public void incSampleInt() {
-		// update the integer
-		setSampleInt(getSampleInt() + 1);
-	}
-
-	/**
-	 * Clears only our private data
-	 */
-	private final void internalClear() {
-		// TODO reset your custom data here
-		setSampleInt(DEFAULT_SAMPLE_INT);
-		setSampleText(DEFAULT_SAMPLE_TEXT);
-	}
-
-	/**
-	 * Copies only our private data
-	 * 
-	 * @param aModel
-	 *            model to copy
-	 */
-	private final void internalCopy(final TemplateModel aModel) {
-		// sanity check
-		assert aModel != null;
-		// TODO copy the data here
-		bSampleInt = aModel.bSampleInt;
-		sampleInt = aModel.sampleInt;
-		bSampleText = aModel.bSampleText;
-		sampleText = aModel.sampleText;
-	}
-
-	/**
-	 * Assigns a new sample integer
-	 * 
-	 * @param aSampleInt
-	 *            the new sample
-	 */
-	public void setSampleInt(final int aSampleInt) {
-		// logging support
-		final String LOG_METHOD = "setSampleInt(aSampleInt)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleInt);
-		}
-		// set the int
-		sampleInt = aSampleInt;
-		// update the flag
-		bSampleInt = (sampleInt != 0);
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-
-	/**
-	 * Assigns a new sample text
-	 * 
-	 * @param aSampleText
-	 *            new text
-	 */
-	public void setSampleText(final String aSampleText) {
-		// logging support
-		final String LOG_METHOD = "setSampleText(aSampleText)";
-		if (bIsLogging) {
-			LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleText);
-		}
-		// set the text
-		sampleText = aSampleText;
-		// update the flag
-		bSampleText = (sampleText != null);
-		// exit trace
-		if (bIsLogging) {
-			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
-		}
-	}
-}
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.PortletConfig;
+import javax.portlet.PortletException;
+import javax.portlet.PortletPreferences;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.PortletURL;
+import javax.portlet.StateAwareResponse;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PreferencesCache;
+import com.ibm.portal.samples.common.StateSigner;
+import com.ibm.portal.samples.mvc.controller.TemplateController;
+
+/**
+ * Model implementation, includes all navigational state information. The key
+ * features of this model are:
+ * <ul>
+ * <li>It provides bean access to the data model, so it can be used in a JSP
+ * using JSTL.</li>
+ * <li>The model state can be modified using bean syntax and the resulting
+ * modification can be encoded into a URL or an action or event response.</li>
+ * <li>It can be cloned efficiently, because for every URLs, we will clone the
+ * model, update the clone so it represents the desired state represented by the
+ * URL and then this state will be encoded into the URL.</li>
+ * <li>The decoded state is kept as an immutable {@link TemplateState}. Clones
+ * share the state and a modification replaces it, so the state returned by
+ * {@link #getState()} can be kept beyond the request.</li>
+ * </ul>
+ * 
+ * @author cleue
+ */
+public class TemplateModel implements Cloneable {
+
+	/**
+	 * Representation to dependencies on external services
+	 */
+	public interface Dependencies {
+
+		/**
+		 * Generation of the configuration, it changes whenever components
+		 * that influence the markup (e.g. the marshallers or the signing
+		 * keys) may have changed
+		 * 
+		 * @return the generation
+		 */
+		long getGeneration();
+
+		/**
+		 * Fields of the model that are persisted as portlet preferences instead
+		 * of being encoded as render parameters
+		 * 
+		 * @return the persistent fields, never <code>null</code>
+		 */
+		Set<PREFS> getPersistentPreferences();
+
+		/**
+		 * Cache for the preferences of the portlet windows
+		 * 
+		 * @return the cache
+		 */
+		PreferencesCache getPreferencesCache();
+
+		/**
+		 * Marshaller for private render parameters
+		 * 
+		 * @return the marshaller
+		 */
+		Marshaller getPrivateParameterMarshaller();
+
+		/**
+		 * Marshaller for public render parameters
+		 * 
+		 * @return the marshaller
+		 */
+		Marshaller getPublicParameterMarshaller();
+
+		/**
+		 * Fields of the model that are exchanged with other portlets as public
+		 * render parameters instead of private ones, typically the parameters
+		 * declared as supported in the portlet descriptor
+		 * 
+		 * @return the public fields, never <code>null</code>
+		 */
+		Set<PUBLIC_PARAMS> getPublicParameters();
+
+		/**
+		 * Checks if the windows offer a push channel
+		 * 
+		 * @return <code>true</code> if the push channel is enabled
+		 */
+		boolean isPushEnabled();
+
+		/**
+		 * Signer for the private render parameters
+		 * 
+		 * @return the signer or <code>null</code> if the parameters are not
+		 *         signed
+		 */
+		StateSigner getStateSigner();
+
+		/**
+		 * TODO add dependencies via parameterless getter methods
+		 */
+	}
+
+	/**
+	 * Private render parameters. The {@link TemplateModel} should provide
+	 * getter and setter methods for each of the parameters. Optionally it can
+	 * provide higher level modifying operations. The {@link TemplateController}
+	 * contains methods to represent the modifiers by URLs.
+	 * 
+	 * @author cleue
+	 * 
+	 */
+	private enum PARAMS {
+		/**
+		 * TODO For each render parameter define an enumeration value. This mock
+		 * value is just a sample and can be removed. Also add getter and setter
+		 * methods for custom render parameters.
+		 * 
+		 * @see TemplateModel#getSampleInt()
+		 * @see TemplateModel#setSampleInt(int)
+		 * @see TemplateModel#incSampleInt()
+		 * @see TemplateModel#decSampleInt()
+		 */
+
+		SAMPLE_INT,
+
+		/**
+		 * Sample text that can be entered via a form input field.
+		 * 
+		 * @see TemplateModel#getSampleText()
+		 * @see TemplateModel#setSampleText(String)
+		 */
+		SAMPLE_TEXT,
+
+		/**
+		 * Signature of the other private parameters, only present if a
+		 * {@link StateSigner} is configured. New parameters have to be added
+		 * in front of this one and to the signed values.
+		 * 
+		 * @see TemplateModel#isVerified()
+		 */
+		SIGNATURE
+	}
+
+	/**
+	 * Fields of the model that can be persisted as portlet preferences. The
+	 * name of the preference is the name of the enumeration constant, since in
+	 * contrast to render parameters the preferences are stored permanently and
+	 * must not change with the order of the constants.
+	 * 
+	 * @see Dependencies#getPersistentPreferences()
+	 */
+	public enum PREFS {
+		/**
+		 * Sample text that can be entered via a form input field.
+		 * 
+		 * @see TemplateModel#getSampleText()
+		 * @see TemplateModel#setSampleText(String)
+		 */
+		SAMPLE_TEXT
+	}
+
+	/**
+	 * Fields of the model that can be exchanged as public render parameters.
+	 * The {@link Dependencies#getPublicParameterMarshaller()} maps each
+	 * constant to the identifier of the public render parameter in the portlet
+	 * descriptor. In contrast to {@link PARAMS} the identifiers are a contract
+	 * with other portlets and must not change.
+	 * 
+	 * @see Dependencies#getPublicParameters()
+	 */
+	public enum PUBLIC_PARAMS {
+		/**
+		 * Sample integer, shared with the other portlets on the page that
+		 * support the same public render parameter.
+		 * 
+		 * @see TemplateModel#getSampleInt()
+		 * @see TemplateModel#setSampleInt(int)
+		 */
+		SAMPLE_INT
+	}
+
+	/**
+	 * offset basis of the FNV-1a hash used for the entity tags
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	/**
+	 * prime of the FNV-1a hash used for the entity tags
+	 */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = TemplateModel.class.getName();
+
+	/** logging level */
+	private static final Level LOG_LEVEL = Level.FINER;
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * Updates an FNV-1a hash with a string value
+	 * 
+	 * @param aHash
+	 *            the current hash
+	 * @param aValue
+	 *            the value, may be <code>null</code>
+	 * @return the new hash
+	 */
+	private static final long hash(final long aHash, final Object aValue) {
+		long hash = aHash;
+		if (aValue != null) {
+			final String value = aValue.toString();
+			final int len = value.length();
+			for (int i = 0; i < len; ++i) {
+				hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+			}
+		}
+		// separator, so adjacent values cannot be confused
+		return (hash ^ 0xffff) * FNV_PRIME;
+	}
+
+	/**
+	 * logging can be an instance variable, since the lifecycle of the model is
+	 * the request
+	 */
+	private final boolean bIsLogging = LOGGER.isLoggable(LOG_LEVEL);
+
+	/**
+	 * <code>true</code> if the window offers a push channel
+	 */
+	private final boolean bPushEnabled;
+
+	/**
+	 * Check if the signature of the private parameters is valid. We use a
+	 * boolean object as a detector, <code>null</code> means that the signature
+	 * has not been verified, yet. The result depends on the request only, so
+	 * it is shared by the clones.
+	 */
+	private Boolean bVerified;
+
+	/**
+	 * generation of the configuration
+	 */
+	private final long generation;
+
+	/**
+	 * snapshot of the request parameters, taken once per request, so decoding
+	 * a field never goes back to the container
+	 */
+	private final Map<String, String[]> parameters;
+
+	/**
+	 * fields that are persisted as preferences
+	 */
+	private final Set<PREFS> persistentPreferences;
+
+	/**
+	 * access to the preferences of the window
+	 */
+	private final PreferencesCache preferencesCache;
+
+	/**
+	 * controls how public parameters are marshalled
+	 */
+	private final Marshaller publicMarshaller;
+
+	/**
+	 * fields that are exchanged as public render parameters
+	 */
+	private final Set<PUBLIC_PARAMS> publicParameters;
+
+	/**
+	 * 
+	 */
+	private final PortletRequest request;
+
+	/**
+	 * controls how private parameters are marshalled
+	 */
+	private final Marshaller privateMarshaller;
+
+	/**
+	 * the decoded state, <code>null</code> if the parameters have not been
+	 * decoded, yet
+	 */
+	private TemplateState state;
+
+	/**
+	 * signs the private parameters, <code>null</code> if signing is disabled
+	 */
+	private final StateSigner stateSigner;
+
+	/**
+	 * Initializes the model from a portlet request
+	 * 
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * @param aDeps
+	 *            the dependencies
+	 */
+	public TemplateModel(final PortletRequest aRequest,
+			final PortletResponse aResponse, final PortletConfig aConfig,
+			final Dependencies aDeps) {
+		// sanity check
+		assert aRequest != null;
+		assert aResponse != null;
+		assert aConfig != null;
+		assert aDeps != null;
+		// logging support
+		final String LOG_METHOD = "TemplateModel(aRequest, aResponse, aConfig, aDeps)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// TODO copy dependencies from the interface into fields
+		request = aRequest;
+		parameters = aRequest.getParameterMap();
+		privateMarshaller = aDeps.getPrivateParameterMarshaller();
+		persistentPreferences = aDeps.getPersistentPreferences();
+		preferencesCache = aDeps.getPreferencesCache();
+		publicMarshaller = aDeps.getPublicParameterMarshaller();
+		publicParameters = aDeps.getPublicParameters();
+		stateSigner = aDeps.getStateSigner();
+		bPushEnabled = aDeps.isPushEnabled();
+		generation = aDeps.getGeneration();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Copy constructor, used to clone the model
+	 * 
+	 * @param aModel
+	 *            the model
+	 */
+	protected TemplateModel(final TemplateModel aModel) {
+		/**
+		 * Copies the static portion of the data
+		 */
+		request = aModel.request;
+		parameters = aModel.parameters;
+		privateMarshaller = aModel.privateMarshaller;
+		persistentPreferences = aModel.persistentPreferences;
+		preferencesCache = aModel.preferencesCache;
+		publicMarshaller = aModel.publicMarshaller;
+		publicParameters = aModel.publicParameters;
+		stateSigner = aModel.stateSigner;
+		bPushEnabled = aModel.bPushEnabled;
+		generation = aModel.generation;
+		bVerified = aModel.bVerified;
+		/**
+		 * copies the resettable portion of the private data. Do not call the
+		 * copy method because it might have been overridden by a subclass.
+		 */
+		internalCopy(aModel);
+	}
+
+	/**
+	 * Reset all information
+	 */
+	public void clear() {
+		// logging support
+		final String LOG_METHOD = "clear()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		/**
+		 * We dispatch to our internal implementation in case we need to clear
+		 * our private data from somewhere else.
+		 */
+		internalClear();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#clone()
+	 */
+	@Override
+	public TemplateModel clone() {
+		/**
+		 * generate a copy of the model. No need to change this implementation,
+		 * rather update the copy constructor.
+		 */
+		return new TemplateModel(this);
+	}
+
+	/**
+	 * Copies the state from the given model over to this model
+	 * 
+	 * @param aModel
+	 *            model to copy
+	 */
+	public final void copy(final TemplateModel aModel) {
+		// sanity check
+		assert aModel != null;
+		// logging support
+		final String LOG_METHOD = "copy(aModel)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// copies the resettable portion of the private data
+		internalCopy(aModel);
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Decrement the sample integer
+	 */
+	public void decSampleInt() {
+		// update the integer
+		setSampleInt(getSampleInt() - 1);
+	}
+
+	/**
+	 * Performs cleanup of the model resources at the end of the request
+	 */
+	public void dispose() {
+		// logging support
+		final String LOG_METHOD = "dispose()";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// reset the data
+		internalClear();
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Encodes the state of the model into a URL. Note that typically the
+	 * identical logic has to be implemented in the
+	 * {@link TemplateModel#encode(StateAwareResponse)} method.
+	 * 
+	 * @param aURL
+	 *            the URL
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 * 
+	 * @see TemplateModel#encode(StateAwareResponse)
+	 */
+	public void encode(final PortletURL aURL) throws PortletException,
+			IOException {
+		// sanity check
+		assert aURL != null;
+		// logging support
+		final String LOG_METHOD = "encode(aURL)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// encode the text, unless it is persisted as a preference
+		final String textToken;
+		if (!isPersistent(PREFS.SAMPLE_TEXT)) {
+			textToken = privateMarshaller.marshalString(getSampleText());
+			aURL.setParameter(
+					privateMarshaller.marshalEnum(PARAMS.SAMPLE_TEXT),
+					textToken);
+		} else {
+			textToken = null;
+		}
+		// the int is either shared or private
+		final String intToken;
+		if (isPublic(PUBLIC_PARAMS.SAMPLE_INT)) {
+			// only touch the public parameter if it changed
+			final String token = publicMarshaller.marshalInt(getSampleInt());
+			if (isModified(PUBLIC_PARAMS.SAMPLE_INT, token)) {
+				aURL.setParameter(
+						publicMarshaller.marshalEnum(PUBLIC_PARAMS.SAMPLE_INT),
+						token);
+			}
+			intToken = null;
+		} else {
+			intToken = privateMarshaller.marshalInt(getSampleInt());
+			aURL.setParameter(
+					privateMarshaller.marshalEnum(PARAMS.SAMPLE_INT), intToken);
+		}
+		// sign the private parameters, in the order of their declaration
+		if (stateSigner != null) {
+			aURL.setParameter(
+					privateMarshaller.marshalEnum(PARAMS.SIGNATURE),
+					stateSigner.sign(intToken, textToken));
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Encodes the state of the model into a response, typically after the
+	 * action. Note that typically the identical logic has to be implemented in
+	 * the {@link #encode(PortletURL))} method.
+	 * 
+	 * @param aResponse
+	 *            the response
+	 * @throws PortletException
+	 * @throws IOException
+	 * 
+	 * @see TemplateModel#encode(PortletURL)
+	 */
+	public void encode(final StateAwareResponse aResponse)
+			throws PortletException, IOException {
+		// sanity check
+		assert aResponse != null;
+		// logging support
+		final String LOG_METHOD = "encode(aResponse)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// encode the text, unless it is persisted as a preference
+		final String textToken;
+		if (!isPersistent(PREFS.SAMPLE_TEXT)) {
+			textToken = privateMarshaller.marshalString(getSampleText());
+			aResponse.setRenderParameter(
+					privateMarshaller.marshalEnum(PARAMS.SAMPLE_TEXT),
+					textToken);
+		} else {
+			textToken = null;
+		}
+		// the int is either shared or private
+		final String intToken;
+		if (isPublic(PUBLIC_PARAMS.SAMPLE_INT)) {
+			// only touch the public parameter if it changed
+			final String token = publicMarshaller.marshalInt(getSampleInt());
+			if (isModified(PUBLIC_PARAMS.SAMPLE_INT, token)) {
+				aResponse.setRenderParameter(
+						publicMarshaller.marshalEnum(PUBLIC_PARAMS.SAMPLE_INT),
+						token);
+			}
+			intToken = null;
+		} else {
+			intToken = privateMarshaller.marshalInt(getSampleInt());
+			aResponse.setRenderParameter(
+					privateMarshaller.marshalEnum(PARAMS.SAMPLE_INT), intToken);
+		}
+		// sign the private parameters, in the order of their declaration
+		if (stateSigner != null) {
+			aResponse.setRenderParameter(
+					privateMarshaller.marshalEnum(PARAMS.SIGNATURE),
+					stateSigner.sign(intToken, textToken));
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Computes the entity tag of the markup generated for this model. The tag
+	 * covers the model fields consumed by the view, the locale and the
+	 * generation of the configuration, so two requests with the same tag
+	 * render identical markup, including the tokens in the URLs. Parameters
+	 * that the portlet does not consume (e.g. public render parameters of
+	 * other portlets) do not change the tag.
+	 * 
+	 * @return the entity tag
+	 */
+	public String getETag() {
+		// logging support
+		final String LOG_METHOD = "getETag()";
+		// hash the consumed state
+		long hash = FNV_OFFSET;
+		hash = hash(hash, Long.valueOf(generation));
+		hash = hash(hash, request.getLocale());
+		hash = hash(hash, request.getWindowState());
+		hash = hash(hash, Integer.valueOf(getSampleInt()));
+		hash = hash(hash, getSampleText());
+		final String result = Long.toString(hash, Character.MAX_RADIX);
+		// log this
+		if (bIsLogging) {
+			LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD, "ETag [{0}].",
+					result);
+		}
+		// ok
+		return result;
+	}
+
+	/**
+	 * Returns the first value of a parameter from the snapshot
+	 * 
+	 * @param aName
+	 *            name of the parameter
+	 * @return the value or <code>null</code>
+	 */
+	private final String getParameter(final String aName) {
+		final String[] values = parameters.get(aName);
+		return ((values != null) && (values.length > 0)) ? values[0] : null;
+	}
+
+	/**
+	 * Returns the token of a private render parameter. If the parameters are
+	 * signed, the tokens are only accepted if the signature is valid, so
+	 * forged or tampered parameters decode to their defaults.
+	 * 
+	 * @param aParam
+	 *            the parameter
+	 * @return the token or <code>null</code>
+	 */
+	private final String getPrivateParameter(final PARAMS aParam) {
+		if ((stateSigner != null) && !isVerified()) {
+			return null;
+		}
+		return getParameter(privateMarshaller.marshalEnum(aParam));
+	}
+
+	/**
+	 * Returns the key of the push channel for this model. The navigational
+	 * state is private to the user, so the channel is scoped to the window and
+	 * the authenticated user. Anonymous users do not get a channel, because
+	 * all of them share the same identity.
+	 * 
+	 * @return the key or <code>null</code> if the push channel is disabled or
+	 *         the user is anonymous
+	 */
+	public String getPushTopic() {
+		if (!bPushEnabled) {
+			return null;
+		}
+		final String user = request.getRemoteUser();
+		return (user != null) ? request.getWindowID() + '/' + user : null;
+	}
+
+	/**
+	 * Getter for the sample integer
+	 * 
+	 * @return the sample integer
+	 */
+	public int getSampleInt() {
+		return getState().getSampleInt();
+	}
+
+	/**
+	 * Getter for the sample text
+	 * 
+	 * @return the sample text
+	 */
+	public String getSampleText() {
+		return getState().getSampleText();
+	}
+
+	/**
+	 * Returns the decoded state of the model. The state is immutable and does
+	 * not reference the request, so it can be cached or handed to other
+	 * threads.
+	 * 
+	 * @return the state
+	 */
+	public TemplateState getState() {
+		// logging support
+		final String LOG_METHOD = "getState()";
+		// check if we have already decoded the parameters
+		if (state == null) {
+			final TemplateState defaults = TemplateState.DEFAULT;
+			// decodes the int, either from the public or the private parameter
+			final int sampleInt = isPublic(PUBLIC_PARAMS.SAMPLE_INT) ? publicMarshaller
+					.unmarshalInt(getParameter(publicMarshaller
+							.marshalEnum(PUBLIC_PARAMS.SAMPLE_INT)), defaults
+							.getSampleInt()) : privateMarshaller.unmarshalInt(
+					getPrivateParameter(PARAMS.SAMPLE_INT),
+					defaults.getSampleInt());
+			// decodes the text, either from the preferences or the parameters
+			final String sampleText = isPersistent(PREFS.SAMPLE_TEXT) ? preferencesCache
+					.getValue(request, PREFS.SAMPLE_TEXT.name(),
+							defaults.getSampleText()) : privateMarshaller
+					.unmarshalString(getPrivateParameter(PARAMS.SAMPLE_TEXT),
+							defaults.getSampleText());
+			// TODO decode your custom fields here
+			state = defaults.withSampleInt(sampleInt).withSampleText(
+					sampleText);
+			// log this
+			if (bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Decoded the state [{0}].", state);
+			}
+		}
+		// ok
+		return state;
+	}
+
+	/**
+	 * Increment the sample integer
+	 */
+	public void incSampleInt() {
+		// update the integer
+		setSampleInt(getSampleInt() + 1);
+	}
+
+	/**
+	 * Clears only our private data
+	 */
+	private final void internalClear() {
+		state = TemplateState.DEFAULT;
+	}
+
+	/**
+	 * Copies only our private data
+	 * 
+	 * @param aModel
+	 *            model to copy
+	 */
+	private final void internalCopy(final TemplateModel aModel) {
+		// sanity check
+		assert aModel != null;
+		// the state is immutable, so it can be shared
+		state = aModel.state;
+	}
+
+	/**
+	 * Checks if the marshalled value differs from the current value of the
+	 * public render parameter. Public parameters are only set if they change,
+	 * because every modification causes the portal to notify all portlets
+	 * that share the parameter.
+	 * 
+	 * @param aParam
+	 *            the public parameter
+	 * @param aToken
+	 *            the marshalled value
+	 * @return <code>true</code> if the value changed, else <code>false</code>
+	 */
+	private final boolean isModified(final PUBLIC_PARAMS aParam,
+			final String aToken) {
+		return !aToken.equals(getParameter(publicMarshaller
+				.marshalEnum(aParam)));
+	}
+
+	/**
+	 * Checks if a field of the model is persisted as a preference
+	 * 
+	 * @param aPref
+	 *            the field
+	 * @return <code>true</code> if the field is persistent, else
+	 *         <code>false</code>
+	 */
+	public final boolean isPersistent(final PREFS aPref) {
+		return persistentPreferences.contains(aPref);
+	}
+
+	/**
+	 * Checks if a field of the model is exchanged as a public render parameter
+	 * 
+	 * @param aParam
+	 *            the field
+	 * @return <code>true</code> if the field is public, else
+	 *         <code>false</code>
+	 */
+	public final boolean isPublic(final PUBLIC_PARAMS aParam) {
+		return publicParameters.contains(aParam);
+	}
+
+	/**
+	 * Checks if the private render parameters of the request carry a valid
+	 * signature. The signature is verified only once per request. A request
+	 * without any private parameters is valid, since it represents the
+	 * default state. Backends can trust the state of a verified model without
+	 * validating it again.
+	 * 
+	 * @return <code>true</code> if the parameters are signed and valid, else
+	 *         <code>false</code>
+	 */
+	public final boolean isVerified() {
+		// logging support
+		final String LOG_METHOD = "isVerified()";
+		// signing is disabled
+		if (stateSigner == null) {
+			return false;
+		}
+		// check if we have already verified the signature
+		if (bVerified == null) {
+			// the same tokens that have been signed by the encode methods
+			final String intToken = isPublic(PUBLIC_PARAMS.SAMPLE_INT) ? null
+					: getParameter(privateMarshaller
+							.marshalEnum(PARAMS.SAMPLE_INT));
+			final String textToken = isPersistent(PREFS.SAMPLE_TEXT) ? null
+					: getParameter(privateMarshaller
+							.marshalEnum(PARAMS.SAMPLE_TEXT));
+			final String signature = getParameter(privateMarshaller
+					.marshalEnum(PARAMS.SIGNATURE));
+			bVerified = ((signature == null) && (intToken == null) && (textToken == null))
+					|| stateSigner.verify(signature, intToken, textToken);
+			// log this
+			if (!bVerified && bIsLogging) {
+				LOGGER.logp(LOG_LEVEL, LOG_CLASS, LOG_METHOD,
+						"Invalid signature [{0}], using the defaults.",
+						signature);
+			}
+		}
+		// ok
+		return bVerified;
+	}
+
+	/**
+	 * Assigns a new sample integer
+	 * 
+	 * @param aSampleInt
+	 *            the new sample
+	 */
+	public void setSampleInt(final int aSampleInt) {
+		// logging support
+		final String LOG_METHOD = "setSampleInt(aSampleInt)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleInt);
+		}
+		// derive the new state
+		state = getState().withSampleInt(aSampleInt);
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Assigns a new sample text
+	 * 
+	 * @param aSampleText
+	 *            new text
+	 */
+	public void setSampleText(final String aSampleText) {
+		// logging support
+		final String LOG_METHOD = "setSampleText(aSampleText)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD, aSampleText);
+		}
+		// derive the new state
+		state = getState().withSampleText(aSampleText);
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Replaces the state of the model
+	 * 
+	 * @param aState
+	 *            the new state
+	 */
+	public void setState(final TemplateState aState) {
+		// sanity check
+		assert aState != null;
+		// logging support
+		final String LOG_METHOD = "setState(aState)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD, aState);
+		}
+		// replace the state
+		state = aState;
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD);
+		}
+	}
+
+	/**
+	 * Copies the persistent fields of the model into the preferences. Only
+	 * values that differ from the current preferences are written, so the
+	 * caller can decide whether a {@link PortletPreferences#store()} is
+	 * required at all. The method does not call {@link PortletPreferences#store()}
+	 * itself, such that all modifications of an action can be written in a
+	 * single round trip to the preference store.
+	 * 
+	 * @param aPrefs
+	 *            the preferences to update
+	 * @return <code>true</code> if at least one preference was modified, else
+	 *         <code>false</code>
+	 * 
+	 * @throws PortletException
+	 */
+	public boolean updatePreferences(final PortletPreferences aPrefs)
+			throws PortletException {
+		// sanity check
+		assert aPrefs != null;
+		// logging support
+		final String LOG_METHOD = "updatePreferences(aPrefs)";
+		if (bIsLogging) {
+			LOGGER.entering(LOG_CLASS, LOG_METHOD);
+		}
+		// check if we modified anything
+		boolean bResult = false;
+		// TODO add your persistent fields here
+		if (isPersistent(PREFS.SAMPLE_TEXT)) {
+			// the current value
+			final String key = PREFS.SAMPLE_TEXT.name();
+			final String value = getSampleText();
+			if ((value != null) && !value.equals(aPrefs.getValue(key, null))) {
+				// update the preference
+				aPrefs.setValue(key, value);
+				bResult = true;
+			}
+		}
+		// exit trace
+		if (bIsLogging) {
+			LOGGER.exiting(LOG_CLASS, LOG_METHOD, bResult);
+		}
+		// ok
+		return bResult;
+	}
+}
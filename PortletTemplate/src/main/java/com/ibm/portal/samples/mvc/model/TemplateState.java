@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc.model;
+
+import com.ibm.portal.samples.common.Json;
+
+/**
+ * Immutable snapshot of the decoded state of a {@link TemplateModel}. The
+ * snapshot does not reference the request, so it can be cached and shared
+ * across requests and threads without copying. Modifications derive a new
+ * snapshot via the <code>with</code> methods, which share all unmodified
+ * values with the original and return the original itself if nothing
+ * changes.
+ * 
+ * TODO add a field and a <code>with</code> method for each custom field of
+ * the model
+ * 
+ * @author cleue
+ */
+public final class TemplateState {
+
+	/**
+	 * default value for the sample integer
+	 * 
+	 * TODO replace by custom state
+	 */
+	private static final int DEFAULT_SAMPLE_INT = 1;
+
+	/**
+	 * default value for the sample text
+	 * 
+	 * TODO replace by custom state
+	 */
+	private static final String DEFAULT_SAMPLE_TEXT = "sample";
+
+	/**
+	 * the state of a window that has not been modified
+	 */
+	public static final TemplateState DEFAULT = new TemplateState(
+			DEFAULT_SAMPLE_INT, DEFAULT_SAMPLE_TEXT);
+
+	/**
+	 * Compares two values that may be <code>null</code>
+	 * 
+	 * @param aLeft
+	 *            the first value
+	 * @param aRight
+	 *            the second value
+	 * @return <code>true</code> if the values are equal
+	 */
+	private static boolean equals(final Object aLeft, final Object aRight) {
+		return (aLeft != null) ? aLeft.equals(aRight) : (aRight == null);
+	}
+
+	/**
+	 * sample navigational state
+	 */
+	private final int sampleInt;
+
+	/**
+	 * sample navigational state
+	 */
+	private final String sampleText;
+
+	/**
+	 * Constructs the state
+	 * 
+	 * @param aSampleInt
+	 *            the sample integer
+	 * @param aSampleText
+	 *            the sample text
+	 */
+	private TemplateState(final int aSampleInt, final String aSampleText) {
+		sampleInt = aSampleInt;
+		sampleText = aSampleText;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object aObject) {
+		if (aObject == this) {
+			return true;
+		}
+		if (!(aObject instanceof TemplateState)) {
+			return false;
+		}
+		final TemplateState other = (TemplateState) aObject;
+		return (sampleInt == other.sampleInt)
+				&& equals(sampleText, other.sampleText);
+	}
+
+	/**
+	 * Serializes the fields that differ from the given state as a JSON object.
+	 * This is the compact delta sent over the push channel.
+	 * 
+	 * @param aPrevious
+	 *            the state to compare with, typically the state before a
+	 *            modification
+	 * @return the JSON object or <code>null</code> if nothing changed
+	 */
+	public String getChanges(final TemplateState aPrevious) {
+		// sanity check
+		assert aPrevious != null;
+		// shortcut, the with methods return the same instance
+		if (aPrevious == this) {
+			return null;
+		}
+		// compare field by field
+		final StringBuilder buffer = new StringBuilder();
+		buffer.append('{');
+		if (sampleInt != aPrevious.sampleInt) {
+			Json.appendMember(buffer, "sampleInt", sampleInt);
+		}
+		if (!equals(sampleText, aPrevious.sampleText)) {
+			Json.appendMember(buffer, "sampleText", sampleText);
+		}
+		// nothing changed
+		if (buffer.length() == 1) {
+			return null;
+		}
+		// ok
+		return buffer.append('}').toString();
+	}
+
+	/**
+	 * Getter for the sample integer
+	 * 
+	 * @return the sample integer
+	 */
+	public int getSampleInt() {
+		return sampleInt;
+	}
+
+	/**
+	 * Getter for the sample text
+	 * 
+	 * @return the sample text
+	 */
+	public String getSampleText() {
+		return sampleText;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * sampleInt + ((sampleText != null) ? sampleText.hashCode() : 0);
+	}
+
+	/**
+	 * Serializes all fields as a JSON object, using the same member names as
+	 * {@link #getChanges(TemplateState)}
+	 * 
+	 * @return the JSON object
+	 */
+	public String toJson() {
+		final StringBuilder buffer = new StringBuilder();
+		buffer.append('{');
+		Json.appendMember(buffer, "sampleInt", sampleInt);
+		Json.appendMember(buffer, "sampleText", sampleText);
+		return buffer.append('}').toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return toJson();
+	}
+
+	/**
+	 * Derives a state with a new sample integer
+	 * 
+	 * @param aSampleInt
+	 *            the new sample
+	 * @return the new state or this state if the value does not change
+	 */
+	public TemplateState withSampleInt(final int aSampleInt) {
+		return (aSampleInt == sampleInt) ? this : new TemplateState(
+				aSampleInt, sampleText);
+	}
+
+	/**
+	 * Derives a state with a new sample text
+	 * 
+	 * @param aSampleText
+	 *            the new text
+	 * @return the new state or this state if the value does not change
+	 */
+	public TemplateState withSampleText(final String aSampleText) {
+		return equals(aSampleText, sampleText) ? this : new TemplateState(
+				sampleInt, aSampleText);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by the JVM via
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}.
+ * The meter sums the allocations of all live threads, so work that the
+ * portlet hands off to its thread pools is accounted for as well. The
+ * measurements are only meaningful if a single thread drives the requests
+ * and no other application threads are busy.
+ * 
+ * @author cleue
+ */
+public final class AllocationMeter {
+
+	/**
+	 * Returns the extended thread bean of the JVM
+	 * 
+	 * @return the bean or <code>null</code> if the JVM does not support
+	 *         allocation accounting
+	 */
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		final com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) bean;
+		if (!result.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		result.setThreadAllocatedMemoryEnabled(true);
+		return result;
+	}
+
+	/**
+	 * the thread bean
+	 */
+	private final com.sun.management.ThreadMXBean bean = getThreadBean();
+
+	/**
+	 * bytes allocated by the measurement itself
+	 */
+	private final long overhead;
+
+	/**
+	 * Constructs the meter and calibrates the overhead of a measurement
+	 */
+	public AllocationMeter() {
+		long min = Long.MAX_VALUE;
+		if (bean != null) {
+			for (int i = 0; i < 64; ++i) {
+				final long start = getAllocatedBytes();
+				min = Math.min(min, getAllocatedBytes() - start);
+			}
+		}
+		overhead = (min != Long.MAX_VALUE) ? min : 0;
+	}
+
+	/**
+	 * Returns the bytes allocated so far by all live threads
+	 * 
+	 * @return the bytes
+	 */
+	public long getAllocatedBytes() {
+		long result = 0;
+		for (final long bytes : bean.getThreadAllocatedBytes(bean
+				.getAllThreadIds())) {
+			// -1 marks threads that terminated in the meantime
+			if (bytes > 0) {
+				result += bytes;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the bytes allocated between two measurements, excluding the
+	 * allocations of the measurement itself
+	 * 
+	 * @param aStart
+	 *            result of {@link #getAllocatedBytes()} at the start
+	 * @return the bytes allocated since the start
+	 */
+	public long getAllocatedSince(final long aStart) {
+		return Math.max(0, getAllocatedBytes() - aStart - overhead);
+	}
+
+	/**
+	 * Checks if the JVM supports allocation accounting
+	 * 
+	 * @return <code>true</code> if the meter can be used
+	 */
+	public boolean isSupported() {
+		return bean != null;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latencies of the requests per phase and reports throughput and
+ * percentiles. A recorder is not thread safe, each thread of a load driver
+ * uses its own recorder and the recorders get merged after the run, so the
+ * recording itself does not introduce contention.
+ * 
+ * @author cleue
+ */
+public final class LatencyRecorder {
+
+	/**
+	 * Samples of a single phase
+	 */
+	private static final class Samples {
+
+		/**
+		 * number of samples
+		 */
+		private int count;
+
+		/**
+		 * latencies in nanoseconds
+		 */
+		private long[] values = new long[1024];
+
+		/**
+		 * Adds a sample
+		 * 
+		 * @param aValue
+		 *            latency in nanoseconds
+		 */
+		private void add(final long aValue) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = aValue;
+		}
+
+		/**
+		 * Returns the sorted samples
+		 * 
+		 * @return the samples
+		 */
+		private long[] sorted() {
+			final long[] result = Arrays.copyOf(values, count);
+			Arrays.sort(result);
+			return result;
+		}
+	}
+
+	/**
+	 * Returns a percentile of sorted samples
+	 * 
+	 * @param aSorted
+	 *            the sorted samples, not empty
+	 * @param aPercentile
+	 *            the percentile, between 0 and 1
+	 * @return the value
+	 */
+	private static long percentile(final long[] aSorted,
+			final double aPercentile) {
+		final int idx = (int) Math.ceil(aPercentile * aSorted.length) - 1;
+		return aSorted[Math.max(0, Math.min(idx, aSorted.length - 1))];
+	}
+
+	/**
+	 * Converts nanoseconds to microseconds for the report
+	 * 
+	 * @param aNanos
+	 *            the nanoseconds
+	 * @return the microseconds
+	 */
+	private static long toMicros(final long aNanos) {
+		return TimeUnit.NANOSECONDS.toMicros(aNanos);
+	}
+
+	/**
+	 * samples per phase, in the order of the first sample
+	 */
+	private final Map<String, Samples> phases = new LinkedHashMap<String, Samples>();
+
+	/**
+	 * Returns the number of samples of a phase
+	 * 
+	 * @param aPhase
+	 *            the phase
+	 * @return the count
+	 */
+	public int getCount(final String aPhase) {
+		final Samples samples = phases.get(aPhase);
+		return (samples != null) ? samples.count : 0;
+	}
+
+	/**
+	 * Merges the samples of another recorder into this one
+	 * 
+	 * @param aOther
+	 *            the other recorder
+	 */
+	public void merge(final LatencyRecorder aOther) {
+		for (final Map.Entry<String, Samples> entry : aOther.phases.entrySet()) {
+			final Samples other = entry.getValue();
+			for (int i = 0; i < other.count; ++i) {
+				record(entry.getKey(), other.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Records the latency of a request
+	 * 
+	 * @param aPhase
+	 *            the phase of the request
+	 * @param aNanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(final String aPhase, final long aNanos) {
+		Samples samples = phases.get(aPhase);
+		if (samples == null) {
+			samples = new Samples();
+			phases.put(aPhase, samples);
+		}
+		samples.add(aNanos);
+	}
+
+	/**
+	 * Prints count, throughput and the p50, p99 and p999 latencies per phase
+	 * 
+	 * @param aOut
+	 *            target of the report
+	 * @param aElapsedNanos
+	 *            wall clock duration of the run, the base of the throughput
+	 */
+	public void report(final PrintStream aOut, final long aElapsedNanos) {
+		final double seconds = aElapsedNanos / 1e9;
+		aOut.printf("%-12s %10s %10s %10s %10s %10s %10s%n", "phase",
+				"count", "req/s", "p50[us]", "p99[us]", "p999[us]", "max[us]");
+		for (final Map.Entry<String, Samples> entry : phases.entrySet()) {
+			final long[] sorted = entry.getValue().sorted();
+			if (sorted.length == 0) {
+				continue;
+			}
+			aOut.printf("%-12s %10d %10.0f %10d %10d %10d %10d%n",
+					entry.getKey(), sorted.length, sorted.length / seconds,
+					toMicros(percentile(sorted, 0.50)),
+					toMicros(percentile(sorted, 0.99)),
+					toMicros(percentile(sorted, 0.999)),
+					toMicros(sorted[sorted.length - 1]));
+		}
+	}
+}
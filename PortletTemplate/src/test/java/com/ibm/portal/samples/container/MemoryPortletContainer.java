@@ -0,0 +1,1281 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.Event;
+import javax.portlet.EventPortlet;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.Portlet;
+import javax.portlet.PortletConfig;
+import javax.portlet.PortletContext;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletRequestDispatcher;
+import javax.portlet.PortletResponse;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.ResourceServingPortlet;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.EventFilter;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.FilterConfig;
+import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.ResourceFilter;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Deterministic in-memory portlet container for load and regression tests.
+ * The container hosts a single portlet and drives its lifecycle methods
+ * without a portal: requests are based on a {@link PortletState}, responses
+ * are captured as a {@link PortletResult} and the URLs generated by the
+ * portlet can be followed via {@link #follow(PortletState, String)}.
+ * Preferences are kept per window in memory. Includes (e.g. JSPs) are
+ * delegated to a pluggable {@link Renderer}, other resources of the web
+ * application are read from the source tree.
+ * 
+ * The container is thread safe, so a load driver can run requests for
+ * different windows or users concurrently. It does not emulate the
+ * portal's aggregation, caching or session handling. Portlet filters added
+ * via {@link #addFilter(String, PortletFilter, Map)} run in front of the
+ * portlet in all phases they implement.
+ * 
+ * @author cleue
+ */
+public class MemoryPortletContainer {
+
+	/**
+	 * Passes a request through the filters to the portlet. A chain serves a
+	 * single request.
+	 */
+	private final class Chain implements FilterChain {
+
+		/**
+		 * index of the next filter to consult
+		 */
+		private int next;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.FilterChain#doFilter(javax.portlet.
+		 * ActionRequest, javax.portlet.ActionResponse)
+		 */
+		@Override
+		public void doFilter(final ActionRequest aRequest,
+				final ActionResponse aResponse) throws IOException,
+				PortletException {
+			while (next < filters.size()) {
+				final PortletFilter filter = filters.get(next++);
+				if (filter instanceof ActionFilter) {
+					((ActionFilter) filter).doFilter(aRequest, aResponse, this);
+					return;
+				}
+			}
+			getPortlet().processAction(aRequest, aResponse);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.FilterChain#doFilter(javax.portlet.
+		 * EventRequest, javax.portlet.EventResponse)
+		 */
+		@Override
+		public void doFilter(final EventRequest aRequest,
+				final EventResponse aResponse) throws IOException,
+				PortletException {
+			while (next < filters.size()) {
+				final PortletFilter filter = filters.get(next++);
+				if (filter instanceof EventFilter) {
+					((EventFilter) filter).doFilter(aRequest, aResponse, this);
+					return;
+				}
+			}
+			((EventPortlet) getPortlet()).processEvent(aRequest, aResponse);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.FilterChain#doFilter(javax.portlet.
+		 * RenderRequest, javax.portlet.RenderResponse)
+		 */
+		@Override
+		public void doFilter(final RenderRequest aRequest,
+				final RenderResponse aResponse) throws IOException,
+				PortletException {
+			while (next < filters.size()) {
+				final PortletFilter filter = filters.get(next++);
+				if (filter instanceof RenderFilter) {
+					((RenderFilter) filter).doFilter(aRequest, aResponse, this);
+					return;
+				}
+			}
+			getPortlet().render(aRequest, aResponse);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.portlet.filter.FilterChain#doFilter(javax.portlet.
+		 * ResourceRequest, javax.portlet.ResourceResponse)
+		 */
+		@Override
+		public void doFilter(final ResourceRequest aRequest,
+				final ResourceResponse aResponse) throws IOException,
+				PortletException {
+			while (next < filters.size()) {
+				final PortletFilter filter = filters.get(next++);
+				if (filter instanceof ResourceFilter) {
+					((ResourceFilter) filter).doFilter(aRequest, aResponse,
+							this);
+					return;
+				}
+			}
+			((ResourceServingPortlet) getPortlet()).serveResource(aRequest,
+					aResponse);
+		}
+	}
+
+	/**
+	 * Stub for {@link PortletConfig}
+	 */
+	final class Config {
+
+		/**
+		 * the context proxy
+		 */
+		private final PortletContext context = Stubs.create(
+				PortletContext.class, new Context());
+
+		/**
+		 * Returns the container runtime options
+		 * 
+		 * @return the options
+		 */
+		public Map<String, String[]> getContainerRuntimeOptions() {
+			return Collections.emptyMap();
+		}
+
+		/**
+		 * Returns the default event namespace
+		 * 
+		 * @return the namespace
+		 */
+		public String getDefaultNamespace() {
+			return javax.xml.XMLConstants.NULL_NS_URI;
+		}
+
+		/**
+		 * Returns an init parameter
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return the value or <code>null</code>
+		 */
+		public String getInitParameter(final String aName) {
+			return initParameters.get(aName);
+		}
+
+		/**
+		 * Returns the names of the init parameters
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<String> getInitParameterNames() {
+			return Collections.enumeration(initParameters.keySet());
+		}
+
+		/**
+		 * Returns the portlet context
+		 * 
+		 * @return the context
+		 */
+		public PortletContext getPortletContext() {
+			return context;
+		}
+
+		/**
+		 * Returns the name of the portlet
+		 * 
+		 * @return the name
+		 */
+		public String getPortletName() {
+			return portletName;
+		}
+
+		/**
+		 * Returns the names of the processed events
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<QName> getProcessingEventQNames() {
+			return Collections.enumeration(Collections.<QName> emptySet());
+		}
+
+		/**
+		 * Returns the identifiers of the supported public render parameters
+		 * 
+		 * @return the identifiers
+		 */
+		public Enumeration<String> getPublicRenderParameterNames() {
+			return Collections.enumeration(publicParameters);
+		}
+
+		/**
+		 * Returns the names of the published events
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<QName> getPublishingEventQNames() {
+			return Collections.enumeration(Collections.<QName> emptySet());
+		}
+
+		/**
+		 * Returns the resource bundle of the portlet
+		 * 
+		 * @param aLocale
+		 *            the locale
+		 * @return the bundle
+		 */
+		public ResourceBundle getResourceBundle(final Locale aLocale) {
+			return ResourceBundle.getBundle(bundleName, aLocale);
+		}
+
+		/**
+		 * Returns the supported locales
+		 * 
+		 * @return the locales
+		 */
+		public Enumeration<Locale> getSupportedLocales() {
+			return Collections.enumeration(Collections.<Locale> emptySet());
+		}
+	}
+
+	/**
+	 * Stub for {@link PortletContext}
+	 */
+	final class Context {
+
+		/**
+		 * Returns an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return the value
+		 */
+		public Object getAttribute(final String aName) {
+			return contextAttributes.get(aName);
+		}
+
+		/**
+		 * Returns the attribute names
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<String> getAttributeNames() {
+			return Collections.enumeration(contextAttributes.keySet());
+		}
+
+		/**
+		 * Returns a context init parameter
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return <code>null</code>
+		 */
+		public String getInitParameter(final String aName) {
+			return null;
+		}
+
+		/**
+		 * Returns the names of the context init parameters
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<String> getInitParameterNames() {
+			return Collections.enumeration(Collections.<String> emptySet());
+		}
+
+		/**
+		 * Returns the major version of the API
+		 * 
+		 * @return the version
+		 */
+		public int getMajorVersion() {
+			return 2;
+		}
+
+		/**
+		 * Returns the minor version of the API
+		 * 
+		 * @return the version
+		 */
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		/**
+		 * Named dispatchers are not supported
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return <code>null</code>
+		 */
+		public PortletRequestDispatcher getNamedDispatcher(final String aName) {
+			return null;
+		}
+
+		/**
+		 * Returns the name of the portlet application
+		 * 
+		 * @return the name
+		 */
+		public String getPortletContextName() {
+			return contextPath.substring(1);
+		}
+
+		/**
+		 * Returns a dispatcher that delegates to the renderer
+		 * 
+		 * @param aPath
+		 *            path of the include
+		 * @return the dispatcher
+		 */
+		public PortletRequestDispatcher getRequestDispatcher(final String aPath) {
+			return Stubs.create(PortletRequestDispatcher.class,
+					new Dispatcher(aPath));
+		}
+
+		/**
+		 * Reads a resource of the web application from the source tree
+		 * 
+		 * @param aPath
+		 *            the path inside the application
+		 * @return the stream or <code>null</code> if the resource does not
+		 *         exist
+		 */
+		public InputStream getResourceAsStream(final String aPath) {
+			final File file = new File(WEBAPP_ROOT, aPath);
+			try {
+				return file.isFile() ? new FileInputStream(file) : null;
+			} catch (final FileNotFoundException ex) {
+				return null;
+			}
+		}
+
+		/**
+		 * Returns the server info
+		 * 
+		 * @return the info
+		 */
+		public String getServerInfo() {
+			return MemoryPortletContainer.class.getSimpleName() + "/2.0";
+		}
+
+		/**
+		 * Logs a message
+		 * 
+		 * @param aMessage
+		 *            the message
+		 */
+		public void log(final String aMessage) {
+			LOGGER.logp(Level.INFO, LOG_CLASS, "log(aMessage)", aMessage);
+		}
+
+		/**
+		 * Logs a message
+		 * 
+		 * @param aMessage
+		 *            the message
+		 * @param aCause
+		 *            the cause
+		 */
+		public void log(final String aMessage, final Throwable aCause) {
+			LOGGER.logp(Level.INFO, LOG_CLASS, "log(aMessage, aCause)",
+					aMessage, aCause);
+		}
+
+		/**
+		 * Removes an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 */
+		public void removeAttribute(final String aName) {
+			contextAttributes.remove(aName);
+		}
+
+		/**
+		 * Sets an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @param aValue
+		 *            the value
+		 */
+		public void setAttribute(final String aName, final Object aValue) {
+			if (aValue != null) {
+				contextAttributes.put(aName, aValue);
+			} else {
+				contextAttributes.remove(aName);
+			}
+		}
+	}
+
+	/**
+	 * Stub for {@link PortletRequestDispatcher}
+	 */
+	final class Dispatcher {
+
+		/**
+		 * path of the include
+		 */
+		private final String path;
+
+		/**
+		 * Constructs the dispatcher
+		 * 
+		 * @param aPath
+		 *            path of the include
+		 */
+		private Dispatcher(final String aPath) {
+			path = aPath;
+		}
+
+		/**
+		 * Forwards to the renderer
+		 * 
+		 * @param aRequest
+		 *            the request
+		 * @param aResponse
+		 *            the response
+		 * @throws PortletException
+		 * @throws IOException
+		 */
+		public void forward(final PortletRequest aRequest,
+				final PortletResponse aResponse) throws PortletException,
+				IOException {
+			renderer.include(path, aRequest, aResponse);
+		}
+
+		/**
+		 * Includes the renderer
+		 * 
+		 * @param aRequest
+		 *            the request
+		 * @param aResponse
+		 *            the response
+		 * @throws PortletException
+		 * @throws IOException
+		 */
+		public void include(final PortletRequest aRequest,
+				final PortletResponse aResponse) throws PortletException,
+				IOException {
+			renderer.include(path, aRequest, aResponse);
+		}
+
+		/**
+		 * Includes the renderer
+		 * 
+		 * @param aRequest
+		 *            the request
+		 * @param aResponse
+		 *            the response
+		 * @throws PortletException
+		 * @throws IOException
+		 */
+		public void include(final RenderRequest aRequest,
+				final RenderResponse aResponse) throws PortletException,
+				IOException {
+			renderer.include(path, aRequest, aResponse);
+		}
+	}
+
+	/**
+	 * Stub for {@link Event}
+	 */
+	static final class EventStub {
+
+		/**
+		 * name of the event
+		 */
+		private final QName qname;
+
+		/**
+		 * the payload
+		 */
+		private final Serializable value;
+
+		/**
+		 * Constructs the event
+		 * 
+		 * @param aQName
+		 *            name of the event
+		 * @param aValue
+		 *            the payload
+		 */
+		private EventStub(final QName aQName, final Serializable aValue) {
+			qname = aQName;
+			value = aValue;
+		}
+
+		/**
+		 * Returns the local name of the event
+		 * 
+		 * @return the name
+		 */
+		public String getName() {
+			return qname.getLocalPart();
+		}
+
+		/**
+		 * Returns the name of the event
+		 * 
+		 * @return the name
+		 */
+		public QName getQName() {
+			return qname;
+		}
+
+		/**
+		 * Returns the payload
+		 * 
+		 * @return the payload
+		 */
+		public Serializable getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * Stub for {@link FilterConfig}
+	 */
+	final class FilterStub {
+
+		/**
+		 * name of the filter
+		 */
+		private final String filterName;
+
+		/**
+		 * init parameters of the filter
+		 */
+		private final Map<String, String> parameters;
+
+		/**
+		 * Constructs the configuration
+		 * 
+		 * @param aFilterName
+		 *            name of the filter
+		 * @param aParameters
+		 *            init parameters of the filter
+		 */
+		private FilterStub(final String aFilterName,
+				final Map<String, String> aParameters) {
+			filterName = aFilterName;
+			parameters = new LinkedHashMap<String, String>(aParameters);
+		}
+
+		/**
+		 * Returns the name of the filter
+		 * 
+		 * @return the name
+		 */
+		public String getFilterName() {
+			return filterName;
+		}
+
+		/**
+		 * Returns an init parameter
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return the value
+		 */
+		public String getInitParameter(final String aName) {
+			return parameters.get(aName);
+		}
+
+		/**
+		 * Returns the names of the init parameters
+		 * 
+		 * @return the names
+		 */
+		public Enumeration<String> getInitParameterNames() {
+			return Collections.enumeration(parameters.keySet());
+		}
+
+		/**
+		 * Returns the portlet context
+		 * 
+		 * @return the context
+		 */
+		public PortletContext getPortletContext() {
+			return config.getPortletContext();
+		}
+	}
+
+	/** class name for the logger */
+	private static final String LOG_CLASS = MemoryPortletContainer.class
+			.getName();
+
+	/** class logger */
+	private static final Logger LOGGER = Logger.getLogger(LOG_CLASS);
+
+	/**
+	 * root of the web application in the source tree, relative to the
+	 * project directory the tests run in
+	 */
+	private static final File WEBAPP_ROOT = new File("src/main/webapp");
+
+	/**
+	 * Constructs a container from a portlet descriptor. The descriptor may
+	 * either be a complete <code>portlet.xml</code> with a single portlet or
+	 * the descriptor fragment of a single portlet.
+	 * 
+	 * @param aDescriptor
+	 *            the descriptor
+	 * @param aRenderer
+	 *            executes the includes of the portlet
+	 * @return the container
+	 * @throws IOException
+	 */
+	public static MemoryPortletContainer fromDescriptor(
+			final File aDescriptor, final Renderer aRenderer)
+			throws IOException {
+		// parse the descriptor
+		final Document doc;
+		try {
+			final DocumentBuilderFactory factory = DocumentBuilderFactory
+					.newInstance();
+			factory.setNamespaceAware(true);
+			doc = factory.newDocumentBuilder().parse(aDescriptor);
+		} catch (final ParserConfigurationException ex) {
+			throw new IOException(ex);
+		} catch (final SAXException ex) {
+			throw new IOException(ex);
+		}
+		final Element root = doc.getDocumentElement();
+		// init parameters
+		final Map<String, String> initParameters = new LinkedHashMap<String, String>();
+		for (final Element param : getElements(root, "init-param")) {
+			initParameters.put(getText(param, "name"), getText(param, "value"));
+		}
+		// preferences
+		final Map<String, String[]> preferences = new LinkedHashMap<String, String[]>();
+		for (final Element pref : getElements(root, "preference")) {
+			final List<String> values = new ArrayList<String>();
+			for (final Element value : getElements(pref, "value")) {
+				values.add(value.getTextContent().trim());
+			}
+			preferences.put(getText(pref, "name"),
+					values.toArray(new String[values.size()]));
+		}
+		// public render parameters
+		final Set<String> publicParameters = new LinkedHashSet<String>();
+		for (final Element param : getElements(root,
+				"supported-public-render-parameter")) {
+			publicParameters.add(param.getTextContent().trim());
+		}
+		// ok
+		return new MemoryPortletContainer(getText(root, "portlet-name"),
+				initParameters, publicParameters, getText(root,
+						"resource-bundle"), preferences, aRenderer);
+	}
+
+	/**
+	 * Returns the descendant elements with the given local name
+	 * 
+	 * @param aParent
+	 *            the parent
+	 * @param aName
+	 *            the local name
+	 * @return the elements
+	 */
+	private static List<Element> getElements(final Element aParent,
+			final String aName) {
+		final NodeList nodes = aParent.getElementsByTagNameNS("*", aName);
+		final List<Element> result = new ArrayList<Element>(
+				nodes.getLength());
+		for (int i = 0; i < nodes.getLength(); ++i) {
+			result.add((Element) nodes.item(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the trimmed text of the first descendant with the given name
+	 * 
+	 * @param aParent
+	 *            the parent
+	 * @param aName
+	 *            the local name
+	 * @return the text or <code>null</code>
+	 */
+	private static String getText(final Element aParent, final String aName) {
+		final List<Element> elements = getElements(aParent, aName);
+		return elements.isEmpty() ? null : elements.get(0).getTextContent()
+				.trim();
+	}
+
+	/**
+	 * <code>true</code> if storing preferences fails
+	 */
+	private volatile boolean bFailingStores;
+
+	/**
+	 * name of the resource bundle
+	 */
+	private final String bundleName;
+
+	/**
+	 * the configuration proxy
+	 */
+	private final PortletConfig config;
+
+	/**
+	 * attributes of the portlet context
+	 */
+	private final ConcurrentMap<String, Object> contextAttributes = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * context path of the portlet application
+	 */
+	private final String contextPath;
+
+	/**
+	 * default preferences from the descriptor
+	 */
+	private final Map<String, String[]> defaultPreferences;
+
+	/**
+	 * the filters in front of the portlet, in the order of the chain
+	 */
+	private final List<PortletFilter> filters = new CopyOnWriteArrayList<PortletFilter>();
+
+	/**
+	 * init parameters of the portlet
+	 */
+	private final Map<String, String> initParameters;
+
+	/**
+	 * the portlet, <code>null</code> before {@link #init(Portlet)}
+	 */
+	private volatile Portlet portlet;
+
+	/**
+	 * name of the portlet
+	 */
+	private final String portletName;
+
+	/**
+	 * stored preferences per window
+	 */
+	private final ConcurrentMap<String, Map<String, String[]>> preferences = new ConcurrentHashMap<String, Map<String, String[]>>();
+
+	/**
+	 * identifiers of the supported public render parameters
+	 */
+	private final Set<String> publicParameters;
+
+	/**
+	 * executes the includes
+	 */
+	private final Renderer renderer;
+
+	/**
+	 * number of sessions created by the portlet
+	 */
+	private final AtomicLong sessionCount = new AtomicLong();
+
+	/**
+	 * Constructs the container
+	 * 
+	 * @param aPortletName
+	 *            name of the portlet
+	 * @param aInitParameters
+	 *            init parameters of the portlet
+	 * @param aPublicParameters
+	 *            identifiers of the supported public render parameters
+	 * @param aBundleName
+	 *            name of the resource bundle
+	 * @param aPreferences
+	 *            default preferences
+	 * @param aRenderer
+	 *            executes the includes of the portlet
+	 */
+	public MemoryPortletContainer(final String aPortletName,
+			final Map<String, String> aInitParameters,
+			final Set<String> aPublicParameters, final String aBundleName,
+			final Map<String, String[]> aPreferences, final Renderer aRenderer) {
+		// sanity check
+		assert aPortletName != null;
+		assert aInitParameters != null;
+		assert aPublicParameters != null;
+		assert aBundleName != null;
+		assert aPreferences != null;
+		assert aRenderer != null;
+		// init
+		portletName = aPortletName;
+		initParameters = new LinkedHashMap<String, String>(aInitParameters);
+		publicParameters = new LinkedHashSet<String>(aPublicParameters);
+		bundleName = aBundleName;
+		defaultPreferences = Collections
+				.unmodifiableMap(new LinkedHashMap<String, String[]>(
+						aPreferences));
+		renderer = aRenderer;
+		contextPath = "/" + aPortletName;
+		config = Stubs.create(PortletConfig.class, new Config());
+	}
+
+	/**
+	 * Executes an action
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aURL
+	 *            the action URL generated by the portlet
+	 * @param aBody
+	 *            the form data
+	 * @return the result, the state of the result reflects the render
+	 *         parameters set by the action
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public PortletResult action(final PortletState aState, final String aURL,
+			final MultipartBody aBody) throws PortletException, IOException {
+		// public render parameters are visible to the action, too
+		final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>(
+				parseURL(aURL, MemoryURL.TYPE.action).getParameterMap());
+		addPublicParameters(aState, parameters);
+		// the request
+		final MemoryRequest request = new MemoryRequest(this, aState,
+				PortletRequest.ACTION_PHASE, parameters);
+		request.setBody(aBody.toByteArray(), aBody.getContentType(), aBody
+				.getCharset().name());
+		final MemoryResponse response = new MemoryResponse(this, aState);
+		// execute
+		new Chain().doFilter(Stubs.create(ActionRequest.class, request),
+				Stubs.create(ActionResponse.class, response));
+		// ok
+		return response.toResult(false);
+	}
+
+	/**
+	 * Initializes a filter and adds it to the end of the chain in front of the
+	 * portlet
+	 * 
+	 * @param aName
+	 *            name of the filter
+	 * @param aFilter
+	 *            the filter
+	 * @param aInitParameters
+	 *            init parameters of the filter
+	 * @throws PortletException
+	 */
+	public void addFilter(final String aName, final PortletFilter aFilter,
+			final Map<String, String> aInitParameters) throws PortletException {
+		aFilter.init(Stubs.create(FilterConfig.class, new FilterStub(aName,
+				aInitParameters)));
+		filters.add(aFilter);
+	}
+
+	/**
+	 * Adds the public render parameters of the window that are not
+	 * overridden
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aParameters
+	 *            the parameters to extend
+	 */
+	private void addPublicParameters(final PortletState aState,
+			final Map<String, String[]> aParameters) {
+		for (final Map.Entry<String, String[]> entry : aState.getParameters()
+				.entrySet()) {
+			if (isPublicParameter(entry.getKey())
+					&& !aParameters.containsKey(entry.getKey())) {
+				aParameters.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Destroys the portlet and the filters
+	 */
+	public void destroy() {
+		final Portlet current = portlet;
+		if (current != null) {
+			portlet = null;
+			current.destroy();
+		}
+		for (final PortletFilter filter : filters) {
+			filter.destroy();
+		}
+		filters.clear();
+	}
+
+	/**
+	 * Delivers an event
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aName
+	 *            name of the event
+	 * @param aValue
+	 *            the payload
+	 * @return the result, the state of the result reflects the render
+	 *         parameters after the event
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public PortletResult event(final PortletState aState, final QName aName,
+			final Serializable aValue) throws PortletException, IOException {
+		// the request
+		final MemoryRequest request = new MemoryRequest(this, aState,
+				PortletRequest.EVENT_PHASE, aState.getParameters());
+		request.setEvent(Stubs.create(Event.class, new EventStub(aName,
+				aValue)));
+		final MemoryResponse response = new MemoryResponse(this, aState);
+		// execute
+		new Chain().doFilter(Stubs.create(EventRequest.class, request),
+				Stubs.create(EventResponse.class, response));
+		// ok
+		return response.toResult(true);
+	}
+
+	/**
+	 * Follows a render URL generated by the portlet
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aURL
+	 *            the render URL
+	 * @return the state of the window after following the URL
+	 */
+	public PortletState follow(final PortletState aState, final String aURL) {
+		final MemoryURL url = parseURL(aURL, MemoryURL.TYPE.render);
+		// public parameters survive unless the URL sets them
+		final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>(
+				url.getParameterMap());
+		addPublicParameters(aState, parameters);
+		return aState.withNavigationalState(url.getPortletMode(),
+				url.getWindowState(), parameters);
+	}
+
+	/**
+	 * Returns the configuration of the portlet
+	 * 
+	 * @return the configuration
+	 */
+	public PortletConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Returns the context path of the portlet application
+	 * 
+	 * @return the path
+	 */
+	String getContextPath() {
+		return contextPath;
+	}
+
+	/**
+	 * Returns the namespace of a window
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @return the namespace
+	 */
+	String getNamespace(final String aWindowID) {
+		return "_" + aWindowID.replaceAll("[^A-Za-z0-9]", "_") + "_";
+	}
+
+	/**
+	 * Returns the portlet
+	 * 
+	 * @return the portlet
+	 */
+	private Portlet getPortlet() {
+		final Portlet result = portlet;
+		if (result == null) {
+			throw new IllegalStateException("The portlet is not initialized.");
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the stored preferences of a window, or the default preferences
+	 * if the window did not store any
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @return the preferences
+	 */
+	public Map<String, String[]> getPreferences(final String aWindowID) {
+		return loadPreferences(aWindowID);
+	}
+
+	/**
+	 * Creates a resource URL, as a client script of the portlet would do
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aResourceID
+	 *            the resource ID
+	 * @param aParameters
+	 *            resource parameters
+	 * @return the URL
+	 */
+	public String getResourceURL(final PortletState aState,
+			final String aResourceID, final Map<String, String[]> aParameters) {
+		final MemoryURL result = new MemoryURL(MemoryURL.TYPE.resource, aState);
+		result.setResourceID(aResourceID);
+		result.setParameters(aParameters);
+		return result.toString();
+	}
+
+	/**
+	 * Returns the number of sessions the portlet has created
+	 * 
+	 * @return the count
+	 */
+	public long getSessionCount() {
+		return sessionCount.get();
+	}
+
+	/**
+	 * Initializes the portlet
+	 * 
+	 * @param aPortlet
+	 *            the portlet
+	 * @throws PortletException
+	 */
+	public void init(final Portlet aPortlet) throws PortletException {
+		aPortlet.init(config);
+		portlet = aPortlet;
+	}
+
+	/**
+	 * Checks if a parameter is a supported public render parameter
+	 * 
+	 * @param aName
+	 *            name of the parameter
+	 * @return <code>true</code> if the parameter is public
+	 */
+	boolean isPublicParameter(final String aName) {
+		return publicParameters.contains(aName);
+	}
+
+	/**
+	 * Returns the stored preferences of a window
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @return the preferences
+	 */
+	Map<String, String[]> loadPreferences(final String aWindowID) {
+		final Map<String, String[]> result = preferences.get(aWindowID);
+		return (result != null) ? result : defaultPreferences;
+	}
+
+	/**
+	 * Parses a URL generated by the portlet
+	 * 
+	 * @param aURL
+	 *            the URL
+	 * @param aType
+	 *            the expected type
+	 * @return the URL
+	 */
+	private MemoryURL parseURL(final String aURL, final MemoryURL.TYPE aType) {
+		// split path and query
+		final int idx = aURL.indexOf('?');
+		final String[] path = ((idx >= 0) ? aURL.substring(0, idx) : aURL)
+				.split("/");
+		if ((path.length < 5) || !aType.name().equals(path[1])) {
+			throw new IllegalArgumentException("Not a " + aType + " URL ["
+					+ aURL + "].");
+		}
+		// reconstruct the URL
+		final MemoryURL result = new MemoryURL(aType, new PortletState(
+				MemoryURL.decode(path[2]), null, Locale.ROOT));
+		result.setPortletMode(new javax.portlet.PortletMode(path[3]));
+		result.setWindowState(new javax.portlet.WindowState(path[4]));
+		if (path.length > 5) {
+			result.setResourceID(MemoryURL.decode(path[5]));
+		}
+		if (idx >= 0) {
+			result.setParameters(MemoryURL.decodeParameters(aURL
+					.substring(idx + 1)));
+		}
+		return result;
+	}
+
+	/**
+	 * Renders the markup of the window
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @return the result
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public PortletResult render(final PortletState aState)
+			throws PortletException, IOException {
+		// the request
+		final MemoryRequest request = new MemoryRequest(this, aState,
+				PortletRequest.RENDER_PHASE, aState.getParameters());
+		final MemoryResponse response = new MemoryResponse(this, aState);
+		// execute
+		new Chain().doFilter(Stubs.create(RenderRequest.class, request),
+				Stubs.create(RenderResponse.class, response));
+		// ok
+		return response.toResult(true);
+	}
+
+	/**
+	 * Serves a resource
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aURL
+	 *            the resource URL generated by the portlet
+	 * @param aHeaders
+	 *            request headers
+	 * @return the result
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	public PortletResult resource(final PortletState aState,
+			final String aURL, final Map<String, String> aHeaders)
+			throws PortletException, IOException {
+		// resource parameters take precedence over the render parameters
+		final MemoryURL url = parseURL(aURL, MemoryURL.TYPE.resource);
+		final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>(
+				url.getParameterMap());
+		for (final Map.Entry<String, String[]> entry : aState.getParameters()
+				.entrySet()) {
+			if (!parameters.containsKey(entry.getKey())) {
+				parameters.put(entry.getKey(), entry.getValue());
+			}
+		}
+		// the request
+		final MemoryRequest request = new MemoryRequest(this, aState,
+				PortletRequest.RESOURCE_PHASE, parameters);
+		request.setResourceID(url.getResourceID());
+		for (final Map.Entry<String, String> header : aHeaders.entrySet()) {
+			request.setProperty(header.getKey(), header.getValue());
+		}
+		final MemoryResponse response = new MemoryResponse(this, aState);
+		// execute
+		new Chain().doFilter(Stubs.create(ResourceRequest.class, request),
+				Stubs.create(ResourceResponse.class, response));
+		// ok
+		return response.toResult(true);
+	}
+
+	/**
+	 * Counts a session created by the portlet
+	 */
+	void sessionCreated() {
+		sessionCount.incrementAndGet();
+	}
+
+	/**
+	 * Lets subsequent stores of preferences fail, e.g. to test how the
+	 * portlet handles an unavailable preference store
+	 * 
+	 * @param aFailing
+	 *            <code>true</code> if storing preferences fails
+	 */
+	public void setFailingStores(final boolean aFailing) {
+		bFailingStores = aFailing;
+	}
+
+	/**
+	 * Overrides an init parameter of the portlet, before the portlet is
+	 * initialized
+	 * 
+	 * @param aName
+	 *            name of the parameter
+	 * @param aValue
+	 *            the value
+	 */
+	public void setInitParameter(final String aName, final String aValue) {
+		// sanity check
+		assert portlet == null;
+		initParameters.put(aName, aValue);
+	}
+
+	/**
+	 * Stores the preferences of a window
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @param aValues
+	 *            the preferences
+	 * @throws IOException
+	 *             if stores fail, see {@link #setFailingStores(boolean)}
+	 */
+	void storePreferences(final String aWindowID,
+			final Map<String, String[]> aValues) throws IOException {
+		if (bFailingStores) {
+			throw new IOException("Cannot store the preferences of ["
+					+ aWindowID + "].");
+		}
+		preferences.put(aWindowID, Collections
+				.unmodifiableMap(new LinkedHashMap<String, String[]>(aValues)));
+	}
+}
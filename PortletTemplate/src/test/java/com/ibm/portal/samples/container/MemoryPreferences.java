@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stub for {@link javax.portlet.PortletPreferences}. Modifications are made
+ * on a private copy of the preferences and only become visible to other
+ * requests when they are stored.
+ * 
+ * @author cleue
+ */
+final class MemoryPreferences {
+
+	/**
+	 * the container that persists the preferences
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * current values, including the modifications of this request
+	 */
+	private final Map<String, String[]> values;
+
+	/**
+	 * identifier of the window
+	 */
+	private final String windowID;
+
+	/**
+	 * Constructs the preferences of a window
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aWindowID
+	 *            identifier of the window
+	 */
+	MemoryPreferences(final MemoryPortletContainer aContainer,
+			final String aWindowID) {
+		container = aContainer;
+		windowID = aWindowID;
+		values = new LinkedHashMap<String, String[]>(
+				aContainer.loadPreferences(aWindowID));
+	}
+
+	/**
+	 * Returns the map of all preferences
+	 * 
+	 * @return the map
+	 */
+	public Map<String, String[]> getMap() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * Returns the names of all preferences
+	 * 
+	 * @return the names
+	 */
+	public Enumeration<String> getNames() {
+		return Collections.enumeration(values.keySet());
+	}
+
+	/**
+	 * Returns the first value of a preference
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aDefault
+	 *            default value
+	 * @return the value
+	 */
+	public String getValue(final String aKey, final String aDefault) {
+		final String[] result = values.get(aKey);
+		return ((result != null) && (result.length > 0)) ? result[0]
+				: aDefault;
+	}
+
+	/**
+	 * Returns all values of a preference
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aDefault
+	 *            default values
+	 * @return the values
+	 */
+	public String[] getValues(final String aKey, final String[] aDefault) {
+		final String[] result = values.get(aKey);
+		return (result != null) ? result.clone() : aDefault;
+	}
+
+	/**
+	 * Preferences are never read only in memory
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @return <code>false</code>
+	 */
+	public boolean isReadOnly(final String aKey) {
+		return false;
+	}
+
+	/**
+	 * Removes a preference
+	 * 
+	 * @param aKey
+	 *            the name
+	 */
+	public void reset(final String aKey) {
+		values.remove(aKey);
+	}
+
+	/**
+	 * Sets a single value
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	public void setValue(final String aKey, final String aValue) {
+		values.put(aKey, new String[] { aValue });
+	}
+
+	/**
+	 * Sets multiple values
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aValues
+	 *            the values
+	 */
+	public void setValues(final String aKey, final String[] aValues) {
+		values.put(aKey, aValues.clone());
+	}
+
+	/**
+	 * Persists the modifications
+	 * 
+	 * @throws IOException
+	 *             if the container simulates a failing store
+	 */
+	public void store() throws IOException {
+		container.storePreferences(windowID, values);
+	}
+}
@@ -0,0 +1,762 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.portlet.Event;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletPreferences;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletSession;
+import javax.portlet.ResourceURL;
+import javax.portlet.WindowState;
+
+/**
+ * Stub for all portlet request types. The request is confined to the thread
+ * that executes it, like a request of a real container.
+ * 
+ * @author cleue
+ */
+final class MemoryRequest {
+
+	/**
+	 * Stub for {@link PortletSession}. The portlets should not create
+	 * sessions, so the container only counts them.
+	 */
+	static final class Session {
+
+		/**
+		 * session attributes
+		 */
+		private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+		/**
+		 * Returns an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @return the value
+		 */
+		public Object getAttribute(final String aName) {
+			return attributes.get(aName);
+		}
+
+		/**
+		 * Returns an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @param aScope
+		 *            the scope, ignored
+		 * @return the value
+		 */
+		public Object getAttribute(final String aName, final int aScope) {
+			return attributes.get(aName);
+		}
+
+		/**
+		 * Removes an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 */
+		public void removeAttribute(final String aName) {
+			attributes.remove(aName);
+		}
+
+		/**
+		 * Sets an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @param aValue
+		 *            the value
+		 */
+		public void setAttribute(final String aName, final Object aValue) {
+			attributes.put(aName, aValue);
+		}
+
+		/**
+		 * Sets an attribute
+		 * 
+		 * @param aName
+		 *            the name
+		 * @param aValue
+		 *            the value
+		 * @param aScope
+		 *            the scope, ignored
+		 */
+		public void setAttribute(final String aName, final Object aValue,
+				final int aScope) {
+			attributes.put(aName, aValue);
+		}
+	}
+
+	/**
+	 * request attributes
+	 */
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+	/**
+	 * the request body, only for actions
+	 */
+	private byte[] body;
+
+	/**
+	 * character encoding of the body
+	 */
+	private String characterEncoding;
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * content type of the body
+	 */
+	private String contentType;
+
+	/**
+	 * the event, only for the event phase
+	 */
+	private Event event;
+
+	/**
+	 * the HTTP method
+	 */
+	private final String method;
+
+	/**
+	 * parameters of the request
+	 */
+	private final Map<String, String[]> parameters;
+
+	/**
+	 * preferences of the window, created lazily
+	 */
+	private PortletPreferences preferences;
+
+	/**
+	 * request headers
+	 */
+	private final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+	/**
+	 * the resource identifier, only for the resource phase
+	 */
+	private String resourceID;
+
+	/**
+	 * the session, created on demand
+	 */
+	private PortletSession session;
+
+	/**
+	 * state of the window
+	 */
+	private final PortletState state;
+
+	/**
+	 * Constructs the request
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aState
+	 *            state of the window
+	 * @param aPhase
+	 *            the lifecycle phase
+	 * @param aParameters
+	 *            parameters of the request
+	 */
+	MemoryRequest(final MemoryPortletContainer aContainer,
+			final PortletState aState, final String aPhase,
+			final Map<String, String[]> aParameters) {
+		container = aContainer;
+		state = aState;
+		parameters = Collections.unmodifiableMap(aParameters);
+		method = PortletRequest.ACTION_PHASE.equals(aPhase) ? "POST" : "GET";
+		attributes.put(PortletRequest.LIFECYCLE_PHASE, aPhase);
+	}
+
+	/**
+	 * Returns an attribute
+	 * 
+	 * @param aName
+	 *            the name
+	 * @return the value
+	 */
+	public Object getAttribute(final String aName) {
+		return attributes.get(aName);
+	}
+
+	/**
+	 * Returns the attribute names
+	 * 
+	 * @return the names
+	 */
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	/**
+	 * The container does not authenticate
+	 * 
+	 * @return <code>null</code>
+	 */
+	public String getAuthType() {
+		return null;
+	}
+
+	/**
+	 * Resource URLs of the container use full cacheability
+	 * 
+	 * @return the cacheability
+	 */
+	public String getCacheability() {
+		return ResourceURL.PAGE;
+	}
+
+	/**
+	 * Returns the encoding of the body
+	 * 
+	 * @return the encoding
+	 */
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	/**
+	 * Returns the length of the body
+	 * 
+	 * @return the length or <code>-1</code>
+	 */
+	public int getContentLength() {
+		return (body != null) ? body.length : -1;
+	}
+
+	/**
+	 * Returns the content type of the body
+	 * 
+	 * @return the content type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the context path of the portlet application
+	 * 
+	 * @return the path
+	 */
+	public String getContextPath() {
+		return container.getContextPath();
+	}
+
+	/**
+	 * Returns the cached entity tag
+	 * 
+	 * @return the tag or <code>null</code>
+	 */
+	public String getETag() {
+		return state.getETag();
+	}
+
+	/**
+	 * Returns the event
+	 * 
+	 * @return the event
+	 */
+	public Event getEvent() {
+		return event;
+	}
+
+	/**
+	 * Returns the locale
+	 * 
+	 * @return the locale
+	 */
+	public Locale getLocale() {
+		return state.getLocale();
+	}
+
+	/**
+	 * Returns the locales
+	 * 
+	 * @return the locales
+	 */
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singleton(state
+				.getLocale()));
+	}
+
+	/**
+	 * Returns the HTTP method
+	 * 
+	 * @return the method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the first value of a parameter
+	 * 
+	 * @param aName
+	 *            the name
+	 * @return the value or <code>null</code>
+	 */
+	public String getParameter(final String aName) {
+		final String[] values = parameters.get(aName);
+		return ((values != null) && (values.length > 0)) ? values[0] : null;
+	}
+
+	/**
+	 * Returns all parameters
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getParameterMap() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the parameter names
+	 * 
+	 * @return the names
+	 */
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(parameters.keySet());
+	}
+
+	/**
+	 * Returns all values of a parameter
+	 * 
+	 * @param aName
+	 *            the name
+	 * @return the values or <code>null</code>
+	 */
+	public String[] getParameterValues(final String aName) {
+		final String[] values = parameters.get(aName);
+		return (values != null) ? values.clone() : null;
+	}
+
+	/**
+	 * Returns the body
+	 * 
+	 * @return the stream
+	 */
+	public InputStream getPortletInputStream() {
+		return new ByteArrayInputStream((body != null) ? body : new byte[0]);
+	}
+
+	/**
+	 * Returns the portlet mode
+	 * 
+	 * @return the mode
+	 */
+	public PortletMode getPortletMode() {
+		return state.getPortletMode();
+	}
+
+	/**
+	 * Returns the session, creating it if required
+	 * 
+	 * @return the session
+	 */
+	public PortletSession getPortletSession() {
+		return getPortletSession(true);
+	}
+
+	/**
+	 * Returns the session
+	 * 
+	 * @param bCreate
+	 *            create the session if it does not exist
+	 * @return the session or <code>null</code>
+	 */
+	public PortletSession getPortletSession(final boolean bCreate) {
+		if ((session == null) && bCreate) {
+			session = Stubs.create(PortletSession.class, new Session());
+			container.sessionCreated();
+		}
+		return session;
+	}
+
+	/**
+	 * Returns the preferences of the window
+	 * 
+	 * @return the preferences
+	 */
+	public PortletPreferences getPreferences() {
+		if (preferences == null) {
+			preferences = Stubs.create(PortletPreferences.class,
+					new MemoryPreferences(container, state.getWindowID()));
+		}
+		return preferences;
+	}
+
+	/**
+	 * Returns the private parameters
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getPrivateParameterMap() {
+		final Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+		for (final Map.Entry<String, String[]> entry : parameters.entrySet()) {
+			if (!container.isPublicParameter(entry.getKey())) {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the private render parameters in the resource phase
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getPrivateRenderParameterMap() {
+		final Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+		for (final Map.Entry<String, String[]> entry : state.getParameters()
+				.entrySet()) {
+			if (!container.isPublicParameter(entry.getKey())) {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the request headers
+	 * 
+	 * @param aName
+	 *            name of the header
+	 * @return the values
+	 */
+	public Enumeration<String> getProperties(final String aName) {
+		final String value = properties.get(aName);
+		return Collections.enumeration((value != null) ? Collections
+				.singleton(value) : Collections.<String> emptySet());
+	}
+
+	/**
+	 * Returns a request header
+	 * 
+	 * @param aName
+	 *            name of the header
+	 * @return the value or <code>null</code>
+	 */
+	public String getProperty(final String aName) {
+		return properties.get(aName);
+	}
+
+	/**
+	 * Returns the names of the request headers
+	 * 
+	 * @return the names
+	 */
+	public Enumeration<String> getPropertyNames() {
+		return Collections.enumeration(properties.keySet());
+	}
+
+	/**
+	 * Returns the public parameters
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getPublicParameterMap() {
+		final Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+		for (final Map.Entry<String, String[]> entry : parameters.entrySet()) {
+			if (container.isPublicParameter(entry.getKey())) {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a reader on the body
+	 * 
+	 * @return the reader
+	 * @throws UnsupportedEncodingException
+	 */
+	public BufferedReader getReader() throws UnsupportedEncodingException {
+		return new BufferedReader(new InputStreamReader(
+				getPortletInputStream(),
+				(characterEncoding != null) ? characterEncoding : "ISO-8859-1"));
+	}
+
+	/**
+	 * Returns the authenticated user
+	 * 
+	 * @return the user or <code>null</code>
+	 */
+	public String getRemoteUser() {
+		return state.getUser();
+	}
+
+	/**
+	 * The container does not support sessions via cookies
+	 * 
+	 * @return <code>null</code>
+	 */
+	public String getRequestedSessionId() {
+		return null;
+	}
+
+	/**
+	 * Returns the resource identifier
+	 * 
+	 * @return the identifier
+	 */
+	public String getResourceID() {
+		return resourceID;
+	}
+
+	/**
+	 * Returns the preferred response content type
+	 * 
+	 * @return the content type
+	 */
+	public String getResponseContentType() {
+		return "text/html";
+	}
+
+	/**
+	 * Returns the supported response content types
+	 * 
+	 * @return the content types
+	 */
+	public Enumeration<String> getResponseContentTypes() {
+		return Collections.enumeration(Collections
+				.singleton(getResponseContentType()));
+	}
+
+	/**
+	 * Returns the scheme
+	 * 
+	 * @return the scheme
+	 */
+	public String getScheme() {
+		return "http";
+	}
+
+	/**
+	 * Returns the host name
+	 * 
+	 * @return the host name
+	 */
+	public String getServerName() {
+		return "localhost";
+	}
+
+	/**
+	 * Returns the port
+	 * 
+	 * @return the port
+	 */
+	public int getServerPort() {
+		return 80;
+	}
+
+	/**
+	 * Returns the principal of the user
+	 * 
+	 * @return the principal or <code>null</code>
+	 */
+	public Principal getUserPrincipal() {
+		final String user = state.getUser();
+		return (user != null) ? new Principal() {
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.security.Principal#getName()
+			 */
+			@Override
+			public String getName() {
+				return user;
+			}
+		} : null;
+	}
+
+	/**
+	 * Returns the identifier of the window
+	 * 
+	 * @return the identifier
+	 */
+	public String getWindowID() {
+		return state.getWindowID();
+	}
+
+	/**
+	 * Returns the window state
+	 * 
+	 * @return the window state
+	 */
+	public WindowState getWindowState() {
+		return state.getWindowState();
+	}
+
+	/**
+	 * All portlet modes are allowed
+	 * 
+	 * @param aMode
+	 *            the mode
+	 * @return <code>true</code>
+	 */
+	public boolean isPortletModeAllowed(final PortletMode aMode) {
+		return true;
+	}
+
+	/**
+	 * The session is never requested by the client
+	 * 
+	 * @return <code>false</code>
+	 */
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	/**
+	 * The container does not use a transport
+	 * 
+	 * @return <code>false</code>
+	 */
+	public boolean isSecure() {
+		return false;
+	}
+
+	/**
+	 * The container does not know any roles
+	 * 
+	 * @param aRole
+	 *            the role
+	 * @return <code>false</code>
+	 */
+	public boolean isUserInRole(final String aRole) {
+		return false;
+	}
+
+	/**
+	 * All window states are allowed
+	 * 
+	 * @param aWindowState
+	 *            the window state
+	 * @return <code>true</code>
+	 */
+	public boolean isWindowStateAllowed(final WindowState aWindowState) {
+		return true;
+	}
+
+	/**
+	 * Removes an attribute
+	 * 
+	 * @param aName
+	 *            the name
+	 */
+	public void removeAttribute(final String aName) {
+		attributes.remove(aName);
+	}
+
+	/**
+	 * Sets an attribute
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValue
+	 *            the value, <code>null</code> removes the attribute
+	 */
+	public void setAttribute(final String aName, final Object aValue) {
+		if (aValue != null) {
+			attributes.put(aName, aValue);
+		} else {
+			attributes.remove(aName);
+		}
+	}
+
+	/**
+	 * Assigns the body of the request
+	 * 
+	 * @param aBody
+	 *            the body
+	 * @param aContentType
+	 *            content type of the body
+	 * @param aCharacterEncoding
+	 *            encoding of the body
+	 */
+	void setBody(final byte[] aBody, final String aContentType,
+			final String aCharacterEncoding) {
+		body = aBody;
+		contentType = aContentType;
+		characterEncoding = aCharacterEncoding;
+	}
+
+	/**
+	 * Overrides the encoding of the body
+	 * 
+	 * @param aEncoding
+	 *            the encoding
+	 */
+	public void setCharacterEncoding(final String aEncoding) {
+		characterEncoding = aEncoding;
+	}
+
+	/**
+	 * Assigns the event
+	 * 
+	 * @param aEvent
+	 *            the event
+	 */
+	void setEvent(final Event aEvent) {
+		event = aEvent;
+	}
+
+	/**
+	 * Assigns a request header
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	void setProperty(final String aName, final String aValue) {
+		properties.put(aName, aValue);
+	}
+
+	/**
+	 * Assigns the resource identifier
+	 * 
+	 * @param aResourceID
+	 *            the identifier
+	 */
+	void setResourceID(final String aResourceID) {
+		resourceID = aResourceID;
+	}
+}
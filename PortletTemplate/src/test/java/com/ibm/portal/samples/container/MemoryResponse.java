@@ -0,0 +1,700 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.portlet.CacheControl;
+import javax.portlet.EventRequest;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletURL;
+import javax.portlet.ResourceURL;
+import javax.portlet.WindowState;
+import javax.xml.namespace.QName;
+
+/**
+ * Stub for all portlet response types. The response buffers the markup and
+ * records the navigational state and the headers set by the portlet.
+ * 
+ * @author cleue
+ */
+final class MemoryResponse {
+
+	/**
+	 * Stub for {@link CacheControl}
+	 */
+	static final class Cache {
+
+		/**
+		 * public scope flag
+		 */
+		private boolean bPublicScope;
+
+		/**
+		 * flag to reuse the cached content
+		 */
+		private boolean bUseCachedContent;
+
+		/**
+		 * the entity tag
+		 */
+		private String etag;
+
+		/**
+		 * expiration time in seconds
+		 */
+		private int expirationTime;
+
+		/**
+		 * Returns the entity tag
+		 * 
+		 * @return the tag
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * Returns the expiration time
+		 * 
+		 * @return the time in seconds
+		 */
+		public int getExpirationTime() {
+			return expirationTime;
+		}
+
+		/**
+		 * Returns the scope flag
+		 * 
+		 * @return the flag
+		 */
+		public boolean isPublicScope() {
+			return bPublicScope;
+		}
+
+		/**
+		 * Sets the entity tag
+		 * 
+		 * @param aETag
+		 *            the tag
+		 */
+		public void setETag(final String aETag) {
+			etag = aETag;
+		}
+
+		/**
+		 * Sets the expiration time
+		 * 
+		 * @param aTime
+		 *            the time in seconds
+		 */
+		public void setExpirationTime(final int aTime) {
+			expirationTime = aTime;
+		}
+
+		/**
+		 * Sets the scope flag
+		 * 
+		 * @param bPublic
+		 *            the flag
+		 */
+		public void setPublicScope(final boolean bPublic) {
+			bPublicScope = bPublic;
+		}
+
+		/**
+		 * Sets the flag to reuse the cached content
+		 * 
+		 * @param bUse
+		 *            the flag
+		 */
+		public void setUseCachedContent(final boolean bUse) {
+			bUseCachedContent = bUse;
+		}
+
+		/**
+		 * Returns the flag to reuse the cached content
+		 * 
+		 * @return the flag
+		 */
+		public boolean useCachedContent() {
+			return bUseCachedContent;
+		}
+	}
+
+	/**
+	 * the cache control
+	 */
+	private final Cache cache = new Cache();
+
+	/**
+	 * the cache control proxy, created lazily
+	 */
+	private CacheControl cacheControl;
+
+	/**
+	 * encoding of the markup
+	 */
+	private String characterEncoding = "UTF-8";
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * content type of the markup
+	 */
+	private String contentType;
+
+	/**
+	 * events published by the portlet
+	 */
+	private final List<QName> events = new ArrayList<QName>();
+
+	/**
+	 * the portlet mode after the request
+	 */
+	private PortletMode mode;
+
+	/**
+	 * the markup
+	 */
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	/**
+	 * response headers
+	 */
+	private final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+	/**
+	 * redirect location, only for actions
+	 */
+	private String redirect;
+
+	/**
+	 * public parameters removed by the portlet
+	 */
+	private final Set<String> removedParameters = new HashSet<String>();
+
+	/**
+	 * render parameters set by the portlet, <code>null</code> if the portlet
+	 * did not set any
+	 */
+	private Map<String, String[]> renderParameters;
+
+	/**
+	 * state of the window
+	 */
+	private final PortletState state;
+
+	/**
+	 * the title of the portlet
+	 */
+	private String title;
+
+	/**
+	 * the window state after the request
+	 */
+	private WindowState windowState;
+
+	/**
+	 * the writer, created lazily
+	 */
+	private PrintWriter writer;
+
+	/**
+	 * Constructs the response
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aState
+	 *            state of the window
+	 */
+	MemoryResponse(final MemoryPortletContainer aContainer,
+			final PortletState aState) {
+		container = aContainer;
+		state = aState;
+		mode = aState.getPortletMode();
+		windowState = aState.getWindowState();
+	}
+
+	/**
+	 * Adds a response header
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	public void addProperty(final String aKey, final String aValue) {
+		final String current = properties.get(aKey);
+		properties.put(aKey, (current != null) ? current + ", " + aValue
+				: aValue);
+	}
+
+	/**
+	 * Creates an action URL
+	 * 
+	 * @return the URL
+	 */
+	public PortletURL createActionURL() {
+		return Stubs.create(PortletURL.class, new MemoryURL(
+				MemoryURL.TYPE.action, state));
+	}
+
+	/**
+	 * Creates a render URL
+	 * 
+	 * @return the URL
+	 */
+	public PortletURL createRenderURL() {
+		return Stubs.create(PortletURL.class, new MemoryURL(
+				MemoryURL.TYPE.render, state));
+	}
+
+	/**
+	 * Creates a resource URL
+	 * 
+	 * @return the URL
+	 */
+	public ResourceURL createResourceURL() {
+		return Stubs.create(ResourceURL.class, new MemoryURL(
+				MemoryURL.TYPE.resource, state));
+	}
+
+	/**
+	 * URLs do not need to be encoded in memory
+	 * 
+	 * @param aPath
+	 *            the URL
+	 * @return the URL
+	 */
+	public String encodeURL(final String aPath) {
+		return aPath;
+	}
+
+	/**
+	 * Flushes the writer
+	 */
+	public void flushBuffer() {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Returns the buffer size
+	 * 
+	 * @return the size
+	 */
+	public int getBufferSize() {
+		return 0;
+	}
+
+	/**
+	 * Returns the cache control
+	 * 
+	 * @return the cache control
+	 */
+	public CacheControl getCacheControl() {
+		if (cacheControl == null) {
+			cacheControl = Stubs.create(CacheControl.class, cache);
+		}
+		return cacheControl;
+	}
+
+	/**
+	 * Returns the encoding of the markup
+	 * 
+	 * @return the encoding
+	 */
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	/**
+	 * Returns the content type
+	 * 
+	 * @return the content type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the locale of the markup
+	 * 
+	 * @return the locale
+	 */
+	public Locale getLocale() {
+		return state.getLocale();
+	}
+
+	/**
+	 * Returns the namespace of the window
+	 * 
+	 * @return the namespace
+	 */
+	public String getNamespace() {
+		return container.getNamespace(state.getWindowID());
+	}
+
+	/**
+	 * Returns the stream for the markup
+	 * 
+	 * @return the stream
+	 */
+	public OutputStream getPortletOutputStream() {
+		return output;
+	}
+
+	/**
+	 * Returns the portlet mode after the request
+	 * 
+	 * @return the mode
+	 */
+	public PortletMode getPortletMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the render parameters set so far
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getRenderParameterMap() {
+		return (renderParameters != null) ? renderParameters : state
+				.getParameters();
+	}
+
+	/**
+	 * Returns the render parameters, creating the map if required
+	 * 
+	 * @return the map
+	 */
+	private Map<String, String[]> getRenderParameters() {
+		if (renderParameters == null) {
+			renderParameters = new LinkedHashMap<String, String[]>();
+		}
+		return renderParameters;
+	}
+
+	/**
+	 * Returns the window state after the request
+	 * 
+	 * @return the window state
+	 */
+	public WindowState getWindowState() {
+		return windowState;
+	}
+
+	/**
+	 * Returns the writer for the markup
+	 * 
+	 * @return the writer
+	 * @throws UnsupportedEncodingException
+	 */
+	public PrintWriter getWriter() throws UnsupportedEncodingException {
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(output,
+					characterEncoding));
+		}
+		return writer;
+	}
+
+	/**
+	 * The response is never committed before the portlet returns
+	 * 
+	 * @return <code>false</code>
+	 */
+	public boolean isCommitted() {
+		return false;
+	}
+
+	/**
+	 * Removes a public render parameter
+	 * 
+	 * @param aName
+	 *            the name
+	 */
+	public void removePublicRenderParameter(final String aName) {
+		getRenderParameters().remove(aName);
+		removedParameters.add(aName);
+	}
+
+	/**
+	 * Discards the markup and the headers
+	 */
+	public void reset() {
+		resetBuffer();
+		properties.clear();
+	}
+
+	/**
+	 * Discards the markup
+	 */
+	public void resetBuffer() {
+		flushBuffer();
+		output.reset();
+	}
+
+	/**
+	 * Records a redirect
+	 * 
+	 * @param aLocation
+	 *            the location
+	 */
+	public void sendRedirect(final String aLocation) {
+		redirect = aLocation;
+	}
+
+	/**
+	 * Records a redirect
+	 * 
+	 * @param aLocation
+	 *            the location
+	 * @param aRenderURLParamName
+	 *            ignored
+	 */
+	public void sendRedirect(final String aLocation,
+			final String aRenderURLParamName) {
+		redirect = aLocation;
+	}
+
+	/**
+	 * Ignores the buffer size
+	 * 
+	 * @param aSize
+	 *            the size
+	 */
+	public void setBufferSize(final int aSize) {
+		// nothing to do
+	}
+
+	/**
+	 * Sets the encoding of the markup
+	 * 
+	 * @param aEncoding
+	 *            the encoding
+	 */
+	public void setCharacterEncoding(final String aEncoding) {
+		if (writer == null) {
+			characterEncoding = aEncoding;
+		}
+	}
+
+	/**
+	 * Ignores the content length
+	 * 
+	 * @param aLength
+	 *            the length
+	 */
+	public void setContentLength(final int aLength) {
+		// nothing to do
+	}
+
+	/**
+	 * Sets the content type
+	 * 
+	 * @param aContentType
+	 *            the content type
+	 */
+	public void setContentType(final String aContentType) {
+		contentType = aContentType;
+	}
+
+	/**
+	 * Records a published event
+	 * 
+	 * @param aName
+	 *            name of the event
+	 * @param aValue
+	 *            the payload
+	 */
+	public void setEvent(final QName aName, final Serializable aValue) {
+		events.add(aName);
+	}
+
+	/**
+	 * Ignores the locale, the markup uses the locale of the request
+	 * 
+	 * @param aLocale
+	 *            the locale
+	 */
+	public void setLocale(final Locale aLocale) {
+		// nothing to do
+	}
+
+	/**
+	 * Ignores the portlet modes
+	 * 
+	 * @param aModes
+	 *            the modes
+	 */
+	public void setNextPossiblePortletModes(
+			final Collection<PortletMode> aModes) {
+		// nothing to do
+	}
+
+	/**
+	 * Sets the portlet mode
+	 * 
+	 * @param aMode
+	 *            the mode
+	 */
+	public void setPortletMode(final PortletMode aMode) {
+		mode = aMode;
+	}
+
+	/**
+	 * Sets a response header
+	 * 
+	 * @param aKey
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	public void setProperty(final String aKey, final String aValue) {
+		properties.put(aKey, aValue);
+	}
+
+	/**
+	 * Sets a render parameter
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	public void setRenderParameter(final String aName, final String aValue) {
+		setRenderParameter(aName, new String[] { aValue });
+	}
+
+	/**
+	 * Sets a render parameter
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValues
+	 *            the values
+	 */
+	public void setRenderParameter(final String aName, final String[] aValues) {
+		// sanity check
+		if ((aName == null) || (aValues == null)) {
+			throw new IllegalArgumentException();
+		}
+		getRenderParameters().put(aName,
+				Arrays.copyOf(aValues, aValues.length));
+		removedParameters.remove(aName);
+	}
+
+	/**
+	 * Keeps the render parameters of the event request
+	 * 
+	 * @param aRequest
+	 *            the request
+	 */
+	public void setRenderParameters(final EventRequest aRequest) {
+		setRenderParameters(aRequest.getParameterMap());
+	}
+
+	/**
+	 * Replaces the render parameters
+	 * 
+	 * @param aParameters
+	 *            the parameters
+	 */
+	public void setRenderParameters(final Map<String, String[]> aParameters) {
+		renderParameters = new LinkedHashMap<String, String[]>();
+		for (final Map.Entry<String, String[]> entry : aParameters.entrySet()) {
+			setRenderParameter(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Sets the title
+	 * 
+	 * @param aTitle
+	 *            the title
+	 */
+	public void setTitle(final String aTitle) {
+		title = aTitle;
+	}
+
+	/**
+	 * Sets the window state
+	 * 
+	 * @param aWindowState
+	 *            the window state
+	 */
+	public void setWindowState(final WindowState aWindowState) {
+		windowState = aWindowState;
+	}
+
+	/**
+	 * Converts the response into the result of the request
+	 * 
+	 * @param bKeepParameters
+	 *            keep the private render parameters if the portlet did not set
+	 *            any, this is the behaviour of the event phase
+	 * @return the result
+	 */
+	PortletResult toResult(final boolean bKeepParameters) {
+		// the markup
+		flushBuffer();
+		// the navigational state after the request
+		final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+		if ((renderParameters == null) && bKeepParameters) {
+			parameters.putAll(state.getParameters());
+		} else {
+			if (renderParameters != null) {
+				parameters.putAll(renderParameters);
+			}
+			// public parameters survive unless the portlet removes them
+			for (final Map.Entry<String, String[]> entry : state
+					.getParameters().entrySet()) {
+				final String name = entry.getKey();
+				if (container.isPublicParameter(name)
+						&& !parameters.containsKey(name)
+						&& !removedParameters.contains(name)) {
+					parameters.put(name, entry.getValue());
+				}
+			}
+		}
+		final PortletState next = state.withNavigationalState(mode,
+				windowState, parameters);
+		// ok
+		return new PortletResult(next, output.toByteArray(), contentType,
+				characterEncoding, properties, cache.getETag(),
+				cache.useCachedContent(), title, redirect, events);
+	}
+}
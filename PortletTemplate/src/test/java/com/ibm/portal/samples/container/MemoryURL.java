@@ -0,0 +1,401 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.portlet.PortletMode;
+import javax.portlet.ResourceURL;
+import javax.portlet.WindowState;
+
+/**
+ * Stub for {@link javax.portlet.PortletURL} and {@link ResourceURL}. The URLs
+ * have a deterministic string representation of the form
+ * <code>/type/window/mode/state[/resourceID]?parameters</code> that the
+ * {@link MemoryPortletContainer} can follow.
+ * 
+ * @author cleue
+ */
+final class MemoryURL {
+
+	/**
+	 * the URL types
+	 */
+	enum TYPE {
+
+		/** action URL */
+		action,
+
+		/** render URL */
+		render,
+
+		/** resource URL */
+		resource
+	}
+
+	/**
+	 * encoding of the URL components
+	 */
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * Decodes a URL component
+	 * 
+	 * @param aValue
+	 *            the encoded value
+	 * @return the decoded value
+	 */
+	static String decode(final String aValue) {
+		try {
+			return URLDecoder.decode(aValue, ENCODING);
+		} catch (final UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Decodes the query string of a URL
+	 * 
+	 * @param aQuery
+	 *            the query string, may be empty
+	 * @return the parameters in the order of the query
+	 */
+	static Map<String, String[]> decodeParameters(final String aQuery) {
+		// collect the values per name
+		final Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+		for (final String pair : aQuery.split("&")) {
+			if (pair.length() > 0) {
+				final int idx = pair.indexOf('=');
+				final String name = decode((idx >= 0) ? pair.substring(0, idx)
+						: pair);
+				final String value = (idx >= 0) ? decode(pair
+						.substring(idx + 1)) : "";
+				List<String> list = values.get(name);
+				if (list == null) {
+					list = new ArrayList<String>();
+					values.put(name, list);
+				}
+				list.add(value);
+			}
+		}
+		// convert
+		final Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+		for (final Map.Entry<String, List<String>> entry : values.entrySet()) {
+			result.put(entry.getKey(),
+					entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes a URL component
+	 * 
+	 * @param aValue
+	 *            the value
+	 * @return the encoded value
+	 */
+	static String encode(final String aValue) {
+		try {
+			return URLEncoder.encode(aValue, ENCODING);
+		} catch (final UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Encodes parameters as a query string
+	 * 
+	 * @param aParameters
+	 *            the parameters
+	 * @return the query string
+	 */
+	static String encodeParameters(final Map<String, String[]> aParameters) {
+		final StringBuilder buffer = new StringBuilder();
+		for (final Map.Entry<String, String[]> entry : aParameters.entrySet()) {
+			for (final String value : entry.getValue()) {
+				if (buffer.length() > 0) {
+					buffer.append('&');
+				}
+				buffer.append(encode(entry.getKey())).append('=')
+						.append(encode(value));
+			}
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * caching level of a resource URL
+	 */
+	private String cacheability = ResourceURL.PAGE;
+
+	/**
+	 * the portlet mode
+	 */
+	private PortletMode mode;
+
+	/**
+	 * parameters of the URL
+	 */
+	private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+	/**
+	 * resource identifier, only for resource URLs
+	 */
+	private String resourceID;
+
+	/**
+	 * the URL type
+	 */
+	private final TYPE type;
+
+	/**
+	 * identifier of the window
+	 */
+	private final String windowID;
+
+	/**
+	 * the window state
+	 */
+	private WindowState windowState;
+
+	/**
+	 * Constructs the URL
+	 * 
+	 * @param aType
+	 *            the type
+	 * @param aState
+	 *            state of the window the URL is created for
+	 */
+	MemoryURL(final TYPE aType, final PortletState aState) {
+		type = aType;
+		windowID = aState.getWindowID();
+		mode = aState.getPortletMode();
+		windowState = aState.getWindowState();
+	}
+
+	/**
+	 * Ignores the property
+	 * 
+	 * @param aKey
+	 *            the key
+	 * @param aValue
+	 *            the value
+	 */
+	public void addProperty(final String aKey, final String aValue) {
+		// URLs do not carry properties in memory
+	}
+
+	/**
+	 * Implements {@link ResourceURL#getCacheability()}
+	 * 
+	 * @return the cacheability
+	 */
+	public String getCacheability() {
+		return cacheability;
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#getParameterMap()}
+	 * 
+	 * @return the parameters
+	 */
+	public Map<String, String[]> getParameterMap() {
+		return parameters;
+	}
+
+	/**
+	 * Implements {@link javax.portlet.PortletURL#getPortletMode()}
+	 * 
+	 * @return the mode
+	 */
+	public PortletMode getPortletMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the resource ID
+	 * 
+	 * @return the ID or <code>null</code>
+	 */
+	String getResourceID() {
+		return resourceID;
+	}
+
+	/**
+	 * Implements {@link javax.portlet.PortletURL#getWindowState()}
+	 * 
+	 * @return the window state
+	 */
+	public WindowState getWindowState() {
+		return windowState;
+	}
+
+	/**
+	 * Implements {@link ResourceURL#setCacheability(String)}
+	 * 
+	 * @param aCacheability
+	 *            the cacheability
+	 */
+	public void setCacheability(final String aCacheability) {
+		cacheability = aCacheability;
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#setParameter(String, String)}
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValue
+	 *            the value
+	 */
+	public void setParameter(final String aName, final String aValue) {
+		setParameter(aName, new String[] { aValue });
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#setParameter(String, String[])}
+	 * 
+	 * @param aName
+	 *            the name
+	 * @param aValues
+	 *            the values
+	 */
+	public void setParameter(final String aName, final String[] aValues) {
+		// sanity check
+		if ((aName == null) || (aValues == null)) {
+			throw new IllegalArgumentException();
+		}
+		parameters.put(aName, Arrays.copyOf(aValues, aValues.length));
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#setParameters(Map)}
+	 * 
+	 * @param aParameters
+	 *            the parameters
+	 */
+	public void setParameters(final Map<String, String[]> aParameters) {
+		parameters.clear();
+		for (final Map.Entry<String, String[]> entry : aParameters.entrySet()) {
+			setParameter(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Implements {@link javax.portlet.PortletURL#setPortletMode(PortletMode)}
+	 * 
+	 * @param aMode
+	 *            the mode
+	 */
+	public void setPortletMode(final PortletMode aMode) {
+		mode = aMode;
+	}
+
+	/**
+	 * Ignores the property
+	 * 
+	 * @param aKey
+	 *            the key
+	 * @param aValue
+	 *            the value
+	 */
+	public void setProperty(final String aKey, final String aValue) {
+		// URLs do not carry properties in memory
+	}
+
+	/**
+	 * Implements {@link ResourceURL#setResourceID(String)}
+	 * 
+	 * @param aResourceID
+	 *            the identifier
+	 */
+	public void setResourceID(final String aResourceID) {
+		resourceID = aResourceID;
+	}
+
+	/**
+	 * Ignores the flag, there is no transport in memory
+	 * 
+	 * @param bSecure
+	 *            the flag
+	 */
+	public void setSecure(final boolean bSecure) {
+		// nothing to do
+	}
+
+	/**
+	 * Implements {@link javax.portlet.PortletURL#setWindowState(WindowState)}
+	 * 
+	 * @param aWindowState
+	 *            the window state
+	 */
+	public void setWindowState(final WindowState aWindowState) {
+		windowState = aWindowState;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder buffer = new StringBuilder();
+		buffer.append('/').append(type).append('/').append(encode(windowID))
+				.append('/').append(mode).append('/').append(windowState);
+		if (resourceID != null) {
+			buffer.append('/').append(encode(resourceID));
+		}
+		return buffer.append('?').append(encodeParameters(parameters))
+				.toString();
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#write(Writer)}
+	 * 
+	 * @param aWriter
+	 *            the writer
+	 * @throws IOException
+	 */
+	public void write(final Writer aWriter) throws IOException {
+		aWriter.write(toString());
+	}
+
+	/**
+	 * Implements {@link javax.portlet.BaseURL#write(Writer, boolean)}
+	 * 
+	 * @param aWriter
+	 *            the writer
+	 * @param bEscapeXML
+	 *            ignored, the representation does not contain XML
+	 *            characters except for the ampersand
+	 * @throws IOException
+	 */
+	public void write(final Writer aWriter, final boolean bEscapeXML)
+			throws IOException {
+		final String url = toString();
+		aWriter.write(bEscapeXML ? url.replace("&", "&amp;") : url);
+	}
+}
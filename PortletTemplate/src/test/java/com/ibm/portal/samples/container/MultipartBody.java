@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Builder for <code>multipart/form-data</code> request bodies, as sent by the
+ * forms of the portlets. The boundary is fixed, so the same fields always
+ * produce the same bytes.
+ * 
+ * @author cleue
+ */
+public final class MultipartBody {
+
+	/**
+	 * the boundary between the parts
+	 */
+	private static final String BOUNDARY = "----MemoryPortletContainerBoundary";
+
+	/**
+	 * line separator of the protocol
+	 */
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * the body
+	 */
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+	/**
+	 * encoding of the form fields
+	 */
+	private final Charset charset;
+
+	/**
+	 * Constructs an empty body
+	 * 
+	 * @param aCharset
+	 *            encoding of the form fields
+	 */
+	public MultipartBody(final Charset aCharset) {
+		charset = aCharset;
+	}
+
+	/**
+	 * Appends a form field
+	 * 
+	 * @param aName
+	 *            name of the field
+	 * @param aValue
+	 *            the value
+	 * @return the builder
+	 */
+	public MultipartBody addField(final String aName, final String aValue) {
+		write("--" + BOUNDARY + CRLF);
+		write("Content-Disposition: form-data; name=\"" + aName + "\"" + CRLF);
+		write(CRLF);
+		write(aValue);
+		write(CRLF);
+		return this;
+	}
+
+	/**
+	 * Appends a file
+	 * 
+	 * @param aName
+	 *            name of the field
+	 * @param aFileName
+	 *            name of the file
+	 * @param aContentType
+	 *            content type of the file
+	 * @param aContent
+	 *            the content
+	 * @return the builder
+	 */
+	public MultipartBody addFile(final String aName, final String aFileName,
+			final String aContentType, final byte[] aContent) {
+		write("--" + BOUNDARY + CRLF);
+		write("Content-Disposition: form-data; name=\"" + aName
+				+ "\"; filename=\"" + aFileName + "\"" + CRLF);
+		write("Content-Type: " + aContentType + CRLF);
+		write(CRLF);
+		body.write(aContent, 0, aContent.length);
+		write(CRLF);
+		return this;
+	}
+
+	/**
+	 * Returns the encoding of the form fields
+	 * 
+	 * @return the encoding
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Returns the content type of the body
+	 * 
+	 * @return the content type
+	 */
+	public String getContentType() {
+		return "multipart/form-data; boundary=" + BOUNDARY;
+	}
+
+	/**
+	 * Returns the body including the closing boundary
+	 * 
+	 * @return the body
+	 */
+	public byte[] toByteArray() {
+		final byte[] close = ("--" + BOUNDARY + "--" + CRLF).getBytes(charset);
+		final byte[] result = new byte[body.size() + close.length];
+		System.arraycopy(body.toByteArray(), 0, result, 0, body.size());
+		System.arraycopy(close, 0, result, body.size(), close.length);
+		return result;
+	}
+
+	/**
+	 * Writes a string in the encoding of the form
+	 * 
+	 * @param aValue
+	 *            the string
+	 */
+	private void write(final String aValue) {
+		final byte[] bytes = aValue.getBytes(charset);
+		body.write(bytes, 0, bytes.length);
+	}
+}
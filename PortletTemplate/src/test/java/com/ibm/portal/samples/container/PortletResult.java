@@ -0,0 +1,266 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.portlet.ResourceResponse;
+import javax.xml.namespace.QName;
+
+/**
+ * Outcome of a request against the {@link MemoryPortletContainer}: the markup
+ * or resource, the headers and the state of the window after the request.
+ * 
+ * @author cleue
+ */
+public final class PortletResult {
+
+	/**
+	 * the markup
+	 */
+	private final byte[] body;
+
+	/**
+	 * flag to reuse the cached markup
+	 */
+	private final boolean bUseCachedContent;
+
+	/**
+	 * encoding of the markup
+	 */
+	private final String characterEncoding;
+
+	/**
+	 * content type of the markup
+	 */
+	private final String contentType;
+
+	/**
+	 * entity tag of the markup
+	 */
+	private final String etag;
+
+	/**
+	 * names of the published events
+	 */
+	private final List<QName> events;
+
+	/**
+	 * response headers
+	 */
+	private final Map<String, String> properties;
+
+	/**
+	 * redirect location
+	 */
+	private final String redirect;
+
+	/**
+	 * state of the window after the request
+	 */
+	private final PortletState state;
+
+	/**
+	 * title of the portlet
+	 */
+	private final String title;
+
+	/**
+	 * Constructs the result
+	 * 
+	 * @param aState
+	 *            state of the window after the request
+	 * @param aBody
+	 *            the markup
+	 * @param aContentType
+	 *            content type of the markup
+	 * @param aCharacterEncoding
+	 *            encoding of the markup
+	 * @param aProperties
+	 *            response headers
+	 * @param aETag
+	 *            entity tag of the markup
+	 * @param bUseCached
+	 *            flag to reuse the cached markup
+	 * @param aTitle
+	 *            title of the portlet
+	 * @param aRedirect
+	 *            redirect location
+	 * @param aEvents
+	 *            names of the published events
+	 */
+	PortletResult(final PortletState aState, final byte[] aBody,
+			final String aContentType, final String aCharacterEncoding,
+			final Map<String, String> aProperties, final String aETag,
+			final boolean bUseCached, final String aTitle,
+			final String aRedirect, final List<QName> aEvents) {
+		state = aState;
+		body = aBody;
+		contentType = aContentType;
+		characterEncoding = aCharacterEncoding;
+		properties = Collections
+				.unmodifiableMap(new LinkedHashMap<String, String>(aProperties));
+		etag = aETag;
+		bUseCachedContent = bUseCached;
+		title = aTitle;
+		redirect = aRedirect;
+		events = Collections.unmodifiableList(new ArrayList<QName>(aEvents));
+	}
+
+	/**
+	 * Returns the markup as a string
+	 * 
+	 * @return the markup
+	 */
+	public String getBody() {
+		try {
+			return new String(body, characterEncoding);
+		} catch (final UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Returns the size of the markup
+	 * 
+	 * @return the size in bytes
+	 */
+	public int getBodySize() {
+		return body.length;
+	}
+
+	/**
+	 * Returns the content type
+	 * 
+	 * @return the content type or <code>null</code>
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the entity tag of the markup
+	 * 
+	 * @return the tag or <code>null</code>
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the names of the events published by the portlet
+	 * 
+	 * @return the names
+	 */
+	public List<QName> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Looks up a URL in the markup. The URL is the value of the first
+	 * <code>href</code>, <code>action</code> or <code>data-*</code> attribute
+	 * that follows an <code>id</code> attribute ending with
+	 * <code>_aName</code>, which is the pattern of the namespaced IDs in the
+	 * markup of the portlets.
+	 * 
+	 * @param aName
+	 *            the unqualified identifier
+	 * @return the URL or <code>null</code> if the markup does not contain it
+	 */
+	public String getLink(final String aName) {
+		final Matcher matcher = Pattern.compile(
+				"id=\"[^\"]*_" + Pattern.quote(aName)
+						+ "\"[^>]*?(?:href|action|data-[a-z]+)=\"([^\"]*)\"")
+				.matcher(getBody());
+		return matcher.find() ? matcher.group(1).replace("&amp;", "&") : null;
+	}
+
+	/**
+	 * Returns the response headers
+	 * 
+	 * @return the headers
+	 */
+	public Map<String, String> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Returns the redirect location set by an action
+	 * 
+	 * @return the location or <code>null</code>
+	 */
+	public String getRedirect() {
+		return redirect;
+	}
+
+	/**
+	 * Returns the state of the window after the request
+	 * 
+	 * @return the state
+	 */
+	public PortletState getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the HTTP status of the response
+	 * 
+	 * @return the status
+	 */
+	public int getStatus() {
+		final String status = properties.get(ResourceResponse.HTTP_STATUS_CODE);
+		return (status != null) ? Integer.parseInt(status)
+				: HttpURLConnection.HTTP_OK;
+	}
+
+	/**
+	 * Returns the title of the portlet
+	 * 
+	 * @return the title or <code>null</code>
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Checks if the portlet asked to reuse the cached markup
+	 * 
+	 * @return <code>true</code> if the cached markup is still valid
+	 */
+	public boolean isCachedContent() {
+		return bUseCachedContent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PortletResult [status=" + getStatus() + ", contentType="
+				+ contentType + ", size=" + body.length + ", etag=" + etag
+				+ ", cached=" + bUseCachedContent + ", state=" + state + "]";
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+
+/**
+ * Immutable state of a portlet window as seen by one user: the navigational
+ * state (render parameters, portlet mode and window state) plus the request
+ * context that the portal would derive from the page and the user. Requests
+ * against the {@link MemoryPortletContainer} are based on a state and
+ * actions and events produce a new state.
+ * 
+ * @author cleue
+ */
+public final class PortletState {
+
+	/**
+	 * entity tag of the markup cached by the client, may be <code>null</code>
+	 */
+	private final String etag;
+
+	/**
+	 * locale of the request
+	 */
+	private final Locale locale;
+
+	/**
+	 * the portlet mode
+	 */
+	private final PortletMode mode;
+
+	/**
+	 * render parameters, private and public
+	 */
+	private final Map<String, String[]> parameters;
+
+	/**
+	 * authenticated user, <code>null</code> for anonymous requests
+	 */
+	private final String user;
+
+	/**
+	 * identifier of the window
+	 */
+	private final String windowID;
+
+	/**
+	 * the window state
+	 */
+	private final WindowState windowState;
+
+	/**
+	 * Constructs the initial state of a window
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @param aUser
+	 *            authenticated user, <code>null</code> for anonymous requests
+	 * @param aLocale
+	 *            locale of the request
+	 */
+	public PortletState(final String aWindowID, final String aUser,
+			final Locale aLocale) {
+		this(aWindowID, aUser, aLocale, PortletMode.VIEW, WindowState.NORMAL,
+				Collections.<String, String[]> emptyMap(), null);
+	}
+
+	/**
+	 * Constructs the state
+	 * 
+	 * @param aWindowID
+	 *            identifier of the window
+	 * @param aUser
+	 *            authenticated user
+	 * @param aLocale
+	 *            locale of the request
+	 * @param aMode
+	 *            the portlet mode
+	 * @param aWindowState
+	 *            the window state
+	 * @param aParameters
+	 *            the render parameters, the map is not copied
+	 * @param aETag
+	 *            cached entity tag
+	 */
+	private PortletState(final String aWindowID, final String aUser,
+			final Locale aLocale, final PortletMode aMode,
+			final WindowState aWindowState,
+			final Map<String, String[]> aParameters, final String aETag) {
+		// sanity check
+		assert aWindowID != null;
+		assert aLocale != null;
+		assert aMode != null;
+		assert aWindowState != null;
+		assert aParameters != null;
+		// init
+		windowID = aWindowID;
+		user = aUser;
+		locale = aLocale;
+		mode = aMode;
+		windowState = aWindowState;
+		parameters = aParameters;
+		etag = aETag;
+	}
+
+	/**
+	 * Returns the entity tag of the markup cached by the client
+	 * 
+	 * @return the tag or <code>null</code>
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the locale of the request
+	 * 
+	 * @return the locale
+	 */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * Returns the portlet mode
+	 * 
+	 * @return the mode
+	 */
+	public PortletMode getPortletMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the render parameters
+	 * 
+	 * @return unmodifiable map of the parameters
+	 */
+	public Map<String, String[]> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the authenticated user
+	 * 
+	 * @return the user or <code>null</code>
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the identifier of the window
+	 * 
+	 * @return the identifier
+	 */
+	public String getWindowID() {
+		return windowID;
+	}
+
+	/**
+	 * Returns the window state
+	 * 
+	 * @return the window state
+	 */
+	public WindowState getWindowState() {
+		return windowState;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PortletState [windowID=" + windowID + ", user=" + user
+				+ ", mode=" + mode + ", windowState=" + windowState
+				+ ", parameters=" + MemoryURL.encodeParameters(parameters)
+				+ "]";
+	}
+
+	/**
+	 * Returns a copy of the state with a different cached entity tag
+	 * 
+	 * @param aETag
+	 *            the tag, may be <code>null</code>
+	 * @return the new state
+	 */
+	public PortletState withETag(final String aETag) {
+		return new PortletState(windowID, user, locale, mode, windowState,
+				parameters, aETag);
+	}
+
+	/**
+	 * Returns a copy of the state with different navigational state
+	 * 
+	 * @param aMode
+	 *            the portlet mode
+	 * @param aWindowState
+	 *            the window state
+	 * @param aParameters
+	 *            the render parameters, the map is copied
+	 * @return the new state
+	 */
+	public PortletState withNavigationalState(final PortletMode aMode,
+			final WindowState aWindowState,
+			final Map<String, String[]> aParameters) {
+		return new PortletState(windowID, user, locale, aMode, aWindowState,
+				Collections.unmodifiableMap(new LinkedHashMap<String, String[]>(
+						aParameters)), null);
+	}
+
+	/**
+	 * Returns a copy of the state with different render parameters
+	 * 
+	 * @param aParameters
+	 *            the render parameters, the map is copied
+	 * @return the new state
+	 */
+	public PortletState withParameters(final Map<String, String[]> aParameters) {
+		return withNavigationalState(mode, windowState, aParameters);
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.io.IOException;
+
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+
+/**
+ * Executes the includes of the portlet, i.e. the targets of
+ * {@link javax.portlet.PortletRequestDispatcher#include(PortletRequest, PortletResponse)}
+ * . A JSP engine can be plugged in here, the load tests typically use a
+ * renderer that writes the markup of the JSP directly from the request
+ * attributes, so the measurements are not dominated by the JSP engine.
+ * 
+ * @author cleue
+ */
+public interface Renderer {
+
+	/**
+	 * Renders the include
+	 * 
+	 * @param aPath
+	 *            path of the include, e.g. the path of the JSP
+	 * @param aRequest
+	 *            the request
+	 * @param aResponse
+	 *            the response
+	 * 
+	 * @throws PortletException
+	 * @throws IOException
+	 */
+	void include(String aPath, PortletRequest aRequest,
+			PortletResponse aResponse) throws PortletException, IOException;
+}
@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.container;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates implementations of the portlet API interfaces from plain classes.
+ * The portlet API interfaces are large, but the portlets only use a small
+ * fraction of their methods. A stub implements just these methods with the
+ * same signature and the proxy forwards the calls. Calls to methods that the
+ * stub does not implement fail with an {@link UnsupportedOperationException}
+ * that names the method, so gaps in the container show up immediately instead
+ * of silently returning defaults.
+ * 
+ * @author cleue
+ */
+final class Stubs {
+
+	/**
+	 * Forwards the calls to the stub
+	 */
+	private static final class Handler implements InvocationHandler {
+
+		/**
+		 * the stub
+		 */
+		private final Object stub;
+
+		/**
+		 * Constructs the handler
+		 * 
+		 * @param aStub
+		 *            the stub
+		 */
+		private Handler(final Object aStub) {
+			stub = aStub;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+		 * java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(final Object aProxy, final Method aMethod,
+				final Object[] aArgs) throws Throwable {
+			// identity semantics for the object methods
+			if (aMethod.getDeclaringClass() == Object.class) {
+				final String name = aMethod.getName();
+				if ("equals".equals(name)) {
+					return Boolean.valueOf(aProxy == aArgs[0]);
+				}
+				if ("hashCode".equals(name)) {
+					return Integer.valueOf(System.identityHashCode(aProxy));
+				}
+				return stub.toString();
+			}
+			// forward
+			final Method target = getTarget(stub.getClass(), aMethod);
+			if (target == null) {
+				throw new UnsupportedOperationException(aMethod
+						.getDeclaringClass().getName()
+						+ "#"
+						+ aMethod.getName());
+			}
+			try {
+				return target.invoke(stub, aArgs);
+			} catch (final InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+
+	/**
+	 * marker for methods that the stub does not implement
+	 */
+	private static final Method MISSING;
+
+	/**
+	 * the methods of the stubs, keyed by stub class and interface method
+	 */
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, Method>> TARGETS = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, Method>>();
+
+	static {
+		try {
+			MISSING = Object.class.getMethod("toString");
+		} catch (final NoSuchMethodException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	/**
+	 * Creates a proxy that implements the interface by forwarding to the stub
+	 * 
+	 * @param <T>
+	 *            the interface type
+	 * @param aInterface
+	 *            the interface
+	 * @param aStub
+	 *            the stub
+	 * @return the proxy
+	 */
+	static <T> T create(final Class<T> aInterface, final Object aStub) {
+		// sanity check
+		assert aInterface != null;
+		assert aStub != null;
+		// the proxy
+		return aInterface.cast(Proxy.newProxyInstance(
+				aInterface.getClassLoader(), new Class<?>[] { aInterface },
+				new Handler(aStub)));
+	}
+
+	/**
+	 * Returns the stub behind a proxy
+	 * 
+	 * @param <T>
+	 *            the stub type
+	 * @param aProxy
+	 *            the proxy
+	 * @param aStubClass
+	 *            the expected class of the stub
+	 * @return the stub
+	 */
+	static <T> T getStub(final Object aProxy, final Class<T> aStubClass) {
+		return aStubClass.cast(((Handler) Proxy.getInvocationHandler(aProxy)).stub);
+	}
+
+	/**
+	 * Looks up the method of the stub with the signature of the interface
+	 * method
+	 * 
+	 * @param aStubClass
+	 *            class of the stub
+	 * @param aMethod
+	 *            the interface method
+	 * @return the method of the stub or <code>null</code>
+	 */
+	private static Method getTarget(final Class<?> aStubClass,
+			final Method aMethod) {
+		// the methods of the class
+		ConcurrentMap<Method, Method> targets = TARGETS.get(aStubClass);
+		if (targets == null) {
+			final ConcurrentMap<Method, Method> created = new ConcurrentHashMap<Method, Method>();
+			targets = TARGETS.putIfAbsent(aStubClass, created);
+			if (targets == null) {
+				targets = created;
+			}
+		}
+		// lookup
+		Method result = targets.get(aMethod);
+		if (result == null) {
+			try {
+				result = aStubClass.getMethod(aMethod.getName(),
+						aMethod.getParameterTypes());
+				result.setAccessible(true);
+			} catch (final NoSuchMethodException ex) {
+				result = MISSING;
+			}
+			targets.put(aMethod, result);
+		}
+		// ok
+		return (result != MISSING) ? result : null;
+	}
+
+	/**
+	 * Do not instantiate this class
+	 */
+	private Stubs() {
+
+	}
+}
@@ -0,0 +1,406 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Properties;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PrivateParameterMarshaller;
+import com.ibm.portal.samples.container.AllocationMeter;
+import com.ibm.portal.samples.container.MemoryPortletContainer;
+import com.ibm.portal.samples.container.MultipartBody;
+import com.ibm.portal.samples.container.PortletResult;
+import com.ibm.portal.samples.container.PortletState;
+import com.ibm.portal.samples.mvc.model.TemplateActions.ACTION;
+import com.ibm.portal.samples.mvc.model.TemplateActions.KEY;
+import com.ibm.portal.samples.mvc.model.TemplateLookups.RESOURCE;
+
+/**
+ * Regression gate for the bytes allocated per request by
+ * {@link TemplatePortlet}. The gate drives renders, actions and resource
+ * requests against the {@link MemoryPortletContainer} on a single thread,
+ * measures the allocations of each request via the {@link AllocationMeter}
+ * and compares the median per phase and scenario with the budgets checked in
+ * as <code>allocation-budgets.properties</code> next to this class. The
+ * process exits with a non-zero status if a budget is exceeded or missing,
+ * which fails the build.
+ * 
+ * Usage: <code>TemplateAllocationGate [iterations [warmup [descriptor]]]</code>
+ * 
+ * @author cleue
+ */
+public final class TemplateAllocationGate {
+
+	/**
+	 * The measured phases
+	 */
+	private enum PHASE {
+		/**
+		 * action phase
+		 */
+		ACTION,
+		/**
+		 * render phase
+		 */
+		RENDER,
+		/**
+		 * resource phase
+		 */
+		RESOURCE;
+	}
+
+	/**
+	 * The measured scenarios
+	 */
+	private enum SCENARIO {
+		/**
+		 * window in its default state, the form submits the default text
+		 */
+		DEFAULT,
+		/**
+		 * window with modified render parameters and a modified text
+		 */
+		MODIFIED,
+		/**
+		 * like {@link #MODIFIED}, but the form carries a file
+		 */
+		UPLOAD;
+	}
+
+	/**
+	 * name of the resource with the budgets
+	 */
+	private static final String BUDGETS = "allocation-budgets.properties";
+
+	/**
+	 * default location of the portlet descriptor, relative to the project
+	 */
+	private static final String DEFAULT_DESCRIPTOR = "src/main/java/com/ibm/portal/samples/mvc/TemplatePortlet.xml";
+
+	/**
+	 * default number of measured iterations per scenario
+	 */
+	private static final int DEFAULT_ITERATIONS = 500;
+
+	/**
+	 * default number of warm-up iterations per scenario, enough to get the
+	 * code paths compiled, so escape analysis is in effect
+	 */
+	private static final int DEFAULT_WARMUP = 5000;
+
+	/**
+	 * marshaller for the form fields
+	 */
+	private static final Marshaller MARSHALLER = PrivateParameterMarshaller.SINGLETON;
+
+	/**
+	 * the modified text
+	 */
+	private static final String MODIFIED_TEXT = "modified text";
+
+	/**
+	 * size of the uploaded file
+	 */
+	private static final int UPLOAD_SIZE = 32 * 1024;
+
+	/**
+	 * encoding of the forms
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Checks the status of a result
+	 * 
+	 * @param aResult
+	 *            the result
+	 * @return the result
+	 */
+	private static PortletResult check(final PortletResult aResult) {
+		if (aResult.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("Unexpected result " + aResult
+					+ ".");
+		}
+		return aResult;
+	}
+
+	/**
+	 * Returns the key of a budget
+	 * 
+	 * @param aScenario
+	 *            the scenario
+	 * @param aPhase
+	 *            the phase
+	 * @return the key, e.g. <code>default.render</code>
+	 */
+	private static String getKey(final SCENARIO aScenario, final PHASE aPhase) {
+		return aScenario.name().toLowerCase(Locale.ENGLISH) + "."
+				+ aPhase.name().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Loads the budgets
+	 * 
+	 * @return the budgets
+	 * @throws IOException
+	 */
+	private static Properties loadBudgets() throws IOException {
+		final InputStream in = TemplateAllocationGate.class
+				.getResourceAsStream(BUDGETS);
+		if (in == null) {
+			throw new IOException("Missing resource [" + BUDGETS + "].");
+		}
+		try {
+			final Properties result = new Properties();
+			result.load(in);
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Runs the gate
+	 * 
+	 * @param aArgs
+	 *            <code>[iterations [warmup [descriptor]]]</code>
+	 * @throws Exception
+	 */
+	public static void main(final String[] aArgs) throws Exception {
+		final int iterations = (aArgs.length > 0) ? Integer.parseInt(aArgs[0])
+				: DEFAULT_ITERATIONS;
+		final int warmup = (aArgs.length > 1) ? Integer.parseInt(aArgs[1])
+				: DEFAULT_WARMUP;
+		final File descriptor = new File((aArgs.length > 2) ? aArgs[2]
+				: DEFAULT_DESCRIPTOR);
+		// check the JVM
+		final AllocationMeter meter = new AllocationMeter();
+		if (!meter.isSupported()) {
+			System.out.println("The JVM does not support allocation "
+					+ "accounting, skipping the allocation gate.");
+			return;
+		}
+		final Properties budgets = loadBudgets();
+		// host the portlet
+		final MemoryPortletContainer container = TemplateLoadDriver
+				.createContainer(descriptor);
+		int failures = 0;
+		try {
+			System.out.printf("%-20s %12s %12s  %s%n", "budget", "median[B]",
+					"budget[B]", "result");
+			for (final SCENARIO scenario : SCENARIO.values()) {
+				final TemplateAllocationGate gate = new TemplateAllocationGate(
+						container, meter, scenario, iterations);
+				gate.measure(warmup);
+				gate.measure(iterations);
+				for (final PHASE phase : PHASE.values()) {
+					final String key = getKey(scenario, phase);
+					final long median = gate.getMedian(phase);
+					final String budget = budgets.getProperty(key);
+					final String result;
+					if (budget == null) {
+						result = "FAILED, no budget";
+					} else if (median > Long.parseLong(budget.trim())) {
+						result = "FAILED";
+					} else {
+						result = "ok";
+					}
+					if (!"ok".equals(result)) {
+						failures++;
+					}
+					System.out.printf("%-20s %12d %12s  %s%n", key, median,
+							(budget != null) ? budget.trim() : "-", result);
+				}
+			}
+		} finally {
+			container.destroy();
+		}
+		// fail the build
+		if (failures > 0) {
+			System.out.printf("%d allocation budget(s) exceeded, see %s.%n",
+					failures, BUDGETS);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * body of the form submission
+	 */
+	private final MultipartBody body;
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * URL of the form
+	 */
+	private final String formURL;
+
+	/**
+	 * the meter
+	 */
+	private final AllocationMeter meter;
+
+	/**
+	 * URL of the state resource
+	 */
+	private final String resourceURL;
+
+	/**
+	 * allocated bytes per phase and iteration
+	 */
+	private final long[][] samples;
+
+	/**
+	 * state of the window for all iterations
+	 */
+	private final PortletState state;
+
+	/**
+	 * Constructs the gate for a scenario
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aMeter
+	 *            the meter
+	 * @param aScenario
+	 *            the scenario
+	 * @param aIterations
+	 *            number of measured iterations
+	 * @throws Exception
+	 */
+	private TemplateAllocationGate(final MemoryPortletContainer aContainer,
+			final AllocationMeter aMeter, final SCENARIO aScenario,
+			final int aIterations) throws Exception {
+		container = aContainer;
+		meter = aMeter;
+		samples = new long[PHASE.values().length][aIterations];
+		// navigate to the state of the scenario
+		final PortletState initial = new PortletState("window-"
+				+ aScenario.name().toLowerCase(Locale.ENGLISH), "user",
+				Locale.ENGLISH);
+		PortletResult markup = check(container.render(initial));
+		String text = null;
+		if (aScenario == SCENARIO.DEFAULT) {
+			state = markup.getState();
+		} else {
+			// modify the render parameters and the text
+			PortletState modified = initial;
+			for (int i = 0; i < 3; ++i) {
+				modified = container.follow(modified,
+						markup.getLink("incSampleInt"));
+				markup = check(container.render(modified));
+			}
+			text = MODIFIED_TEXT;
+			modified = check(
+					container.action(modified, markup.getLink("form"),
+							createBody(text, null))).getState();
+			markup = check(container.render(modified));
+			state = markup.getState();
+		}
+		// the requests of the iterations
+		final byte[] upload;
+		if (aScenario == SCENARIO.UPLOAD) {
+			upload = new byte[UPLOAD_SIZE];
+			for (int i = 0; i < upload.length; ++i) {
+				upload[i] = (byte) ('a' + (i % 26));
+			}
+		} else {
+			upload = null;
+		}
+		body = createBody(text, upload);
+		formURL = markup.getLink("form");
+		resourceURL = container.getResourceURL(state,
+				MARSHALLER.marshalEnum(RESOURCE.STATE),
+				Collections.<String, String[]> emptyMap());
+	}
+
+	/**
+	 * Creates the body of a form submission
+	 * 
+	 * @param aText
+	 *            the text or <code>null</code> to keep the field empty
+	 * @param aUpload
+	 *            content of an uploaded file or <code>null</code>
+	 * @return the body
+	 */
+	private MultipartBody createBody(final String aText, final byte[] aUpload) {
+		final MultipartBody result = new MultipartBody(UTF_8).addField(
+				"_charset_", UTF_8.name());
+		if (aText != null) {
+			result.addField(MARSHALLER.marshalEnum(KEY.SAMPLE_TEXT), aText);
+		}
+		if (aUpload != null) {
+			result.addFile("attachment", "attachment.txt", "text/plain",
+					aUpload);
+		}
+		return result.addField(MARSHALLER.marshalEnum(KEY.ACTION),
+				MARSHALLER.marshalEnum(ACTION.SAMPLE_FORM_SAVE));
+	}
+
+	/**
+	 * Returns the median of the allocated bytes of a phase
+	 * 
+	 * @param aPhase
+	 *            the phase
+	 * @return the median
+	 */
+	private long getMedian(final PHASE aPhase) {
+		final long[] sorted = samples[aPhase.ordinal()].clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	/**
+	 * Executes the requests of the scenario and records the allocated bytes
+	 * of the last iterations
+	 * 
+	 * @param aIterations
+	 *            number of iterations
+	 * @throws Exception
+	 */
+	private void measure(final int aIterations) throws Exception {
+		final int size = samples[0].length;
+		for (int i = 0; i < aIterations; ++i) {
+			final int idx = i % size;
+			// render
+			long start = meter.getAllocatedBytes();
+			check(container.render(state));
+			samples[PHASE.RENDER.ordinal()][idx] = meter
+					.getAllocatedSince(start);
+			// action
+			start = meter.getAllocatedBytes();
+			check(container.action(state, formURL, body));
+			samples[PHASE.ACTION.ordinal()][idx] = meter
+					.getAllocatedSince(start);
+			// resource
+			start = meter.getAllocatedBytes();
+			check(container.resource(state, resourceURL,
+					Collections.<String, String> emptyMap()));
+			samples[PHASE.RESOURCE.ordinal()][idx] = meter
+					.getAllocatedSince(start);
+		}
+	}
+}
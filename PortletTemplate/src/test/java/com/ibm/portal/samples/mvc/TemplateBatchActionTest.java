@@ -0,0 +1,362 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PrivateParameterMarshaller;
+import com.ibm.portal.samples.container.MemoryPortletContainer;
+import com.ibm.portal.samples.container.MultipartBody;
+import com.ibm.portal.samples.container.PortletResult;
+import com.ibm.portal.samples.container.PortletState;
+import com.ibm.portal.samples.mvc.model.TemplateActions.ACTION;
+import com.ibm.portal.samples.mvc.model.TemplateActions.KEY;
+import com.ibm.portal.samples.mvc.model.TemplateLookups.RESOURCE;
+
+/**
+ * Functional test for form posts that carry a batch of actions. The test
+ * hosts {@link TemplatePortlet} with the sample text persisted as a
+ * preference and posts forms with several counter updates and a save. A
+ * successful batch has to apply all actions, a batch with a failing entry or
+ * a failing preference store none of them: the render parameters after the
+ * action and the stored preferences have to be the ones from before the
+ * request. The process exits with a non-zero status if a check fails, which
+ * fails the build.
+ * 
+ * Usage: <code>TemplateBatchActionTest [descriptor]</code>
+ * 
+ * @author cleue
+ */
+public final class TemplateBatchActionTest {
+
+	/**
+	 * default location of the portlet descriptor, relative to the project
+	 */
+	private static final String DEFAULT_DESCRIPTOR = "src/main/java/com/ibm/portal/samples/mvc/TemplatePortlet.xml";
+
+	/**
+	 * maximum size of a form field in the test, in bytes
+	 */
+	private static final int MAX_FIELD_SIZE = 1024;
+
+	/**
+	 * marshaller for the form fields and resource IDs
+	 */
+	private static final Marshaller MARSHALLER = PrivateParameterMarshaller.SINGLETON;
+
+	/**
+	 * name of the preference that backs the sample text
+	 */
+	private static final String PREF_SAMPLE_TEXT = "SAMPLE_TEXT";
+
+	/**
+	 * encoding of the form posts
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Checks the status of a result
+	 * 
+	 * @param aResult
+	 *            the result
+	 * @return the result
+	 */
+	private static PortletResult check(final PortletResult aResult) {
+		if (aResult.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("Unexpected result " + aResult
+					+ ".");
+		}
+		return aResult;
+	}
+
+	/**
+	 * Runs the test
+	 * 
+	 * @param aArgs
+	 *            <code>[descriptor]</code>
+	 * @throws Exception
+	 */
+	public static void main(final String[] aArgs) throws Exception {
+		final File descriptor = new File((aArgs.length > 0) ? aArgs[0]
+				: DEFAULT_DESCRIPTOR);
+		// persist the text, so a save has to go through the store
+		final Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put("com.ibm.portal.samples.mvc.persistentPreferences",
+				PREF_SAMPLE_TEXT);
+		params.put("com.ibm.portal.samples.mvc.upload.maxFieldSize",
+				Integer.toString(MAX_FIELD_SIZE));
+		// host the portlet
+		final MemoryPortletContainer container = TemplateLoadDriver
+				.createContainer(descriptor, params);
+		final int failures;
+		try {
+			final TemplateBatchActionTest test = new TemplateBatchActionTest(
+					container);
+			test.testBatch();
+			test.testFailingField();
+			test.testFailingStore();
+			failures = test.failures;
+			System.out.printf("%d checks, %d failures%n", test.checks,
+					failures);
+		} finally {
+			container.destroy();
+		}
+		// fail the build
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * number of checks executed so far
+	 */
+	private int checks;
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * number of failed checks so far
+	 */
+	private int failures;
+
+	/**
+	 * Constructs the test
+	 * 
+	 * @param aContainer
+	 *            the container
+	 */
+	private TemplateBatchActionTest(final MemoryPortletContainer aContainer) {
+		container = aContainer;
+	}
+
+	/**
+	 * Adds an action to a form post
+	 * 
+	 * @param aBody
+	 *            the form post
+	 * @param aAction
+	 *            the action
+	 * @return the form post
+	 */
+	private MultipartBody addAction(final MultipartBody aBody,
+			final ACTION aAction) {
+		return aBody.addField(MARSHALLER.marshalEnum(KEY.ACTION),
+				MARSHALLER.marshalEnum(aAction));
+	}
+
+	/**
+	 * Adds the sample text to a form post
+	 * 
+	 * @param aBody
+	 *            the form post
+	 * @param aText
+	 *            the text
+	 * @return the form post
+	 */
+	private MultipartBody addText(final MultipartBody aBody, final String aText) {
+		return aBody.addField(MARSHALLER.marshalEnum(KEY.SAMPLE_TEXT), aText);
+	}
+
+	/**
+	 * Compares an actual with an expected value
+	 * 
+	 * @param aName
+	 *            name of the check
+	 * @param aExpected
+	 *            the expected value
+	 * @param aActual
+	 *            the actual value
+	 */
+	private void assertEquals(final String aName, final Object aExpected,
+			final Object aActual) {
+		++checks;
+		if (!aExpected.equals(aActual)) {
+			++failures;
+			System.out.printf("%s: [%s] instead of [%s]%n", aName, aActual,
+					aExpected);
+		}
+	}
+
+	/**
+	 * Creates a form post
+	 * 
+	 * @return the form post
+	 */
+	private MultipartBody createBody() {
+		return new MultipartBody(UTF_8).addField("_charset_", UTF_8.name());
+	}
+
+	/**
+	 * Returns the model of a window as served by the state resource
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @return the model as JSON
+	 * @throws Exception
+	 */
+	private String getModel(final PortletState aState) throws Exception {
+		final String url = container.getResourceURL(aState,
+				MARSHALLER.marshalEnum(RESOURCE.STATE),
+				Collections.<String, String[]> emptyMap());
+		return check(
+				container.resource(aState, url,
+						Collections.<String, String> emptyMap())).getBody();
+	}
+
+	/**
+	 * Returns the stored sample text of a window
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @return the text
+	 */
+	private String getStoredText(final PortletState aState) {
+		final String[] values = container.getPreferences(aState.getWindowID())
+				.get(PREF_SAMPLE_TEXT);
+		return (values != null) ? Arrays.toString(values) : "";
+	}
+
+	/**
+	 * Posts a form of a window
+	 * 
+	 * @param aState
+	 *            state of the window
+	 * @param aBody
+	 *            the form post
+	 * @return the state after the action
+	 * @throws Exception
+	 */
+	private PortletState post(final PortletState aState,
+			final MultipartBody aBody) throws Exception {
+		final PortletResult markup = check(container.render(aState));
+		return check(container.action(aState, markup.getLink("form"), aBody))
+				.getState();
+	}
+
+	/**
+	 * Posts a batch that fails in the middle and checks that none of its
+	 * actions has been applied
+	 * 
+	 * @param aName
+	 *            name of the check
+	 * @param aState
+	 *            state of the window before the batch
+	 * @param aBody
+	 *            the failing batch
+	 * @throws Exception
+	 */
+	private void postFailingBatch(final String aName,
+			final PortletState aState, final MultipartBody aBody)
+			throws Exception {
+		final String model = getModel(aState);
+		final String stored = getStoredText(aState);
+		final PortletState state = post(aState, aBody);
+		assertEquals(aName + " parameters", toString(aState.getParameters()),
+				toString(state.getParameters()));
+		assertEquals(aName + " model", model, getModel(state));
+		assertEquals(aName + " preferences", stored, getStoredText(state));
+	}
+
+	/**
+	 * Applies counter updates and a save in a single form post
+	 * 
+	 * @throws Exception
+	 */
+	private void testBatch() throws Exception {
+		final PortletState initial = new PortletState("batch", "user",
+				Locale.ENGLISH);
+		final MultipartBody body = createBody();
+		addAction(body, ACTION.SAMPLE_INT_INC);
+		addAction(body, ACTION.SAMPLE_INT_INC);
+		addText(body, "batched");
+		addAction(body, ACTION.SAMPLE_FORM_SAVE);
+		addAction(body, ACTION.SAMPLE_INT_DEC);
+		final PortletState state = post(initial, body);
+		assertEquals("batch model",
+				"{\"sampleInt\":2,\"sampleText\":\"batched\"}",
+				getModel(state));
+		assertEquals("batch preferences", "[batched]", getStoredText(state));
+	}
+
+	/**
+	 * Posts a batch with a field that exceeds the upload limits after the
+	 * first actions
+	 * 
+	 * @throws Exception
+	 */
+	private void testFailingField() throws Exception {
+		final PortletState state = post(new PortletState("field", "user",
+				Locale.ENGLISH), addAction(addAction(addText(createBody(),
+				"before"), ACTION.SAMPLE_FORM_SAVE), ACTION.SAMPLE_INT_INC));
+		final char[] text = new char[2 * MAX_FIELD_SIZE];
+		Arrays.fill(text, 'x');
+		final MultipartBody body = createBody();
+		addAction(body, ACTION.SAMPLE_INT_INC);
+		addText(body, "after");
+		addAction(body, ACTION.SAMPLE_FORM_SAVE);
+		addText(body, new String(text));
+		addAction(body, ACTION.SAMPLE_FORM_SAVE);
+		postFailingBatch("field", state, body);
+	}
+
+	/**
+	 * Posts a batch whose preferences cannot be stored
+	 * 
+	 * @throws Exception
+	 */
+	private void testFailingStore() throws Exception {
+		final PortletState state = post(new PortletState("store", "user",
+				Locale.ENGLISH), addAction(addAction(addText(createBody(),
+				"before"), ACTION.SAMPLE_FORM_SAVE), ACTION.SAMPLE_INT_INC));
+		final MultipartBody body = createBody();
+		addAction(body, ACTION.SAMPLE_INT_INC);
+		addText(body, "after");
+		addAction(body, ACTION.SAMPLE_FORM_SAVE);
+		container.setFailingStores(true);
+		try {
+			postFailingBatch("store", state, body);
+		} finally {
+			container.setFailingStores(false);
+		}
+	}
+
+	/**
+	 * Formats parameters for a comparison
+	 * 
+	 * @param aParameters
+	 *            the parameters
+	 * @return the formatted parameters
+	 */
+	private String toString(final Map<String, String[]> aParameters) {
+		final StringBuilder result = new StringBuilder();
+		for (final Map.Entry<String, String[]> entry : aParameters.entrySet()) {
+			result.append(entry.getKey()).append('=')
+					.append(Arrays.toString(entry.getValue())).append(' ');
+		}
+		return result.toString();
+	}
+}
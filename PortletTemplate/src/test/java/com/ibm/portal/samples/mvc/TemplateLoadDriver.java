@@ -0,0 +1,383 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PrivateParameterMarshaller;
+import com.ibm.portal.samples.common.SessionGuardFilter;
+import com.ibm.portal.samples.container.LatencyRecorder;
+import com.ibm.portal.samples.container.MemoryPortletContainer;
+import com.ibm.portal.samples.container.MultipartBody;
+import com.ibm.portal.samples.container.PortletResult;
+import com.ibm.portal.samples.container.PortletState;
+import com.ibm.portal.samples.mvc.model.TemplateActions.ACTION;
+import com.ibm.portal.samples.mvc.model.TemplateActions.KEY;
+import com.ibm.portal.samples.mvc.model.TemplateLookups.RESOURCE;
+
+/**
+ * Multithreaded load driver for {@link TemplatePortlet} on top of the
+ * {@link MemoryPortletContainer}. Every thread simulates a user with its own
+ * window that repeatedly renders the portlet, follows the increment link,
+ * submits the form and fetches the state resource. The driver verifies the
+ * responses, so it doubles as a regression test, and reports throughput and
+ * p50/p99/p999 latencies per phase.
+ * 
+ * Usage:
+ * <code>TemplateLoadDriver [threads [iterations [warmup [descriptor]]]]</code>
+ * 
+ * @author cleue
+ */
+public final class TemplateLoadDriver {
+
+	/**
+	 * default location of the portlet descriptor, relative to the project
+	 */
+	private static final String DEFAULT_DESCRIPTOR = "src/main/java/com/ibm/portal/samples/mvc/TemplatePortlet.xml";
+
+	/**
+	 * default number of measured iterations per thread
+	 */
+	private static final int DEFAULT_ITERATIONS = 2000;
+
+	/**
+	 * default number of threads
+	 */
+	private static final int DEFAULT_THREADS = 4;
+
+	/**
+	 * default number of warm-up iterations per thread
+	 */
+	private static final int DEFAULT_WARMUP = 500;
+
+	/**
+	 * marshaller for the form fields
+	 */
+	private static final Marshaller MARSHALLER = PrivateParameterMarshaller.SINGLETON;
+
+	/**
+	 * name of the action phase in the report
+	 */
+	public static final String PHASE_ACTION = "action";
+
+	/**
+	 * name of the render phase in the report
+	 */
+	public static final String PHASE_RENDER = "render";
+
+	/**
+	 * name of the resource phase in the report
+	 */
+	public static final String PHASE_RESOURCE = "resource";
+
+	/**
+	 * Checks the status of a result
+	 * 
+	 * @param aResult
+	 *            the result
+	 * @return the result
+	 */
+	private static PortletResult check(final PortletResult aResult) {
+		if (aResult.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("Unexpected result " + aResult
+					+ ".");
+		}
+		return aResult;
+	}
+
+	/**
+	 * Creates a container that hosts an initialized {@link TemplatePortlet}.
+	 * The portlet runs behind a strict {@link SessionGuardFilter}, so any
+	 * request that creates a session fails.
+	 * 
+	 * @param aDescriptor
+	 *            the portlet descriptor
+	 * @return the container
+	 * @throws Exception
+	 */
+	public static MemoryPortletContainer createContainer(final File aDescriptor)
+			throws Exception {
+		return createContainer(aDescriptor,
+				Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * Creates a container that hosts an initialized {@link TemplatePortlet}
+	 * with init parameters that override the ones of the descriptor
+	 * 
+	 * @param aDescriptor
+	 *            the portlet descriptor
+	 * @param aInitParameters
+	 *            the overridden init parameters
+	 * @return the container
+	 * @throws Exception
+	 */
+	public static MemoryPortletContainer createContainer(
+			final File aDescriptor, final Map<String, String> aInitParameters)
+			throws Exception {
+		final MemoryPortletContainer result = MemoryPortletContainer
+				.fromDescriptor(aDescriptor, new TemplateRenderer());
+		for (final Map.Entry<String, String> entry : aInitParameters
+				.entrySet()) {
+			result.setInitParameter(entry.getKey(), entry.getValue());
+		}
+		// fail every request that creates a session
+		result.addFilter("SessionGuard", new SessionGuardFilter(),
+				Collections.singletonMap("strict", "true"));
+		result.init(new TemplatePortlet());
+		return result;
+	}
+
+	/**
+	 * Reads a numeric argument
+	 * 
+	 * @param aArgs
+	 *            the arguments
+	 * @param aIndex
+	 *            index of the argument
+	 * @param aDefault
+	 *            default if the argument is missing
+	 * @return the value
+	 */
+	private static int getArgument(final String[] aArgs, final int aIndex,
+			final int aDefault) {
+		return (aArgs.length > aIndex) ? Integer.parseInt(aArgs[aIndex])
+				: aDefault;
+	}
+
+	/**
+	 * Runs the load test
+	 * 
+	 * @param aArgs
+	 *            <code>[threads [iterations [warmup [descriptor]]]]</code>
+	 * @throws Exception
+	 */
+	public static void main(final String[] aArgs) throws Exception {
+		final int threads = getArgument(aArgs, 0, DEFAULT_THREADS);
+		final int iterations = getArgument(aArgs, 1, DEFAULT_ITERATIONS);
+		final int warmup = getArgument(aArgs, 2, DEFAULT_WARMUP);
+		final File descriptor = new File((aArgs.length > 3) ? aArgs[3]
+				: DEFAULT_DESCRIPTOR);
+		// host the portlet
+		final MemoryPortletContainer container = createContainer(descriptor);
+		try {
+			// warm up, the results are discarded
+			run(container, threads, warmup);
+			// measure
+			final long start = System.nanoTime();
+			final LatencyRecorder recorder = run(container, threads,
+					iterations);
+			final long elapsed = System.nanoTime() - start;
+			// report
+			System.out.printf("%d threads, %d iterations per thread%n",
+					threads, iterations);
+			recorder.report(System.out, elapsed);
+			System.out.printf("sessions created: %d%n",
+					container.getSessionCount());
+		} finally {
+			container.destroy();
+		}
+	}
+
+	/**
+	 * Runs the scenario on several threads
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aThreads
+	 *            number of threads
+	 * @param aIterations
+	 *            iterations per thread
+	 * @return the merged latencies
+	 * @throws Exception
+	 */
+	private static LatencyRecorder run(final MemoryPortletContainer aContainer,
+			final int aThreads, final int aIterations) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(aThreads);
+		try {
+			final List<Future<LatencyRecorder>> futures = new ArrayList<Future<LatencyRecorder>>(
+					aThreads);
+			for (int i = 0; i < aThreads; ++i) {
+				final TemplateLoadDriver driver = new TemplateLoadDriver(
+						aContainer, new PortletState("window-" + i, "user-"
+								+ i, Locale.ENGLISH));
+				futures.add(executor.submit(new Callable<LatencyRecorder>() {
+					@Override
+					public LatencyRecorder call() throws Exception {
+						for (int j = 0; j < aIterations; ++j) {
+							driver.iterate();
+						}
+						return driver.recorder;
+					}
+				}));
+			}
+			// merge
+			final LatencyRecorder result = new LatencyRecorder();
+			for (final Future<LatencyRecorder> future : futures) {
+				result.merge(future.get());
+			}
+			return result;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * latencies of this driver
+	 */
+	private final LatencyRecorder recorder = new LatencyRecorder();
+
+	/**
+	 * current state of the window
+	 */
+	private PortletState state;
+
+	/**
+	 * Constructs a driver for a single window
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aState
+	 *            initial state of the window
+	 */
+	public TemplateLoadDriver(final MemoryPortletContainer aContainer,
+			final PortletState aState) {
+		container = aContainer;
+		state = aState;
+	}
+
+	/**
+	 * Submits the form of the portlet
+	 * 
+	 * @param aMarkup
+	 *            the markup that contains the form
+	 * @param aText
+	 *            the text to save
+	 * @return the result
+	 * @throws Exception
+	 */
+	public PortletResult action(final PortletResult aMarkup, final String aText)
+			throws Exception {
+		final MultipartBody body = new MultipartBody(Charset.forName("UTF-8"))
+				.addField("_charset_", "UTF-8")
+				.addField(MARSHALLER.marshalEnum(KEY.SAMPLE_TEXT), aText)
+				.addField(MARSHALLER.marshalEnum(KEY.ACTION),
+						MARSHALLER.marshalEnum(ACTION.SAMPLE_FORM_SAVE));
+		final long start = System.nanoTime();
+		final PortletResult result = container.action(state,
+				aMarkup.getLink("form"), body);
+		recorder.record(PHASE_ACTION, System.nanoTime() - start);
+		state = result.getState();
+		return result;
+	}
+
+	/**
+	 * Follows a render URL of the portlet
+	 * 
+	 * @param aURL
+	 *            the URL, e.g. a link of the markup
+	 * @return the new state of the window
+	 */
+	public PortletState follow(final String aURL) {
+		state = container.follow(state, aURL);
+		return state;
+	}
+
+	/**
+	 * Returns the latencies of this driver
+	 * 
+	 * @return the latencies
+	 */
+	public LatencyRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Returns the current state of the window
+	 * 
+	 * @return the state
+	 */
+	public PortletState getState() {
+		return state;
+	}
+
+	/**
+	 * Executes one iteration of the scenario: render, follow the increment
+	 * link, render, submit the form, render and fetch the state resource
+	 * 
+	 * @throws Exception
+	 */
+	public void iterate() throws Exception {
+		// render and navigate
+		final PortletResult first = render();
+		follow(first.getLink("incSampleInt"));
+		final PortletResult second = render();
+		// submit the form and render the outcome
+		action(second, "text of " + state.getUser());
+		render();
+		// fetch the state
+		resource(MARSHALLER.marshalEnum(RESOURCE.STATE));
+	}
+
+	/**
+	 * Renders the markup of the window
+	 * 
+	 * @return the result
+	 * @throws Exception
+	 */
+	public PortletResult render() throws Exception {
+		final long start = System.nanoTime();
+		final PortletResult result = check(container.render(state));
+		recorder.record(PHASE_RENDER, System.nanoTime() - start);
+		state = result.getState();
+		return result;
+	}
+
+	/**
+	 * Serves a resource of the window
+	 * 
+	 * @param aResourceID
+	 *            the resource ID
+	 * @return the result
+	 * @throws Exception
+	 */
+	public PortletResult resource(final String aResourceID) throws Exception {
+		final String url = container.getResourceURL(state, aResourceID,
+				Collections.<String, String[]> emptyMap());
+		final long start = System.nanoTime();
+		final PortletResult result = check(container.resource(state, url,
+				Collections.<String, String> emptyMap()));
+		recorder.record(PHASE_RESOURCE, System.nanoTime() - start);
+		return result;
+	}
+}
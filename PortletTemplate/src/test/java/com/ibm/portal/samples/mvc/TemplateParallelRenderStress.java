@@ -0,0 +1,341 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.portal.samples.common.Marshaller;
+import com.ibm.portal.samples.common.PrivateParameterMarshaller;
+import com.ibm.portal.samples.container.MemoryPortletContainer;
+import com.ibm.portal.samples.container.PortletResult;
+import com.ibm.portal.samples.container.PortletState;
+import com.ibm.portal.samples.mvc.model.TemplateLookups.RESOURCE;
+
+/**
+ * Concurrency stress test for parallel portlet rendering. The test prepares
+ * many windows of {@link TemplatePortlet}, each with its own user, locale and
+ * navigational state, and records the markup, entity tag and state resource
+ * of every window on a single thread. Then many threads render random windows
+ * at the same time and compare each response with the recorded one. Any
+ * difference means that state leaked between concurrent requests, e.g.
+ * through a mutable field of the portlet or a shared cache entry. The process
+ * exits with a non-zero status in that case, which fails the build.
+ * 
+ * Usage:
+ * <code>TemplateParallelRenderStress [threads [windows [iterations [descriptor]]]]</code>
+ * 
+ * @author cleue
+ */
+public final class TemplateParallelRenderStress {
+
+	/**
+	 * Expected responses of a window
+	 */
+	private static final class Window {
+
+		/**
+		 * the markup
+		 */
+		private final String markup;
+
+		/**
+		 * URL of the state resource
+		 */
+		private final String resourceURL;
+
+		/**
+		 * the state resource
+		 */
+		private final String resource;
+
+		/**
+		 * state of the window, including the entity tag of the markup
+		 */
+		private final PortletState state;
+
+		/**
+		 * Records the expected responses of a window
+		 * 
+		 * @param aContainer
+		 *            the container
+		 * @param aState
+		 *            navigational state of the window
+		 * @throws Exception
+		 */
+		private Window(final MemoryPortletContainer aContainer,
+				final PortletState aState) throws Exception {
+			final PortletResult result = check(aContainer.render(aState));
+			markup = result.getBody();
+			state = result.getState().withETag(result.getETag());
+			resourceURL = aContainer.getResourceURL(state,
+					MARSHALLER.marshalEnum(RESOURCE.STATE),
+					Collections.<String, String[]> emptyMap());
+			resource = check(
+					aContainer.resource(state, resourceURL,
+							Collections.<String, String> emptyMap()))
+					.getBody();
+		}
+	}
+
+	/**
+	 * default location of the portlet descriptor, relative to the project
+	 */
+	private static final String DEFAULT_DESCRIPTOR = "src/main/java/com/ibm/portal/samples/mvc/TemplatePortlet.xml";
+
+	/**
+	 * default number of requests per thread
+	 */
+	private static final int DEFAULT_ITERATIONS = 500;
+
+	/**
+	 * default number of threads
+	 */
+	private static final int DEFAULT_THREADS = 16;
+
+	/**
+	 * default number of windows
+	 */
+	private static final int DEFAULT_WINDOWS = 64;
+
+	/**
+	 * the locales of the windows, assigned round robin
+	 */
+	private static final Locale[] LOCALES = { Locale.ENGLISH, Locale.GERMAN,
+			Locale.FRENCH };
+
+	/**
+	 * marshaller for the resource IDs
+	 */
+	private static final Marshaller MARSHALLER = PrivateParameterMarshaller.SINGLETON;
+
+	/**
+	 * maximum number of reported differences
+	 */
+	private static final int MAX_REPORTS = 10;
+
+	/**
+	 * Checks the status of a result
+	 * 
+	 * @param aResult
+	 *            the result
+	 * @return the result
+	 */
+	private static PortletResult check(final PortletResult aResult) {
+		if (aResult.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("Unexpected result " + aResult
+					+ ".");
+		}
+		return aResult;
+	}
+
+	/**
+	 * Reads a numeric argument
+	 * 
+	 * @param aArgs
+	 *            the arguments
+	 * @param aIndex
+	 *            index of the argument
+	 * @param aDefault
+	 *            default if the argument is missing
+	 * @return the value
+	 */
+	private static int getArgument(final String[] aArgs, final int aIndex,
+			final int aDefault) {
+		return (aArgs.length > aIndex) ? Integer.parseInt(aArgs[aIndex])
+				: aDefault;
+	}
+
+	/**
+	 * Runs the stress test
+	 * 
+	 * @param aArgs
+	 *            <code>[threads [windows [iterations [descriptor]]]]</code>
+	 * @throws Exception
+	 */
+	public static void main(final String[] aArgs) throws Exception {
+		final int threads = getArgument(aArgs, 0, DEFAULT_THREADS);
+		final int windows = getArgument(aArgs, 1, DEFAULT_WINDOWS);
+		final int iterations = getArgument(aArgs, 2, DEFAULT_ITERATIONS);
+		final File descriptor = new File((aArgs.length > 3) ? aArgs[3]
+				: DEFAULT_DESCRIPTOR);
+		// host the portlet
+		final MemoryPortletContainer container = TemplateLoadDriver
+				.createContainer(descriptor);
+		final int failures;
+		try {
+			final TemplateParallelRenderStress stress = new TemplateParallelRenderStress(
+					container, windows);
+			failures = stress.run(threads, iterations);
+			System.out.printf(
+					"%d threads, %d windows, %d requests, %d differences%n",
+					threads, windows, 2 * threads * iterations, failures);
+		} finally {
+			container.destroy();
+		}
+		// fail the build
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * the container
+	 */
+	private final MemoryPortletContainer container;
+
+	/**
+	 * number of differences found so far
+	 */
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * the windows with their expected responses
+	 */
+	private final Window[] windows;
+
+	/**
+	 * Prepares the windows, each with a distinct state
+	 * 
+	 * @param aContainer
+	 *            the container
+	 * @param aWindows
+	 *            number of windows
+	 * @throws Exception
+	 */
+	private TemplateParallelRenderStress(
+			final MemoryPortletContainer aContainer, final int aWindows)
+			throws Exception {
+		container = aContainer;
+		windows = new Window[aWindows];
+		for (int i = 0; i < aWindows; ++i) {
+			final TemplateLoadDriver driver = new TemplateLoadDriver(
+					container, new PortletState("window-" + i, "user-" + i,
+							LOCALES[i % LOCALES.length]));
+			// a distinct text and number per window
+			driver.action(driver.render(), "text of window " + i);
+			for (int j = 0; j < i % 7; ++j) {
+				final PortletResult markup = driver.render();
+				driver.follow(markup.getLink("incSampleInt"));
+			}
+			windows[i] = new Window(container, driver.getState()
+					.withETag(null));
+		}
+	}
+
+	/**
+	 * Reports a difference
+	 * 
+	 * @param aWindow
+	 *            the window
+	 * @param aMessage
+	 *            description of the difference
+	 */
+	private void fail(final Window aWindow, final String aMessage) {
+		if (failures.incrementAndGet() <= MAX_REPORTS) {
+			System.out.printf("%s: %s%n", aWindow.state.getWindowID(),
+					aMessage);
+		}
+	}
+
+	/**
+	 * Executes a render and a resource request for a window and compares
+	 * the responses with the expected ones
+	 * 
+	 * @param aWindow
+	 *            the window
+	 * @param bValidate
+	 *            <code>true</code> to send the cached entity tag, so the
+	 *            portlet only validates the markup
+	 * @throws Exception
+	 */
+	private void request(final Window aWindow, final boolean bValidate)
+			throws Exception {
+		// render
+		final PortletResult markup = check(container.render(bValidate ? aWindow.state
+				: aWindow.state.withETag(null)));
+		if (bValidate) {
+			if (!markup.isCachedContent()) {
+				fail(aWindow, "cached markup not validated");
+			}
+		} else if (!aWindow.state.getETag().equals(markup.getETag())) {
+			fail(aWindow, "entity tag [" + markup.getETag() + "] instead of ["
+					+ aWindow.state.getETag() + "]");
+		} else if (!aWindow.markup.equals(markup.getBody())) {
+			fail(aWindow, "unexpected markup " + markup.getBody());
+		}
+		// the state resource
+		final String resource = check(
+				container.resource(aWindow.state, aWindow.resourceURL,
+						Collections.<String, String> emptyMap())).getBody();
+		if (!aWindow.resource.equals(resource)) {
+			fail(aWindow, "unexpected resource " + resource);
+		}
+	}
+
+	/**
+	 * Renders random windows on many threads that start at the same time
+	 * 
+	 * @param aThreads
+	 *            number of threads
+	 * @param aIterations
+	 *            requests per thread
+	 * @return number of differences
+	 * @throws Exception
+	 */
+	private int run(final int aThreads, final int aIterations)
+			throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(aThreads);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<Void>> futures = new ArrayList<Future<Void>>(
+					aThreads);
+			for (int i = 0; i < aThreads; ++i) {
+				final Random random = new Random(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int j = 0; j < aIterations; ++j) {
+							request(windows[random.nextInt(windows.length)],
+									random.nextBoolean());
+						}
+						return null;
+					}
+				}));
+			}
+			// release all threads at once
+			start.countDown();
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+			return failures.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright IBM Corp. 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package com.ibm.portal.samples.mvc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.portlet.BaseURL;
+import javax.portlet.MimeResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+
+import com.ibm.portal.samples.container.Renderer;
+import com.ibm.portal.samples.mvc.controller.TemplateController;
+import com.ibm.portal.samples.mvc.model.TemplateModel;
+import com.ibm.portal.samples.mvc.view.TemplateView;
+
+/**
+ * Renders the markup of <code>view.jsp</code> directly from the beans that
+ * {@link TemplatePortlet} places into the request attributes. The markup
+ * carries the same identifiers and URLs as the JSP, so the load driver can
+ * follow the links and submit the form exactly like a browser would.
+ * 
+ * @author cleue
+ */
+public class TemplateRenderer implements Renderer {
+
+	/**
+	 * Escapes a value for use in markup, like <code>fn:escapeXml</code>
+	 * 
+	 * @param aValue
+	 *            the value, may be <code>null</code>
+	 * @return the escaped value
+	 */
+	private static String escape(final Object aValue) {
+		if (aValue == null) {
+			return "";
+		}
+		final String value = aValue.toString();
+		final StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); ++i) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				result.append("&amp;");
+				break;
+			case '<':
+				result.append("&lt;");
+				break;
+			case '>':
+				result.append("&gt;");
+				break;
+			case '"':
+				result.append("&#034;");
+				break;
+			case '\'':
+				result.append("&#039;");
+				break;
+			default:
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Serializes a URL, <code>null</code> URLs become empty strings
+	 * 
+	 * @param aURL
+	 *            the URL
+	 * @return the escaped URL
+	 */
+	private static String url(final BaseURL aURL) {
+		return (aURL != null) ? escape(aURL.toString()) : "";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.ibm.portal.samples.container.Renderer#include(java.lang.String,
+	 * javax.portlet.PortletRequest, javax.portlet.PortletResponse)
+	 */
+	@Override
+	public void include(final String aPath, final PortletRequest aRequest,
+			final PortletResponse aResponse) throws PortletException,
+			IOException {
+		// the beans
+		final TemplateView view = (TemplateView) aRequest.getAttribute("view");
+		final TemplateModel model = (TemplateModel) aRequest
+				.getAttribute("model");
+		final TemplateController controller = (TemplateController) aRequest
+				.getAttribute("controller");
+		if (!aPath.endsWith("/view.jsp") || (view == null)) {
+			throw new PortletException("Unsupported include [" + aPath + "].");
+		}
+		final String ns = view.getNamespace();
+		// the markup
+		final PrintWriter out = ((MimeResponse) aResponse).getWriter();
+		out.print("<div id=\"" + ns + "_root\" class=\"lotusui30\" lang=\""
+				+ view.getLocale() + "\" data-events=\""
+				+ url(controller.getEventsResourceURL()) + "\">");
+		out.print("<form id=\"" + ns
+				+ "_form\" class=\"lotusForm2\" method=\"POST\""
+				+ " enctype=\"multipart/form-data\" action=\""
+				+ url(controller.getActionURL()) + "\" aria-live=\"assertive\">");
+		out.print("<input type=\"hidden\" name=\"_charset_\" value=\""
+				+ view.getCharacterEncoding() + "\" />");
+		out.print("<header class=\"lotusFormTitle\"><h1 class=\"lotusHeading\">"
+				+ escape(view.getFormTitle()) + "</h1></header>");
+		out.print("<div class=\"lotusFormBody\"><div class=\"lotusFormField\">"
+				+ "<label for=\"" + ns + "_textField\">"
+				+ "<span class=\"lotusFormRequired\" title=\""
+				+ escape(view.getRequiredFieldHint()) + "\">*</span> "
+				+ escape(view.getSampleTextTitle()) + "</label>");
+		out.print("<div class=\"lotusFieldWrapper\">"
+				+ "<input class=\"lotusText\" type=\"text\" id=\"" + ns
+				+ "_textField\" name=\"" + controller.getKeySampleText()
+				+ "\" value=\"" + escape(model.getSampleText())
+				+ "\" aria-required=\"true\"></div>");
+		out.print("<span class=\"lotusFormErrorIcon\" id=\"errorTitle\">"
+				+ "<img class=\"lotusIconMsgError\" src=\""
+				+ escape(view.getBlankImageURL()) + "\" alt=\"Error\">"
+				+ "<span class=\"lotusAltText\">X</span></span></div></div>");
+		out.print("<div class=\"lotusFormFooter\">");
+		out.print("<button id=\"" + ns + "_saveButton\" name=\""
+				+ controller.getKeyAction() + "\" type=\"submit\" value=\""
+				+ controller.getValueActionSave() + "\" class=\"lotusBtn\">"
+				+ escape(view.getSaveButtonTitle()) + "</button>");
+		out.print("<button id=\"" + ns + "_cancelButton\" name=\""
+				+ controller.getKeyAction() + "\" type=\"submit\" value=\""
+				+ controller.getValueActionCancel() + "\" class=\"lotusBtn\">"
+				+ escape(view.getCancelButtonTitle()) + "</button>");
+		out.print("</div></form>");
+		out.print("<div class=\"lotusMessage2 lotusInfo\" role=\"alert\">"
+				+ "<img class=\"lotusIcon lotusIconMsgInfo\" src=\""
+				+ escape(view.getBlankImageURL()) + "\" alt=\""
+				+ escape(view.getInfoIconHint()) + "\">"
+				+ "<span class=\"lotusAltText\">"
+				+ escape(view.getInfoIconTitle()) + "</span>");
+		out.print("<div class=\"lotusMessageBody\"><div class=\"lotusMeta\">"
+				+ "<ul class=\"lotusInlinelist\">");
+		out.print("<li id=\"" + ns + "_sampleInt\">"
+				+ escape(Integer.valueOf(model.getSampleInt())) + "</li>");
+		out.print("<li><a id=\"" + ns + "_decSampleInt\" href=\""
+				+ url(controller.getDecSampleIntURL()) + "\" title=\""
+				+ escape(view.getDecSampleIntHint()) + "\">"
+				+ escape(view.getDecSampleIntTitle()) + " </a></li>");
+		out.print("<li><a id=\"" + ns + "_incSampleInt\" href=\""
+				+ url(controller.getIncSampleIntURL()) + "\" title=\""
+				+ escape(view.getIncSampleIntHint()) + "\">"
+				+ escape(view.getIncSampleIntTitle()) + "</a></li>");
+		out.print("<li><a id=\"" + ns + "_clear\" href=\""
+				+ url(controller.getClearURL()) + "\" title=\""
+				+ escape(view.getResetHint()) + "\">"
+				+ escape(view.getResetTitle()) + "</a></li>");
+		out.print("</ul></div></div></div></div>");
+		out.flush();
+	}
+}